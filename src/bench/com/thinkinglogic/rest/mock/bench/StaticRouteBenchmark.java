@@ -0,0 +1,299 @@
+package com.thinkinglogic.rest.mock.bench;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.thinkinglogic.rest.mock.RequestJournal;
+import com.thinkinglogic.rest.mock.RestServlet;
+
+/**
+ * Measures the time and allocation of handling a request in RestServlet, without a container: the request and
+ * response are minimal stubs, so everything allocated is allocated by rest-mocker itself. staticRoute requests a path
+ * whose response is cached (see StaticResponse) with the default configuration, in which every request is recorded in
+ * the RequestJournal; staticRouteWithoutJournal requests the same path with the journal disabled; and dynamicRoute
+ * requests a path that is resolved using the request, for comparison.
+ * <p>
+ * Run with 'ant bench', which fails if staticRouteWithoutJournal allocates more than {@link #CEILING_PROPERTY} bytes
+ * per request (as measured by the JMH gc profiler). staticRoute also allocates the journal entry and a map of the
+ * request headers - about 160 bytes per request for these stub requests, which have no headers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StaticRouteBenchmark {
+
+	/** The name of the system property that specifies the maximum bytes allocated per static request. */
+	public static final String CEILING_PROPERTY = "bench.alloc.ceiling";
+
+	private static final String ALLOCATION_RESULT = "gc.alloc.rate.norm";
+
+	private RestServlet servlet;
+	private RestServlet unjournalledServlet;
+	private HttpServletRequest staticRequest;
+	private HttpServletRequest dynamicRequest;
+	private StubResponse response;
+
+	@Setup
+	public void setUp() throws ServletException, IOException {
+		Logger.getRootLogger().setLevel(Level.WARN);
+		servlet = new RestServlet();
+		System.setProperty(RequestJournal.SIZE_PROPERTY, "0");
+		unjournalledServlet = new RestServlet();
+		System.clearProperty(RequestJournal.SIZE_PROPERTY);
+		staticRequest = new StubRequest("GET", "/example-static", null);
+		dynamicRequest = new StubRequest("GET", "/example/json", "letter=a&number=1");
+		response = new StubResponse();
+		// the first request for the static path builds the cached response
+		servlet.service(staticRequest, response);
+	}
+
+	@Benchmark
+	public long staticRoute() throws ServletException, IOException {
+		servlet.service(staticRequest, response);
+		return response.written;
+	}
+
+	@Benchmark
+	public long staticRouteWithoutJournal() throws ServletException, IOException {
+		unjournalledServlet.service(staticRequest, response);
+		return response.written;
+	}
+
+	@Benchmark
+	public long dynamicRoute() throws ServletException, IOException {
+		servlet.service(dynamicRequest, response);
+		return response.written;
+	}
+
+	/**
+	 * Runs the benchmarks, and exits with an error if the static route (without the journal) allocates more than the
+	 * ceiling.
+	 *
+	 * @param args not used.
+	 * @throws RunnerException if the benchmarks cannot be run.
+	 */
+	public static void main(final String[] args) throws RunnerException {
+		double ceiling = Double.parseDouble(System.getProperty(CEILING_PROPERTY, "64"));
+		Options options = new OptionsBuilder().include(StaticRouteBenchmark.class.getName())
+				.addProfiler(GCProfiler.class).build();
+		Collection<RunResult> results = new Runner(options).run();
+		for (RunResult result : results) {
+			String benchmark = result.getParams().getBenchmark();
+			benchmark = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+			if (!benchmark.startsWith("staticRoute")) {
+				continue;
+			}
+			Result<?> allocation = findResult(result.getSecondaryResults(), ALLOCATION_RESULT);
+			if (allocation == null) {
+				System.err.println("The gc profiler did not report " + ALLOCATION_RESULT);
+				System.exit(1);
+			}
+			if (!benchmark.equals("staticRouteWithoutJournal")) {
+				System.out.printf("%s allocates %.1f bytes per request%n", benchmark, allocation.getScore());
+				continue;
+			}
+			System.out.printf("%s allocates %.1f bytes per request (ceiling %.1f)%n", benchmark, allocation
+					.getScore(), ceiling);
+			if (allocation.getScore() > ceiling) {
+				System.err.println(benchmark + " allocates more than " + CEILING_PROPERTY + "=" + ceiling);
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * @param results the secondary results of a run (JMH declares their values with the raw Result type).
+	 * @param name the name of the result.
+	 * @return the result whose label ends with the specified name (the profiler prefixes its labels).
+	 */
+	private static Result<?> findResult(final Map<String, ?> results, final String name) {
+		for (Map.Entry<String, ?> entry : results.entrySet()) {
+			if (entry.getKey().endsWith(name)) {
+				return (Result<?>) entry.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return an implementation of the interface whose every method fails - the stubs override the methods that are
+	 *         expected to be called.
+	 */
+	private static <T> T unsupported(final Class<T> type) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						throw new UnsupportedOperationException(method.getName());
+					}
+				}));
+	}
+
+	/** A GET request, with no headers. */
+	private static final class StubRequest extends HttpServletRequestWrapper {
+		private final String method;
+		private final String pathInfo;
+		private final String queryString;
+
+		StubRequest(final String method, final String pathInfo, final String queryString) {
+			super(unsupported(HttpServletRequest.class));
+			this.method = method;
+			this.pathInfo = pathInfo;
+			this.queryString = queryString;
+		}
+
+		@Override
+		public String getMethod() {
+			return method;
+		}
+
+		@Override
+		public String getPathInfo() {
+			return pathInfo;
+		}
+
+		@Override
+		public String getQueryString() {
+			return queryString;
+		}
+
+		@Override
+		public String getContextPath() {
+			return "/rest-mocker";
+		}
+
+		@Override
+		public Enumeration<String> getHeaderNames() {
+			return Collections.emptyEnumeration();
+		}
+
+		@Override
+		public String getHeader(final String name) {
+			return null;
+		}
+
+		@Override
+		public Object getAttribute(final String name) {
+			return null;
+		}
+
+		@Override
+		public boolean isAsyncStarted() {
+			return false;
+		}
+
+		@Override
+		public boolean isAsyncSupported() {
+			return false;
+		}
+	}
+
+	/** A response that counts the bytes written to it, and discards everything else. */
+	private static final class StubResponse extends HttpServletResponseWrapper {
+		private long written;
+		private int status = HttpServletResponse.SC_OK;
+		private final ServletOutputStream out = new ServletOutputStream() {
+			@Override
+			public void write(final int b) {
+				written++;
+			}
+
+			@Override
+			public void write(final byte[] b, final int off, final int len) {
+				written += len;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(final WriteListener writeListener) {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		StubResponse() {
+			super(unsupported(HttpServletResponse.class));
+		}
+
+		@Override
+		public void setStatus(final int sc) {
+			status = sc;
+		}
+
+		@Override
+		public int getStatus() {
+			return status;
+		}
+
+		@Override
+		public void addHeader(final String name, final String value) {
+			// discarded
+		}
+
+		@Override
+		public void setHeader(final String name, final String value) {
+			// discarded
+		}
+
+		@Override
+		public void setContentLength(final int len) {
+			// discarded
+		}
+
+		@Override
+		public void setContentType(final String type) {
+			// discarded
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			return out;
+		}
+
+		@Override
+		public void flushBuffer() {
+			// discarded
+		}
+	}
+}
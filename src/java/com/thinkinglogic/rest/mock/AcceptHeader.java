@@ -0,0 +1,199 @@
+package com.thinkinglogic.rest.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A parsed http Accept header, used to choose between the variants of a response available in a directory. Variants are
+ * identified by the part of the mime type after the '/' (so a variant called 'xml' matches 'application/xml' and
+ * 'text/xml'). Quality values are honoured, and a variant with q=0 is never chosen.
+ * <p>
+ * Wildcards ('*&#47;*' or 'application/*') are matched by the default response rather than by any one variant: if the
+ * most acceptable variant is covered by a wildcard with a higher quality value (e.g. 'application/*' for a variant
+ * chosen by 'application/json;q=0.5', or '*&#47;*' for any variant), then no variant is chosen. A wildcard for another
+ * type (e.g. 'image/*') does not outrank the variant.
+ * <p>
+ * Instances are immutable, and parsed headers are cached, as most clients send the same Accept header with every
+ * request.
+ */
+public final class AcceptHeader {
+
+	private static final int MAX_CACHED_HEADERS = 256;
+	private static final ConcurrentMap<String, AcceptHeader> CACHE = new ConcurrentHashMap<>();
+	private static final AcceptHeader EMPTY = new AcceptHeader(new String[0], new String[0], new float[0],
+			Collections.<String, Float> emptyMap());
+
+	/** The wildcard type that matches every type. */
+	private static final String ANY_TYPE = "*";
+
+	/** The type (before the '/', in lower case) of each mime type explicitly listed in the header, in order. */
+	private final String[] types;
+	/** The subtype of each mime type explicitly listed in the header. */
+	private final String[] subtypes;
+	/** The quality value of each mime type. */
+	private final float[] qualities;
+	/** The highest quality value of the wildcard for each type (in lower case), including '*' for '*&#47;*'. */
+	private final Map<String, Float> wildcardQualities;
+
+	private AcceptHeader(final String[] types, final String[] subtypes, final float[] qualities,
+			final Map<String, Float> wildcardQualities) {
+		this.types = types;
+		this.subtypes = subtypes;
+		this.qualities = qualities;
+		this.wildcardQualities = wildcardQualities;
+	}
+
+	/**
+	 * @param header the value of an Accept header (may be null).
+	 * @return the parsed header.
+	 */
+	public static AcceptHeader parse(final String header) {
+		if (header == null || header.trim().length() == 0) {
+			return EMPTY;
+		}
+		AcceptHeader accept = CACHE.get(header);
+		if (accept == null) {
+			accept = doParse(header);
+			if (CACHE.size() >= MAX_CACHED_HEADERS) {
+				CACHE.clear();
+			}
+			CACHE.put(header, accept);
+		}
+		return accept;
+	}
+
+	/**
+	 * @param header the value of an Accept header.
+	 * @return the parsed header.
+	 */
+	private static AcceptHeader doParse(final String header) {
+		List<String> types = new ArrayList<>();
+		List<String> subtypes = new ArrayList<>();
+		List<Float> qualities = new ArrayList<>();
+		Map<String, Float> wildcardQualities = new HashMap<>();
+		for (String range : header.split(",")) {
+			String[] params = range.split(";");
+			String mimeType = params[0].trim();
+			if (mimeType.length() == 0) {
+				continue;
+			}
+			float quality = 1f;
+			for (int i = 1; i < params.length; i++) {
+				String param = params[i].trim();
+				if (param.startsWith("q=") || param.startsWith("Q=")) {
+					quality = parseQuality(param.substring(2).trim());
+				}
+			}
+			int slash = mimeType.indexOf('/');
+			String type = slash < 0 ? ANY_TYPE : mimeType.substring(0, slash).trim().toLowerCase(Locale.ENGLISH);
+			String subtype = mimeType.substring(slash + 1).trim();
+			if ("*".equals(subtype)) {
+				Float existing = wildcardQualities.get(type);
+				if (existing == null || quality > existing) {
+					wildcardQualities.put(type, quality);
+				}
+			} else {
+				int existing = indexOf(types, subtypes, type, subtype);
+				if (existing < 0) {
+					types.add(type);
+					subtypes.add(subtype);
+					qualities.add(quality);
+				} else if (quality > qualities.get(existing)) {
+					qualities.set(existing, quality);
+				}
+			}
+		}
+		float[] q = new float[qualities.size()];
+		for (int i = 0; i < q.length; i++) {
+			q[i] = qualities.get(i);
+		}
+		return new AcceptHeader(types.toArray(new String[types.size()]), subtypes.toArray(new String[subtypes
+				.size()]), q, wildcardQualities);
+	}
+
+	/**
+	 * @param value a quality value.
+	 * @return the value as a float between 0 and 1 (or 1 if it cannot be parsed).
+	 */
+	private static float parseQuality(final String value) {
+		try {
+			return Math.max(0f, Math.min(1f, Float.parseFloat(value)));
+		} catch (NumberFormatException e) {
+			return 1f;
+		}
+	}
+
+	private static int indexOf(final List<String> types, final List<String> subtypes, final String type,
+			final String subtype) {
+		for (int i = 0; i < types.size(); i++) {
+			if (types.get(i).equals(type) && subtypes.get(i).equalsIgnoreCase(subtype)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Chooses the most acceptable of the specified variants.
+	 *
+	 * @param variants the names of the available variants (e.g. 'xml', 'json').
+	 * @return the name of the chosen variant, or empty string if no variant is acceptable, or if the default response is
+	 *         preferred.
+	 */
+	public String select(final String[] variants) {
+		String best = "";
+		int bestIndex = -1;
+		for (int i = 0; i < subtypes.length; i++) {
+			if (qualities[i] > 0f && (bestIndex < 0 || qualities[i] > qualities[bestIndex])) {
+				for (String variant : variants) {
+					if (variant.equalsIgnoreCase(subtypes[i])) {
+						best = variant;
+						bestIndex = i;
+						break;
+					}
+				}
+			}
+		}
+		if (bestIndex >= 0 && getWildcardQuality(types[bestIndex]) > qualities[bestIndex]) {
+			return "";
+		}
+		return best;
+	}
+
+	/**
+	 * @param type a type (in lower case).
+	 * @return the highest quality value of the wildcards that cover the type ('type/*' and '*&#47;*'), or -1 if
+	 *         none do.
+	 */
+	private float getWildcardQuality(final String type) {
+		float quality = -1f;
+		Float any = wildcardQualities.get(ANY_TYPE);
+		if (any != null) {
+			quality = any;
+		}
+		Float forType = wildcardQualities.get(type);
+		if (forType != null) {
+			quality = Math.max(quality, forType);
+		}
+		return quality;
+	}
+
+	/**
+	 * @return the subtypes explicitly listed in the header, in the order they were first listed (each only once).
+	 */
+	public String[] getSubtypes() {
+		Set<String> unique = new LinkedHashSet<>();
+		for (String subtype : subtypes) {
+			unique.add(subtype.toLowerCase(Locale.ENGLISH));
+		}
+		return unique.toArray(new String[unique.size()]);
+	}
+}
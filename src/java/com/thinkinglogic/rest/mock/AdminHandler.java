@@ -0,0 +1,232 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import com.jayway.jsonpath.InvalidJsonException;
+import com.jayway.jsonpath.spi.JsonProvider;
+import com.jayway.jsonpath.spi.JsonProviderFactory;
+
+/**
+ * Handles requests to the reserved admin path ({@link #ADMIN_PATH}), which allows the state of the mocker to be
+ * examined and modified at runtime. All responses are json.
+ */
+public class AdminHandler {
+
+	private static final Logger logger = Logger.getLogger(AdminHandler.class);
+
+	private static final String UTF8 = "UTF-8";
+
+	/** The path prefix reserved for admin requests. */
+	public static final String ADMIN_PATH = "/__admin";
+
+	/** The admin path for querying (GET) and clearing (DELETE) the request journal. */
+	public static final String JOURNAL_PATH = ADMIN_PATH + "/journal";
+
+	/** The admin path for counting (GET) entries in the request journal. */
+	public static final String JOURNAL_COUNT_PATH = JOURNAL_PATH + "/count";
+
+	/** The admin path for listing (GET) and resetting (DELETE) the counters used by file.sequence and file.cycle. */
+	public static final String SEQUENCES_PATH = ADMIN_PATH + "/sequences";
+
+	/** The admin path for examining (GET) and rebuilding (POST) the index of resources on the classpath. */
+	public static final String INDEX_PATH = ADMIN_PATH + "/index";
+
+	/** The admin path for listing (GET), adding or replacing (POST) and removing (DELETE) runtime mocks. */
+	public static final String MOCKS_PATH = ADMIN_PATH + "/mocks";
+
+	/** The admin path for examining (GET) the state of each bulkhead. */
+	public static final String BULKHEADS_PATH = ADMIN_PATH + "/bulkheads";
+
+	/** The admin path for examining (GET) and unloading (DELETE) the mock roots mounted outside the classpath. */
+	public static final String ROOTS_PATH = ADMIN_PATH + "/roots";
+
+	/**
+	 * The query parameters used to filter journal entries (path is also used to reset a single sequence or unload a
+	 * single mock root, and path and selector to remove runtime mocks).
+	 */
+	public static final String METHOD_PARAM = "method";
+	public static final String PATH_PARAM = "path";
+	public static final String HEADER_PARAM = "header";
+	public static final String SELECTOR_PARAM = "selector";
+
+	private final RequestJournal journal;
+	private final RouteSequences sequences;
+	private final MockOverlay mocks;
+
+	/**
+	 * @param journal the request journal.
+	 * @param sequences the counters used to select files from a sequence.
+	 * @param mocks the mocks registered at runtime.
+	 */
+	public AdminHandler(final RequestJournal journal, final RouteSequences sequences, final MockOverlay mocks) {
+		this.journal = journal;
+		this.sequences = sequences;
+		this.mocks = mocks;
+	}
+
+	/**
+	 * @param path the request path (may be null).
+	 * @return true if the path is reserved for admin requests.
+	 */
+	public static boolean isAdminRequest(final String path) {
+		return path != null && (path.equals(ADMIN_PATH) || path.startsWith(ADMIN_PATH + "/"));
+	}
+
+	/**
+	 * Handles an admin request.
+	 *
+	 * @param request the current request.
+	 * @param response the current response.
+	 * @throws IOException if the response cannot be written.
+	 */
+	public void handle(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+		final String path = request.getPathInfo();
+		final String method = request.getMethod().toUpperCase();
+		logger.info("Received admin " + method + " request: path=" + path);
+
+		if (JOURNAL_PATH.equals(path) && RestServlet.GET.equals(method)) {
+			List<Map<String, Object>> entries = new ArrayList<>();
+			for (RequestJournal.Entry entry : journal.find(getJournalFilter(request))) {
+				entries.add(entry.toMap());
+			}
+			sendJson(response, HttpServletResponse.SC_OK, entries);
+		} else if (JOURNAL_PATH.equals(path) && RestServlet.DELETE.equals(method)) {
+			int cleared = journal.clear(getJournalFilter(request));
+			sendJson(response, HttpServletResponse.SC_OK, singleton("cleared", cleared));
+		} else if (JOURNAL_COUNT_PATH.equals(path) && RestServlet.GET.equals(method)) {
+			int count = journal.count(getJournalFilter(request));
+			sendJson(response, HttpServletResponse.SC_OK, singleton("count", count));
+		} else if (SEQUENCES_PATH.equals(path) && RestServlet.GET.equals(method)) {
+			sendJson(response, HttpServletResponse.SC_OK, sequences.getCounts());
+		} else if (SEQUENCES_PATH.equals(path) && RestServlet.DELETE.equals(method)) {
+			String route = request.getParameter(PATH_PARAM);
+			if (route != null && !route.endsWith("/")) {
+				route = route + "/";
+			}
+			int reset = route == null ? sequences.reset() : sequences.reset(route);
+			sendJson(response, HttpServletResponse.SC_OK, singleton("reset", reset));
+		} else if (INDEX_PATH.equals(path) && RestServlet.GET.equals(method)) {
+			sendJson(response, HttpServletResponse.SC_OK, describe(ResponseBuilder.getResourceIndex()));
+		} else if (INDEX_PATH.equals(path) && RestServlet.POST.equals(method)) {
+			sendJson(response, HttpServletResponse.SC_OK, describe(ResponseBuilder.rebuildResourceIndex()));
+		} else if (MOCKS_PATH.equals(path) && RestServlet.GET.equals(method)) {
+			List<Map<String, Object>> list = new ArrayList<>();
+			for (MockOverlay.Mock mock : mocks.getMocks()) {
+				list.add(mock.toMap());
+			}
+			sendJson(response, HttpServletResponse.SC_OK, list);
+		} else if (MOCKS_PATH.equals(path) && RestServlet.POST.equals(method)) {
+			putMocks(request, response);
+		} else if (MOCKS_PATH.equals(path) && RestServlet.DELETE.equals(method)) {
+			int removed = mocks.remove(request.getParameter(PATH_PARAM), request.getParameter(SELECTOR_PARAM));
+			sendJson(response, HttpServletResponse.SC_OK, singleton("removed", removed));
+		} else if (BULKHEADS_PATH.equals(path) && RestServlet.GET.equals(method)) {
+			sendJson(response, HttpServletResponse.SC_OK, Bulkhead.describeAll());
+		} else if (ROOTS_PATH.equals(path) && RestServlet.GET.equals(method)) {
+			sendJson(response, HttpServletResponse.SC_OK, ResponseBuilder.getMockRoots().describe());
+		} else if (ROOTS_PATH.equals(path) && RestServlet.DELETE.equals(method)) {
+			int unloaded = ResponseBuilder.getMockRoots().unload(request.getParameter(PATH_PARAM));
+			sendJson(response, HttpServletResponse.SC_OK, singleton("unloaded", unloaded));
+		} else {
+			sendJson(response, HttpServletResponse.SC_NOT_FOUND, singleton("error", "No admin operation for " + method
+					+ " " + path));
+		}
+	}
+
+	/**
+	 * Adds (or replaces) the mocks in the request body, which must be a json object or an array of json objects. If any
+	 * mock is not valid then none are added.
+	 * 
+	 * @param request the current request.
+	 * @param response the current response.
+	 * @throws IOException if the request cannot be read or the response cannot be written.
+	 */
+	protected void putMocks(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+		List<MockOverlay.Mock> parsed = new ArrayList<>();
+		try {
+			JsonProvider provider = JsonProviderFactory.createProvider();
+			Object json = provider.parse(IOUtils.toString(request.getReader()));
+			List<Object> objects = provider.isList(json) ? provider.toList(json) : Collections.singletonList(json);
+			for (Object object : objects) {
+				if (!provider.isMap(object)) {
+					throw new IllegalArgumentException("Expected a json object: " + object);
+				}
+				parsed.add(MockOverlay.Mock.fromMap(provider.toMap(object)));
+			}
+		} catch (InvalidJsonException | IllegalArgumentException e) {
+			logger.error("Unable to add mocks", e);
+			sendJson(response, HttpServletResponse.SC_BAD_REQUEST, singleton("error", e.getMessage()));
+			return;
+		}
+		int replaced = 0;
+		for (MockOverlay.Mock mock : parsed) {
+			if (mocks.put(mock)) {
+				replaced++;
+			}
+		}
+		Map<String, Object> result = singleton("added", parsed.size() - replaced);
+		result.put("replaced", replaced);
+		sendJson(response, HttpServletResponse.SC_OK, result);
+	}
+
+	/**
+	 * @param request the current request.
+	 * @return a journal filter populated from the request parameters.
+	 */
+	protected RequestJournal.Filter getJournalFilter(final HttpServletRequest request) {
+		return new RequestJournal.Filter(request.getParameter(METHOD_PARAM), request.getParameter(PATH_PARAM),
+				request.getParameter(HEADER_PARAM));
+	}
+
+	/**
+	 * @param index the resource index to describe.
+	 * @return a map describing the resource index.
+	 */
+	protected Map<String, Object> describe(final ResourceIndex index) {
+		Map<String, Object> map = singleton("available", index.isAvailable());
+		map.put("size", index.size());
+		map.put("dataTables", ResponseBuilder.getDataTables().describe());
+		map.put("mockRoots", ResponseBuilder.getMockRoots().getMounted());
+		return map;
+	}
+
+	/**
+	 * @param key the key.
+	 * @param value the value.
+	 * @return a map containing just the specified key and value.
+	 */
+	protected Map<String, Object> singleton(final String key, final Object value) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put(key, value);
+		return map;
+	}
+
+	/**
+	 * Writes the specified object to the response as json.
+	 *
+	 * @param response the response to write to.
+	 * @param status the http response code.
+	 * @param object the object to write.
+	 * @throws IOException if the response cannot be written.
+	 */
+	protected void sendJson(final HttpServletResponse response, final int status, final Object object)
+			throws IOException {
+		byte[] body = JsonProviderFactory.createProvider().toJson(object).getBytes(UTF8);
+		response.setStatus(status);
+		response.setContentType("application/json;charset=" + UTF8);
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+		response.flushBuffer();
+	}
+}
@@ -0,0 +1,284 @@
+package com.thinkinglogic.rest.mock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A pool of threads that handles the requests to a tree of mocks (by default, every route under the same top-level
+ * directory), so that slow routes cannot starve the rest of the mocker of threads. A request to a route with a
+ * bulkhead is put into asynchronous mode and its container thread returned straight away - the request is then
+ * handled (including any fixed.delay or random.delay, which are slept) on one of the bulkhead's threads. If every
+ * thread is busy the request waits in the bulkhead's own queue, and if that is full the request is rejected.
+ * <p>
+ * A request only occupies the bulkhead while it holds one of its threads: a response that is delayed by a latency
+ * model or streamed continues without a thread, and does not count against the bulkhead.
+ */
+public class Bulkhead implements Executor {
+
+	private static final Logger logger = Logger.getLogger(Bulkhead.class);
+
+	private static final ConcurrentMap<String, Bulkhead> BULKHEADS = new ConcurrentHashMap<>();
+
+	private final String name;
+	private final ThreadPoolExecutor executor;
+	private volatile int maxQueue;
+	/** The number of requests running on, or waiting for, one of the threads. */
+	private final AtomicInteger occupied = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param name the name of the bulkhead (also used to name its threads).
+	 * @param threads the number of requests handled at the same time.
+	 * @param maxQueue the maximum number of requests that may wait for a thread.
+	 */
+	public Bulkhead(final String name, final int threads, final int maxQueue) {
+		this.name = name;
+		int size = Math.max(1, threads);
+		this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread thread = new Thread(runnable, "rest-mocker-bulkhead" + name.replace('/', '-')
+								+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+		this.maxQueue = Math.max(0, maxQueue);
+	}
+
+	/**
+	 * Returns the named bulkhead, creating it if necessary. If the settings have changed, the existing bulkhead is
+	 * resized rather than replaced, so routes that share a bulkhead should use the same settings.
+	 *
+	 * @param name the name of the bulkhead.
+	 * @param threads the number of requests handled at the same time.
+	 * @param maxQueue the maximum number of requests that may wait for a thread.
+	 * @return the bulkhead.
+	 */
+	public static Bulkhead forName(final String name, final int threads, final int maxQueue) {
+		Bulkhead bulkhead = BULKHEADS.get(name);
+		if (bulkhead == null) {
+			Bulkhead created = new Bulkhead(name, threads, maxQueue);
+			bulkhead = BULKHEADS.putIfAbsent(name, created);
+			if (bulkhead == null) {
+				return created;
+			}
+			created.executor.shutdown();
+		}
+		bulkhead.resize(threads, maxQueue);
+		return bulkhead;
+	}
+
+	/**
+	 * @return the state of every bulkhead, ordered by name.
+	 */
+	public static List<Map<String, Object>> describeAll() {
+		List<Map<String, Object>> list = new ArrayList<>();
+		for (Bulkhead bulkhead : new TreeMap<>(BULKHEADS).values()) {
+			list.add(bulkhead.toMap());
+		}
+		return list;
+	}
+
+	/**
+	 * @param threads the number of requests handled at the same time.
+	 * @param queue the maximum number of requests that may wait for a thread.
+	 */
+	protected void resize(final int threads, final int queue) {
+		int size = Math.max(1, threads);
+		if (size != executor.getMaximumPoolSize()) {
+			synchronized (executor) {
+				// the core size may not exceed the maximum size at any point
+				if (size > executor.getMaximumPoolSize()) {
+					executor.setMaximumPoolSize(size);
+					executor.setCorePoolSize(size);
+				} else {
+					executor.setCorePoolSize(size);
+					executor.setMaximumPoolSize(size);
+				}
+			}
+		}
+		maxQueue = Math.max(0, queue);
+	}
+
+	/**
+	 * Handles a request on one of the bulkhead's threads, or rejects it if every thread is busy and the queue is full.
+	 * The request is put into asynchronous mode, and completed when the handler returns true.
+	 *
+	 * @param request the current request.
+	 * @param response the current response.
+	 * @param rejection the response to send if the request is rejected.
+	 * @param handler sends the response.
+	 */
+	public void submit(final HttpServletRequest request, final HttpServletResponse response,
+			final RouteLimiter.Rejection rejection, final RouteLimiter.Handler handler) {
+		if (!request.isAsyncSupported()) {
+			logger.warn("Asynchronous processing is not enabled for this request, so it is handled outside bulkhead "
+					+ name);
+			handler.handle();
+			return;
+		}
+		if (!tryOccupy()) {
+			rejected.incrementAndGet();
+			logger.info("Rejecting request to bulkhead " + name + ": " + executor.getMaximumPoolSize()
+					+ " in flight and the queue is full");
+			rejection.send(response);
+			return;
+		}
+		final AsyncContext context = request.startAsync(request, response);
+		context.setTimeout(0);
+		try {
+			executor.execute(new Task(new Runnable() {
+				@Override
+				public void run() {
+					boolean complete = true;
+					try {
+						complete = handler.handle();
+					} catch (RuntimeException e) {
+						logger.error("Unable to handle request in bulkhead " + name, e);
+					} finally {
+						if (complete) {
+							complete(context);
+						}
+					}
+				}
+			}));
+		} catch (RejectedExecutionException e) {
+			occupied.decrementAndGet();
+			logger.error("Bulkhead " + name + " is not accepting requests", e);
+			rejection.send(response);
+			complete(context);
+		}
+	}
+
+	/**
+	 * Runs a task on one of the bulkhead's threads, whether or not the queue is full - for requests that have already
+	 * been admitted (e.g. a request that was queued by max.inflight, and has now been given a permit).
+	 */
+	@Override
+	public void execute(final Runnable command) {
+		occupied.incrementAndGet();
+		try {
+			executor.execute(new Task(command));
+		} catch (RejectedExecutionException e) {
+			occupied.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return true if there was a free thread or room in the queue.
+	 */
+	protected boolean tryOccupy() {
+		int limit = executor.getMaximumPoolSize() + maxQueue;
+		while (true) {
+			int current = occupied.get();
+			if (current >= limit) {
+				return false;
+			}
+			if (occupied.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void complete(final AsyncContext context) {
+		try {
+			context.complete();
+		} catch (IllegalStateException e) {
+			logger.debug("Request in bulkhead " + name + " already completed: " + e);
+		}
+	}
+
+	/**
+	 * @return the number of requests running on one of the threads.
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * @return the number of requests waiting for a thread.
+	 */
+	public int getQueued() {
+		return Math.max(0, occupied.get() - active.get());
+	}
+
+	/**
+	 * @return the number of requests that have been rejected.
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return the name, size, state and counters of the bulkhead.
+	 */
+	public Map<String, Object> toMap() {
+		int threads = executor.getMaximumPoolSize();
+		int running = active.get();
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("name", name);
+		map.put("threads", threads);
+		map.put("maxQueue", maxQueue);
+		map.put("active", running);
+		map.put("queued", getQueued());
+		map.put("saturation", (double) running / threads);
+		map.put("completed", completed.get());
+		map.put("rejected", rejected.get());
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return "bulkhead " + name + " " + toMap();
+	}
+
+	/**
+	 * Counts a task as active while it runs, and releases its place in the bulkhead when it has finished.
+	 */
+	private final class Task implements Runnable {
+		private final Runnable command;
+
+		Task(final Runnable command) {
+			this.command = command;
+		}
+
+		@Override
+		public void run() {
+			active.incrementAndGet();
+			try {
+				command.run();
+			} finally {
+				active.decrementAndGet();
+				occupied.decrementAndGet();
+				completed.incrementAndGet();
+			}
+		}
+	}
+}
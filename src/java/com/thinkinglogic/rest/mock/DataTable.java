@@ -0,0 +1,684 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable, in-memory table of data, read from a csv or json file, that templates can look rows up in - so one
+ * template and one data file can replace a directory of fixtures. For example, with a users.csv data file:
+ *
+ * <pre>
+ * #set($user = $data.users.byId($pathParams.id))
+ * {"name": "$user.name", "age": $user.age}
+ * </pre>
+ *
+ * The table is stored by column rather than by row: a column in which every value is an integer is held as a long[], a
+ * column of numbers as a double[], a column of true/false values as a BitSet, and any other column as a String[] (with
+ * repeated values shared) - empty values are recorded in a separate BitSet. Rows are views onto the columns, created
+ * when they are looked up.
+ * <p>
+ * Each column is indexed the first time it is looked up in: an open addressing hash table of the first row holding each
+ * value, with the other rows holding the same value chained in an int[] - so a lookup is a single hash probe, however
+ * big the table.
+ */
+public final class DataTable {
+
+	/** The name of the column looked up by {@link #byId(Object)}, if there is one (otherwise the first column). */
+	public static final String ID_COLUMN = "id";
+
+	private static final int NONE = -1;
+
+	private final String name;
+	private final String[] columnNames;
+	private final Map<String, Integer> columnIndex;
+	private final Column[] columns;
+	private final int size;
+	private final ConcurrentMap<Integer, ColumnIndex> indexes = new ConcurrentHashMap<>();
+
+	/**
+	 * @param name the name of the table.
+	 * @param columnNames the names of the columns.
+	 * @param rows the values of each row, in the order of the columns (null or empty for no value).
+	 */
+	public DataTable(final String name, final List<String> columnNames, final List<? extends List<?>> rows) {
+		this.name = name;
+		this.columnNames = columnNames.toArray(new String[columnNames.size()]);
+		this.size = rows.size();
+		this.columnIndex = new HashMap<>();
+		this.columns = new Column[this.columnNames.length];
+		for (int c = 0; c < columns.length; c++) {
+			columnIndex.put(this.columnNames[c], c);
+			columns[c] = Column.create(rows, c);
+		}
+	}
+
+	/**
+	 * Reads a table from csv: the first line is the names of the columns, and each following line is a row. Values
+	 * may be quoted with double quotes (to contain commas, quotes - written as two double quotes - or line breaks).
+	 *
+	 * @param name the name of the table.
+	 * @param reader the csv.
+	 * @return the table.
+	 * @throws IOException if the csv cannot be read.
+	 */
+	public static DataTable readCsv(final String name, final Reader reader) throws IOException {
+		List<List<String>> records = new ArrayList<>();
+		List<String> record = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		boolean blank = true;
+		int c;
+		while ((c = reader.read()) >= 0) {
+			if (quoted) {
+				if (c != '"') {
+					value.append((char) c);
+					continue;
+				}
+				int following = reader.read();
+				if (following == '"') {
+					value.append('"');
+					continue;
+				}
+				quoted = false;
+				if (following < 0) {
+					break;
+				}
+				// the closing quote - handle the character after it as usual
+				c = following;
+			}
+			if (c == '"') {
+				quoted = true;
+				blank = false;
+			} else if (c == ',') {
+				record.add(value.toString());
+				value.setLength(0);
+				blank = false;
+			} else if (c == '\n') {
+				if (!blank) {
+					record.add(value.toString());
+					records.add(record);
+				}
+				record = new ArrayList<>(record.size());
+				value.setLength(0);
+				blank = true;
+			} else if (c != '\r') {
+				value.append((char) c);
+				blank = false;
+			}
+		}
+		if (!blank) {
+			record.add(value.toString());
+			records.add(record);
+		}
+		if (records.isEmpty()) {
+			return new DataTable(name, Collections.<String> emptyList(), Collections.<List<String>> emptyList());
+		}
+		List<String> header = new ArrayList<>();
+		for (String column : records.get(0)) {
+			header.add(column.trim());
+		}
+		return new DataTable(name, header, records.subList(1, records.size()));
+	}
+
+	/**
+	 * Creates a table from a list of json objects (as parsed by json-path): the columns are the names of all of the
+	 * fields of the objects, in the order they first appear. Nested objects and arrays are held as json text.
+	 *
+	 * @param name the name of the table.
+	 * @param objects the objects.
+	 * @return the table.
+	 * @throws IllegalArgumentException if the objects are not all json objects.
+	 */
+	public static DataTable fromJson(final String name, final List<?> objects) {
+		Map<String, Integer> names = new LinkedHashMap<>();
+		for (Object object : objects) {
+			if (!(object instanceof Map)) {
+				throw new IllegalArgumentException("expected an array of objects, but found " + object);
+			}
+			for (Object key : ((Map<?, ?>) object).keySet()) {
+				if (!names.containsKey(key.toString())) {
+					names.put(key.toString(), names.size());
+				}
+			}
+		}
+		List<List<Object>> rows = new ArrayList<>(objects.size());
+		for (Object object : objects) {
+			Object[] row = new Object[names.size()];
+			for (Map.Entry<?, ?> field : ((Map<?, ?>) object).entrySet()) {
+				row[names.get(field.getKey().toString())] = field.getValue();
+			}
+			rows.add(Arrays.asList(row));
+		}
+		return new DataTable(name, new ArrayList<>(names.keySet()), rows);
+	}
+
+	/**
+	 * @param value the value of the id column (see {@link #ID_COLUMN}).
+	 * @return the first row with the value, or null if there is none.
+	 */
+	public Row byId(final Object value) {
+		Integer column = columnIndex.get(ID_COLUMN);
+		return lookup(column == null ? 0 : column, value);
+	}
+
+	/**
+	 * @param column the name of the column.
+	 * @param value the value to look up.
+	 * @return the first row with the value in the column, or null if there is none (or no such column).
+	 */
+	public Row by(final String column, final Object value) {
+		Integer index = columnIndex.get(column);
+		return index == null ? null : lookup(index, value);
+	}
+
+	private Row lookup(final int column, final Object value) {
+		if (column >= columns.length) {
+			return null;
+		}
+		int row = getIndex(column).first(value);
+		return row == NONE ? null : new Row(row);
+	}
+
+	/**
+	 * @param column the name of the column.
+	 * @param value the value to look up.
+	 * @return all rows with the value in the column (empty if there are none, or there is no such column).
+	 */
+	public List<Row> all(final String column, final Object value) {
+		Integer index = columnIndex.get(column);
+		if (index == null) {
+			return Collections.emptyList();
+		}
+		ColumnIndex columnIndex = getIndex(index);
+		List<Row> rows = new ArrayList<>();
+		for (int row = columnIndex.first(value); row != NONE; row = columnIndex.next[row]) {
+			rows.add(new Row(row));
+		}
+		return rows;
+	}
+
+	/**
+	 * @param row the index of the row (starting at 0).
+	 * @return the row, or null if there is no such row.
+	 */
+	public Row row(final int row) {
+		return row < 0 || row >= size ? null : new Row(row);
+	}
+
+	/**
+	 * @return all of the rows, in the order they were read (for #foreach).
+	 */
+	public List<Row> getRows() {
+		List<Row> rows = new ArrayList<>(size);
+		for (int row = 0; row < size; row++) {
+			rows.add(new Row(row));
+		}
+		return rows;
+	}
+
+	/**
+	 * @return the number of rows.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the names of the columns.
+	 */
+	public List<String> getColumns() {
+		return Collections.unmodifiableList(Arrays.asList(columnNames));
+	}
+
+	/**
+	 * @return the name of the table.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name + " (" + size + " rows)";
+	}
+
+	private ColumnIndex getIndex(final int column) {
+		ColumnIndex index = indexes.get(column);
+		if (index == null) {
+			index = new ColumnIndex(columns[column], size);
+			ColumnIndex existing = indexes.putIfAbsent(column, index);
+			if (existing != null) {
+				index = existing;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * A row of the table: a read-only map of column name to value (a Long, Double, Boolean or String, or null if the
+	 * row has no value in the column), whose {@link #toString()} is a json object.
+	 */
+	public final class Row extends AbstractMap<String, Object> {
+		private final int row;
+
+		Row(final int row) {
+			this.row = row;
+		}
+
+		@Override
+		public Object get(final Object column) {
+			Integer index = columnIndex.get(column);
+			return index == null ? null : columns[index].get(row);
+		}
+
+		@Override
+		public boolean containsKey(final Object column) {
+			return columnIndex.containsKey(column);
+		}
+
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			return new AbstractSet<Map.Entry<String, Object>>() {
+				@Override
+				public Iterator<Map.Entry<String, Object>> iterator() {
+					return new Iterator<Map.Entry<String, Object>>() {
+						private int next;
+
+						@Override
+						public boolean hasNext() {
+							return next < columns.length;
+						}
+
+						@Override
+						public Map.Entry<String, Object> next() {
+							if (next >= columns.length) {
+								throw new NoSuchElementException();
+							}
+							int column = next++;
+							return new SimpleImmutableEntry<>(columnNames[column], columns[column].get(row));
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return columns.length;
+				}
+			};
+		}
+
+		/**
+		 * @return the index of the row in the table (starting at 0).
+		 */
+		public int getIndex() {
+			return row;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder json = new StringBuilder("{");
+			for (int c = 0; c < columns.length; c++) {
+				if (c > 0) {
+					json.append(", ");
+				}
+				appendString(json, columnNames[c]).append(": ");
+				Object value = columns[c].get(row);
+				if (value == null) {
+					json.append("null");
+				} else if (value instanceof String) {
+					appendString(json, (String) value);
+				} else {
+					json.append(value);
+				}
+			}
+			return json.append('}').toString();
+		}
+	}
+
+	private static StringBuilder appendString(final StringBuilder json, final String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		return json.append('"');
+	}
+
+	/**
+	 * The values of a column, held in the most compact form that fits all of them.
+	 */
+	private abstract static class Column {
+		/** The rows without a value. */
+		protected final BitSet empty;
+
+		Column(final BitSet empty) {
+			this.empty = empty;
+		}
+
+		/**
+		 * @param rows the rows of the table.
+		 * @param column the index of the column.
+		 * @return the column, as a long, double, boolean or string column - whichever fits all of its values.
+		 */
+		static Column create(final List<? extends List<?>> rows, final int column) {
+			BitSet empty = new BitSet(rows.size());
+			String[] strings = new String[rows.size()];
+			boolean longs = true;
+			boolean doubles = true;
+			boolean booleans = true;
+			Map<String, String> shared = new HashMap<>();
+			for (int row = 0; row < strings.length; row++) {
+				List<?> values = rows.get(row);
+				Object value = column < values.size() ? values.get(column) : null;
+				String string = value == null ? "" : value.toString();
+				if (string.length() == 0) {
+					empty.set(row);
+					continue;
+				}
+				String existing = shared.get(string);
+				if (existing == null) {
+					shared.put(string, string);
+				} else {
+					string = existing;
+				}
+				strings[row] = string;
+				longs = longs && isLong(string);
+				doubles = doubles && isDouble(string);
+				booleans = booleans && ("true".equals(string) || "false".equals(string));
+			}
+			if (empty.cardinality() == strings.length) {
+				return new StringColumn(empty, strings);
+			} else if (longs) {
+				long[] values = new long[strings.length];
+				for (int row = 0; row < strings.length; row++) {
+					values[row] = empty.get(row) ? 0 : Long.parseLong(strings[row]);
+				}
+				return new LongColumn(empty, values);
+			} else if (doubles) {
+				double[] values = new double[strings.length];
+				for (int row = 0; row < strings.length; row++) {
+					values[row] = empty.get(row) ? 0 : Double.parseDouble(strings[row]);
+				}
+				return new DoubleColumn(empty, values);
+			} else if (booleans) {
+				BitSet values = new BitSet(strings.length);
+				for (int row = 0; row < strings.length; row++) {
+					values.set(row, "true".equals(strings[row]));
+				}
+				return new BooleanColumn(empty, values);
+			}
+			return new StringColumn(empty, strings);
+		}
+
+		/**
+		 * @return true if the string is an integer, written as Long.toString would write it (so that values such as
+		 *         '007' keep their leading zeros).
+		 */
+		private static boolean isLong(final String string) {
+			try {
+				return Long.toString(Long.parseLong(string)).equals(string);
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * @return true if the string is a number, written as Double.toString would write it (so that values such as
+		 *         '9.90' are not changed).
+		 */
+		private static boolean isDouble(final String string) {
+			try {
+				return Double.toString(Double.parseDouble(string)).equals(string);
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * @return the value of the row, or null if it has no value.
+		 */
+		Object get(final int row) {
+			return empty.get(row) ? null : value(row);
+		}
+
+		/**
+		 * @return the value of a row that has a value.
+		 */
+		protected abstract Object value(int row);
+
+		/**
+		 * @return the hash code of the value of a row that has a value (the same as the hash code of its key).
+		 */
+		protected abstract int hash(int row);
+
+		/**
+		 * @param row a row that has a value.
+		 * @param key a key returned by {@link #toKey(Object)}.
+		 * @return true if the value of the row is the key.
+		 */
+		protected abstract boolean matches(int row, Object key);
+
+		/**
+		 * @param value a value to look up.
+		 * @return the value as the type held by this column, or null if it cannot be in this column.
+		 */
+		protected abstract Object toKey(Object value);
+	}
+
+	/** A column of integers. */
+	private static final class LongColumn extends Column {
+		private final long[] values;
+
+		LongColumn(final BitSet empty, final long[] values) {
+			super(empty);
+			this.values = values;
+		}
+
+		@Override
+		protected Object value(final int row) {
+			return values[row];
+		}
+
+		@Override
+		protected int hash(final int row) {
+			long value = values[row];
+			return (int) (value ^ value >>> 32);
+		}
+
+		@Override
+		protected boolean matches(final int row, final Object key) {
+			return values[row] == (Long) key;
+		}
+
+		@Override
+		protected Object toKey(final Object value) {
+			if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				return ((Number) value).longValue();
+			}
+			try {
+				return Long.parseLong(value.toString().trim());
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+	}
+
+	/** A column of numbers. */
+	private static final class DoubleColumn extends Column {
+		private final double[] values;
+
+		DoubleColumn(final BitSet empty, final double[] values) {
+			super(empty);
+			this.values = values;
+		}
+
+		@Override
+		protected Object value(final int row) {
+			return values[row];
+		}
+
+		@Override
+		protected int hash(final int row) {
+			long bits = Double.doubleToLongBits(values[row]);
+			return (int) (bits ^ bits >>> 32);
+		}
+
+		@Override
+		protected boolean matches(final int row, final Object key) {
+			return Double.doubleToLongBits(values[row]) == Double.doubleToLongBits((Double) key);
+		}
+
+		@Override
+		protected Object toKey(final Object value) {
+			if (value instanceof Number) {
+				return ((Number) value).doubleValue();
+			}
+			try {
+				return Double.parseDouble(value.toString().trim());
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+	}
+
+	/** A column of true/false values. */
+	private static final class BooleanColumn extends Column {
+		private final BitSet values;
+
+		BooleanColumn(final BitSet empty, final BitSet values) {
+			super(empty);
+			this.values = values;
+		}
+
+		@Override
+		protected Object value(final int row) {
+			return values.get(row);
+		}
+
+		@Override
+		protected int hash(final int row) {
+			return Boolean.valueOf(values.get(row)).hashCode();
+		}
+
+		@Override
+		protected boolean matches(final int row, final Object key) {
+			return values.get(row) == (Boolean) key;
+		}
+
+		@Override
+		protected Object toKey(final Object value) {
+			String string = value.toString().trim();
+			return "true".equals(string) || "false".equals(string) ? Boolean.valueOf(string) : null;
+		}
+	}
+
+	/** A column of text. */
+	private static final class StringColumn extends Column {
+		private final String[] values;
+
+		StringColumn(final BitSet empty, final String[] values) {
+			super(empty);
+			this.values = values;
+		}
+
+		@Override
+		protected Object value(final int row) {
+			return values[row];
+		}
+
+		@Override
+		protected int hash(final int row) {
+			return values[row].hashCode();
+		}
+
+		@Override
+		protected boolean matches(final int row, final Object key) {
+			return values[row].equals(key);
+		}
+
+		@Override
+		protected Object toKey(final Object value) {
+			return value.toString();
+		}
+	}
+
+	/**
+	 * An open addressing hash index of the values of a column: each slot holds the first row with a value (plus one,
+	 * so that 0 is an empty slot), and the other rows holding the same value are chained (in order) through
+	 * {@link #next}. Values are hashed and compared in the column, so nothing is boxed.
+	 */
+	private static final class ColumnIndex {
+		private final Column column;
+		private final int[] slots;
+		/** The next row with the same value as each row, or {@link DataTable#NONE}. */
+		private final int[] next;
+
+		ColumnIndex(final Column column, final int size) {
+			this.column = column;
+			this.slots = new int[Integer.highestOneBit(Math.max(2, size) * 2 - 1) * 2];
+			this.next = new int[size];
+			Arrays.fill(next, NONE);
+			int[] last = new int[size];
+			for (int row = 0; row < size; row++) {
+				if (column.empty.get(row)) {
+					continue;
+				}
+				int slot = find(column.hash(row), column.value(row));
+				if (slots[slot] == 0) {
+					slots[slot] = row + 1;
+					last[row] = row;
+				} else {
+					int head = slots[slot] - 1;
+					next[last[head]] = row;
+					last[head] = row;
+				}
+			}
+		}
+
+		/**
+		 * @return the slot holding the key, or the empty slot where it belongs.
+		 */
+		private int find(final int hash, final Object key) {
+			int mask = slots.length - 1;
+			int slot = (hash ^ hash >>> 16) * 0x9e3779b9 & mask;
+			while (slots[slot] != 0 && !column.matches(slots[slot] - 1, key)) {
+				slot = slot + 1 & mask;
+			}
+			return slot;
+		}
+
+		int first(final Object value) {
+			Object key = value == null ? null : column.toKey(value);
+			if (key == null) {
+				return NONE;
+			}
+			return slots[find(key.hashCode(), key)] - 1;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import com.jayway.jsonpath.spi.JsonProviderFactory;
+
+/**
+ * The {@link DataTable}s read from the data files in the {@link #DATA_DIRECTORY} directory (alongside
+ * default.path.properties), available to velocity templates as $data - e.g. $data.users is the table read from
+ * /mock-data/users.csv (or users.json). A csv file has a header line naming the columns, and a json file is an array of
+ * objects. A {@link MockRoot} mounted outside the classpath has its own tables, read from the mock-data directory at
+ * the top of the root.
+ * <p>
+ * All of the data files are read when the resource index is built, so that no request pays for reading them. If the
+ * index is unavailable, each table is instead read the first time it is used.
+ */
+public class DataTables {
+
+	private static final Logger logger = Logger.getLogger(DataTables.class);
+
+	/** The directory containing the data files. */
+	public static final String DATA_DIRECTORY = "/mock-data/";
+
+	private static final String UTF8 = "UTF-8";
+	private static final String CSV = ".csv";
+	private static final String JSON = ".json";
+
+	private final ResourceIndex index;
+	private final String directory;
+	private final ConcurrentMap<String, DataTable> tables = new ConcurrentHashMap<>();
+
+	/**
+	 * @param index the index of resources, used to find the data files.
+	 */
+	protected DataTables(final ResourceIndex index) {
+		this(index, DATA_DIRECTORY);
+	}
+
+	/**
+	 * @param index the index of resources, used to find the data files.
+	 * @param directory the directory containing the data files (starting and ending with "/").
+	 */
+	protected DataTables(final ResourceIndex index, final String directory) {
+		this.index = index;
+		this.directory = directory;
+	}
+
+	/**
+	 * Reads all of the data files in the index.
+	 *
+	 * @param index the index of resources.
+	 * @return the tables.
+	 */
+	public static DataTables load(final ResourceIndex index) {
+		return load(index, DATA_DIRECTORY);
+	}
+
+	/**
+	 * Reads all of the data files in a directory of the index.
+	 *
+	 * @param index the index of resources.
+	 * @param directory the directory containing the data files (starting and ending with "/").
+	 * @return the tables.
+	 */
+	public static DataTables load(final ResourceIndex index, final String directory) {
+		DataTables tables = new DataTables(index, directory);
+		final long start = System.currentTimeMillis();
+		int rows = 0;
+		for (String resource : index.list(directory)) {
+			String name = resource.substring(directory.length());
+			if (name.indexOf('/') < 0 && (name.endsWith(CSV) || name.endsWith(JSON))) {
+				DataTable table = tables.read(name.substring(0, name.lastIndexOf('.')), resource);
+				if (table != null) {
+					tables.tables.put(table.getName(), table);
+					rows += table.size();
+				}
+			}
+		}
+		if (!tables.tables.isEmpty()) {
+			logger.info("Read " + tables.tables.size() + " data tables (" + rows + " rows) from " + directory
+					+ " in " + (System.currentTimeMillis() - start) + "ms");
+		}
+		return tables;
+	}
+
+	/**
+	 * @param name the name of the table (the name of the data file, without extension).
+	 * @return the table, or null if there is no data file with that name (or it cannot be read).
+	 */
+	public DataTable get(final String name) {
+		DataTable table = tables.get(name);
+		if (table == null && !index.isAvailable()) {
+			table = read(name, directory + name + CSV);
+			if (table == null) {
+				table = read(name, directory + name + JSON);
+			}
+			if (table != null) {
+				tables.putIfAbsent(name, table);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * @return the name and number of rows of each table.
+	 */
+	public Map<String, Integer> describe() {
+		Map<String, Integer> sizes = new LinkedHashMap<>();
+		for (DataTable table : tables.values()) {
+			sizes.put(table.getName(), table.size());
+		}
+		return Collections.unmodifiableMap(sizes);
+	}
+
+	/**
+	 * @param name the name of the table.
+	 * @param resource the data file.
+	 * @return the table, or null if the data file does not exist or cannot be read.
+	 */
+	protected DataTable read(final String name, final String resource) {
+		try (InputStream stream = index.open(resource)) {
+			if (stream == null) {
+				return null;
+			}
+			if (resource.endsWith(CSV)) {
+				try (Reader reader = new InputStreamReader(stream, UTF8)) {
+					return DataTable.readCsv(name, reader);
+				}
+			}
+			Object json = JsonProviderFactory.createProvider().parse(IOUtils.toString(stream, UTF8));
+			if (!(json instanceof List)) {
+				logger.error("Unable to read data table " + resource + ": expected a json array of objects");
+				return null;
+			}
+			return DataTable.fromJson(name, (List<?>) json);
+		} catch (IOException | RuntimeException e) {
+			logger.error("Unable to read data table " + resource, e);
+			return null;
+		}
+	}
+}
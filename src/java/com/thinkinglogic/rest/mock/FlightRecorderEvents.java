@@ -0,0 +1,214 @@
+package com.thinkinglogic.rest.mock;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events emitted by {@link MockEvents}. This is the only class that refers to the jdk.jfr
+ * api, so that the rest of the mocker still loads on a JVM without it - it is only loaded once {@link MockEvents} has
+ * found that the api is available.
+ * <p>
+ * The events do not record stack traces, which are by far the most expensive part of an event, so they can be left
+ * enabled in a continuous recording.
+ */
+final class FlightRecorderEvents {
+
+	private static final String CATEGORY = "rest-mocker";
+
+	private FlightRecorderEvents() {
+	}
+
+	/**
+	 * Tells {@link MockEvents} whether a recording is running now, and whenever a recording starts or stops.
+	 */
+	static void register() {
+		FlightRecorder.addListener(new FlightRecorderListener() {
+			@Override
+			public void recordingStateChanged(final Recording recording) {
+				MockEvents.setRecording(isRecording());
+			}
+		});
+		MockEvents.setRecording(isRecording());
+	}
+
+	/**
+	 * @return true if any recording is running (without initialising the recorder if it is not already running).
+	 */
+	private static boolean isRecording() {
+		if (!FlightRecorder.isInitialized()) {
+			return false;
+		}
+		for (Recording recording : FlightRecorder.getFlightRecorder().getRecordings()) {
+			if (recording.getState() == RecordingState.RUNNING) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** @see MockEvents#beginRoute() */
+	static Object beginRoute() {
+		return begin(new RouteEvent());
+	}
+
+	/** @see MockEvents#endRoute */
+	static void endRoute(final Object handle, final String requestPath, final String derivedPath,
+			final String derivedName, final String selectors, final boolean mock) {
+		RouteEvent event = (RouteEvent) handle;
+		event.end();
+		if (event.shouldCommit()) {
+			event.requestPath = requestPath;
+			event.derivedPath = derivedPath;
+			event.derivedName = derivedName;
+			event.selectors = selectors;
+			event.mock = mock;
+			event.commit();
+		}
+	}
+
+	/** @see MockEvents#beginRender() */
+	static Object beginRender() {
+		return begin(new RenderEvent());
+	}
+
+	/** @see MockEvents#endRender */
+	static void endRender(final Object handle, final String resource, final String engine, final long bytes) {
+		RenderEvent event = (RenderEvent) handle;
+		event.end();
+		if (event.shouldCommit()) {
+			event.resource = resource;
+			event.engine = engine;
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+
+	/** @see MockEvents#beginDelay() */
+	static Object beginDelay() {
+		return begin(new DelayEvent());
+	}
+
+	/** @see MockEvents#endDelay */
+	static void endDelay(final Object handle, final String route, final long delay, final String model) {
+		DelayEvent event = (DelayEvent) handle;
+		event.end();
+		if (event.shouldCommit()) {
+			event.route = route;
+			event.delay = delay;
+			event.model = model;
+			event.commit();
+		}
+	}
+
+	/** @see MockEvents#beginWrite() */
+	static Object beginWrite() {
+		return begin(new WriteEvent());
+	}
+
+	/** @see MockEvents#endWrite */
+	static void endWrite(final Object handle, final String route, final int status) {
+		WriteEvent event = (WriteEvent) handle;
+		event.end();
+		if (event.shouldCommit()) {
+			event.route = route;
+			event.status = status;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @param event a new event.
+	 * @return the event, started, or null if the event is not enabled in any recording.
+	 */
+	private static Event begin(final Event event) {
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	@Name("com.thinkinglogic.restmocker.Route")
+	@Label("Route Resolution")
+	@Description("Matching a request to a runtime mock, or to the directory and file of its response")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class RouteEvent extends Event {
+		@Label("Request Path")
+		String requestPath;
+
+		@Label("Derived Path")
+		@Description("The directory the response is read from")
+		String derivedPath;
+
+		@Label("Derived Name")
+		@Description("The name of the files the response is read from")
+		String derivedName;
+
+		@Label("Selectors")
+		@Description("The path properties (and path.rules) that selected the directory and file")
+		String selectors;
+
+		@Label("Runtime Mock")
+		boolean mock;
+	}
+
+	@Name("com.thinkinglogic.restmocker.Render")
+	@Label("Template Render")
+	@Description("Rendering a response body from a template")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class RenderEvent extends Event {
+		@Label("Resource")
+		String resource;
+
+		@Label("Engine")
+		String engine;
+
+		@Label("Output Size")
+		@Description("The size of the rendered body, or -1 if it was streamed to the client as it was rendered (in "
+				+ "which case the event includes writing it)")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.thinkinglogic.restmocker.Delay")
+	@Label("Injected Delay")
+	@Description("A delay injected by fixed.delay, random.delay or latency.model")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class DelayEvent extends Event {
+		@Label("Route")
+		String route;
+
+		@Label("Requested Delay")
+		@Timespan(Timespan.MILLISECONDS)
+		long delay;
+
+		@Label("Latency Model")
+		String model;
+	}
+
+	@Name("com.thinkinglogic.restmocker.Write")
+	@Label("Response Write")
+	@Description("Loading, rendering and writing the response (until it is handed over, if it is streamed)")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class WriteEvent extends Event {
+		@Label("Route")
+		String route;
+
+		@Label("Status")
+		int status;
+	}
+}
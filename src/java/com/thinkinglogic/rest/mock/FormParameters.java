@@ -0,0 +1,234 @@
+package com.thinkinglogic.rest.mock;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The parameters of an html form post (an application/x-www-form-urlencoded request body), as a read-only map of
+ * name to value, whose {@link #toString()} is the body itself. One instance is shared by the selectors (dir.formParam,
+ * file.formParam and path.rules) and the velocity and simple template contexts of a request.
+ * <p>
+ * The body is not read until a parameter is first needed, and is then split into parameters in a single pass - the
+ * names are decoded as they are found, but each value is only decoded the first time it is requested. Names and values
+ * are decoded as UTF-8, with '+' as a space. A malformed escape sequence (e.g. '%zz') is kept as it is, rather than
+ * failing the whole body, and a parameter without '=' has an empty value. If a name appears more than once the last
+ * value wins (as for query parameters).
+ */
+public class FormParameters extends AbstractMap<String, String> {
+
+	private static final Logger logger = Logger.getLogger(FormParameters.class);
+
+	private final String body;
+	/** The position of each name in names, or null until the body has been read. */
+	private Map<String, Integer> index;
+	/** The names, in the order they first appear in the body. */
+	private String[] names;
+	/** The start and end (exclusive) of each encoded value in the body. */
+	private int[] valueBounds;
+	/** The decoded values, each null until it is requested. */
+	private String[] values;
+	private int count;
+	private Set<Map.Entry<String, String>> entrySet;
+
+	/**
+	 * @param body the request body (not null).
+	 */
+	public FormParameters(final String body) {
+		this.body = body;
+	}
+
+	@Override
+	public String get(final Object name) {
+		parse();
+		Integer position = index.get(name);
+		return position == null ? null : getValue(position);
+	}
+
+	/**
+	 * @param name the name of the parameter.
+	 * @return the value of the parameter, or null if there is no such parameter (the same as {@link #get(Object)}, for
+	 *         templates written against the properties that used to represent form parameters).
+	 */
+	public String getProperty(final String name) {
+		return get(name);
+	}
+
+	@Override
+	public boolean containsKey(final Object name) {
+		parse();
+		return index.containsKey(name);
+	}
+
+	@Override
+	public int size() {
+		parse();
+		return count;
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String, String>>() {
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					parse();
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return FormParameters.this.size();
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	@Override
+	public String toString() {
+		return body;
+	}
+
+	/**
+	 * Splits the body into parameters, if it has not already been done.
+	 */
+	private void parse() {
+		if (index != null) {
+			return;
+		}
+		names = new String[8];
+		valueBounds = new int[names.length * 2];
+		index = new HashMap<>();
+		int start = 0;
+		int equals = -1;
+		final int length = body.length();
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? body.charAt(i) : '&';
+			if (c == '=' && equals < 0) {
+				equals = i;
+			} else if (c == '&') {
+				if (i > start) {
+					int nameEnd = equals < 0 ? i : equals;
+					addParameter(decode(body, start, nameEnd), equals < 0 ? i : equals + 1, i);
+				}
+				start = i + 1;
+				equals = -1;
+			}
+		}
+		values = new String[count];
+	}
+
+	private void addParameter(final String name, final int valueStart, final int valueEnd) {
+		Integer position = index.get(name);
+		if (position == null) {
+			if (count == names.length) {
+				names = Arrays.copyOf(names, count * 2);
+				valueBounds = Arrays.copyOf(valueBounds, count * 4);
+			}
+			position = count++;
+			index.put(name, position);
+			names[position] = name;
+		}
+		// a repeated name keeps its first position, with the last value
+		valueBounds[position * 2] = valueStart;
+		valueBounds[position * 2 + 1] = valueEnd;
+	}
+
+	private String getValue(final int position) {
+		String value = values[position];
+		if (value == null) {
+			value = decode(body, valueBounds[position * 2], valueBounds[position * 2 + 1]);
+			values[position] = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Decodes part of a form encoded string, as UTF-8.
+	 *
+	 * @param encoded the encoded string.
+	 * @param start the index of the first character to decode.
+	 * @param end the index after the last character to decode.
+	 * @return the decoded string.
+	 */
+	static String decode(final String encoded, final int start, final int end) {
+		int first = start;
+		while (first < end && encoded.charAt(first) != '%' && encoded.charAt(first) != '+') {
+			first++;
+		}
+		if (first == end) {
+			return encoded.substring(start, end);
+		}
+		StringBuilder builder = new StringBuilder(end - start);
+		builder.append(encoded, start, first);
+		byte[] bytes = null;
+		int i = first;
+		while (i < end) {
+			char c = encoded.charAt(i);
+			if (c == '+') {
+				builder.append(' ');
+				i++;
+			} else if (c == '%') {
+				// decode a run of escaped bytes together, so that multi-byte characters are decoded correctly
+				int byteCount = 0;
+				while (i < end && encoded.charAt(i) == '%' && isHex(encoded, i + 1, end)
+						&& isHex(encoded, i + 2, end)) {
+					if (bytes == null) {
+						bytes = new byte[(end - i) / 3];
+					}
+					bytes[byteCount++] = (byte) ((Character.digit(encoded.charAt(i + 1), 16) << 4)
+							+ Character.digit(encoded.charAt(i + 2), 16));
+					i += 3;
+				}
+				if (byteCount > 0) {
+					builder.append(new String(bytes, 0, byteCount, StandardCharsets.UTF_8));
+				} else {
+					logger.debug("Malformed escape sequence at " + i + " in form parameter: " + encoded);
+					builder.append(c);
+					i++;
+				}
+			} else {
+				builder.append(c);
+				i++;
+			}
+		}
+		return builder.toString();
+	}
+
+	private static boolean isHex(final String encoded, final int i, final int end) {
+		return i < end && Character.digit(encoded.charAt(i), 16) >= 0;
+	}
+
+	/** Iterates over the parameters, in the order they first appear in the body. */
+	private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+		private int next;
+
+		@Override
+		public boolean hasNext() {
+			return next < count;
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			if (next >= count) {
+				throw new NoSuchElementException();
+			}
+			int position = next++;
+			return new SimpleImmutableEntry<>(names[position], getValue(position));
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -3,22 +3,22 @@
  */
 package com.thinkinglogic.rest.mock;
 
+import java.util.Map;
 import java.util.Properties;
 
-import org.apache.log4j.Logger;
-
 /**
  * Extension of {@link Properties} that loads properties from the request body of an html post form, and returns the
  * string from {@link #toString()}.
  * 
+ * @deprecated the request body of a form post is now represented by {@link FormParameters}, which decodes the
+ *             parameters and is shared with the dir.formParam and file.formParam selectors.
  */
+@Deprecated
 public class HtmlPostProperties extends Properties {
 
 	/** serialVersionUID. */
 	private static final long serialVersionUID = 8253643911173484142L;
 
-	private static final Logger logger = Logger.getLogger(HtmlPostProperties.class);
-
 	private final String toString;
 
 	/**
@@ -26,16 +26,8 @@ public class HtmlPostProperties extends Properties {
 	 */
 	public HtmlPostProperties(final String string) {
 		this.toString = string;
-		if (string.indexOf("=") > 0) {
-			try {
-				String[] split = string.split("&", 0);
-				for (String params : split) {
-					String[] pair = params.split("=", 2);
-					this.put(pair[0], pair[1]);
-				}
-			} catch (RuntimeException e) {
-				logger.error("Unable to read properties from " + string, e);
-			}
+		for (Map.Entry<String, String> parameter : new FormParameters(string).entrySet()) {
+			this.put(parameter.getKey(), parameter.getValue());
 		}
 	}
 
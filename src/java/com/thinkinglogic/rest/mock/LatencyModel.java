@@ -0,0 +1,204 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+/**
+ * Scales the delay of a route with the number of requests to it that are in flight, to emulate a service that slows
+ * down as load rises. The base service time is the fixed.delay of the route, and the model adds a queueing delay that
+ * depends on how many other requests are in flight when a request arrives:
+ * <ul>
+ * <li>linear: base + factor * others (factor in milliseconds per request)</li>
+ * <li>mmc: the mean response time of an M/M/c queue, base * (1 + C(c, a) / (c * (1 - utilisation))), where c is the
+ * number of servers, the utilisation is others / c (capped at {@link #MAX_UTILISATION}) and C(c, a) is the Erlang C
+ * probability that a request has to wait. This is close to the base service time until the servers are nearly all
+ * busy, and then climbs steeply.</li>
+ * </ul>
+ * The delay is optionally capped at a maximum. In-flight requests are counted with an AtomicInteger - a request enters
+ * when its delay is calculated, and exits when its response is complete.
+ */
+public class LatencyModel {
+
+	/** The highest utilisation used by the mmc model, where the delay is about 100 times the base service time. */
+	public static final double MAX_UTILISATION = 0.99;
+
+	private static final ConcurrentMap<String, LatencyModel> MODELS = new ConcurrentHashMap<>();
+
+	/** The curves that a model can follow. */
+	public static enum Type {
+		LINEAR, MMC;
+
+		/**
+		 * @param name the name of the type (case insensitive).
+		 * @return the type, or null if the name is empty or 'none'.
+		 * @throws IllegalArgumentException if the name is not a type.
+		 */
+		public static Type forName(final String name) {
+			String trimmed = name.trim();
+			if (trimmed.length() == 0 || "none".equalsIgnoreCase(trimmed)) {
+				return null;
+			}
+			return valueOf(trimmed.toUpperCase());
+		}
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private final Type type;
+	private final double factor;
+	private final int servers;
+	private final long maxDelay;
+	private final AtomicInteger inflight = new AtomicInteger();
+
+	/**
+	 * @param type the curve to follow.
+	 * @param factor the milliseconds added for each other request in flight (linear only).
+	 * @param servers the number of requests that can be served without queueing (mmc only).
+	 * @param maxDelay the maximum delay in milliseconds (0 for no maximum).
+	 */
+	public LatencyModel(final Type type, final double factor, final int servers, final long maxDelay) {
+		this.type = type;
+		this.factor = Math.max(0, factor);
+		this.servers = Math.max(1, servers);
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Returns the model for a route, replacing the existing model if its settings have changed (requests that entered
+	 * the old model exit from the old model).
+	 *
+	 * @param route the route.
+	 * @param type the curve to follow.
+	 * @param factor the milliseconds added for each other request in flight (linear only).
+	 * @param servers the number of requests that can be served without queueing (mmc only).
+	 * @param maxDelay the maximum delay in milliseconds (0 for no maximum).
+	 * @return the model.
+	 */
+	public static LatencyModel forRoute(final String route, final Type type, final double factor, final int servers,
+			final long maxDelay) {
+		while (true) {
+			LatencyModel model = MODELS.get(route);
+			if (model != null && model.type == type && model.factor == Math.max(0, factor)
+					&& model.servers == Math.max(1, servers) && model.maxDelay == maxDelay) {
+				return model;
+			}
+			LatencyModel created = new LatencyModel(type, factor, servers, maxDelay);
+			if (model == null ? MODELS.putIfAbsent(route, created) == null : MODELS.replace(route, model, created)) {
+				return created;
+			}
+		}
+	}
+
+	/**
+	 * Counts a request as in flight. Every call must be matched by a call to {@link #exit()}.
+	 *
+	 * @return the number of requests in flight, including this one.
+	 */
+	public int enter() {
+		return inflight.incrementAndGet();
+	}
+
+	/**
+	 * Counts a request as no longer in flight.
+	 */
+	public void exit() {
+		inflight.decrementAndGet();
+	}
+
+	/**
+	 * @return a listener that calls {@link #exit()} (once) when an asynchronous request completes.
+	 */
+	public AsyncListener exitOnComplete() {
+		return new AsyncListener() {
+			private final AtomicBoolean exited = new AtomicBoolean();
+
+			@Override
+			public void onComplete(final AsyncEvent event) throws IOException {
+				if (exited.compareAndSet(false, true)) {
+					exit();
+				}
+			}
+
+			@Override
+			public void onTimeout(final AsyncEvent event) throws IOException {
+				// exits on completion
+			}
+
+			@Override
+			public void onError(final AsyncEvent event) throws IOException {
+				// exits on completion
+			}
+
+			@Override
+			public void onStartAsync(final AsyncEvent event) throws IOException {
+				// nothing to do
+			}
+		};
+	}
+
+	/**
+	 * @return the curve the model follows.
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the number of requests in flight.
+	 */
+	public int getInflight() {
+		return inflight.get();
+	}
+
+	/**
+	 * @param baseDelay the base service time, in milliseconds.
+	 * @param inflight the number of requests in flight, including the one being delayed.
+	 * @return the delay for the request, in milliseconds.
+	 */
+	public long getDelay(final long baseDelay, final int inflight) {
+		int others = Math.max(0, inflight - 1);
+		double delay;
+		if (type == Type.LINEAR) {
+			delay = baseDelay + factor * others;
+		} else {
+			double utilisation = Math.min((double) others / servers, MAX_UTILISATION);
+			delay = baseDelay * (1 + erlangC(servers, servers * utilisation) / (servers * (1 - utilisation)));
+		}
+		long millis = Math.round(delay);
+		return maxDelay > 0 ? Math.min(millis, maxDelay) : millis;
+	}
+
+	/**
+	 * @param servers the number of servers.
+	 * @param load the offered load (arrival rate / service rate), which must be less than the number of servers.
+	 * @return the probability that a request has to wait in an M/M/c queue (the Erlang C formula).
+	 */
+	static double erlangC(final int servers, final double load) {
+		if (load <= 0) {
+			return 0;
+		}
+		double term = 1;
+		double sum = 1;
+		for (int k = 1; k < servers; k++) {
+			term *= load / k;
+			sum += term;
+		}
+		double waiting = term * load / servers / (1 - load / servers);
+		return waiting / (sum + waiting);
+	}
+
+	@Override
+	public String toString() {
+		return type + (type == Type.LINEAR ? " factor=" + factor : " servers=" + servers)
+				+ (maxDelay > 0 ? " max=" + maxDelay : "") + " inflight=" + inflight.get();
+	}
+}
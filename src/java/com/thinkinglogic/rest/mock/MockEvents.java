@@ -0,0 +1,137 @@
+package com.thinkinglogic.rest.mock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Emits Java Flight Recorder events for the phases of handling a request - route resolution, template rendering,
+ * injected delays and writing the response - so that the time spent in the mocker can be seen (and correlated with gc
+ * and lock events) in a recording, e.g. one started with -XX:StartFlightRecording. The events are in the rest-mocker
+ * category, named com.thinkinglogic.restmocker.Route, Render, Delay and Write.
+ * <p>
+ * Each phase is bracketed by a begin method, which returns a handle (null if the event is not being recorded), and an
+ * end method, which commits the event. While no recording is running, begin returns null without creating anything,
+ * so the events cost a volatile read. On a JVM without the jdk.jfr api (before 8u262), or if the system property
+ * {@link #ENABLED_PROPERTY} is false, no events are emitted.
+ */
+public final class MockEvents {
+
+	private static final Logger logger = Logger.getLogger(MockEvents.class);
+
+	/** The name of the system property that enables (true, by default) or disables flight recorder events. */
+	public static final String ENABLED_PROPERTY = "rest-mocker.jfr";
+
+	private static volatile boolean recording;
+	private static final boolean AVAILABLE = register();
+
+	private MockEvents() {
+	}
+
+	/**
+	 * @return true if the events can be emitted.
+	 */
+	private static boolean register() {
+		if (!Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"))) {
+			return false;
+		}
+		try {
+			Class.forName("jdk.jfr.FlightRecorder");
+			FlightRecorderEvents.register();
+			return true;
+		} catch (ClassNotFoundException | LinkageError | SecurityException e) {
+			logger.debug("Flight recorder events are not available: " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * @param running true if any flight recording is running.
+	 */
+	static void setRecording(final boolean running) {
+		recording = running;
+	}
+
+	/**
+	 * @return true if events are emitted (a recording is running, and the events are available).
+	 */
+	public static boolean isRecording() {
+		return recording && AVAILABLE;
+	}
+
+	/**
+	 * @return the handle of a route resolution event, or null if it is not being recorded.
+	 */
+	public static Object beginRoute() {
+		return isRecording() ? FlightRecorderEvents.beginRoute() : null;
+	}
+
+	/**
+	 * @param event the handle returned by {@link #beginRoute()}.
+	 * @param requestPath the request path.
+	 * @param derivedPath the directory the response is read from.
+	 * @param derivedName the name of the files the response is read from.
+	 * @param selectors the path properties that selected the directory and file (may be null).
+	 * @param mock true if the request matched a runtime mock.
+	 */
+	public static void endRoute(final Object event, final String requestPath, final String derivedPath,
+			final String derivedName, final String selectors, final boolean mock) {
+		if (event != null) {
+			FlightRecorderEvents.endRoute(event, requestPath, derivedPath, derivedName, selectors, mock);
+		}
+	}
+
+	/**
+	 * @return the handle of a template render event, or null if it is not being recorded.
+	 */
+	public static Object beginRender() {
+		return isRecording() ? FlightRecorderEvents.beginRender() : null;
+	}
+
+	/**
+	 * @param event the handle returned by {@link #beginRender()}.
+	 * @param resource the template.
+	 * @param engine the template engine.
+	 * @param bytes the size of the rendered body, or -1 if it was streamed to the client as it was rendered.
+	 */
+	public static void endRender(final Object event, final String resource, final String engine, final long bytes) {
+		if (event != null) {
+			FlightRecorderEvents.endRender(event, resource, engine, bytes);
+		}
+	}
+
+	/**
+	 * @return the handle of an injected delay event, or null if it is not being recorded.
+	 */
+	public static Object beginDelay() {
+		return isRecording() ? FlightRecorderEvents.beginDelay() : null;
+	}
+
+	/**
+	 * @param event the handle returned by {@link #beginDelay()}.
+	 * @param route the route.
+	 * @param delay the requested delay in milliseconds.
+	 * @param model the latency model (may be null).
+	 */
+	public static void endDelay(final Object event, final String route, final long delay, final String model) {
+		if (event != null) {
+			FlightRecorderEvents.endDelay(event, route, delay, model);
+		}
+	}
+
+	/**
+	 * @return the handle of a response write event, or null if it is not being recorded.
+	 */
+	public static Object beginWrite() {
+		return isRecording() ? FlightRecorderEvents.beginWrite() : null;
+	}
+
+	/**
+	 * @param event the handle returned by {@link #beginWrite()}.
+	 * @param route the route.
+	 * @param status the http response code.
+	 */
+	public static void endWrite(final Object event, final String route, final int status) {
+		if (event != null) {
+			FlightRecorderEvents.endWrite(event, route, status);
+		}
+	}
+}
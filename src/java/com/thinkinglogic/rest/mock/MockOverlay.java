@@ -0,0 +1,301 @@
+package com.thinkinglogic.rest.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Mock responses registered at runtime (through the admin api), which are consulted before the files on the classpath.
+ * Each mock is registered against an exact request path, and may have a selector - a semi-colon separated list of
+ * predicates in the same format as path.rules (e.g. 'method equals POST; header X-Tenant equals a') - which must all
+ * match the request. Mocks are matched before the request path is resolved, so a selector cannot use pathParam. The
+ * first registered mock whose selector matches wins; a mock without a selector matches any request to its path, but
+ * only if no mock with a selector matches.
+ * <p>
+ * The registered mocks are held in an immutable snapshot, which is replaced (copy-on-write) whenever a mock is added or
+ * removed - so matching a request never takes a lock.
+ */
+public class MockOverlay {
+
+	private static final Logger logger = Logger.getLogger(MockOverlay.class);
+
+	private final AtomicReference<Map<String, Route>> routes = new AtomicReference<Map<String, Route>>(
+			Collections.<String, Route> emptyMap());
+
+	/**
+	 * @return true if no mocks are registered.
+	 */
+	public boolean isEmpty() {
+		return routes.get().isEmpty();
+	}
+
+	/**
+	 * Finds the mock to respond to a request with.
+	 *
+	 * @param path the request path.
+	 * @param values provides the request properties that selectors are matched against.
+	 * @return the matching mock, or null if no mock matches the request.
+	 */
+	public Mock match(final String path, final RuleTable.Values values) {
+		Map<String, Route> current = routes.get();
+		if (current.isEmpty()) {
+			return null;
+		}
+		Route route = current.get(normalise(path));
+		return route == null ? null : route.match(values);
+	}
+
+	/**
+	 * Adds a mock, replacing any existing mock with the same path and selector.
+	 *
+	 * @param mock the mock to add.
+	 * @return true if an existing mock was replaced.
+	 */
+	public boolean put(final Mock mock) {
+		while (true) {
+			Map<String, Route> current = routes.get();
+			Route route = current.get(mock.path);
+			List<Mock> mocks = route == null ? new ArrayList<Mock>() : new ArrayList<>(route.mocks);
+			boolean replaced = false;
+			for (int i = 0; i < mocks.size() && !replaced; i++) {
+				if (mocks.get(i).selector.equals(mock.selector)) {
+					mocks.set(i, mock);
+					replaced = true;
+				}
+			}
+			if (!replaced) {
+				mocks.add(mock);
+			}
+			Map<String, Route> next = new HashMap<>(current);
+			next.put(mock.path, new Route(mock.path, mocks));
+			if (routes.compareAndSet(current, Collections.unmodifiableMap(next))) {
+				logger.info((replaced ? "Replaced" : "Added") + " mock " + mock);
+				return replaced;
+			}
+		}
+	}
+
+	/**
+	 * Removes mocks.
+	 *
+	 * @param path the path to remove mocks from, or null to remove all mocks.
+	 * @param selector the selector of the mock to remove, or null to remove all mocks for the path.
+	 * @return the number of mocks removed.
+	 */
+	public int remove(final String path, final String selector) {
+		while (true) {
+			Map<String, Route> current = routes.get();
+			Map<String, Route> next = new HashMap<>();
+			int removed = 0;
+			for (Map.Entry<String, Route> entry : current.entrySet()) {
+				Route route = entry.getValue();
+				if (path != null && !route.path.equals(normalise(path))) {
+					next.put(entry.getKey(), route);
+					continue;
+				}
+				List<Mock> remaining = new ArrayList<>();
+				for (Mock mock : route.mocks) {
+					if (selector != null && !mock.selector.equals(selector.trim())) {
+						remaining.add(mock);
+					}
+				}
+				removed += route.mocks.size() - remaining.size();
+				if (!remaining.isEmpty()) {
+					next.put(entry.getKey(), remaining.size() == route.mocks.size() ? route : new Route(route.path,
+							remaining));
+				}
+			}
+			if (removed == 0 || routes.compareAndSet(current, Collections.unmodifiableMap(next))) {
+				logger.info("Removed " + removed + " mocks");
+				return removed;
+			}
+		}
+	}
+
+	/**
+	 * @return all registered mocks, ordered by path.
+	 */
+	public List<Mock> getMocks() {
+		List<Mock> mocks = new ArrayList<>();
+		for (Route route : new TreeMap<>(routes.get()).values()) {
+			mocks.addAll(route.mocks);
+		}
+		return mocks;
+	}
+
+	/**
+	 * @param path a request path.
+	 * @return the path, without any trailing '/'.
+	 */
+	protected static String normalise(final String path) {
+		if (path == null || path.length() == 0) {
+			return "/";
+		}
+		if (path.length() > 1 && path.endsWith("/")) {
+			return path.substring(0, path.length() - 1);
+		}
+		return path;
+	}
+
+	/**
+	 * The mocks registered against a single path, with their selectors compiled into a RuleTable.
+	 */
+	private static final class Route {
+		private final String path;
+		private final List<Mock> mocks;
+		private final RuleTable selectors;
+		private final Mock fallback;
+
+		Route(final String path, final List<Mock> mocks) {
+			this.path = path;
+			this.mocks = Collections.unmodifiableList(mocks);
+			List<RuleTable.Rule> rules = new ArrayList<>();
+			Mock fallback = null;
+			for (int i = 0; i < mocks.size(); i++) {
+				Mock mock = mocks.get(i);
+				if (mock.predicates.length > 0) {
+					rules.add(new RuleTable.Rule(Integer.toString(i), mock.predicates));
+				} else if (fallback == null) {
+					fallback = mock;
+				}
+			}
+			this.selectors = RuleTable.compile("mocks for " + path, rules);
+			this.fallback = fallback;
+		}
+
+		Mock match(final RuleTable.Values values) {
+			String matched = selectors.match(values);
+			return matched == null ? fallback : mocks.get(Integer.parseInt(matched));
+		}
+	}
+
+	/**
+	 * A mock response, and the requests it should be sent for. Instances are immutable.
+	 */
+	public static final class Mock {
+		private final String path;
+		private final String selector;
+		private final RuleTable.Predicate[] predicates;
+		private final int status;
+		private final Map<String, String> headers;
+		private final String body;
+		private final int delay;
+
+		/**
+		 * @param path the request path to respond to.
+		 * @param selector the predicates the request must match (may be null or empty).
+		 * @param status the http response code.
+		 * @param headers the response headers (may be null).
+		 * @param body the response body (may be null).
+		 * @param delay the number of milliseconds to wait before responding.
+		 * @throws IllegalArgumentException if the selector is not valid, or uses pathParam.
+		 */
+		public Mock(final String path, final String selector, final int status, final Map<String, String> headers,
+				final String body, final int delay) {
+			this.path = normalise(path);
+			this.selector = selector == null ? "" : selector.trim();
+			this.predicates = RuleTable.parsePredicates(this.selector);
+			for (RuleTable.Predicate predicate : predicates) {
+				if (predicate.attribute.source == RuleTable.Source.PATH_PARAM) {
+					throw new IllegalArgumentException("A mock matches an exact path, so its selector cannot use "
+							+ RuleTable.Source.PATH_PARAM + ": " + this.selector);
+				}
+			}
+			this.status = status;
+			this.headers = headers == null ? Collections.<String, String> emptyMap() : Collections
+					.unmodifiableMap(new TreeMap<>(headers));
+			this.body = body == null ? "" : body;
+			this.delay = delay;
+		}
+
+		/**
+		 * Creates a mock from its json representation: an object with the fields path (required), selector, status
+		 * (200 by default), headers (an object), body and delay.
+		 *
+		 * @param map the parsed json.
+		 * @return the mock.
+		 * @throws IllegalArgumentException if the path is missing or any field is not valid.
+		 */
+		public static Mock fromMap(final Map<String, Object> map) {
+			Object path = map.get("path");
+			if (path == null || path.toString().trim().length() == 0) {
+				throw new IllegalArgumentException("A mock must have a path");
+			}
+			Map<String, String> headers = new TreeMap<>();
+			Object headerObject = map.get("headers");
+			if (headerObject instanceof Map) {
+				for (Map.Entry<?, ?> entry : ((Map<?, ?>) headerObject).entrySet()) {
+					headers.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+				}
+			} else if (headerObject != null) {
+				throw new IllegalArgumentException("Headers must be an object: " + headerObject);
+			}
+			Object selector = map.get("selector");
+			Object body = map.get("body");
+			return new Mock(path.toString().trim(), selector == null ? null : selector.toString(), toInt(map, "status",
+					200), headers, body == null ? null : body.toString(), toInt(map, "delay", 0));
+		}
+
+		private static int toInt(final Map<String, Object> map, final String key, final int defaultValue) {
+			Object value = map.get(key);
+			if (value == null) {
+				return defaultValue;
+			}
+			try {
+				return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(key + " must be a number: " + value);
+			}
+		}
+
+		/**
+		 * @return the mock as a map (for conversion to json).
+		 */
+		public Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("path", path);
+			map.put("selector", selector);
+			map.put("status", status);
+			map.put("headers", headers);
+			map.put("body", body);
+			map.put("delay", delay);
+			return map;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public String getSelector() {
+			return selector;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		public String getBody() {
+			return body;
+		}
+
+		public int getDelay() {
+			return delay;
+		}
+
+		@Override
+		public String toString() {
+			return path + (selector.length() == 0 ? "" : " [" + selector + "]");
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * A tree of mocks, together with everything read from it: its {@link ResourceIndex}, its {@link DataTables}, and the
+ * path.properties, path.rules and simple templates compiled from it. The mocks on the classpath are one root, mounted
+ * at "/"; each directory mounted by {@link MockRoots} is another, so the mocks of one service can be loaded and
+ * unloaded without affecting any other.
+ * <p>
+ * A root mounted outside the classpath may have its own default.path.properties (at the top of its directory), which
+ * overrides the global defaults for every path in the root. Files that are not found by walking up to the top of the
+ * root (e.g. default.status) are looked for at the top of the classpath.
+ */
+public class MockRoot {
+
+	private static final Logger logger = Logger.getLogger(MockRoot.class);
+
+	/** The estimated number of bytes held for each indexed resource, in addition to the size of the file itself. */
+	private static final int RESOURCE_OVERHEAD = 128;
+
+	private final String prefix;
+	private final ResourceIndex index;
+	private final DataTables dataTables;
+	private final PathConfig defaults;
+	private final long size;
+	private final ConcurrentMap<String, PathConfig> pathConfigs = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, RuleTable> ruleTables = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, SimpleTemplate> simpleTemplates = new ConcurrentHashMap<>();
+	private volatile long lastUsed = System.currentTimeMillis();
+
+	/**
+	 * @param prefix the path prefix of the root (starting and ending with "/").
+	 * @param index the index of the resources in the root.
+	 * @param defaults the settings used where a path.properties has no value.
+	 * @param size the estimated number of bytes held by the root.
+	 */
+	protected MockRoot(final String prefix, final ResourceIndex index, final PathConfig defaults, final long size) {
+		this.prefix = prefix;
+		this.index = index;
+		this.dataTables = DataTables.load(index, prefix + DataTables.DATA_DIRECTORY.substring(1));
+		this.defaults = defaults;
+		this.size = size;
+	}
+
+	/**
+	 * Indexes the mocks on the classpath.
+	 *
+	 * @param rootResource the name of a resource (starting with "/") in the root of the tree to index.
+	 * @param defaults the global defaults.
+	 * @return the root.
+	 */
+	public static MockRoot fromClasspath(final String rootResource, final PathConfig defaults) {
+		return new MockRoot("/", ResourceIndex.build(rootResource), defaults, 0);
+	}
+
+	/**
+	 * Indexes the mocks in a directory, and reads its default.path.properties (if any) and data tables.
+	 *
+	 * @param prefix the path prefix the directory is mounted at (starting and ending with "/").
+	 * @param dir the directory.
+	 * @param classpath the classpath root, whose index and defaults are used for anything the directory does not have.
+	 * @return the root.
+	 */
+	public static MockRoot load(final String prefix, final File dir, final MockRoot classpath) {
+		PathConfig defaults = classpath.defaults;
+		ResourceIndex index = ResourceIndex.build(dir, prefix, classpath.index);
+		long size = 0;
+		for (String resource : index.list(prefix)) {
+			size += RESOURCE_OVERHEAD + 2 * resource.length() + new File(dir, resource.substring(prefix.length()))
+					.length();
+		}
+		String name = prefix + ResponseBuilder.DEFAULT_PATH_PROPERTIES_FILE;
+		PathConfig rootDefaults = defaults;
+		InputStream stream = index.open(name);
+		if (stream != null) {
+			Properties properties = new Properties();
+			try {
+				properties.load(stream);
+				rootDefaults = PathConfig.compile(name, properties, defaults);
+			} catch (IOException | IllegalArgumentException e) {
+				logger.error("Unable to read " + name + ", using the global defaults", e);
+			} finally {
+				IOUtils.closeQuietly(stream);
+			}
+		}
+		return new MockRoot(prefix, index, rootDefaults, size);
+	}
+
+	/**
+	 * Returns the compiled settings of a path.properties file in the root, reading it the first time it is used.
+	 *
+	 * @param name the name of the path.properties resource (may be null, in which case the defaults are returned).
+	 * @return the compiled settings.
+	 */
+	public PathConfig getPathConfig(final String name) {
+		if (name == null) {
+			return defaults;
+		}
+		PathConfig config = pathConfigs.get(name);
+		if (config == null) {
+			config = PathConfig.forResource(index, name, defaults);
+			PathConfig existing = pathConfigs.putIfAbsent(name, config);
+			if (existing != null) {
+				return existing;
+			}
+		}
+		return config;
+	}
+
+	/**
+	 * @return the settings used where a path.properties has no value.
+	 */
+	public PathConfig getDefaults() {
+		return defaults;
+	}
+
+	/**
+	 * @return the path.rules tables compiled from the root, keyed by resource name.
+	 */
+	public ConcurrentMap<String, RuleTable> getRuleTables() {
+		return ruleTables;
+	}
+
+	/**
+	 * @return the simple templates compiled from the root, keyed by resource name.
+	 */
+	public ConcurrentMap<String, SimpleTemplate> getSimpleTemplates() {
+		return simpleTemplates;
+	}
+
+	/**
+	 * @return the index of the resources in the root.
+	 */
+	public ResourceIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the data tables read from the root.
+	 */
+	public DataTables getDataTables() {
+		return dataTables;
+	}
+
+	/**
+	 * @return the path prefix of the root.
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * @return the estimated number of bytes held by the root: the size of its files, plus a little for each file.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Records that the root has been used.
+	 */
+	public void touch() {
+		lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the time the root was last used (see {@link System#currentTimeMillis()}).
+	 */
+	public long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * @return the prefix, size and state of the root.
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("prefix", prefix);
+		map.put("resources", index.size());
+		map.put("size", size);
+		map.put("idleMillis", System.currentTimeMillis() - lastUsed);
+		map.put("dataTables", dataTables.describe());
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return "mock root " + prefix;
+	}
+}
@@ -0,0 +1,338 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The roots of the mocks: the classpath, and the directories of mocks mounted outside the classpath, so that one mocker
+ * can host the mocks of many services. Each sub-directory of the directory named by the system property
+ * {@link #ROOTS_PROPERTY} is mounted at a path prefix of the same name - e.g. the mocks in /srv/mocks/orders answer
+ * requests to /orders/... - and takes precedence over any directory of the same name on the classpath.
+ * <p>
+ * A root is only loaded (see {@link MockRoot}) when the first request for it arrives, and is unloaded once it has not
+ * been used for {@link #IDLE_PROPERTY} milliseconds, or when loading another root takes the estimated size of all
+ * loaded roots over {@link #BUDGET_PROPERTY} megabytes (in which case the least recently used roots are unloaded). So
+ * the memory used is proportional to the roots that are actually being called, however many are mounted.
+ */
+public class MockRoots {
+
+	private static final Logger logger = Logger.getLogger(MockRoots.class);
+
+	/** The name of the system property that specifies the directory whose sub-directories are mounted. */
+	public static final String ROOTS_PROPERTY = "rest-mocker.roots";
+
+	/** The name of the system property that specifies how long (in ms) an unused root stays loaded (0 for ever). */
+	public static final String IDLE_PROPERTY = "rest-mocker.roots.idle";
+
+	/** The name of the system property that specifies the maximum estimated size (in MB) of the loaded roots. */
+	public static final String BUDGET_PROPERTY = "rest-mocker.roots.budget";
+
+	private static final long DEFAULT_IDLE = TimeUnit.MINUTES.toMillis(10);
+	private static final long MAX_SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+	private final File dir;
+	private final long idleMillis;
+	private final long budgetBytes;
+	private volatile MockRoot classpathRoot;
+	private volatile Map<String, Mount> mounts = Collections.emptyMap();
+	private final AtomicLong loadedSize = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong unloads = new AtomicLong();
+
+	/**
+	 * @param dir the directory whose sub-directories are mounted (null to mount nothing).
+	 * @param idleMillis the number of milliseconds an unused root stays loaded (0 to keep it until the budget is
+	 *            exceeded).
+	 * @param budgetBytes the estimated number of bytes that all loaded roots may hold (0 for no limit).
+	 * @param classpathRoot the mocks on the classpath.
+	 */
+	public MockRoots(final File dir, final long idleMillis, final long budgetBytes, final MockRoot classpathRoot) {
+		this.dir = dir;
+		this.idleMillis = Math.max(0, idleMillis);
+		this.budgetBytes = Math.max(0, budgetBytes);
+		mount(classpathRoot);
+	}
+
+	/**
+	 * Creates the roots configured by the {@link #ROOTS_PROPERTY}, {@link #IDLE_PROPERTY} and {@link #BUDGET_PROPERTY}
+	 * system properties, and schedules the unloading of idle roots.
+	 *
+	 * @param classpathRoot the mocks on the classpath.
+	 * @return the roots.
+	 */
+	public static MockRoots fromSystemProperties(final MockRoot classpathRoot) {
+		String name = System.getProperty(ROOTS_PROPERTY, "").trim();
+		final MockRoots roots = new MockRoots(name.length() == 0 ? null : new File(name), Long.getLong(IDLE_PROPERTY,
+				DEFAULT_IDLE), Long.getLong(BUDGET_PROPERTY, 0) * 1024 * 1024, classpathRoot);
+		if (roots.dir != null && roots.idleMillis > 0) {
+			long interval = Math.max(1000, Math.min(MAX_SWEEP_INTERVAL, roots.idleMillis / 2));
+			MockScheduler.get().scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						roots.unloadIdle();
+					} catch (RuntimeException e) {
+						logger.error("Unable to unload idle mock roots", e);
+					}
+				}
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		}
+		return roots;
+	}
+
+	/**
+	 * Mounts each sub-directory of the roots directory (again), unloading every root that is loaded - e.g. when the
+	 * resource index is rebuilt, so that added and removed directories are recognised.
+	 *
+	 * @param classpath the mocks on the classpath.
+	 * @return the number of roots mounted.
+	 */
+	public int mount(final MockRoot classpath) {
+		classpathRoot = classpath;
+		Map<String, Mount> mounted = new HashMap<>();
+		if (dir != null) {
+			File[] dirs = dir.listFiles(new FileFilter() {
+				@Override
+				public boolean accept(final File file) {
+					return file.isDirectory() && !file.getName().startsWith(".");
+				}
+			});
+			if (dirs == null) {
+				logger.error("Unable to mount mock roots from " + dir + ", it is not a directory");
+			} else {
+				for (File root : dirs) {
+					String prefix = "/" + root.getName() + "/";
+					mounted.put(prefix, new Mount(prefix, root));
+				}
+				logger.info("Mounted " + mounted.size() + " mock roots from " + dir);
+			}
+		}
+		Map<String, Mount> previous = mounts;
+		mounts = Collections.unmodifiableMap(mounted);
+		for (Mount mount : previous.values()) {
+			unload(mount);
+		}
+		return mounted.size();
+	}
+
+	/**
+	 * Returns the root that a request path is mounted in, loading it if it is not loaded.
+	 *
+	 * @param path the request path.
+	 * @return the root, or the classpath root if the path is not in a mounted root.
+	 */
+	public MockRoot forPath(final String path) {
+		Mount mount = getMount(path);
+		if (mount == null) {
+			return classpathRoot;
+		}
+		MockRoot root = mount.root;
+		if (root == null) {
+			root = load(mount);
+		}
+		root.touch();
+		return root;
+	}
+
+	/**
+	 * Records that the root a request path is mounted in has been used (e.g. by a cached response), without loading it.
+	 *
+	 * @param path the request path.
+	 */
+	public void touch(final String path) {
+		Mount mount = getMount(path);
+		MockRoot root = mount == null ? null : mount.root;
+		if (root != null) {
+			root.touch();
+		}
+	}
+
+	/**
+	 * @param path the request path (may be null).
+	 * @return the mount that the path is in, or null if there is none.
+	 */
+	private Mount getMount(final String path) {
+		Map<String, Mount> current = mounts;
+		if (current.isEmpty() || path == null || path.length() < 2) {
+			return null;
+		}
+		int end = path.indexOf('/', 1);
+		return current.get(end < 0 ? path + "/" : path.substring(0, end + 1));
+	}
+
+	/**
+	 * @param mount the mount to load.
+	 * @return the loaded root.
+	 */
+	private MockRoot load(final Mount mount) {
+		MockRoot root;
+		synchronized (mount) {
+			root = mount.root;
+			if (root != null) {
+				return root;
+			}
+			final long start = System.currentTimeMillis();
+			root = MockRoot.load(mount.prefix, mount.dir, classpathRoot);
+			mount.root = root;
+			loadedSize.addAndGet(root.getSize());
+			loads.incrementAndGet();
+			logger.info("Loaded mock root " + mount.prefix + " (" + root.getSize() + " bytes) in "
+					+ (System.currentTimeMillis() - start) + "ms");
+		}
+		enforceBudget(mount);
+		return root;
+	}
+
+	/**
+	 * Unloads the least recently used roots until the loaded roots fit in the budget.
+	 *
+	 * @param keep the mount that has just been loaded, which is not unloaded.
+	 */
+	private void enforceBudget(final Mount keep) {
+		while (budgetBytes > 0 && loadedSize.get() > budgetBytes) {
+			Mount oldest = null;
+			long oldestUse = Long.MAX_VALUE;
+			for (Mount mount : mounts.values()) {
+				MockRoot root = mount.root;
+				if (mount != keep && root != null && root.getLastUsed() < oldestUse) {
+					oldest = mount;
+					oldestUse = root.getLastUsed();
+				}
+			}
+			if (oldest == null || !unload(oldest)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Unloads the roots that have not been used for the idle period.
+	 *
+	 * @return the number of roots unloaded.
+	 */
+	public int unloadIdle() {
+		if (idleMillis <= 0) {
+			return 0;
+		}
+		long now = System.currentTimeMillis();
+		int unloaded = 0;
+		for (Mount mount : mounts.values()) {
+			MockRoot root = mount.root;
+			if (root != null && now - root.getLastUsed() >= idleMillis && unload(mount)) {
+				unloaded++;
+			}
+		}
+		return unloaded;
+	}
+
+	/**
+	 * @param prefix the path prefix of a root (e.g. /orders/), or null to unload every root.
+	 * @return the number of roots unloaded.
+	 */
+	public int unload(final String prefix) {
+		if (prefix != null) {
+			Mount mount = getMount(prefix);
+			return mount != null && unload(mount) ? 1 : 0;
+		}
+		int unloaded = 0;
+		for (Mount mount : mounts.values()) {
+			if (unload(mount)) {
+				unloaded++;
+			}
+		}
+		return unloaded;
+	}
+
+	/**
+	 * Unloads a root, discarding everything read from it and the responses cached for its paths.
+	 *
+	 * @param mount the mount to unload.
+	 * @return true if the root was loaded.
+	 */
+	private boolean unload(final Mount mount) {
+		MockRoot root;
+		synchronized (mount) {
+			root = mount.root;
+			if (root == null) {
+				return false;
+			}
+			mount.root = null;
+		}
+		loadedSize.addAndGet(-root.getSize());
+		unloads.incrementAndGet();
+		StaticResponse.clear(mount.prefix);
+		ResponseCache.clearRoutes(mount.prefix);
+		ResponseCoalescer.clearRoutes(mount.prefix);
+		logger.info("Unloaded mock root " + mount.prefix + " (" + root.getSize() + " bytes)");
+		return true;
+	}
+
+	/**
+	 * @return the mocks on the classpath.
+	 */
+	public MockRoot getClasspathRoot() {
+		return classpathRoot;
+	}
+
+	/**
+	 * @return the number of roots mounted.
+	 */
+	public int getMounted() {
+		return mounts.size();
+	}
+
+	/**
+	 * @return the estimated number of bytes held by the loaded roots.
+	 */
+	public long getLoadedSize() {
+		return loadedSize.get();
+	}
+
+	/**
+	 * @return the settings and counters of the roots, and the state of each loaded root (ordered by prefix).
+	 */
+	public Map<String, Object> describe() {
+		List<Map<String, Object>> loaded = new ArrayList<>();
+		for (Mount mount : new TreeMap<>(mounts).values()) {
+			MockRoot root = mount.root;
+			if (root != null) {
+				loaded.add(root.toMap());
+			}
+		}
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("directory", dir == null ? null : dir.getPath());
+		map.put("mounted", mounts.size());
+		map.put("idleMillis", idleMillis);
+		map.put("budget", budgetBytes);
+		map.put("loadedSize", loadedSize.get());
+		map.put("loads", loads.get());
+		map.put("unloads", unloads.get());
+		map.put("loaded", loaded);
+		return map;
+	}
+
+	/**
+	 * A mounted directory, and its root while it is loaded.
+	 */
+	private static final class Mount {
+		private final String prefix;
+		private final File dir;
+		private volatile MockRoot root;
+
+		Mount(final String prefix, final File dir) {
+			this.prefix = prefix;
+			this.dir = dir;
+		}
+	}
+}
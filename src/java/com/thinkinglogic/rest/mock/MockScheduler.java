@@ -0,0 +1,44 @@
+package com.thinkinglogic.rest.mock;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The scheduler shared by everything that needs to do something later without holding a request thread (e.g. sending
+ * the next event of a stream, or timing out a queued request). Tasks must be short, as there are only a few threads.
+ */
+public final class MockScheduler {
+
+	private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+	private MockScheduler() {
+	}
+
+	/**
+	 * @return the shared scheduler.
+	 */
+	public static ScheduledExecutorService get() {
+		return SCHEDULER;
+	}
+
+	/**
+	 * @return a scheduler with one (daemon) thread per two processors.
+	 */
+	private static ScheduledExecutorService createScheduler() {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				Thread thread = new Thread(runnable, "rest-mocker-scheduler-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.setRemoveOnCancelPolicy(true);
+		return scheduler;
+	}
+}
@@ -0,0 +1,219 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The compiled contents of a path.properties file, merged with the global defaults. A file is read and compiled once
+ * (and kept by its {@link MockRoot} until the root is unloaded or the index is rebuilt), and every request to the
+ * directories it governs shares the same immutable instance - so looking up a setting is a read from an unsynchronised
+ * map, and numeric and boolean values are parsed when the file is read rather than on every request.
+ * <p>
+ * Values that are not valid for numeric settings (e.g. fixed.delay=ten) are reported once, when the file is compiled,
+ * and the setting then takes its default value.
+ */
+public final class PathConfig {
+
+	private static final Logger logger = Logger.getLogger(PathConfig.class);
+
+	/** The settings whose values must be whole numbers. */
+	private static final Set<String> LONG_KEYS = new HashSet<>(Arrays.asList(ResponseBuilder.FIXED_DELAY,
+			ResponseBuilder.RANDOM_DELAY, ResponseBuilder.LATENCY_SERVERS, ResponseBuilder.LATENCY_MAX,
+			ResponseBuilder.STREAM_INTERVAL, ResponseBuilder.STREAM_RATE, ResponseBuilder.STREAM_COUNT,
+			ResponseBuilder.GENERATOR_COUNT_DEFAULT, ResponseBuilder.MAX_INFLIGHT, ResponseBuilder.MAX_QUEUE,
+			ResponseBuilder.QUEUE_TIMEOUT, ResponseBuilder.REJECT_STATUS, ResponseBuilder.REJECT_RETRY_AFTER,
+			ResponseBuilder.BULKHEAD_THREADS, ResponseBuilder.BULKHEAD_QUEUE, ResponseBuilder.RESPONSE_CACHE_SIZE,
+			ResponseBuilder.RESPONSE_CACHE_TTL));
+	/** The settings whose values must be numbers. */
+	private static final Set<String> DOUBLE_KEYS = new HashSet<>(Arrays.asList(ResponseBuilder.LATENCY_FACTOR));
+
+	private final String name;
+	private final Map<String, String> values;
+	private final Map<String, Long> longs;
+	private final Map<String, Double> doubles;
+	private final Set<String> trueKeys;
+	private final String[][] velocityTools;
+
+	private PathConfig(final String name, final Map<String, String> values) {
+		this.name = name;
+		this.values = Collections.unmodifiableMap(values);
+		Map<String, Long> longValues = new HashMap<>();
+		Map<String, Double> doubleValues = new HashMap<>();
+		Set<String> trueValues = new HashSet<>();
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			String key = entry.getKey();
+			String value = entry.getValue().trim();
+			if (Boolean.parseBoolean(value)) {
+				trueValues.add(key);
+			}
+			if (value.length() == 0) {
+				continue;
+			}
+			try {
+				longValues.put(key, Long.valueOf(value));
+			} catch (NumberFormatException e) {
+				if (LONG_KEYS.contains(key)) {
+					logger.error("Unable to parse " + key + " as a number in " + name + ": " + value);
+				}
+			}
+			try {
+				doubleValues.put(key, Double.valueOf(value));
+			} catch (NumberFormatException e) {
+				if (DOUBLE_KEYS.contains(key)) {
+					logger.error("Unable to parse " + key + " as a number in " + name + ": " + value);
+				}
+			}
+		}
+		this.longs = Collections.unmodifiableMap(longValues);
+		this.doubles = Collections.unmodifiableMap(doubleValues);
+		this.trueKeys = Collections.unmodifiableSet(trueValues);
+		this.velocityTools = parseTools(name, getProperty(ResponseBuilder.VELOCITY_TOOLS, ""));
+	}
+
+	/**
+	 * @param name the name of the file the properties were read from (used when reporting invalid values).
+	 * @param properties the properties.
+	 * @param defaults the settings used where the properties have no value (may be null).
+	 * @return the compiled settings.
+	 */
+	public static PathConfig compile(final String name, final Properties properties, final PathConfig defaults) {
+		Map<String, String> values = new HashMap<>();
+		if (defaults != null) {
+			values.putAll(defaults.values);
+		}
+		for (String key : properties.stringPropertyNames()) {
+			values.put(key, properties.getProperty(key));
+		}
+		return new PathConfig(name, values);
+	}
+
+	/**
+	 * Reads and compiles a path.properties file.
+	 *
+	 * @param index the index used to open the file.
+	 * @param name the name of the path.properties resource (may be null, in which case the defaults are returned).
+	 * @param defaults the settings used where the file has no value.
+	 * @return the compiled settings.
+	 */
+	public static PathConfig forResource(final ResourceIndex index, final String name, final PathConfig defaults) {
+		if (name == null) {
+			return defaults;
+		}
+		return compile(name, read(index, name), defaults);
+	}
+
+	/**
+	 * @param index the index used to open the file.
+	 * @param name the name of the resource.
+	 * @return the contents of the resource (empty if it cannot be read).
+	 */
+	private static Properties read(final ResourceIndex index, final String name) {
+		Properties properties = new Properties();
+		try (InputStream stream = index.open(name)) {
+			if (stream != null) {
+				properties.load(stream);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			logger.error("Unable to read " + name, e);
+		}
+		return properties;
+	}
+
+	/**
+	 * @param name the name of the file the tools were read from.
+	 * @param property the value of velocity.tools - a semi-colon separated list in the format name=class.
+	 * @return the name and class of each tool.
+	 */
+	private static String[][] parseTools(final String name, final String property) {
+		List<String[]> tools = new ArrayList<>();
+		for (String string : property.trim().split(";")) {
+			if (string.trim().length() == 0) {
+				continue;
+			}
+			String[] split = string.trim().split("=");
+			if (split.length == 2) {
+				tools.add(new String[] { split[0].trim(), split[1].trim() });
+			} else {
+				logger.error("Ignoring velocity tool in " + name + ", expected name=class: " + string);
+			}
+		}
+		return tools.toArray(new String[tools.size()][]);
+	}
+
+	/**
+	 * @param key the name of the setting.
+	 * @param defaultValue the value to return if the setting has no value.
+	 * @return the value of the setting.
+	 */
+	public String getProperty(final String key, final String defaultValue) {
+		String value = values.get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * @param key the name of the setting.
+	 * @return true if the setting has a value other than whitespace.
+	 */
+	public boolean isSet(final String key) {
+		String value = values.get(key);
+		return value != null && value.trim().length() > 0;
+	}
+
+	/**
+	 * @param key the name of the setting.
+	 * @return true if the value of the setting is 'true' (ignoring case).
+	 */
+	public boolean getBoolean(final String key) {
+		return trueKeys.contains(key);
+	}
+
+	/**
+	 * @param key the name of the setting.
+	 * @param defaultValue the value to return if the setting has no value, or its value is not a whole number.
+	 * @return the value of the setting.
+	 */
+	public long getLong(final String key, final long defaultValue) {
+		Long value = longs.get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * @param key the name of the setting.
+	 * @param defaultValue the value to return if the setting has no value, or its value is not a number.
+	 * @return the value of the setting.
+	 */
+	public double getDouble(final String key, final double defaultValue) {
+		Double value = doubles.get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * @return the name and class of each tool in velocity.tools.
+	 */
+	public String[][] getVelocityTools() {
+		return velocityTools.clone();
+	}
+
+	/**
+	 * @return the name of the file the settings were read from.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "path config " + name;
+	}
+}
@@ -0,0 +1,248 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads the body of a request without blocking, so that a client that sends a large body slowly does not hold a
+ * request thread for the whole upload. The request is put into asynchronous mode, and the body is read into pooled
+ * buffers as it arrives (on whichever container thread has data to hand); once it has all arrived it is stored as the
+ * request attribute {@link #BODY_ATTRIBUTE}, and the request is dispatched to the servlet again to be handled as
+ * usual. Nothing is routed until the whole body has arrived, as templates and the journal may refer to any of it.
+ * <p>
+ * The body is decoded with the character encoding of the request, or ISO-8859-1 if it has none (as
+ * {@link HttpServletRequest#getReader()} does). Specify -D{@link #ENABLED_PROPERTY}=false to read bodies with a
+ * blocking reader instead.
+ */
+public class RequestBodyReader implements ReadListener {
+
+	private static final Logger logger = Logger.getLogger(RequestBodyReader.class);
+
+	/** The name of the system property that can be set to false to read request bodies with a blocking reader. */
+	public static final String ENABLED_PROPERTY = "rest-mocker.body.async";
+
+	/** The name of the request attribute that holds the body, once it has been read. */
+	public static final String BODY_ATTRIBUTE = RequestBodyReader.class.getName() + ".body";
+
+	/** The name of the request attribute that holds the time the request was received (see System.nanoTime()). */
+	public static final String START_ATTRIBUTE = RequestBodyReader.class.getName() + ".start";
+
+	private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+
+	/** The size of each pooled buffer. */
+	static final int BUFFER_SIZE = 8192;
+	/** The maximum number of buffers kept in the pool, between requests. */
+	private static final int MAX_POOLED = 256;
+
+	private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger POOLED = new AtomicInteger();
+
+	private final AsyncContext context;
+	private final ServletInputStream input;
+	private final Charset charset;
+	private final long start;
+	private final List<byte[]> buffers = new ArrayList<>();
+	private int position = BUFFER_SIZE;
+	private int length;
+
+	/**
+	 * @param context the asynchronous context of the request.
+	 * @param input the input stream of the request.
+	 * @param charset the character encoding of the body.
+	 * @param start the time the request was received (see {@link System#nanoTime()}).
+	 */
+	protected RequestBodyReader(final AsyncContext context, final ServletInputStream input, final Charset charset,
+			final long start) {
+		this.context = context;
+		this.input = input;
+		this.charset = charset;
+		this.start = start;
+	}
+
+	/**
+	 * Starts reading the body of a request without blocking, if the request has a body that has not been read yet and
+	 * asynchronous processing is enabled for it.
+	 *
+	 * @param request the current request.
+	 * @param response the current response.
+	 * @param start the time the request was received (see {@link System#nanoTime()}).
+	 * @return true if the body is being read, in which case the request is dispatched again once it has been read, and
+	 *         the caller should return without handling it.
+	 */
+	public static boolean start(final HttpServletRequest request, final HttpServletResponse response,
+			final long start) {
+		String method = request.getMethod();
+		if (!ENABLED || !(RestServlet.PUT.equalsIgnoreCase(method) || RestServlet.POST.equalsIgnoreCase(method))
+				|| request.getContentLength() == 0 || request.getDispatcherType() != DispatcherType.REQUEST
+				|| !request.isAsyncSupported() || request.isAsyncStarted()) {
+			return false;
+		}
+		ServletInputStream input;
+		try {
+			input = request.getInputStream();
+		} catch (IOException | IllegalStateException e) {
+			logger.warn("Unable to read the body of request " + request + " asynchronously: " + e);
+			return false;
+		}
+		AsyncContext context = request.startAsync(request, response);
+		context.setTimeout(0);
+		input.setReadListener(new RequestBodyReader(context, input, getCharset(request), start));
+		return true;
+	}
+
+	/**
+	 * @param request the current request.
+	 * @return the body of the request, if it has been read by a RequestBodyReader, otherwise null.
+	 */
+	public static String getBody(final HttpServletRequest request) {
+		return (String) request.getAttribute(BODY_ATTRIBUTE);
+	}
+
+	/**
+	 * @param request the current request.
+	 * @param now the current time (see {@link System#nanoTime()}).
+	 * @return the time the request was received, if its body has been read by a RequestBodyReader, otherwise now.
+	 */
+	public static long getStart(final HttpServletRequest request, final long now) {
+		Object start = request.getAttribute(START_ATTRIBUTE);
+		return start instanceof Long ? (Long) start : now;
+	}
+
+	/**
+	 * @param request the current request.
+	 * @return the character encoding of the request, or ISO-8859-1 if it has none (or it is not supported).
+	 */
+	protected static Charset getCharset(final HttpServletRequest request) {
+		String encoding = request.getCharacterEncoding();
+		if (encoding != null) {
+			try {
+				return Charset.forName(encoding);
+			} catch (IllegalArgumentException e) {
+				logger.warn("Unsupported character encoding " + encoding + ", reading the body as ISO-8859-1");
+			}
+		}
+		return StandardCharsets.ISO_8859_1;
+	}
+
+	@Override
+	public void onDataAvailable() throws IOException {
+		while (input.isReady()) {
+			if (position == BUFFER_SIZE) {
+				buffers.add(take());
+				position = 0;
+			}
+			int read = input.read(buffers.get(buffers.size() - 1), position, BUFFER_SIZE - position);
+			if (read < 0) {
+				// onAllDataRead follows
+				return;
+			}
+			position += read;
+			length += read;
+		}
+	}
+
+	@Override
+	public void onAllDataRead() {
+		String body = toString();
+		release();
+		HttpServletRequest request = (HttpServletRequest) context.getRequest();
+		request.setAttribute(BODY_ATTRIBUTE, body);
+		request.setAttribute(START_ATTRIBUTE, start);
+		context.dispatch();
+	}
+
+	@Override
+	public void onError(final Throwable t) {
+		release();
+		logger.error("Unable to read body of request: " + context.getRequest(), t);
+		try {
+			HttpServletResponse response = (HttpServletResponse) context.getResponse();
+			if (!response.isCommitted()) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			}
+		} catch (IOException | IllegalStateException e) {
+			logger.debug("Unable to send an error response: " + e);
+		} finally {
+			try {
+				context.complete();
+			} catch (IllegalStateException e) {
+				logger.debug("Unable to complete request: " + e);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes read so far.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the bytes read so far, decoded.
+	 */
+	@Override
+	public String toString() {
+		if (buffers.size() == 1) {
+			return new String(buffers.get(0), 0, length, charset);
+		}
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		for (byte[] buffer : buffers) {
+			int count = Math.min(BUFFER_SIZE, length - offset);
+			System.arraycopy(buffer, 0, bytes, offset, count);
+			offset += count;
+		}
+		return new String(bytes, charset);
+	}
+
+	/**
+	 * Returns the buffers to the pool.
+	 */
+	protected void release() {
+		for (byte[] buffer : buffers) {
+			if (POOLED.incrementAndGet() <= MAX_POOLED) {
+				POOL.offer(buffer);
+			} else {
+				POOLED.decrementAndGet();
+			}
+		}
+		buffers.clear();
+		position = BUFFER_SIZE;
+		length = 0;
+	}
+
+	/**
+	 * @return a buffer from the pool, or a new one if the pool is empty.
+	 */
+	private static byte[] take() {
+		byte[] buffer = POOL.poll();
+		if (buffer == null) {
+			return new byte[BUFFER_SIZE];
+		}
+		POOLED.decrementAndGet();
+		return buffer;
+	}
+
+	/**
+	 * @return the number of buffers in the pool.
+	 */
+	static int getPooled() {
+		return POOLED.get();
+	}
+}
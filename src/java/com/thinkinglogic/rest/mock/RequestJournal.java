@@ -0,0 +1,394 @@
+package com.thinkinglogic.rest.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free record of the most recent requests received. Entries are written into a fixed size ring buffer,
+ * so once the journal is full each new request overwrites the oldest entry and memory use stays constant.
+ * <p>
+ * The journal is served by the (unauthenticated) admin requests, so the values of headers that carry credentials are
+ * replaced with {@link #REDACTED} before they are recorded - see {@link #REDACT_PROPERTY}.
+ */
+public class RequestJournal {
+
+	/** The name of the system property that specifies how many requests are kept in the journal (0 disables it). */
+	public static final String SIZE_PROPERTY = "rest-mocker.journal.size";
+
+	/** The name of the system property that specifies the maximum number of characters of each body to keep. */
+	public static final String BODY_LENGTH_PROPERTY = "rest-mocker.journal.body.length";
+
+	/**
+	 * The name of the system property that specifies the headers whose values are not recorded, as a semi-colon
+	 * separated list (empty to record every header as it is).
+	 */
+	public static final String REDACT_PROPERTY = "rest-mocker.journal.redact";
+
+	/** The value recorded in place of the value of a redacted header. */
+	public static final String REDACTED = "[redacted]";
+
+	/** The headers that are redacted by default. */
+	public static final String DEFAULT_REDACTED_HEADERS = "Authorization;Proxy-Authorization;Cookie;Set-Cookie;"
+			+ "X-Api-Key;X-Auth-Token";
+
+	private static final int DEFAULT_SIZE = 1000;
+	private static final int DEFAULT_BODY_LENGTH = 1024;
+	private static final String TRUNCATED = "...";
+
+	private static final Comparator<Entry> BY_SEQUENCE = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			return Long.compare(e1.getSequence(), e2.getSequence());
+		}
+	};
+
+	private final AtomicReferenceArray<Entry> entries;
+	private final AtomicLong sequence = new AtomicLong();
+	private final int maxBodyLength;
+	private final Set<String> redactedHeaders;
+
+	/**
+	 * @param size the maximum number of requests to keep.
+	 * @param maxBodyLength the maximum number of characters of each request body to keep.
+	 */
+	public RequestJournal(final int size, final int maxBodyLength) {
+		this(size, maxBodyLength, DEFAULT_REDACTED_HEADERS);
+	}
+
+	/**
+	 * @param size the maximum number of requests to keep.
+	 * @param maxBodyLength the maximum number of characters of each request body to keep.
+	 * @param redactedHeaders a semi-colon separated list of the headers whose values are not recorded.
+	 */
+	public RequestJournal(final int size, final int maxBodyLength, final String redactedHeaders) {
+		this.entries = new AtomicReferenceArray<>(Math.max(size, 0));
+		this.maxBodyLength = Math.max(maxBodyLength, 0);
+		Set<String> redacted = new HashSet<>();
+		for (String header : redactedHeaders.split(";")) {
+			if (header.trim().length() > 0) {
+				redacted.add(header.trim().toLowerCase(Locale.ENGLISH));
+			}
+		}
+		this.redactedHeaders = Collections.unmodifiableSet(redacted);
+	}
+
+	/**
+	 * @return a new RequestJournal sized according to the {@link #SIZE_PROPERTY} and {@link #BODY_LENGTH_PROPERTY}
+	 *         system properties, that redacts the headers listed by {@link #REDACT_PROPERTY}.
+	 */
+	public static RequestJournal fromSystemProperties() {
+		return new RequestJournal(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE), Integer.getInteger(
+				BODY_LENGTH_PROPERTY, DEFAULT_BODY_LENGTH), System.getProperty(REDACT_PROPERTY,
+				DEFAULT_REDACTED_HEADERS));
+	}
+
+	/**
+	 * @return true if the journal keeps any requests.
+	 */
+	public boolean isEnabled() {
+		return entries.length() > 0;
+	}
+
+	/**
+	 * Records a request in the journal, overwriting the oldest entry if the journal is full.
+	 *
+	 * @param method the request method.
+	 * @param path the request path.
+	 * @param queryString the query string (may be null).
+	 * @param route the resource path and file name the request was resolved to.
+	 * @param headers the request headers.
+	 * @param body the request body.
+	 * @param durationNanos the time taken to handle the request, in nanoseconds.
+	 */
+	public void record(final String method, final String path, final String queryString, final String route,
+			final Map<String, String> headers, final String body, final long durationNanos) {
+		record(method, path, queryString, route, headers, body, durationNanos, null);
+	}
+
+	/**
+	 * Records a request in the journal, overwriting the oldest entry if the journal is full.
+	 *
+	 * @param method the request method.
+	 * @param path the request path.
+	 * @param queryString the query string (may be null).
+	 * @param route the resource path and file name the request was resolved to.
+	 * @param headers the request headers.
+	 * @param body the request body.
+	 * @param durationNanos the time taken to handle the request, in nanoseconds.
+	 * @param timings the time taken by each phase of handling the request, in nanoseconds (null if not timed).
+	 */
+	public void record(final String method, final String path, final String queryString, final String route,
+			final Map<String, String> headers, final String body, final long durationNanos,
+			final Map<String, Long> timings) {
+		if (!isEnabled()) {
+			return;
+		}
+		store(new Entry(sequence.getAndIncrement(), System.currentTimeMillis(), method, path, queryString, route,
+				redact(headers), truncate(body), durationNanos, timings));
+	}
+
+	/**
+	 * Writes an entry into its slot of the ring buffer, unless a later entry has already been written there (by a
+	 * request that started after this one, but finished first).
+	 *
+	 * @param entry the entry to write.
+	 * @return true if the entry was written.
+	 */
+	protected boolean store(final Entry entry) {
+		int slot = (int) (entry.getSequence() % entries.length());
+		while (true) {
+			Entry existing = entries.get(slot);
+			if (existing != null && existing.getSequence() > entry.getSequence()) {
+				return false;
+			}
+			if (entries.compareAndSet(slot, existing, entry)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @param filter the filter to apply.
+	 * @return all entries matching the filter, oldest first.
+	 */
+	public List<Entry> find(final Filter filter) {
+		List<Entry> found = new ArrayList<>();
+		for (int i = 0; i < entries.length(); i++) {
+			Entry entry = entries.get(i);
+			if (entry != null && filter.matches(entry)) {
+				found.add(entry);
+			}
+		}
+		Collections.sort(found, BY_SEQUENCE);
+		return found;
+	}
+
+	/**
+	 * @param filter the filter to apply.
+	 * @return the number of entries matching the filter.
+	 */
+	public int count(final Filter filter) {
+		int count = 0;
+		for (int i = 0; i < entries.length(); i++) {
+			Entry entry = entries.get(i);
+			if (entry != null && filter.matches(entry)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Removes all entries matching the filter. Entries recorded concurrently are never removed.
+	 *
+	 * @param filter the filter to apply.
+	 * @return the number of entries removed.
+	 */
+	public int clear(final Filter filter) {
+		int count = 0;
+		for (int i = 0; i < entries.length(); i++) {
+			Entry entry = entries.get(i);
+			if (entry != null && filter.matches(entry) && entries.compareAndSet(i, entry, null)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param headers the request headers.
+	 * @return the headers, with the values of redacted headers replaced by {@link #REDACTED} (copied only if any are).
+	 */
+	protected Map<String, String> redact(final Map<String, String> headers) {
+		Map<String, String> redacted = headers;
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			if (redactedHeaders.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+				if (redacted == headers) {
+					redacted = new LinkedHashMap<>(headers);
+				}
+				redacted.put(header.getKey(), REDACTED);
+			}
+		}
+		return redacted;
+	}
+
+	/**
+	 * @param body the body to truncate.
+	 * @return the body, truncated to maxBodyLength characters.
+	 */
+	protected String truncate(final String body) {
+		if (body == null || body.length() <= maxBodyLength) {
+			return body;
+		}
+		return body.substring(0, maxBodyLength) + TRUNCATED;
+	}
+
+	/**
+	 * An immutable record of a single request.
+	 */
+	public static final class Entry {
+
+		private final long sequence;
+		private final long timestamp;
+		private final String method;
+		private final String path;
+		private final String queryString;
+		private final String route;
+		private final Map<String, String> headers;
+		private final String body;
+		private final long durationNanos;
+		private final Map<String, Long> timings;
+
+		Entry(long sequence, long timestamp, String method, String path, String queryString, String route,
+				Map<String, String> headers, String body, long durationNanos, Map<String, Long> timings) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.method = method;
+			this.path = path;
+			this.queryString = queryString;
+			this.route = route;
+			this.headers = Collections.unmodifiableMap(headers);
+			this.body = body;
+			this.durationNanos = durationNanos;
+			this.timings = timings;
+		}
+
+		/**
+		 * @return the entry as a map, suitable for conversion to json.
+		 */
+		public Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("sequence", sequence);
+			map.put("timestamp", timestamp);
+			map.put("method", method);
+			map.put("path", path);
+			map.put("queryString", queryString);
+			map.put("route", route);
+			map.put("headers", headers);
+			map.put("body", body);
+			map.put("durationMillis", TimeUnit.NANOSECONDS.toMillis(durationNanos));
+			map.put("durationNanos", durationNanos);
+			if (timings != null) {
+				map.put("timingNanos", timings);
+			}
+			return map;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public String getQueryString() {
+			return queryString;
+		}
+
+		public String getRoute() {
+			return route;
+		}
+
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		public String getBody() {
+			return body;
+		}
+
+		/**
+		 * @return the time taken by each phase of handling the request, in nanoseconds (null if it was not timed).
+		 */
+		public Map<String, Long> getTimings() {
+			return timings;
+		}
+
+		public long getDurationNanos() {
+			return durationNanos;
+		}
+	}
+
+	/**
+	 * Selects journal entries by method, path and/or header. Any criterion left null matches every entry.
+	 */
+	public static final class Filter {
+
+		private final String method;
+		private final String path;
+		private final String headerName;
+		private final String headerValue;
+
+		/**
+		 * @param method the request method to match (case insensitive), or null.
+		 * @param path the request path to match, or null. A path ending with '*' matches any path with that prefix.
+		 * @param header the header to match in 'name:value' format, or just 'name' to match any value. May be null.
+		 */
+		public Filter(final String method, final String path, final String header) {
+			this.method = method;
+			this.path = path;
+			if (header == null) {
+				this.headerName = null;
+				this.headerValue = null;
+			} else if (header.indexOf(':') < 0) {
+				this.headerName = header.trim();
+				this.headerValue = null;
+			} else {
+				this.headerName = header.substring(0, header.indexOf(':')).trim();
+				this.headerValue = header.substring(header.indexOf(':') + 1).trim();
+			}
+		}
+
+		/**
+		 * @param entry the entry to test.
+		 * @return true if the entry matches all criteria of this filter.
+		 */
+		public boolean matches(final Entry entry) {
+			if (method != null && !method.equalsIgnoreCase(entry.getMethod())) {
+				return false;
+			}
+			if (path != null) {
+				String entryPath = entry.getPath() == null ? "" : entry.getPath();
+				if (path.endsWith("*")) {
+					if (!entryPath.startsWith(path.substring(0, path.length() - 1))) {
+						return false;
+					}
+				} else if (!path.equals(entryPath)) {
+					return false;
+				}
+			}
+			if (headerName != null) {
+				String value = null;
+				for (Map.Entry<String, String> header : entry.getHeaders().entrySet()) {
+					if (header.getKey().equalsIgnoreCase(headerName)) {
+						value = header.getValue();
+						break;
+					}
+				}
+				if (value == null || (headerValue != null && !headerValue.equals(value))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package com.thinkinglogic.rest.mock;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The time spent in each phase of handling a request, measured with {@link System#nanoTime()}. Each phase is timed
+ * from the end of the previous one, so the phases add up to the total. Timing is opt-in - it is enabled for every
+ * request by the system property {@link #ENABLED_PROPERTY}, or for a single request by sending the request header
+ * {@link #HEADER} - and when it is not enabled the shared {@link #DISABLED} instance is used, which records nothing.
+ * <p>
+ * The timings are sent in the {@link #HEADER} response header (in nanoseconds, e.g. 'read=1200, type=300, ...,
+ * total=52000'). As the header has to be set before the body is written, it does not include the write phase - the
+ * timings recorded in the journal (and logged) do.
+ */
+public class RequestTimings {
+
+	/** The name of the system property that can be set to true to time every request. */
+	public static final String ENABLED_PROPERTY = "rest-mocker.timing";
+
+	/** The name of the request header that enables timing for a request, and of the response header. */
+	public static final String HEADER = "X-Mock-Timing";
+
+	private static final boolean ALWAYS_ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+	/** Records nothing. */
+	public static final RequestTimings DISABLED = new RequestTimings(0) {
+		@Override
+		public void end(final Phase phase) {
+			// not timing
+		}
+	};
+
+	/** The phases of handling a request, in the order they happen. */
+	public static enum Phase {
+		/** Reading the request: query parameters, headers and body. */
+		READ("read"),
+		/** Detecting the content type of the request body (and parsing it, if it is xml). */
+		CONTENT_TYPE("type"),
+		/** Matching runtime mocks, path parameters and the directory for the request. */
+		PATH("path"),
+		/** Selecting the file for the request. */
+		FILE("file"),
+		/** Waiting for a bulkhead thread or a permit, if the path limits the number of concurrent requests. */
+		QUEUE("queue"),
+		/** The injected delay (fixed.delay, random.delay and latency.model). */
+		DELAY("delay"),
+		/** Loading the status, headers and body, and rendering any templates. */
+		RENDER("render"),
+		/** Writing the response. */
+		WRITE("write");
+
+		private final String label;
+
+		private Phase(final String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+
+	private final long start;
+	private final long[] phases = new long[Phase.values().length];
+	private long last;
+
+	/**
+	 * @param start the time the request was received (see {@link System#nanoTime()}).
+	 */
+	protected RequestTimings(final long start) {
+		this.start = start;
+		this.last = start;
+	}
+
+	/**
+	 * @param request the current request.
+	 * @param start the time the request was received (see {@link System#nanoTime()}).
+	 * @return new timings, or {@link #DISABLED} if timing is not enabled for the request.
+	 */
+	public static RequestTimings start(final HttpServletRequest request, final long start) {
+		if (ALWAYS_ENABLED || request.getHeader(HEADER) != null) {
+			return new RequestTimings(start);
+		}
+		return DISABLED;
+	}
+
+	/**
+	 * @return true if the timings are being recorded.
+	 */
+	public boolean isEnabled() {
+		return this != DISABLED;
+	}
+
+	/**
+	 * Records the end of a phase, which started when the previous phase ended. A phase may be ended more than once, in
+	 * which case the times are added together.
+	 *
+	 * @param phase the phase that has ended.
+	 */
+	public void end(final Phase phase) {
+		long now = System.nanoTime();
+		phases[phase.ordinal()] += now - last;
+		last = now;
+	}
+
+	/**
+	 * @param phase a phase.
+	 * @return the time spent in the phase, in nanoseconds.
+	 */
+	public long get(final Phase phase) {
+		return phases[phase.ordinal()];
+	}
+
+	/**
+	 * @return the time from the start of the request to the end of the last phase, in nanoseconds.
+	 */
+	public long getTotal() {
+		return last - start;
+	}
+
+	/**
+	 * @return the timings in the format of the response header, excluding the write phase.
+	 */
+	public String toHeader() {
+		StringBuilder builder = new StringBuilder(128);
+		for (Phase phase : Phase.values()) {
+			if (phase != Phase.WRITE) {
+				builder.append(phase).append('=').append(phases[phase.ordinal()]).append(", ");
+			}
+		}
+		return builder.append("total=").append(getTotal()).toString();
+	}
+
+	/**
+	 * @return the time spent in each phase, and the total (in nanoseconds), or null if timing is not enabled.
+	 */
+	public Map<String, Long> toMap() {
+		if (!isEnabled()) {
+			return null;
+		}
+		Map<String, Long> map = new LinkedHashMap<>();
+		for (Phase phase : Phase.values()) {
+			map.put(phase.toString(), phases[phase.ordinal()]);
+		}
+		map.put("total", getTotal());
+		return Collections.unmodifiableMap(map);
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(toMap());
+	}
+}
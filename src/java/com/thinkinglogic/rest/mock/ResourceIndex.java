@@ -0,0 +1,495 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An in-memory index of the resources available on the classpath, built once by scanning every directory (or jar) on
+ * the classpath that contains default.path.properties. Checking whether a resource exists is then a hash lookup,
+ * rather than a (possibly expensive) classpath search - which matters because most of the lookups made when resolving
+ * a request are for files that do not exist, and their names are built from the request path.
+ * <p>
+ * If no location of default.path.properties can be scanned, or the system property {@link #ENABLED_PROPERTY} is false,
+ * then the index is unavailable and every lookup falls back to searching the classpath.
+ * <p>
+ * A resource that is not in the index is treated as absent. If the system property {@link #FALLBACK_PROPERTY} is true,
+ * then a lookup that misses the index searches the classpath instead (for mocks in a jar without a
+ * default.path.properties), and the answers for the {@link #MAX_REMEMBERED} most recently used names are remembered.
+ * <p>
+ * An index can also be built of a directory outside the classpath (see {@link MockRoot}), in which case every resource
+ * name starts with the path prefix the directory is mounted at, and resources are read from the directory. Resources
+ * outside the prefix (e.g. the default.status and default.headers at the top of the classpath, which are found by
+ * walking up from a path in the directory) are looked up in the parent index.
+ */
+public class ResourceIndex {
+
+	private static final Logger logger = Logger.getLogger(ResourceIndex.class);
+
+	/** The name of the system property that can be set to false to disable the index. */
+	public static final String ENABLED_PROPERTY = "rest-mocker.index";
+
+	private static final String[] NO_VARIANTS = new String[0];
+	private static final String BODY_SUFFIX = "." + ResponseBuilder.BODY_FILETYPE;
+	private static final String DEFAULT_BODY = ResponseBuilder.DEFAULT_FILE_NAME + BODY_SUFFIX;
+
+	/**
+	 * The name of the system property that can be set to true to search the classpath for resources that are not in
+	 * the index.
+	 */
+	public static final String FALLBACK_PROPERTY = "rest-mocker.index.fallback";
+
+	/** The maximum number of names missing from the index whose classpath lookup is remembered. */
+	static final int MAX_REMEMBERED = 10000;
+
+	private final Set<String> resources;
+	/** The directory the resources are read from, or null if they are read from the classpath. */
+	private final File dir;
+	/** The path prefix of every resource in the index (starting and ending with "/"). */
+	private final String prefix;
+	/** The index that resources outside the prefix are looked up in (null if there is none). */
+	private final ResourceIndex parent;
+	/**
+	 * Whether each recently looked up name missing from the index was found on the classpath, or null if names
+	 * missing from the index are absent.
+	 */
+	private final Map<String, Boolean> classpathLookups;
+	/** The names of the sub-directories of each directory that contain a default body or path.properties. */
+	private final Map<String, String[]> directoryVariants;
+	/** The names (without extension) of the body files in each directory. */
+	private final Map<String, String[]> fileVariants;
+
+	/**
+	 * @param resources the names of all indexed resources (each starting with "/"), or null if the index is
+	 *            unavailable.
+	 */
+	protected ResourceIndex(final Set<String> resources) {
+		this(resources, null, "/", null);
+	}
+
+	/**
+	 * @param resources the names of all indexed resources (each starting with the prefix), or null if the index is
+	 *            unavailable.
+	 * @param directory the directory the resources are read from, or null if they are read from the classpath.
+	 * @param prefix the path prefix of every resource (starting and ending with "/").
+	 * @param parent the index that resources outside the prefix are looked up in (may be null).
+	 */
+	protected ResourceIndex(final Set<String> resources, final File directory, final String prefix,
+			final ResourceIndex parent) {
+		this.resources = resources;
+		this.dir = directory;
+		this.prefix = prefix;
+		this.parent = parent;
+		this.classpathLookups = directory == null && Boolean.getBoolean(FALLBACK_PROPERTY) ? Collections
+				.synchronizedMap(new RecentLookups()) : null;
+		Map<String, Set<String>> directories = new HashMap<>();
+		Map<String, Set<String>> files = new HashMap<>();
+		if (resources != null) {
+			for (String resource : resources) {
+				int slash = resource.lastIndexOf('/');
+				String dir = resource.substring(0, slash + 1);
+				String file = resource.substring(slash + 1);
+				if (file.equals(DEFAULT_BODY) || file.equals(ResponseBuilder.PATH_PROPERTIES_FILE)) {
+					int parentSlash = dir.lastIndexOf('/', dir.length() - 2);
+					if (parentSlash >= 0) {
+						addVariant(directories, dir.substring(0, parentSlash + 1), dir.substring(parentSlash + 1,
+								dir.length() - 1));
+					}
+				} else if (file.endsWith(BODY_SUFFIX)) {
+					addVariant(files, dir, file.substring(0, file.length() - BODY_SUFFIX.length()));
+				}
+			}
+		}
+		this.directoryVariants = toArrays(directories);
+		this.fileVariants = toArrays(files);
+	}
+
+	private static void addVariant(final Map<String, Set<String>> variants, final String dir, final String name) {
+		Set<String> names = variants.get(dir);
+		if (names == null) {
+			names = new TreeSet<>();
+			variants.put(dir, names);
+		}
+		names.add(name);
+	}
+
+	private static Map<String, String[]> toArrays(final Map<String, Set<String>> variants) {
+		Map<String, String[]> arrays = new HashMap<>();
+		for (Map.Entry<String, Set<String>> entry : variants.entrySet()) {
+			arrays.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+		}
+		return arrays;
+	}
+
+	/**
+	 * Builds an index of every directory or jar on the classpath containing the specified resource.
+	 *
+	 * @param rootResource the name of a resource (starting with "/") in the root of each tree to index.
+	 * @return a new ResourceIndex - which will be unavailable if no tree could be scanned.
+	 */
+	public static ResourceIndex build(final String rootResource) {
+		if (!Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"))) {
+			logger.info("Resource index disabled, all resources will be looked up on the classpath");
+			return new ResourceIndex(null);
+		}
+		final long start = System.currentTimeMillis();
+		List<URL> urls;
+		try {
+			urls = Collections.list(ResourceIndex.class.getClassLoader().getResources(rootResource.substring(1)));
+		} catch (IOException e) {
+			logger.error("Unable to find " + rootResource + " on the classpath, resources will not be indexed", e);
+			return new ResourceIndex(null);
+		}
+		if (urls.isEmpty()) {
+			logger.error("Unable to find " + rootResource + " on the classpath, resources will not be indexed");
+			return new ResourceIndex(null);
+		}
+		Set<String> resources = new HashSet<>();
+		for (URL url : urls) {
+			try {
+				if ("file".equals(url.getProtocol())) {
+					resources.addAll(scanDirectory(new File(url.toURI()).getParentFile()));
+				} else if ("jar".equals(url.getProtocol())) {
+					resources.addAll(scanJar(url, rootResource));
+				} else {
+					logger.warn("Unable to index resources at " + url
+							+ ", resources will be looked up on the classpath");
+					return new ResourceIndex(null);
+				}
+			} catch (IOException | URISyntaxException | RuntimeException e) {
+				logger.error("Unable to index resources at " + url
+						+ ", resources will be looked up on the classpath", e);
+				return new ResourceIndex(null);
+			}
+		}
+		logger.info("Indexed " + resources.size() + " resources at " + urls + " in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		return new ResourceIndex(Collections.unmodifiableSet(resources));
+	}
+
+	/**
+	 * Builds an index of a directory outside the classpath, mounted at a path prefix - so that e.g. the file
+	 * orders/default.body in a directory mounted at /orders/ is the resource /orders/orders/default.body.
+	 *
+	 * @param dir the directory to index.
+	 * @param prefix the path prefix the directory is mounted at (starting and ending with "/").
+	 * @param parent the index that resources outside the prefix are looked up in (may be null).
+	 * @return a new ResourceIndex - which will be unavailable (so that every lookup checks the directory) if the
+	 *         directory could not be scanned.
+	 */
+	public static ResourceIndex build(final File dir, final String prefix, final ResourceIndex parent) {
+		if (!Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"))) {
+			return new ResourceIndex(null, dir, prefix, parent);
+		}
+		final long start = System.currentTimeMillis();
+		if (!dir.isDirectory()) {
+			logger.error("Unable to index " + dir + ", it is not a directory");
+			return new ResourceIndex(null, dir, prefix, parent);
+		}
+		Set<String> resources = new HashSet<>();
+		for (String resource : scanDirectory(dir)) {
+			resources.add(prefix + resource.substring(1));
+		}
+		logger.info("Indexed " + resources.size() + " resources at " + dir + " (mounted at " + prefix + ") in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		return new ResourceIndex(Collections.unmodifiableSet(resources), dir, prefix, parent);
+	}
+
+	/**
+	 * Scans the specified directory (and all sub-directories) in parallel.
+	 *
+	 * @param root the directory to scan.
+	 * @return the names of all files found, relative to the root.
+	 */
+	protected static Set<String> scanDirectory(final File root) {
+		Set<String> resources = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			pool.invoke(new DirectoryScan(root, "/", resources));
+		} finally {
+			pool.shutdown();
+		}
+		return resources;
+	}
+
+	/**
+	 * Scans the entries of the jar containing the specified url.
+	 *
+	 * @param url the url of the root resource, within a jar.
+	 * @param rootResource the name of the root resource.
+	 * @return the names of all entries found beneath the directory containing the root resource, relative to that
+	 *         directory.
+	 * @throws IOException if the jar cannot be read.
+	 */
+	protected static Set<String> scanJar(final URL url, final String rootResource) throws IOException {
+		Set<String> resources = new HashSet<>();
+		URLConnection connection = url.openConnection();
+		connection.setUseCaches(false);
+		String entryName = ((JarURLConnection) connection).getEntryName();
+		String prefix = entryName.substring(0, entryName.length() - rootResource.length() + 1);
+		try (JarFile jar = ((JarURLConnection) connection).getJarFile()) {
+			Enumeration<JarEntry> entries = jar.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				if (!entry.isDirectory() && entry.getName().startsWith(prefix)) {
+					resources.add("/" + entry.getName().substring(prefix.length()));
+				}
+			}
+		}
+		return resources;
+	}
+
+	/**
+	 * @return true if the index was built, false if all lookups fall back to the classpath.
+	 */
+	public boolean isAvailable() {
+		return resources != null;
+	}
+
+	/**
+	 * @return the number of resources indexed.
+	 */
+	public int size() {
+		return resources == null ? 0 : resources.size();
+	}
+
+	/**
+	 * @param name the name of the resource (starting with "/").
+	 * @return true if the resource exists.
+	 */
+	public boolean exists(final String name) {
+		if (isParentResource(name)) {
+			return parent.exists(name);
+		}
+		if (resources == null) {
+			if (dir != null) {
+				File file = toFile(name);
+				return file != null && file.isFile();
+			}
+			return ResourceIndex.class.getResource(name) != null;
+		}
+		String normalised = normalise(name);
+		return resources.contains(normalised) || isOnClasspath(normalised);
+	}
+
+	/**
+	 * @param name the name of the resource (starting with "/").
+	 * @return an InputStream to read the resource, or null if it does not exist.
+	 */
+	public InputStream open(final String name) {
+		if (isParentResource(name)) {
+			return parent.open(name);
+		}
+		String normalised = normalise(name);
+		if (resources != null && !resources.contains(normalised) && !isOnClasspath(normalised)) {
+			return null;
+		}
+		if (dir != null) {
+			File file = toFile(name);
+			try {
+				return file == null ? null : new FileInputStream(file);
+			} catch (FileNotFoundException e) {
+				logger.debug("Unable to open " + file + ": " + e);
+				return null;
+			}
+		}
+		return ResourceIndex.class.getResourceAsStream(normalised);
+	}
+
+	/**
+	 * Searches the classpath for a resource that is not in the index (if {@link #FALLBACK_PROPERTY} is true),
+	 * remembering the answer.
+	 *
+	 * @param name the (normalised) name of the resource.
+	 * @return true if the resource is on the classpath, false if it is not or the classpath is not searched.
+	 */
+	private boolean isOnClasspath(final String name) {
+		if (classpathLookups == null) {
+			return false;
+		}
+		Boolean found = classpathLookups.get(name);
+		if (found == null) {
+			found = ResourceIndex.class.getResource(name) != null;
+			if (found) {
+				logger.info("Found " + name + " on the classpath, outside the indexed tree");
+			}
+			classpathLookups.put(name, found);
+		}
+		return found;
+	}
+
+	/**
+	 * @param name the name of a resource.
+	 * @return true if the resource is outside the prefix, and should be looked up in the parent index.
+	 */
+	private boolean isParentResource(final String name) {
+		return parent != null && !normalise(name).startsWith(prefix);
+	}
+
+	/**
+	 * @param name the name of a resource (starting with the prefix).
+	 * @return the file in the directory that holds the resource, or null if the name is not beneath the prefix.
+	 */
+	protected File toFile(final String name) {
+		String normalised = normalise(name);
+		if (!normalised.startsWith(prefix) || normalised.contains("/../")) {
+			return null;
+		}
+		return new File(dir, normalised.substring(prefix.length()));
+	}
+
+	/**
+	 * @return the directory the resources are read from, or null if they are read from the classpath.
+	 */
+	public File getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * @param dir a directory (starting and ending with "/").
+	 * @return the names of all resources in the directory and its sub-directories, in alphabetical order (empty if the
+	 *         index is unavailable).
+	 */
+	public List<String> list(final String dir) {
+		List<String> found = new ArrayList<>();
+		if (resources != null) {
+			for (String resource : resources) {
+				if (resource.startsWith(dir)) {
+					found.add(resource);
+				}
+			}
+			Collections.sort(found);
+		}
+		return found;
+	}
+
+	/**
+	 * Lists the sub-directories of a directory that contain either a default body or path.properties - i.e. the
+	 * sub-directories that a request could be resolved to.
+	 *
+	 * @param dir the directory (starting and ending with "/").
+	 * @param candidates the sub-directory names to look for on the classpath if the index is unavailable.
+	 * @return the names of the sub-directories, in alphabetical order.
+	 */
+	public String[] getDirectoryVariants(final String dir, final String[] candidates) {
+		if (resources == null) {
+			List<String> found = new ArrayList<>();
+			for (String candidate : candidates) {
+				if (exists(dir + candidate + "/" + DEFAULT_BODY)
+						|| exists(dir + candidate + "/" + ResponseBuilder.PATH_PROPERTIES_FILE)) {
+					found.add(candidate);
+				}
+			}
+			return found.toArray(new String[found.size()]);
+		}
+		String[] variants = directoryVariants.get(normalise(dir));
+		return variants == null ? NO_VARIANTS : variants;
+	}
+
+	/**
+	 * Lists the body files in a directory.
+	 *
+	 * @param dir the directory (starting and ending with "/").
+	 * @param candidates the file names to look for on the classpath if the index is unavailable.
+	 * @return the names of the body files (without extension), in alphabetical order.
+	 */
+	public String[] getFileVariants(final String dir, final String[] candidates) {
+		if (resources == null) {
+			List<String> found = new ArrayList<>();
+			for (String candidate : candidates) {
+				if (exists(dir + candidate + BODY_SUFFIX)) {
+					found.add(candidate);
+				}
+			}
+			return found.toArray(new String[found.size()]);
+		}
+		String[] variants = fileVariants.get(normalise(dir));
+		return variants == null ? NO_VARIANTS : variants;
+	}
+
+	/**
+	 * @param name the name of a resource.
+	 * @return the name, with any repeated '/' characters removed.
+	 */
+	protected String normalise(final String name) {
+		if (name.indexOf("//") < 0) {
+			return name;
+		}
+		return name.replaceAll("/{2,}", "/");
+	}
+
+	/**
+	 * The answers of the {@link #MAX_REMEMBERED} most recently used classpath lookups.
+	 */
+	private static final class RecentLookups extends LinkedHashMap<String, Boolean> {
+
+		private static final long serialVersionUID = 1L;
+
+		RecentLookups() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_REMEMBERED;
+		}
+	}
+
+	/**
+	 * Records all files in a directory, forking a new scan for each sub-directory.
+	 */
+	private static final class DirectoryScan extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File dir;
+		private final String path;
+		private final Set<String> resources;
+
+		DirectoryScan(final File dir, final String path, final Set<String> resources) {
+			this.dir = dir;
+			this.path = path;
+			this.resources = resources;
+		}
+
+		@Override
+		protected void compute() {
+			File[] files = dir.listFiles();
+			if (files == null) {
+				return;
+			}
+			List<DirectoryScan> scans = new ArrayList<>();
+			for (File file : files) {
+				if (file.isDirectory()) {
+					scans.add(new DirectoryScan(file, path + file.getName() + "/", resources));
+				} else {
+					resources.add(path + file.getName());
+				}
+			}
+			invokeAll(scans);
+		}
+	}
+}
@@ -1,12 +1,22 @@
 package com.thinkinglogic.rest.mock;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -15,7 +25,11 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.parsers.DocumentBuilder;
@@ -41,7 +55,10 @@ public final class ResponseBuilder {
 	private static final Logger logger = Logger.getLogger(ResponseBuilder.class);
 
 	private static final String UTF8 = "UTF-8";
+	private static final String ISO_8859_1 = "ISO-8859-1";
+	private static final String CONTENT_TYPE_HEADER = "Content-Type";
 	private static final Random RANDOM = new Random();
+	private static final int WRITE_BUFFER_SIZE = 8192;
 
 	/** Enumeration of the different types of request content we can recognise. */
 	protected static enum ProbableContentType {
@@ -68,6 +85,12 @@ public final class ResponseBuilder {
 	/** The name of the properties file that specifies the directory/filename of the content to return. */
 	public static final String PATH_PROPERTIES_FILE = PATH_PROPERTIES_NAME + "." + PATH_PROPERTIES_EXT;
 
+	/**
+	 * The name of the file (alongside path.properties) that specifies rules mapping combinations of request properties to
+	 * a file. See {@link RuleTable} for the format.
+	 */
+	public static final String PATH_RULES_FILE = PATH_PROPERTIES_NAME + ".rules";
+
 	/** The name of the properties file that specifies global defaults. */
 	public static final String DEFAULT_PATH_PROPERTIES_FILE = "default." + PATH_PROPERTIES_FILE;
 
@@ -75,6 +98,8 @@ public final class ResponseBuilder {
 	public static final String DIR_METHOD = "dir.method";
 	/** The name of the path property that identifies a directory by a query string parameter. */
 	public static final String DIR_QUERYPARAM = "dir.queryParam";
+	/** The name of the path property that identifies a directory by a parameter of a form encoded request body. */
+	public static final String DIR_FORMPARAM = "dir.formParam";
 	/** The name of the path property that identifies a directory by a request header. */
 	public static final String DIR_HEADER = "dir.header";
 	/**
@@ -92,6 +117,8 @@ public final class ResponseBuilder {
 	public static final String FILE_METHOD = "file.method";
 	/** The name of the path property that identifies a file by a query string parameter. */
 	public static final String FILE_QUERYPARAM = "file.queryParam";
+	/** The name of the path property that identifies a file by a parameter of a form encoded request body. */
+	public static final String FILE_FORMPARAM = "file.formParam";
 	/** The name of the path property that identifies a file by a request header. */
 	public static final String FILE_HEADER = "file.header";
 	/** The name of the path property that identifies a file by evaluating a json path against the request body. */
@@ -115,9 +142,34 @@ public final class ResponseBuilder {
 	 */
 	public static final String FILE_PATH_PARAM = "file.pathParam";
 
+	/**
+	 * The name of the path property that identifies a file by the number of requests made to the route (this is a
+	 * semi-colon separated list of file names - the first request returns the first file, the second request the second
+	 * file and so on, with the last file being returned once the sequence is exhausted).
+	 */
+	public static final String FILE_SEQUENCE = "file.sequence";
+	/**
+	 * The name of the path property that identifies a file by the number of requests made to the route, as for
+	 * {@link #FILE_SEQUENCE} but starting again from the first file once the sequence is exhausted.
+	 */
+	public static final String FILE_CYCLE = "file.cycle";
+
 	/** The name of the path property that specifies whether to parse the response as a velocity template (true/false). */
 	public static final String VELOCITY = "velocity";
 
+	/**
+	 * The name of the path property that specifies the engine used to parse the response body when {@link #VELOCITY}
+	 * is true: 'velocity' (the default), or 'simple' to use a {@link SimpleTemplate} - which only substitutes ${...}
+	 * placeholders, but is much cheaper to render.
+	 */
+	public static final String TEMPLATE_ENGINE = "template.engine";
+
+	/** The value of {@link #TEMPLATE_ENGINE} that selects {@link SimpleTemplate}. */
+	public static final String SIMPLE_TEMPLATE_ENGINE = "simple";
+
+	/** The value of {@link #TEMPLATE_ENGINE} that selects velocity (the default). */
+	public static final String VELOCITY_TEMPLATE_ENGINE = "velocity";
+
 	/**
 	 * The name of the path property that specifies whether to parse response headers as velocity templates
 	 * (true/false).
@@ -130,9 +182,171 @@ public final class ResponseBuilder {
 	 */
 	public static final String VELOCITY_TOOLS = "velocity.tools";
 
+	/**
+	 * The name of the path property that specifies whether a templated response body is rendered in full before it is
+	 * sent, so that an accurate Content-Length can be set (true/false). If false, the body is streamed to the client as
+	 * it is rendered (using chunked transfer encoding).
+	 */
+	public static final String RESPONSE_BUFFER = "response.buffer";
+
+	/**
+	 * The name of the path property that specifies that the response body is sent as a stream of events, one at a time
+	 * (sse or chunked). See {@link ResponseStream}.
+	 */
+	public static final String RESPONSE_STREAM = "response.stream";
+
+	/**
+	 * The name of the path property that specifies that the response body is generated from a record template (the
+	 * body file) rather than sent as it is: json, ndjson or xml. See {@link ResponseGenerator}.
+	 */
+	public static final String GENERATOR = "generator";
+
+	/**
+	 * The name of the path property that specifies the number of records to generate: a number, or a request property
+	 * in the format 'source name' (e.g. 'queryParam count' or 'pathParam count').
+	 */
+	public static final String GENERATOR_COUNT = "generator.count";
+
+	/** The name of the path property that specifies the number of records to generate if the request does not. */
+	public static final String GENERATOR_COUNT_DEFAULT = "generator.count.default";
+
+	/**
+	 * The name of the path property that specifies the seed of the generated values: a number, or a request property in
+	 * the format 'source name'.
+	 */
+	public static final String GENERATOR_SEED = "generator.seed";
+
+	/** The name of the path property that overrides the text written before the first generated record. */
+	public static final String GENERATOR_PREFIX = "generator.prefix";
+
+	/** The name of the path property that overrides the text written between generated records. */
+	public static final String GENERATOR_SEPARATOR = "generator.separator";
+
+	/** The name of the path property that overrides the text written after the last generated record. */
+	public static final String GENERATOR_SUFFIX = "generator.suffix";
+
+	/** The name of the path property that specifies the interval between the events of a stream (milliseconds). */
+	public static final String STREAM_INTERVAL = "stream.interval";
+
+	/**
+	 * The name of the path property that specifies the number of events per second of a stream (overrides
+	 * {@link #STREAM_INTERVAL}).
+	 */
+	public static final String STREAM_RATE = "stream.rate";
+
+	/**
+	 * The name of the path property that specifies the number of events to send in a stream - the events in the body
+	 * file are repeated if necessary, and 0 sends events until the client disconnects. Defaults to the number of events
+	 * in the body file.
+	 */
+	public static final String STREAM_COUNT = "stream.count";
+
+	/**
+	 * The name of the path property that specifies whether the fully rendered response is cached (true/false), keyed by
+	 * the request properties in {@link #RESPONSE_CACHE_KEY}. See {@link ResponseCache}.
+	 */
+	public static final String RESPONSE_CACHE = "response.cache";
+
+	/**
+	 * The name of the path property that specifies the request properties that a cached response depends on, as a
+	 * semi-colon separated list in the format 'source [name]' (e.g. 'method; pathParam id; queryParam page').
+	 */
+	public static final String RESPONSE_CACHE_KEY = "response.cache.key";
+
+	/** The name of the path property that specifies the maximum number of cached responses for the path. */
+	public static final String RESPONSE_CACHE_SIZE = "response.cache.size";
+
+	/**
+	 * The name of the path property that specifies how long a response is cached for (milliseconds, 0 to cache it until
+	 * it is evicted).
+	 */
+	public static final String RESPONSE_CACHE_TTL = "response.cache.ttl";
+
+	/**
+	 * The name of the path property that specifies whether concurrent identical requests share a single render
+	 * (true/false), where identical means the same values of the request properties in {@link #RESPONSE_COALESCE_KEY}.
+	 * See {@link ResponseCoalescer}.
+	 */
+	public static final String RESPONSE_COALESCE = "response.coalesce";
+
+	/**
+	 * The name of the path property that specifies the request properties that a coalesced response depends on, in the
+	 * same format as {@link #RESPONSE_CACHE_KEY}.
+	 */
+	public static final String RESPONSE_COALESCE_KEY = "response.coalesce.key";
+
+	/**
+	 * The name of the path property that specifies the maximum number of requests to the path that are handled at the
+	 * same time - further requests are queued (see {@link #MAX_QUEUE}). See {@link RouteLimiter}.
+	 */
+	public static final String MAX_INFLIGHT = "max.inflight";
+
+	/**
+	 * The name of the path property that specifies the maximum number of requests that may wait for one of the
+	 * {@link #MAX_INFLIGHT} requests to complete - further requests are rejected.
+	 */
+	public static final String MAX_QUEUE = "max.queue";
+
+	/**
+	 * The name of the path property that specifies the maximum time a request may wait in the queue before it is
+	 * rejected (milliseconds, 0 to wait indefinitely).
+	 */
+	public static final String QUEUE_TIMEOUT = "queue.timeout";
+
+	/** The name of the path property that specifies the http response code sent to rejected requests. */
+	public static final String REJECT_STATUS = "reject.status";
+
+	/**
+	 * The name of the path property that specifies the number of seconds sent in the Retry-After header of rejected
+	 * requests (0 to omit the header).
+	 */
+	public static final String REJECT_RETRY_AFTER = "reject.retryAfter";
+
+	/**
+	 * The name of the path property that specifies the number of threads of the bulkhead that handles requests to the
+	 * path (0 to handle them on the container's threads). See {@link Bulkhead}.
+	 */
+	public static final String BULKHEAD_THREADS = "bulkhead.threads";
+
+	/**
+	 * The name of the path property that specifies the maximum number of requests that may wait for one of the
+	 * {@link #BULKHEAD_THREADS} - further requests are rejected.
+	 */
+	public static final String BULKHEAD_QUEUE = "bulkhead.queue";
+
+	/**
+	 * The name of the path property that specifies the name of the bulkhead that handles requests to the path. Defaults
+	 * to the top-level directory of the path, so each tree of mocks has its own bulkhead.
+	 */
+	public static final String BULKHEAD = "bulkhead";
+
 	/** The name of the path property that specifies a fixed delay before responding (milliseconds). */
 	public static final String FIXED_DELAY = "fixed.delay";
 
+	/**
+	 * The name of the path property that specifies how the delay scales with the number of requests to the path that
+	 * are in flight: none, linear or mmc, with {@link #FIXED_DELAY} as the base service time. See {@link LatencyModel}.
+	 */
+	public static final String LATENCY_MODEL = "latency.model";
+
+	/**
+	 * The name of the path property that specifies the milliseconds added to the delay for each other request in
+	 * flight, when {@link #LATENCY_MODEL} is linear.
+	 */
+	public static final String LATENCY_FACTOR = "latency.factor";
+
+	/**
+	 * The name of the path property that specifies the number of requests that can be served without queueing, when
+	 * {@link #LATENCY_MODEL} is mmc.
+	 */
+	public static final String LATENCY_SERVERS = "latency.servers";
+
+	/**
+	 * The name of the path property that specifies the maximum delay given by {@link #LATENCY_MODEL} (milliseconds, 0
+	 * for no maximum).
+	 */
+	public static final String LATENCY_MAX = "latency.max";
+
 	/** The name of the path property that specifies the maximum random delay before responding (milliseconds). */
 	public static final String RANDOM_DELAY = "random.delay";
 
@@ -143,11 +357,16 @@ public final class ResponseBuilder {
 	public static final String DEFAULT_CUSTOM_PROPERTIES_FILE = "rest-mocker.properties";
 
 	private static final VelocityEngine VELOCITY_ENGINE = initialiseVelocity();
-	private static final Properties GLOBAL_DEFAULTS = getGlobalDefaults();
+	private static final PathConfig GLOBAL_DEFAULTS = PathConfig.compile("/" + DEFAULT_PATH_PROPERTIES_FILE,
+			getGlobalDefaults(), null);
 	private static final String CLASSPATH_LOCATION = getClassesLocation();
 	private static final Map<Object, Object> SYSTEM_PROPERTIES = Collections.unmodifiableMap(new HashMap<>(System
 			.getProperties()));
 	private static final Map<Object, Object> CUSTOM_PROPERTIES = getCustomProperties();
+	private static final RouteSequences SEQUENCES = new RouteSequences();
+	private static final MockRoots MOCK_ROOTS = MockRoots.fromSystemProperties(MockRoot.fromClasspath("/"
+			+ DEFAULT_PATH_PROPERTIES_FILE, GLOBAL_DEFAULTS));
+	private static final MockOverlay MOCK_OVERLAY = new MockOverlay();
 
 	private final Map<String, String> queryParams;
 	private final Map<String, String> requestHeaders;
@@ -157,18 +376,35 @@ public final class ResponseBuilder {
 	private final String requestMethod;
 	private final String servletContext;
 	private final HttpServletRequest requestObject;
+	private final RequestTimings timings;
+	/** The generation of the StaticResponse cache before the request was resolved. */
+	private final long staticGeneration;
+	/** The root of the mocks that the request is resolved in. */
+	private final MockRoot root;
+	private final ResourceIndex resourceIndex;
 	private ProbableContentType probableContentType;
 
 	private String derivedPath;
 	private String derivedName = DEFAULT_FILE_NAME;
-	private Properties pathProperties = null;
+	private PathConfig pathProperties = null;
 	private String emptyValueReplacement;
+	/** The mock registered at runtime that matches the request, if any. */
+	private MockOverlay.Mock mock;
+	/** Set if the response is being sent as a stream, which will complete asynchronously. */
+	private boolean streaming;
+	/** Set if the directory or file was selected using anything other than the request path. */
+	private boolean requestDependent;
+	/** The request body as form parameters, once they have been needed. */
+	private FormParameters formParams;
+	/** The path properties that selected the directory and file, separated by ', ' (null if there are none). */
+	private String selectors;
 
 	private Document xmlDocument;
 	private XPathFactory xPathFactory;
 
 	/**
-	 * Create a new ResponseBuilder, and determine the appropriate path and filename for the response.
+	 * Create a new ResponseBuilder, and determine the appropriate path and filename for the response (unless a mock
+	 * registered at runtime matches the request, in which case the classpath is not examined).
 	 * 
 	 * @param queryParams query parameters.
 	 * @param headers request headers.
@@ -177,19 +413,50 @@ public final class ResponseBuilder {
 	 */
 	public ResponseBuilder(Map<String, String> queryParams, Map<String, String> headers, String body,
 			HttpServletRequest requestObject) {
+		this(queryParams, headers, body, requestObject, RequestTimings.DISABLED);
+	}
+
+	/**
+	 * Create a new ResponseBuilder, and determine the appropriate path and filename for the response (unless a mock
+	 * registered at runtime matches the request, in which case the classpath is not examined).
+	 * 
+	 * @param queryParams query parameters.
+	 * @param headers request headers.
+	 * @param body body of the request (or an empty string).
+	 * @param requestObject the {@link HttpServletRequest}.
+	 * @param timings records the time taken by each phase of handling the request.
+	 */
+	public ResponseBuilder(Map<String, String> queryParams, Map<String, String> headers, String body,
+			HttpServletRequest requestObject, RequestTimings timings) {
 		super();
 		this.requestObject = requestObject;
+		this.timings = timings;
 		this.requestMethod = requestObject.getMethod().toUpperCase();
 		this.queryParams = queryParams;
 		this.requestHeaders = headers;
 		this.requestBody = notNullString(body).trim();
 		this.requestPath = requestObject.getPathInfo();
 		this.servletContext = requestObject.getContextPath();
+		this.staticGeneration = StaticResponse.getGeneration();
+		this.root = MOCK_ROOTS.forPath(requestPath);
+		this.resourceIndex = root.getIndex();
 		this.setDerivedPath(requestPath);
-		replacePathParams();
 		determineContentType();
+		timings.end(RequestTimings.Phase.CONTENT_TYPE);
+		Object event = MockEvents.beginRoute();
+		this.mock = MOCK_OVERLAY.match(requestPath, createRuleValues());
+		if (mock != null) {
+			logger.info("Matched runtime mock: " + mock);
+			timings.end(RequestTimings.Phase.PATH);
+			MockEvents.endRoute(event, requestPath, null, null, null, true);
+			return;
+		}
+		replacePathParams();
 		this.determinePath();
+		timings.end(RequestTimings.Phase.PATH);
 		this.determineFile();
+		timings.end(RequestTimings.Phase.FILE);
+		MockEvents.endRoute(event, requestPath, derivedPath, derivedName, selectors, false);
 	}
 
 	/**
@@ -214,104 +481,909 @@ public final class ResponseBuilder {
 		} else if (requestBody.startsWith("{") || requestBody.startsWith("[")) {
 			contentType = ProbableContentType.JSON;
 		}
-		this.probableContentType = contentType;
+		this.probableContentType = contentType;
+	}
+
+	/**
+	 * Looks back up the path from the current derivedPath to find the nearest path.properties, then looks there for
+	 * path.parameters. If found it attempts to match the value (actually each value - path.properties is a semi-colon
+	 * separated list) against the request path, treating any path elements bounded by square brackets as wildcards (and
+	 * recording their values in pathParams). If the value in path.parameters matches the request path, it replaces the
+	 * derivedPath. For instance, if path.parameters=/books/[author]/[title]/hardback and the request path is
+	 * /books/Tolkien/Lord of the Rings/hardback then the pathParams map will be populated with author=Tolkien and
+	 * title=Lord of the Rings and the derivedPath will be set to /books/[author]/[title]/hardback (this is the path we
+	 * will examine for path.properties and response files).
+	 */
+	protected void replacePathParams() {
+		// look for the nearest path.properties
+		logger.debug("Looking for " + PATH_PARAMS);
+		PathConfig nearest = getPathConfig(findFile(derivedPath, PATH_PROPERTIES_NAME, PATH_PROPERTIES_EXT));
+		String property = nearest.getProperty(PATH_PARAMS, "");
+		if ("" == property) {
+			logger.debug("No " + PATH_PARAMS + " found");
+			return;
+		}
+		logger.debug(PATH_PARAMS + ":" + property);
+		String[] pathProperties = property.split(";");
+		outer: for (String pathProperty : pathProperties) {
+			logger.debug("Attempting to match " + pathProperty + " against the request path: " + requestPath);
+			final String[] paramSplit = pathProperty.split("/");
+			final String[] requestSplit = this.requestPath.split("/");
+			StringBuilder replacementPath = new StringBuilder();
+			final Map<String, String> params = new HashMap<>();
+			if (paramSplit.length == requestSplit.length) {
+				for (int i = 0; i < paramSplit.length; i++) {
+					final String thisParam = paramSplit[i];
+					final String thisRequest = requestSplit[i];
+					if (thisRequest.equals(thisParam)) {
+						replacementPath.append(thisRequest).append("/");
+					} else if (thisParam.startsWith("'") && thisParam.endsWith("'")) {
+						final String paramName = thisParam.substring(1, thisParam.length() - 1);
+						params.put(paramName, thisRequest);
+						replacementPath.append(thisParam).append("/");
+						logger.debug("Matched path parameter " + thisParam + " = " + thisRequest);
+					} else {
+						logger.debug("Unmatched path parameter " + thisParam);
+						continue outer;
+					}
+				}
+				matched(PATH_PARAMS, pathProperty + " against the request path");
+				this.pathParams.putAll(params);
+				this.setDerivedPath(replacementPath.toString());
+				return;
+			}
+
+		}
+	}
+
+	/**
+	 * Modifies the specified response to set the status, response headers and response body.
+	 * 
+	 * @param response the response to modify.
+	 */
+	public void handleResponse(final HttpServletResponse response) {
+		if (mock != null) {
+			writeMock(response);
+			return;
+		}
+		final Bulkhead bulkhead = getBulkhead();
+		if (bulkhead != null) {
+			bulkhead.submit(requestObject, response, getRejection(), new RouteLimiter.Handler() {
+				@Override
+				public boolean handle() {
+					timings.end(RequestTimings.Phase.QUEUE);
+					return limitResponse(response, bulkhead);
+				}
+			});
+			return;
+		}
+		limitResponse(response, null);
+	}
+
+	/**
+	 * Sends the response once the number of requests to the path in flight is under {@link #MAX_INFLIGHT} (if set).
+	 * 
+	 * @param response the response to modify.
+	 * @param executor runs queued requests once they have a permit (null to run them on a container thread).
+	 * @return true if the response is complete, false if it will be completed asynchronously.
+	 */
+	protected boolean limitResponse(final HttpServletResponse response, final Executor executor) {
+		int maxInflight = (int) getLongProperty(MAX_INFLIGHT, 0);
+		if (maxInflight > 0) {
+			RouteLimiter limiter = RouteLimiter.forRoute(derivedPath, maxInflight, (int) getLongProperty(MAX_QUEUE, 0));
+			return limiter.submit(requestObject, response, getLongProperty(QUEUE_TIMEOUT, 0), getRejection(),
+					new RouteLimiter.Handler() {
+						@Override
+						public boolean handle() {
+							timings.end(RequestTimings.Phase.QUEUE);
+							return sendResponse(response);
+						}
+					}, executor);
+		}
+		return sendResponse(response);
+	}
+
+	/**
+	 * @return the response sent to requests rejected by {@link #MAX_INFLIGHT} or a bulkhead.
+	 */
+	private RouteLimiter.Rejection getRejection() {
+		return new RouteLimiter.Rejection((int) getLongProperty(REJECT_STATUS,
+				HttpServletResponse.SC_SERVICE_UNAVAILABLE), getLongProperty(REJECT_RETRY_AFTER, 0));
+	}
+
+	/**
+	 * @return the bulkhead that handles requests to the current path, or null if {@link #BULKHEAD_THREADS} is not set.
+	 */
+	protected Bulkhead getBulkhead() {
+		int threads = (int) getLongProperty(BULKHEAD_THREADS, 0);
+		if (threads <= 0) {
+			return null;
+		}
+		String name = pathProperties.getProperty(BULKHEAD, "").trim();
+		if (name.length() == 0) {
+			int end = derivedPath.indexOf('/', 1);
+			name = end < 0 ? derivedPath : derivedPath.substring(0, end + 1);
+		}
+		return Bulkhead.forName(name, threads, (int) getLongProperty(BULKHEAD_QUEUE, 0));
+	}
+
+	/**
+	 * Sets the status, response headers and response body defined by the files for the request path, after any delay.
+	 * 
+	 * @param response the response to modify.
+	 * @return true if the response is complete, false if it will be completed asynchronously (it is being streamed, or
+	 *         delayed by a {@link LatencyModel}).
+	 */
+	protected boolean sendResponse(final HttpServletResponse response) {
+		LatencyModel latency = getLatencyModel();
+		if (latency != null) {
+			return sendModelledResponse(response, latency);
+		}
+		Object event = MockEvents.beginDelay();
+		long delay = handleDelay();
+		timings.end(RequestTimings.Phase.DELAY);
+		if (delay > 0) {
+			MockEvents.endDelay(event, derivedPath, delay, null);
+		}
+		writeResponse(response);
+		return !streaming;
+	}
+
+	/**
+	 * Sends the response after the delay given by a latency model, plus any random delay. The delay is scheduled rather
+	 * than slept, so no thread is held while the request waits (unless asynchronous processing is not enabled).
+	 * 
+	 * @param response the response to modify.
+	 * @param latency the latency model of the path.
+	 * @return true if the response is complete, false if it will be completed asynchronously.
+	 */
+	protected boolean sendModelledResponse(final HttpServletResponse response, final LatencyModel latency) {
+		int inflight = latency.enter();
+		long delay = latency.getDelay(getLongProperty(FIXED_DELAY, 0), inflight);
+		long maxRandomDelay = getLongProperty(RANDOM_DELAY, 0);
+		if (maxRandomDelay > 0) {
+			delay += RANDOM.nextInt((int) maxRandomDelay);
+		}
+		if (logger.isInfoEnabled()) {
+			logger.info("Delaying for " + delay + "ms (" + LATENCY_MODEL + " " + latency + ")");
+		}
+		final Object event = MockEvents.beginDelay();
+		final long modelledDelay = delay;
+		if (delay <= 0 || !requestObject.isAsyncSupported()) {
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					logger.error("IntrerruptedException while sleeping", e);
+				}
+			}
+			timings.end(RequestTimings.Phase.DELAY);
+			MockEvents.endDelay(event, derivedPath, delay, latency.getType().toString());
+			try {
+				writeResponse(response);
+			} finally {
+				if (streaming) {
+					requestObject.getAsyncContext().addListener(latency.exitOnComplete());
+				} else {
+					latency.exit();
+				}
+			}
+			return !streaming;
+		}
+		final AsyncContext context = requestObject.isAsyncStarted() ? requestObject.getAsyncContext()
+				: requestObject.startAsync(requestObject, response);
+		context.setTimeout(0);
+		context.addListener(latency.exitOnComplete());
+		MockScheduler.get().schedule(new Runnable() {
+			@Override
+			public void run() {
+				context.start(new Runnable() {
+					@Override
+					public void run() {
+						timings.end(RequestTimings.Phase.DELAY);
+						MockEvents.endDelay(event, derivedPath, modelledDelay, latency.getType().toString());
+						try {
+							writeResponse(response);
+						} catch (RuntimeException e) {
+							logger.error("Unable to send delayed response", e);
+						} finally {
+							if (!streaming) {
+								context.complete();
+							}
+						}
+					}
+				});
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+		return false;
+	}
+
+	/**
+	 * @return the latency model of the current path, or null if {@link #LATENCY_MODEL} is not set (or is not valid).
+	 */
+	protected LatencyModel getLatencyModel() {
+		String name = pathProperties.getProperty(LATENCY_MODEL, "");
+		try {
+			LatencyModel.Type type = LatencyModel.Type.forName(name);
+			if (type == null) {
+				return null;
+			}
+			return LatencyModel.forRoute(derivedPath, type, getDoubleProperty(LATENCY_FACTOR, 0),
+					(int) getLongProperty(LATENCY_SERVERS, 1), getLongProperty(LATENCY_MAX, 0));
+		} catch (IllegalArgumentException e) {
+			logger.error("Invalid " + LATENCY_MODEL + " in " + derivedPath + ": " + name);
+			return null;
+		}
+	}
+
+	/**
+	 * Sets the status, response headers and response body defined by the files for the request path.
+	 * 
+	 * @param response the response to modify.
+	 */
+	protected void writeResponse(final HttpServletResponse response) {
+		Object event = MockEvents.beginWrite();
+		try {
+			buildResponse(response);
+		} finally {
+			MockEvents.endWrite(event, getRoute(), response.getStatus());
+		}
+	}
+
+	/**
+	 * Loads (or renders) the status, response headers and response body, and writes them to the response.
+	 * 
+	 * @param response the response to modify.
+	 */
+	private void buildResponse(final HttpServletResponse response) {
+		ResponseCache cache = getResponseCache();
+		String cacheKey = cache == null ? null : cache.createKey(derivedName, createRuleValues());
+		if (cacheKey != null) {
+			StaticResponse cached = cache.get(cacheKey);
+			if (cached != null) {
+				logger.info("Sending " + cached.getStatus() + " cached response");
+				writeCachedResponse(response, cached);
+				return;
+			}
+		}
+		Map<String, String> responseHeaders = getResponseHeaders();
+		int status = getStatus();
+		StaticResponse staticResponse = createStaticResponse(status, responseHeaders);
+		if (staticResponse != null) {
+			logger.info("Sending " + status + " static response: headers=" + responseHeaders);
+			StaticResponse.cache(requestPath, staticResponse, staticGeneration);
+			writeCachedResponse(response, staticResponse);
+			return;
+		}
+		ResponseCoalescer coalescer = getResponseCoalescer();
+		if (cacheKey != null || coalescer != null) {
+			try {
+				StaticResponse rendered;
+				if (coalescer == null) {
+					rendered = renderResponse(status, responseHeaders);
+				} else {
+					final int renderStatus = status;
+					final Map<String, String> renderHeaders = responseHeaders;
+					rendered = coalescer.render(coalescer.createKey(derivedName, createRuleValues()),
+							new Callable<StaticResponse>() {
+								@Override
+								public StaticResponse call() throws IOException {
+									return renderResponse(renderStatus, renderHeaders);
+								}
+							});
+				}
+				if (cacheKey != null) {
+					cache.put(cacheKey, rendered);
+				}
+				logger.info("Sending " + status + " response" + (cacheKey != null ? " (now cached)" : "")
+						+ ": headers=" + responseHeaders);
+				writeCachedResponse(response, rendered);
+			} catch (IOException e) {
+				logger.error("Unable to render the response body", e);
+			}
+			return;
+		}
+		response.setStatus(status);
+
+		VelocityContext context = createVelocityContext(responseHeaders);
+
+		for (Entry<String, String> entry : responseHeaders.entrySet()) {
+			response.addHeader(entry.getKey(), entry.getValue());
+		}
+
+		try {
+			ResponseStream.Type streamType = ResponseStream.Type.forName(pathProperties.getProperty(RESPONSE_STREAM,
+					""));
+			if (streamType != null) {
+				logger.info("Sending " + status + " " + streamType + " stream: headers=" + responseHeaders);
+				sendTimings(response);
+				writeStream(response, streamType, context);
+				timings.end(RequestTimings.Phase.WRITE);
+				return;
+			}
+			ResponseGenerator generator = getResponseGenerator();
+			if (generator != null) {
+				logger.info("Sending " + status + " response of " + generator + ": headers=" + responseHeaders);
+				sendTimings(response);
+				OutputStream out = new BufferedOutputStream(response.getOutputStream(), WRITE_BUFFER_SIZE);
+				generator.writeTo(out, createTemplateVariables(-1), Charset.forName(response.getCharacterEncoding()));
+				out.flush();
+				timings.end(RequestTimings.Phase.WRITE);
+				return;
+			}
+			if (timings.isEnabled()) {
+				// render the body in full before sending it, so that the time taken can be sent in the header
+				byte[] body = renderBody(context, response.getCharacterEncoding());
+				logger.info("Sending " + status + " response: headers=" + responseHeaders);
+				sendTimings(response);
+				response.setContentLength(body.length);
+				response.getOutputStream().write(body);
+			} else if (useSimpleTemplate()) {
+				logger.info("Sending " + status + " response from a simple template: headers=" + responseHeaders);
+				Object event = MockEvents.beginRender();
+				writeSimpleTemplate(response);
+				MockEvents.endRender(event, derivedPath + derivedName, SIMPLE_TEMPLATE_ENGINE, -1);
+			} else if (context != null && pathProperties.getBoolean(VELOCITY)) {
+				logger.info("Parsing response as a Velocity template");
+				logger.info("Sending " + status + " response: headers=" + responseHeaders);
+				Object event = MockEvents.beginRender();
+				writeTemplate(response, context);
+				MockEvents.endRender(event, derivedPath + derivedName, VELOCITY_TEMPLATE_ENGINE, -1);
+			} else {
+				String body = getResponseBody();
+				if (logger.isInfoEnabled()) {
+					logger.info("Sending " + status + " response: headers=" + responseHeaders + ", body=\n" + body);
+				}
+				byte[] bytes = body.getBytes(response.getCharacterEncoding());
+				response.setContentLength(bytes.length);
+				response.getOutputStream().write(bytes);
+			}
+			response.flushBuffer();
+		} catch (IOException e) {
+			logger.error("Unable to write to, flush or close the response stream", e);
+		}
+		timings.end(RequestTimings.Phase.WRITE);
+	}
+
+	/**
+	 * Ends the render phase, and sets the timing header if the request is being timed (see {@link RequestTimings}).
+	 * 
+	 * @param response the response to modify.
+	 */
+	private void sendTimings(final HttpServletResponse response) {
+		timings.end(RequestTimings.Phase.RENDER);
+		if (timings.isEnabled()) {
+			response.setHeader(RequestTimings.HEADER, timings.toHeader());
+		}
+	}
+
+	/**
+	 * @return the cache of rendered responses for the current path, or null if {@link #RESPONSE_CACHE} is not true (or
+	 *         the response is streamed or generated, or the cache key is not valid).
+	 */
+	protected ResponseCache getResponseCache() {
+		if (!pathProperties.getBoolean(RESPONSE_CACHE)
+				|| pathProperties.isSet(RESPONSE_STREAM) || isGenerated()) {
+			return null;
+		}
+		String key = pathProperties.getProperty(RESPONSE_CACHE_KEY, "").trim();
+		try {
+			return ResponseCache.forRoute(derivedPath, key, (int) getLongProperty(RESPONSE_CACHE_SIZE, 1000),
+					getLongProperty(RESPONSE_CACHE_TTL, 0));
+		} catch (IllegalArgumentException e) {
+			logger.error("Invalid " + RESPONSE_CACHE_KEY + " in " + derivedPath + ": " + key, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the coalescer of concurrent renders for the current path, or null if {@link #RESPONSE_COALESCE} is not
+	 *         true (or the response is streamed or generated, or the coalesce key is not valid).
+	 */
+	protected ResponseCoalescer getResponseCoalescer() {
+		if (!pathProperties.getBoolean(RESPONSE_COALESCE)
+				|| pathProperties.isSet(RESPONSE_STREAM) || isGenerated()) {
+			return null;
+		}
+		String key = pathProperties.getProperty(RESPONSE_COALESCE_KEY, "").trim();
+		try {
+			return ResponseCoalescer.forRoute(derivedPath, key);
+		} catch (IllegalArgumentException e) {
+			logger.error("Invalid " + RESPONSE_COALESCE_KEY + " in " + derivedPath + ": " + key, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Renders the response in full, parsing the headers and body as templates if necessary.
+	 *
+	 * @param status the http response code.
+	 * @param responseHeaders the response headers (modified if they are parsed as templates).
+	 * @return the rendered response.
+	 * @throws IOException if the body cannot be read.
+	 */
+	private StaticResponse renderResponse(final int status, final Map<String, String> responseHeaders)
+			throws IOException {
+		logger.debug("Rendering the response in full");
+		VelocityContext context = createVelocityContext(responseHeaders);
+		return new StaticResponse(getRoute(), status, responseHeaders, renderBody(context,
+				getCharacterEncoding(responseHeaders)));
+	}
+
+	/**
+	 * Creates the VelocityContext for the response, and parses the response headers as templates if
+	 * {@link #VELOCITY_HEADERS} is true.
+	 *
+	 * @param responseHeaders the response headers.
+	 * @return the context, or null if velocity is not used.
+	 */
+	private VelocityContext createVelocityContext(final Map<String, String> responseHeaders) {
+		if (!useVelocity()) {
+			return null;
+		}
+		VelocityContext context = createVelocityContext();
+		// parse each of the headers
+		if (pathProperties.getBoolean(VELOCITY_HEADERS)) {
+			logger.info("Parsing response headers as Velocity templates");
+			Set<Entry<String, String>> headers = responseHeaders.entrySet();
+			for (Entry<String, String> entry : headers) {
+				logger.debug("Parsing response header as a Velocity template: " + entry.getKey());
+				entry.setValue(parseTemplate(entry.getValue(), context));
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * @param response the response to write to.
+	 * @param cached the rendered response to send.
+	 */
+	private void writeCachedResponse(final HttpServletResponse response, final StaticResponse cached) {
+		sendTimings(response);
+		try {
+			cached.writeTo(response);
+		} catch (IOException e) {
+			logger.error("Unable to write to, flush or close the response stream", e);
+		}
+		timings.end(RequestTimings.Phase.WRITE);
+	}
+
+	/**
+	 * Renders the response body in full.
+	 * 
+	 * @param context the VelocityContext used when parsing the template (may be null).
+	 * @param encoding the character encoding of the response.
+	 * @return the encoded body.
+	 * @throws IOException if the body cannot be read.
+	 */
+	protected byte[] renderBody(final VelocityContext context, final String encoding) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(WRITE_BUFFER_SIZE);
+		Object event = MockEvents.beginRender();
+		String engine;
+		if (useSimpleTemplate()) {
+			engine = SIMPLE_TEMPLATE_ENGINE;
+			String name = findFile(derivedPath, derivedName, BODY_FILETYPE);
+			SimpleTemplate template = name == null ? null : getSimpleTemplate(name);
+			if (template != null) {
+				template.writeTo(bytes, createTemplateVariables(-1), Charset.forName(encoding));
+			}
+		} else if (context != null && pathProperties.getBoolean(VELOCITY)) {
+			engine = VELOCITY_TEMPLATE_ENGINE;
+			InputStream stream = loadFile(derivedPath, derivedName, BODY_FILETYPE);
+			if (stream != null) {
+				try (Reader template = new InputStreamReader(stream, UTF8)) {
+					Writer writer = new OutputStreamWriter(bytes, encoding);
+					VELOCITY_ENGINE.evaluate(context, writer, "Velocity", template);
+					writer.flush();
+				}
+			}
+		} else {
+			return getResponseBody().getBytes(encoding);
+		}
+		MockEvents.endRender(event, derivedPath + derivedName, engine, bytes.size());
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Creates a {@link StaticResponse}, if the response depends on nothing but the request path: the directory and file
+	 * were not selected using the request, and the response is not delayed, limited, handled by a bulkhead or streamed.
+	 * A templated body (or headers) can still be static, if it contains no template syntax.
+	 * 
+	 * @param status the http response code.
+	 * @param responseHeaders the response headers.
+	 * @return the static response, or null if the response is not static.
+	 */
+	protected StaticResponse createStaticResponse(final int status, final Map<String, String> responseHeaders) {
+		if (requestDependent || mock != null || getLongProperty(FIXED_DELAY, 0) > 0
+				|| getLongProperty(RANDOM_DELAY, 0) > 0 || getLongProperty(MAX_INFLIGHT, 0) > 0
+				|| getLongProperty(BULKHEAD_THREADS, 0) > 0 || getLatencyModel() != null
+				|| pathProperties.isSet(RESPONSE_STREAM) || isGenerated()) {
+			return null;
+		}
+		if (pathProperties.getBoolean(VELOCITY_HEADERS)) {
+			for (String value : responseHeaders.values()) {
+				if (isTemplate(value)) {
+					return null;
+				}
+			}
+		}
+		String body = getResponseBody();
+		if (pathProperties.getBoolean(VELOCITY) && isTemplate(body)) {
+			return null;
+		}
+		try {
+			return new StaticResponse(getRoute(), status, responseHeaders, body.getBytes(
+					getCharacterEncoding(responseHeaders)));
+		} catch (UnsupportedEncodingException e) {
+			logger.error(e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param text the text of a template.
+	 * @return true if the text contains any template syntax (velocity references or directives, or placeholders).
+	 */
+	private static boolean isTemplate(final String text) {
+		return text.indexOf('$') >= 0 || text.indexOf('#') >= 0;
+	}
+
+	/**
+	 * Returns the character encoding that the container reports for a response with the given headers - the charset of
+	 * the Content-Type header, or ISO-8859-1 (the servlet default) - for bodies that are rendered before the headers
+	 * are set on the response.
+	 * 
+	 * @param headers the response headers.
+	 * @return the character encoding of the response body.
+	 */
+	protected static String getCharacterEncoding(final Map<String, String> headers) {
+		for (Entry<String, String> entry : headers.entrySet()) {
+			if (!CONTENT_TYPE_HEADER.equalsIgnoreCase(entry.getKey()) || entry.getValue() == null) {
+				continue;
+			}
+			for (String parameter : entry.getValue().split(";")) {
+				String[] split = parameter.trim().split("=", 2);
+				if (split.length == 2 && "charset".equalsIgnoreCase(split[0].trim())) {
+					String charset = split[1].trim().replace("\"", "");
+					if (Charset.isSupported(charset)) {
+						return charset;
+					}
+					logger.error("Unsupported charset in the Content-Type response header: " + charset);
+				}
+			}
+		}
+		return ISO_8859_1;
+	}
+
+	/**
+	 * Sends the response defined by the runtime mock that matched the request.
+	 * 
+	 * @param response the response to modify.
+	 */
+	protected void writeMock(final HttpServletResponse response) {
+		if (mock.getDelay() > 0) {
+			Object event = MockEvents.beginDelay();
+			try {
+				logger.info("Sleeping for " + mock.getDelay() + "ms");
+				Thread.sleep(mock.getDelay());
+			} catch (InterruptedException e) {
+				logger.error("IntrerruptedException while sleeping", e);
+			}
+			MockEvents.endDelay(event, requestPath, mock.getDelay(), null);
+		}
+		timings.end(RequestTimings.Phase.DELAY);
+		response.setStatus(mock.getStatus());
+		for (Entry<String, String> entry : mock.getHeaders().entrySet()) {
+			response.addHeader(entry.getKey(), entry.getValue());
+		}
+		sendTimings(response);
+		try {
+			byte[] body = mock.getBody().getBytes(response.getCharacterEncoding());
+			logger.info("Sending " + mock.getStatus() + " response from runtime mock: headers=" + mock.getHeaders()
+					+ ", body=\n" + mock.getBody());
+			response.setContentLength(body.length);
+			response.getOutputStream().write(body);
+			response.flushBuffer();
+		} catch (IOException e) {
+			logger.error("Unable to write to, flush or close the response stream", e);
+		}
+		timings.end(RequestTimings.Phase.WRITE);
+	}
+
+	/**
+	 * Renders the response body as a {@link SimpleTemplate}, writing it straight to the response stream (unless
+	 * {@link #RESPONSE_BUFFER} is true). Templates are compiled the first time they are used.
+	 * 
+	 * @param response the response to write to.
+	 * @throws IOException if the response cannot be written.
+	 */
+	protected void writeSimpleTemplate(final HttpServletResponse response) throws IOException {
+		String name = findFile(derivedPath, derivedName, BODY_FILETYPE);
+		SimpleTemplate template = name == null ? null : getSimpleTemplate(name);
+		if (template == null) {
+			logger.error("Unable to retrieve body from " + derivedPath);
+			response.setContentLength(0);
+			return;
+		}
+		SimpleTemplate.Variables variables = createTemplateVariables(-1);
+		Charset charset = Charset.forName(response.getCharacterEncoding());
+		if (pathProperties.getBoolean(RESPONSE_BUFFER)) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(WRITE_BUFFER_SIZE);
+			template.writeTo(bytes, variables, charset);
+			response.setContentLength(bytes.size());
+			bytes.writeTo(response.getOutputStream());
+		} else {
+			template.writeTo(response.getOutputStream(), variables, charset);
+		}
 	}
 
 	/**
-	 * Looks back up the path from the current derivedPath to find the nearest path.properties, then looks there for
-	 * path.parameters. If found it attempts to match the value (actually each value - path.properties is a semi-colon
-	 * separated list) against the request path, treating any path elements bounded by square brackets as wildcards (and
-	 * recording their values in pathParams). If the value in path.parameters matches the request path, it replaces the
-	 * derivedPath. For instance, if path.parameters=/books/[author]/[title]/hardback and the request path is
-	 * /books/Tolkien/Lord of the Rings/hardback then the pathParams map will be populated with author=Tolkien and
-	 * title=Lord of the Rings and the derivedPath will be set to /books/[author]/[title]/hardback (this is the path we
-	 * will examine for path.properties and response files).
+	 * @param name the name of the template resource.
+	 * @return the compiled template, or null if the resource cannot be read.
 	 */
-	protected void replacePathParams() {
-		// look for the nearest path.properties
-		Properties temp = new Properties();
-		logger.debug("Looking for " + PATH_PARAMS);
-		temp.putAll(loadPropertiesFromStream(this.loadFile(derivedPath, PATH_PROPERTIES_NAME, PATH_PROPERTIES_EXT)));
-		String property = temp.getProperty(PATH_PARAMS, "");
-		if ("" == property) {
-			logger.debug("No " + PATH_PARAMS + " found");
-			return;
+	protected SimpleTemplate getSimpleTemplate(final String name) {
+		SimpleTemplate template = root.getSimpleTemplates().get(name);
+		if (template == null) {
+			try (InputStream stream = resourceIndex.open(name)) {
+				if (stream == null) {
+					return null;
+				}
+				template = SimpleTemplate.compile(IOUtils.toString(stream, UTF8));
+				logger.debug("Compiled simple template " + name + " (" + template.getPlaceholderCount()
+						+ " placeholders)");
+				root.getSimpleTemplates().putIfAbsent(name, template);
+			} catch (IOException e) {
+				logger.error("Unable to read template " + name, e);
+				return null;
+			}
 		}
-		logger.debug(PATH_PARAMS + ":" + property);
-		String[] pathProperties = property.split(";");
-		outer: for (String pathProperty : pathProperties) {
-			logger.debug("Attempting to match " + pathProperty + " against the request path: " + requestPath);
-			final String[] paramSplit = pathProperty.split("/");
-			final String[] requestSplit = this.requestPath.split("/");
-			StringBuilder replacementPath = new StringBuilder();
-			final Map<String, String> params = new HashMap<>();
-			if (paramSplit.length == requestSplit.length) {
-				for (int i = 0; i < paramSplit.length; i++) {
-					final String thisParam = paramSplit[i];
-					final String thisRequest = requestSplit[i];
-					if (thisRequest.equals(thisParam)) {
-						replacementPath.append(thisRequest).append("/");
-					} else if (thisParam.startsWith("'") && thisParam.endsWith("'")) {
-						final String paramName = thisParam.substring(1, thisParam.length() - 1);
-						params.put(paramName, thisRequest);
-						replacementPath.append(thisParam).append("/");
-						logger.debug("Matched path parameter " + thisParam + " = " + thisRequest);
-					} else {
-						logger.debug("Unmatched path parameter " + thisParam);
-						continue outer;
+		return template;
+	}
+
+	/**
+	 * @param eventIndex the number of the event being rendered in a stream, or -1 if not streaming.
+	 * @return the values available to simple templates - the same names as in the velocity context.
+	 */
+	protected SimpleTemplate.Variables createTemplateVariables(final int eventIndex) {
+		return new SimpleTemplate.Variables() {
+			@Override
+			public String get(final String name, final String key) {
+				switch (name) {
+				case "pathParams":
+					return key == null ? null : pathParams.get(key);
+				case "queryParams":
+					return key == null ? null : queryParams.get(key);
+				case "requestHeaders":
+					return key == null ? null : requestHeaders.get(key);
+				case "custom":
+					return key == null ? null : stringValue(CUSTOM_PROPERTIES.get(key));
+				case "system":
+					return key == null ? null : stringValue(SYSTEM_PROPERTIES.get(key));
+				case "request":
+					return key == null ? requestBody : getRequestValue(key);
+				case "requestMethod":
+					return requestMethod;
+				case "pathInfo":
+					return requestPath;
+				case "context":
+					return servletContext;
+				case "eventIndex":
+					return eventIndex < 0 ? null : Integer.toString(eventIndex);
+				default:
+					return null;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Looks up a value in the request body, for a simple template: for a json body the key is a json path (without
+	 * the leading '$.'), for an xml body it is a path from the root element with '.' as the separator, and otherwise
+	 * it is the name of a form parameter.
+	 * 
+	 * @param key the key to look up.
+	 * @return the value, or null if there is no such value.
+	 */
+	protected String getRequestValue(final String key) {
+		try {
+			if (probableContentType == ProbableContentType.JSON) {
+				String path = "$." + key;
+				StreamingJsonPath streamingPath = StreamingJsonPath.forExpression(path);
+				if (streamingPath != null) {
+					try {
+						return streamingPath.evaluate(requestBody);
+					} catch (IllegalStateException e) {
+						logger.debug("Unable to scan for " + path + ", parsing the request body instead");
 					}
 				}
-				logger.debug("Matched " + pathProperty + " against the request path");
-				this.pathParams.putAll(params);
-				this.setDerivedPath(replacementPath.toString());
-				return;
+				return stringValue(JsonPath.read(requestBody, path));
+			} else if (probableContentType == ProbableContentType.XML) {
+				return xPathFactory.newXPath().evaluate("/" + key.replace('.', '/'), xmlDocument);
 			}
+			return getFormParameters().get(key);
+		} catch (Exception e) {
+			logger.debug("Unable to find " + key + " in the request body: " + e);
+			return null;
+		}
+	}
 
+	/**
+	 * @return the parameters of the request body, which are empty unless the body is form encoded (neither json nor
+	 *         xml). The body is only parsed when a parameter is first needed.
+	 */
+	protected FormParameters getFormParameters() {
+		if (formParams == null) {
+			formParams = new FormParameters(probableContentType == ProbableContentType.UNKNOWN ? requestBody : "");
 		}
+		return formParams;
+	}
+
+	private static String stringValue(final Object value) {
+		return value == null ? null : value.toString();
 	}
 
 	/**
-	 * Modifies the specified response to set the status, response headers and response body.
+	 * Sends the response body as a stream of events (see {@link ResponseStream}). If the body is a velocity template
+	 * then each event is parsed separately as it is sent, with the number of the event (starting at 0) in the context
+	 * as $eventIndex.
 	 * 
-	 * @param response the response to modify.
+	 * @param response the response to write to.
+	 * @param type the type of stream.
+	 * @param context the VelocityContext used when parsing the template (may be null).
+	 * @throws IOException if the response cannot be written.
 	 */
-	public void handleResponse(final HttpServletResponse response) {
-		handleDelay();
-		Map<String, String> responseHeaders = getResponseHeaders();
-		int status = getStatus();
-		response.setStatus(status);
-		String body = getResponseBody();
-
-		if (useVelocity()) {
-			VelocityContext context = createVelocityContext();
-			// parse the body
-			if (Boolean.parseBoolean(pathProperties.getProperty(VELOCITY, "false"))) {
-				logger.info("Parsing response as a Velocity template");
-				body = parseTemplate(body, context);
-			}
-			// parse each of the headers
-			if (Boolean.parseBoolean(pathProperties.getProperty(VELOCITY_HEADERS, "false"))) {
-				logger.info("Parsing response headers as Velocity templates");
-				Set<Entry<String, String>> headers = responseHeaders.entrySet();
-				for (Entry<String, String> entry : headers) {
-					logger.debug("Parsing response header as a Velocity template: " + entry.getKey());
-					entry.setValue(parseTemplate(entry.getValue(), context));
+	protected void writeStream(final HttpServletResponse response, final ResponseStream.Type type,
+			final VelocityContext context) throws IOException {
+		ResponseStream.Renderer renderer = null;
+		if (useSimpleTemplate()) {
+			renderer = new ResponseStream.Renderer() {
+				private final Map<String, SimpleTemplate> templates = new HashMap<>();
+
+				@Override
+				public String render(final String event, final int index) {
+					SimpleTemplate template = templates.get(event);
+					if (template == null) {
+						template = SimpleTemplate.compile(event);
+						templates.put(event, template);
+					}
+					return template.render(createTemplateVariables(index));
 				}
-			}
+			};
+		} else if (context != null && pathProperties.getBoolean(VELOCITY)) {
+			renderer = new ResponseStream.Renderer() {
+				@Override
+				public String render(final String event, final int index) {
+					if (event.indexOf('$') < 0 && event.indexOf('#') < 0) {
+						return event;
+					}
+					context.put("eventIndex", index);
+					return parseTemplate(event, context);
+				}
+			};
+		}
+		long intervalNanos = TimeUnit.MILLISECONDS.toNanos(getLongProperty(STREAM_INTERVAL, 1000));
+		long rate = getLongProperty(STREAM_RATE, 0);
+		if (rate > 0) {
+			intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
 		}
+		ResponseStream stream = new ResponseStream(type, getResponseBody(), (int) getLongProperty(STREAM_COUNT, -1),
+				intervalNanos, renderer);
+		streaming = stream.start(requestObject, response);
+	}
 
-		for (Entry<String, String> entry : responseHeaders.entrySet()) {
-			response.addHeader(entry.getKey(), entry.getValue());
+	/**
+	 * @return true if {@link #GENERATOR} is set, so the body is generated from a record template.
+	 */
+	protected boolean isGenerated() {
+		return pathProperties.isSet(GENERATOR);
+	}
+
+	/**
+	 * @return the generator of the response body, or null if {@link #GENERATOR} is not set (or is not valid, or there
+	 *         is no record template).
+	 */
+	protected ResponseGenerator getResponseGenerator() {
+		String name = pathProperties.getProperty(GENERATOR, "");
+		ResponseGenerator.Format format;
+		try {
+			format = ResponseGenerator.Format.forName(name);
+		} catch (IllegalArgumentException e) {
+			logger.error("Invalid " + GENERATOR + " in " + derivedPath + ": " + name);
+			return null;
+		}
+		if (format == null) {
+			return null;
+		}
+		String file = findFile(derivedPath, derivedName, BODY_FILETYPE);
+		SimpleTemplate record = file == null ? null : getSimpleTemplate(file);
+		if (record == null) {
+			logger.error("Unable to retrieve the record template from " + derivedPath);
+			return null;
 		}
+		long count = getRequestNumber(GENERATOR_COUNT, getLongProperty(GENERATOR_COUNT_DEFAULT, 100));
+		return new ResponseGenerator(record, count, getRequestNumber(GENERATOR_SEED, 0),
+				pathProperties.getProperty(GENERATOR_PREFIX, format.getPrefix()),
+				pathProperties.getProperty(GENERATOR_SEPARATOR, format.getSeparator()),
+				pathProperties.getProperty(GENERATOR_SUFFIX, format.getSuffix()));
+	}
 
-		logger.info("Sending " + status + " response: headers=" + responseHeaders + ", body=\n" + body);
-		response.setContentLength(body.length());
+	/**
+	 * @param key the name of a path property whose value is a number, or a request property in the format 'source
+	 *            name' (e.g. 'queryParam count').
+	 * @param defaultValue the value to return if the property is not set, or its value is not a number.
+	 * @return the number.
+	 */
+	protected long getRequestNumber(final String key, final long defaultValue) {
+		String value = pathProperties.getProperty(key, "").trim();
+		if (value.length() == 0) {
+			return defaultValue;
+		}
+		if (!Character.isLetter(value.charAt(0))) {
+			return pathProperties.getLong(key, defaultValue);
+		}
 		try {
-			response.getWriter().write(body);
-			response.getWriter().flush();
-			response.getWriter().close();
-		} catch (IOException e) {
-			logger.error("Unable to write to, flush or close the response writer", e);
+			RuleTable.Attribute[] attributes = RuleTable.parseAttributes(value);
+			value = attributes.length == 1 ? notNullString(attributes[0].getValue(createRuleValues())).trim() : "";
+			if (value.length() == 0) {
+				return defaultValue;
+			}
+			return Long.parseLong(value);
+		} catch (IllegalArgumentException e) {
+			logger.debug("Unable to find a number for " + key + ": " + e);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @param key the name of the path property.
+	 * @param defaultValue the value to return if the property is not set, or is not a number (which is reported when
+	 *            path.properties is read).
+	 * @return the value of the path property, as a number.
+	 */
+	protected long getLongProperty(final String key, final long defaultValue) {
+		return pathProperties.getLong(key, defaultValue);
+	}
+
+	/**
+	 * @param key the name of the path property.
+	 * @param defaultValue the value to return if the property is not set, or is not a number (which is reported when
+	 *            path.properties is read).
+	 * @return the value of the path property, as a (possibly fractional) number.
+	 */
+	protected double getDoubleProperty(final String key, final double defaultValue) {
+		return pathProperties.getDouble(key, defaultValue);
+	}
+
+	/**
+	 * Renders the response body as a velocity template, merging it straight into the response stream. If
+	 * {@link #RESPONSE_BUFFER} is true then the body is rendered in full first, so that a Content-Length (in bytes) can
+	 * be set; otherwise the body is sent as it is rendered.
+	 * 
+	 * @param response the response to write to.
+	 * @param context the VelocityContext used when parsing the template.
+	 * @throws IOException if the response cannot be written.
+	 */
+	protected void writeTemplate(final HttpServletResponse response, final VelocityContext context) throws IOException {
+		InputStream stream = loadFile(derivedPath, derivedName, BODY_FILETYPE);
+		if (stream == null) {
+			logger.error("Unable to retrieve body from " + derivedPath);
+			response.setContentLength(0);
+			return;
+		}
+		try (Reader template = new InputStreamReader(stream, UTF8)) {
+			if (pathProperties.getBoolean(RESPONSE_BUFFER)) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream(WRITE_BUFFER_SIZE);
+				Writer writer = new OutputStreamWriter(bytes, response.getCharacterEncoding());
+				VELOCITY_ENGINE.evaluate(context, writer, "Velocity", template);
+				writer.flush();
+				response.setContentLength(bytes.size());
+				bytes.writeTo(response.getOutputStream());
+			} else {
+				Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(),
+						response.getCharacterEncoding()), WRITE_BUFFER_SIZE);
+				VELOCITY_ENGINE.evaluate(context, writer, "Velocity", template);
+				writer.flush();
+			}
 		}
 	}
 
@@ -319,40 +1391,47 @@ public final class ResponseBuilder {
 	 * @return true if Velocity should be used to parse any of the response elements, false otherwise.
 	 */
 	protected boolean useVelocity() {
-		return Boolean.parseBoolean(pathProperties.getProperty(VELOCITY, "false"))
-				|| Boolean.parseBoolean(pathProperties.getProperty(VELOCITY_HEADERS, "false"));
+		return pathProperties.getBoolean(VELOCITY) && !useSimpleTemplate()
+				|| pathProperties.getBoolean(VELOCITY_HEADERS);
+	}
+
+	/**
+	 * @return true if the response body should be parsed as a {@link SimpleTemplate} rather than by velocity.
+	 */
+	protected boolean useSimpleTemplate() {
+		return pathProperties.getBoolean(VELOCITY)
+				&& SIMPLE_TEMPLATE_ENGINE.equalsIgnoreCase(pathProperties.getProperty(TEMPLATE_ENGINE, "").trim());
 	}
 
 	/**
 	 * Sleeps if path.properties indicates that we should do so.
+	 * 
+	 * @return the number of milliseconds requested (the fixed delay plus the random delay).
 	 */
-	protected void handleDelay() {
+	protected long handleDelay() {
+		long delay = 0;
 		try {
-			int fixedDelay = Integer.parseInt(pathProperties.getProperty(FIXED_DELAY, "0"));
+			long fixedDelay = getLongProperty(FIXED_DELAY, 0);
 			if (fixedDelay > 0) {
 				logger.info("Sleeping for " + fixedDelay + "ms");
+				delay += fixedDelay;
 				Thread.sleep(fixedDelay);
 			}
-		} catch (NumberFormatException e) {
-			logger.debug("Unable to parse " + FIXED_DELAY + " as a number: "
-					+ pathProperties.getProperty(FIXED_DELAY, "0"));
 		} catch (InterruptedException e) {
 			logger.error("IntrerruptedException while sleeping", e);
 		}
 		try {
-			int maxDelay = Integer.parseInt(pathProperties.getProperty(RANDOM_DELAY, "0"));
+			long maxDelay = getLongProperty(RANDOM_DELAY, 0);
 			if (maxDelay > 0) {
-				final int randomDelay = RANDOM.nextInt(maxDelay);
+				final int randomDelay = RANDOM.nextInt((int) maxDelay);
 				logger.info("Sleeping for " + randomDelay + "ms");
+				delay += randomDelay;
 				Thread.sleep(randomDelay);
 			}
-		} catch (NumberFormatException e) {
-			logger.debug("Unable to parse " + RANDOM_DELAY + " as a number: "
-					+ pathProperties.getProperty(RANDOM_DELAY, "0"));
 		} catch (InterruptedException e) {
 			logger.error("IntrerruptedException while sleeping", e);
 		}
-
+		return delay;
 	}
 
 	/**
@@ -406,7 +1485,7 @@ public final class ResponseBuilder {
 		map.putAll((Map) loadPropertiesFromStream(stream));
 		// load specific headers
 		if (!DEFAULT_FILE_NAME.equals(derivedName)) {
-			stream = this.getClass().getResourceAsStream(derivedPath + derivedName + HEADERS_FILETYPE);
+			stream = resourceIndex.open(derivedPath + derivedName + "." + HEADERS_FILETYPE);
 			map.putAll((Map) loadPropertiesFromStream(stream));
 		}
 		return map;
@@ -432,84 +1511,121 @@ public final class ResponseBuilder {
 		return properties;
 	}
 
+	/**
+	 * @param name the name of a path.properties resource (may be null).
+	 * @return the compiled contents of the resource merged with the defaults of the root, or the defaults if the name
+	 *         is null.
+	 */
+	protected PathConfig getPathConfig(final String name) {
+		return root.getPathConfig(name);
+	}
+
 	/**
 	 * Identifies the path in which we should look for return values, starting with the request path and evaluating
 	 * directories as identified in path.properties.
 	 */
 	protected void determinePath() {
-		try (InputStream stream = this.getClass().getResourceAsStream(derivedPath + PATH_PROPERTIES_FILE);) {
-			if (stream == null) {
-				logger.debug("No path.properties at " + derivedPath);
-				if (pathProperties == null) { // walk back up the path looking for path.properties
-					pathProperties = new Properties(GLOBAL_DEFAULTS);
-					pathProperties.putAll(loadPropertiesFromStream(this.loadFile(derivedPath, PATH_PROPERTIES_NAME,
-							PATH_PROPERTIES_EXT)));
-					this.emptyValueReplacement = pathProperties.getProperty(EMPTY_VALUE_REPLACEMENT, "");
-				}
-			} else {
-				logger.debug("Found path.properties at " + derivedPath);
-				pathProperties = new Properties(GLOBAL_DEFAULTS);
-				pathProperties.load(stream);
+		String name = derivedPath + PATH_PROPERTIES_FILE;
+		if (!resourceIndex.exists(name)) {
+			logger.debug("No path.properties at " + derivedPath);
+			if (pathProperties == null) { // walk back up the path looking for path.properties
+				pathProperties = getPathConfig(findFile(derivedPath, PATH_PROPERTIES_NAME, PATH_PROPERTIES_EXT));
 				this.emptyValueReplacement = pathProperties.getProperty(EMPTY_VALUE_REPLACEMENT, "");
-				String key = "";
-				String property = "";
-
-				if (Boolean.parseBoolean(pathProperties.getProperty(DIR_METHOD, ""))) {
-					property = requestMethod;
-					logger.debug("Matched " + DIR_METHOD + ": " + property);
-					setDerivedPath(derivedPath + property);
-					determinePath();
-					return;
-				}
+			}
+		} else {
+			logger.debug("Found path.properties at " + derivedPath);
+			pathProperties = getPathConfig(name);
+			this.emptyValueReplacement = pathProperties.getProperty(EMPTY_VALUE_REPLACEMENT, "");
+			String key = "";
+			String property = "";
+
+			if (pathProperties.getBoolean(DIR_METHOD)) {
+				requestDependent = true;
+				property = requestMethod;
+				matched(DIR_METHOD, property);
+				setDerivedPath(derivedPath + property);
+				determinePath();
+				return;
+			}
 
-				key = pathProperties.getProperty(DIR_HEADER, "");
-				property = matchDirHeader(key);
-				if (property.length() > 0) {
-					logger.debug("Matched " + DIR_HEADER + ": " + key + "=" + property);
-					setDerivedPath(derivedPath + property);
-					determinePath();
-					return;
-				}
+			key = getRequestSelector(DIR_HEADER);
+			property = matchDirHeader(key);
+			if (property.length() > 0) {
+				matched(DIR_HEADER, key + "=" + property);
+				setDerivedPath(derivedPath + property);
+				determinePath();
+				return;
+			}
 
-				key = pathProperties.getProperty(DIR_QUERYPARAM, "");
-				property = getProperty(queryParams, key);
-				if (property.length() > 0) {
-					logger.debug("Matched " + DIR_QUERYPARAM + ": " + key + "=" + property);
-					setDerivedPath(derivedPath + property);
-					determinePath();
-					return;
-				}
+			key = getRequestSelector(DIR_QUERYPARAM);
+			property = getProperty(queryParams, key);
+			if (property.length() > 0) {
+				matched(DIR_QUERYPARAM, key + "=" + property);
+				setDerivedPath(derivedPath + property);
+				determinePath();
+				return;
+			}
 
-				key = pathProperties.getProperty(DIR_JSONPATH, "");
-				property = matchJsonPath(key);
-				if (property.length() > 0) {
-					logger.debug("Matched " + DIR_JSONPATH + ": " + key + "=" + property);
-					setDerivedPath(derivedPath + property);
-					determinePath();
-					return;
-				}
+			key = getRequestSelector(DIR_FORMPARAM);
+			property = getProperty(getFormParameters(), key);
+			if (property.length() > 0) {
+				matched(DIR_FORMPARAM, key + "=" + property);
+				setDerivedPath(derivedPath + property);
+				determinePath();
+				return;
+			}
 
-				key = pathProperties.getProperty(DIR_XPATH, "");
-				property = matchXPath(key);
-				if (property.length() > 0) {
-					logger.debug("Matched " + DIR_XPATH + ": " + key + "=" + property);
-					setDerivedPath(derivedPath + property);
-					determinePath();
-					return;
-				}
+			key = getRequestSelector(DIR_JSONPATH);
+			property = matchJsonPath(key);
+			if (property.length() > 0) {
+				matched(DIR_JSONPATH, key + "=" + property);
+				setDerivedPath(derivedPath + property);
+				determinePath();
+				return;
+			}
 
-				key = pathProperties.getProperty(DIR_PATH_PARAM, "");
-				property = getProperty(pathParams, key);
-				if (property.length() > 0) {
-					logger.debug("Matched " + DIR_PATH_PARAM + ": " + key + "=" + property);
-					setDerivedPath(derivedPath + property);
-					determinePath();
-					return;
-				}
+			key = getRequestSelector(DIR_XPATH);
+			property = matchXPath(key);
+			if (property.length() > 0) {
+				matched(DIR_XPATH, key + "=" + property);
+				setDerivedPath(derivedPath + property);
+				determinePath();
+				return;
 			}
-		} catch (IOException e) {
-			logger.error(e);
+
+			key = pathProperties.getProperty(DIR_PATH_PARAM, "");
+			property = getProperty(pathParams, key);
+			if (property.length() > 0) {
+				matched(DIR_PATH_PARAM, key + "=" + property);
+				setDerivedPath(derivedPath + property);
+				determinePath();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Records that a path property selected the directory or file.
+	 * 
+	 * @param name the name of the path property.
+	 * @param match what was matched (for logging).
+	 */
+	private void matched(final String name, final String match) {
+		logger.debug("Matched " + name + ": " + match);
+		selectors = selectors == null ? name : selectors + ", " + name;
+	}
+
+	/**
+	 * @param name the name of a path property that selects a directory or file using a value from the request.
+	 * @return the value of the property, or empty string if it is not set (if it is set, the response depends on the
+	 *         request, and cannot be cached as a {@link StaticResponse}).
+	 */
+	private String getRequestSelector(final String name) {
+		String key = pathProperties.getProperty(name, "");
+		if (key.length() > 0) {
+			requestDependent = true;
 		}
+		return key;
 	}
 
 	/**
@@ -527,42 +1643,27 @@ public final class ResponseBuilder {
 	}
 
 	/**
-	 * Looks for a request header matching the specified name, with special handling for the 'Accept' header.
+	 * Looks for a request header matching the specified name, with special handling for the 'Accept' header - which is
+	 * matched against the sub-directories of the current path (see {@link AcceptHeader}).
 	 * 
 	 * @param headerName the name of the header to match.
-	 * @return
+	 * @return the value of the header, or the name of the sub-directory matching the Accept header.
 	 */
 	protected String matchDirHeader(final String headerName) {
 		if ("Accept".equalsIgnoreCase(headerName)) {
-			// try to find a match for the mime type
-			String accepts = notNullString(requestHeaders.get(headerName)) + ";";
-			String[] types = accepts.substring(0, accepts.indexOf(";")).split(",");
-			for (final String type : types) {
-				// convert "/application/xml" to "xml"
-				String shortType = type.substring(("/" + type).lastIndexOf("/"));
-				// try to find type/default.body
-				String filename = derivedPath + shortType + "/" + DEFAULT_FILE_NAME + "." + BODY_FILETYPE;
-				logger.debug("Trying to match Accept header '" + type + "': Looking for " + filename);
-				URL resource = this.getClass().getResource(filename);
-				if (resource != null) {
-					return shortType;
-				}
-				// try to find type/path.properties
-				filename = derivedPath + shortType + "/" + PATH_PROPERTIES_FILE;
-				logger.debug("Trying to match Accept header '" + type + "': Looking for " + filename);
-				resource = this.getClass().getResource(filename);
-				if (resource != null) {
-					return shortType;
-				}
-			}
-		} else {
-			return getProperty(requestHeaders, headerName);
+			AcceptHeader accept = AcceptHeader.parse(requestHeaders.get(headerName));
+			String variant = accept.select(resourceIndex.getDirectoryVariants(derivedPath, accept.getSubtypes()));
+			logger.debug("Matched Accept header '" + requestHeaders.get(headerName) + "' to directory '" + variant
+					+ "'");
+			return variant;
 		}
-		return "";
+		return getProperty(requestHeaders, headerName);
 	}
 
 	/**
-	 * Evaluates the specified json path against the request body.
+	 * Evaluates the specified json path against the request body. Simple expressions (chains of field names and array
+	 * indexes) are evaluated by scanning the body (see {@link StreamingJsonPath}); anything else is evaluated by parsing
+	 * the body.
 	 * 
 	 * @param path the json path to evaluate.
 	 * @return the result of evaluating the path expression against the request body.
@@ -571,6 +1672,15 @@ public final class ResponseBuilder {
 	protected String matchJsonPath(final String path) {
 		if (path.length() > 0 & probableContentType == ProbableContentType.JSON) {
 			logger.debug("attempting to match jsonpath: " + path);
+			StreamingJsonPath streamingPath = StreamingJsonPath.forExpression(path);
+			if (streamingPath != null) {
+				try {
+					return replaceEmptyValue(streamingPath.evaluate(requestBody));
+				} catch (IllegalStateException e) {
+					logger.debug("Unable to scan for JSONPATH: " + path + " (" + e.getMessage()
+							+ "), parsing the request body instead");
+				}
+			}
 			try {
 				return replaceEmptyValue(JsonPath.read(requestBody, path));
 			} catch (Exception e) {
@@ -613,47 +1723,62 @@ public final class ResponseBuilder {
 	}
 
 	/**
-	 * Attempts to identify a file name for return values, based on keys in pathProperties.
+	 * Attempts to identify a file name for return values, based on the rules in path.rules (if present) and keys in
+	 * pathProperties.
 	 */
 	protected void determineFile() {
 		String key = "";
-		String property = "";
+		String property = matchRules();
+		if (property != null) {
+			matched(PATH_RULES_FILE, property);
+			this.derivedName = property;
+			return;
+		}
 
-		if (Boolean.parseBoolean(pathProperties.getProperty(FILE_METHOD, ""))) {
+		if (pathProperties.getBoolean(FILE_METHOD)) {
+			requestDependent = true;
 			property = requestMethod;
-			logger.debug("Matched " + FILE_METHOD + ": " + property);
+			matched(FILE_METHOD, property);
 			this.derivedName = property;
 			return;
 		}
 
-		key = pathProperties.getProperty(FILE_HEADER, "");
+		key = getRequestSelector(FILE_HEADER);
 		property = matchFileHeader(key);
 		if (property.length() > 0) {
-			logger.debug("Matched " + FILE_HEADER + ": " + key + "=" + property);
+			matched(FILE_HEADER, key + "=" + property);
 			this.derivedName = property;
 			return;
 		}
 
-		key = pathProperties.getProperty(FILE_QUERYPARAM, "");
+		key = getRequestSelector(FILE_QUERYPARAM);
 		property = getProperty(queryParams, key);
 		if (property.length() > 0) {
-			logger.debug("Matched " + FILE_QUERYPARAM + ": " + key + "=" + property);
+			matched(FILE_QUERYPARAM, key + "=" + property);
+			this.derivedName = property;
+			return;
+		}
+
+		key = getRequestSelector(FILE_FORMPARAM);
+		property = getProperty(getFormParameters(), key);
+		if (property.length() > 0) {
+			matched(FILE_FORMPARAM, key + "=" + property);
 			this.derivedName = property;
 			return;
 		}
 
-		key = pathProperties.getProperty(FILE_JSONPATH, "");
+		key = getRequestSelector(FILE_JSONPATH);
 		property = matchJsonPath(key);
 		if (property.length() > 0) {
-			logger.debug("Matched " + FILE_JSONPATH + ": " + key + "=" + property);
+			matched(FILE_JSONPATH, key + "=" + property);
 			this.derivedName = property;
 			return;
 		}
 
-		key = pathProperties.getProperty(FILE_XPATH, "");
+		key = getRequestSelector(FILE_XPATH);
 		property = matchXPath(key);
 		if (property.length() > 0) {
-			logger.debug("Matched " + FILE_XPATH + ": " + key + "=" + property);
+			matched(FILE_XPATH, key + "=" + property);
 			this.derivedName = property;
 			return;
 		}
@@ -661,7 +1786,21 @@ public final class ResponseBuilder {
 		key = pathProperties.getProperty(FILE_PATH_PARAM, "");
 		property = getProperty(pathParams, key);
 		if (property.length() > 0) {
-			logger.debug("Matched " + FILE_PATH_PARAM + ": " + key + "=" + property);
+			matched(FILE_PATH_PARAM, key + "=" + property);
+			this.derivedName = property;
+			return;
+		}
+
+		property = pathProperties.getProperty(FILE_SEQUENCE, "").trim();
+		boolean cycle = false;
+		if (property.length() == 0) {
+			property = pathProperties.getProperty(FILE_CYCLE, "").trim();
+			cycle = true;
+		}
+		if (property.length() > 0) {
+			requestDependent = true;
+			property = SEQUENCES.select(derivedPath, property.split("\\s*;\\s*"), cycle);
+			matched(cycle ? FILE_CYCLE : FILE_SEQUENCE, property);
 			this.derivedName = property;
 			return;
 		}
@@ -669,31 +1808,81 @@ public final class ResponseBuilder {
 	}
 
 	/**
-	 * Looks for a request header matching the specified name, with special handling for the 'Accept' header.
+	 * Evaluates the rules in path.rules in the current path (if any) against the request.
+	 * 
+	 * @return the name of the file identified by the first matching rule, or null if no rule matches.
+	 */
+	protected String matchRules() {
+		final String name = derivedPath + PATH_RULES_FILE;
+		if (!resourceIndex.exists(name)) {
+			return null;
+		}
+		requestDependent = true;
+		RuleTable rules = root.getRuleTables().get(name);
+		if (rules == null) {
+			rules = loadRules(name);
+			root.getRuleTables().putIfAbsent(name, rules);
+		}
+		return rules.match(createRuleValues());
+	}
+
+	/**
+	 * @return the properties of the request, as used by path.rules and the selectors of runtime mocks.
+	 */
+	protected RuleTable.Values createRuleValues() {
+		return new RuleTable.Values() {
+			@Override
+			public String getValue(final RuleTable.Source source, final String key) {
+				switch (source) {
+				case METHOD:
+					return requestMethod;
+				case HEADER:
+					return getProperty(requestHeaders, key);
+				case QUERY_PARAM:
+					return getProperty(queryParams, key);
+				case FORM_PARAM:
+					return getProperty(getFormParameters(), key);
+				case PATH_PARAM:
+					return getProperty(pathParams, key);
+				case JSONPATH:
+					return matchJsonPath(key);
+				default:
+					return matchXPath(key);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param name the name of the rules file to load.
+	 * @return the compiled rules, or an empty RuleTable if the file cannot be read.
+	 */
+	protected RuleTable loadRules(final String name) {
+		try (InputStream stream = resourceIndex.open(name)) {
+			if (stream != null) {
+				return RuleTable.compile(name, new InputStreamReader(stream, UTF8));
+			}
+		} catch (IOException e) {
+			logger.error("Unable to read rules from " + name, e);
+		}
+		return RuleTable.EMPTY;
+	}
+
+	/**
+	 * Looks for a request header matching the specified name, with special handling for the 'Accept' header - which is
+	 * matched against the body files in the current path (see {@link AcceptHeader}).
 	 * 
 	 * @param headerName the name of the header to match.
-	 * @return
+	 * @return the value of the header, or the name of the file matching the Accept header.
 	 */
 	protected String matchFileHeader(final String headerName) {
 		if ("Accept".equalsIgnoreCase(headerName)) {
-			// try to find a match for the mime type
-			String accepts = notNullString(requestHeaders.get(headerName)) + ";";
-			String[] types = accepts.substring(0, accepts.indexOf(";")).split(",");
-			for (final String type : types) {
-				// convert "/application/xml" to "xml"
-				String shortType = type.substring(("/" + type).lastIndexOf("/") + 1);
-				// try to find type.body
-				String filename = derivedPath + shortType + "." + BODY_FILETYPE;
-				logger.debug("Trying to match Accept header '" + type + "': Looking for " + filename);
-				URL resource = this.getClass().getResource(filename);
-				if (resource != null) {
-					return shortType;
-				}
-			}
-		} else {
-			return getProperty(requestHeaders, headerName);
+			AcceptHeader accept = AcceptHeader.parse(requestHeaders.get(headerName));
+			String variant = accept.select(resourceIndex.getFileVariants(derivedPath, accept.getSubtypes()));
+			logger.debug("Matched Accept header '" + requestHeaders.get(headerName) + "' to file '" + variant + "'");
+			return variant;
 		}
-		return "";
+		return getProperty(requestHeaders, headerName);
 	}
 
 	/**
@@ -707,22 +1896,46 @@ public final class ResponseBuilder {
 	 * @return an InputStream if we could find a matching file, null otherwise.
 	 */
 	protected InputStream loadFile(final String path, final String file, final String ext) {
+		String name = findFile(path, file, ext);
+		return name == null ? null : resourceIndex.open(name);
+	}
+
+	/**
+	 * Finds the file that {@link #loadFile(String, String, String)} would load.
+	 * 
+	 * @param myPath the path to start searching in. Must start with "/".
+	 * @param file the name of the file to find (without extension).
+	 * @param ext the extension of the file to look for.
+	 * @return the name of the matching resource, or null if there is no matching file.
+	 */
+	protected String findFile(final String path, final String file, final String ext) {
 		final String myPath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
 		String name = myPath + "/" + file + "." + ext;
-		InputStream stream = this.getClass().getResourceAsStream(name);
-		if (stream == null && !DEFAULT_FILE_NAME.equals(file)) {
+		boolean found = resourceIndex.exists(name);
+		if (!found && !DEFAULT_FILE_NAME.equals(file)) {
 			name = myPath + "/" + DEFAULT_FILE_NAME + "." + ext;
-			stream = this.getClass().getResourceAsStream(name);
+			found = resourceIndex.exists(name);
 		}
-		if (stream == null) {
+		if (!found) {
 			if (myPath.lastIndexOf("/") < 0) {
 				return null;
 			}
 			String newPath = myPath.substring(0, myPath.lastIndexOf("/"));
-			return loadFile(newPath, file, ext);
+			return findFile(newPath, file, ext);
 		}
 		logger.debug("Found a " + ext + " file: " + name);
-		return stream;
+		return name;
+	}
+
+	/**
+	 * @return the resource path and file name (without extension) that the request was resolved to, or 'mock:' followed
+	 *         by the path and selector of the runtime mock that matched the request.
+	 */
+	public String getRoute() {
+		if (mock != null) {
+			return "mock:" + mock;
+		}
+		return derivedPath + derivedName;
 	}
 
 	/**
@@ -788,13 +2001,14 @@ public final class ResponseBuilder {
 		context.put("request", requestBody);
 		context.put("requestObject", requestObject);
 		context.put("classpathLocation", CLASSPATH_LOCATION);
+		context.put("data", root.getDataTables());
 		try {
 			if (ProbableContentType.XML.equals(this.probableContentType)) {
 				context.put("request", new XmlToolWrapper(requestBody));
 			} else if (ProbableContentType.JSON.equals(this.probableContentType)) {
 				context.put("request", JsonProviderFactory.createProvider().parse(requestBody));
 			} else {
-				context.put("request", new HtmlPostProperties(requestBody));
+				context.put("request", getFormParameters());
 			}
 		} catch (RuntimeException e) {
 			logger.error("Unable to parse requestBody as " + this.probableContentType, e);
@@ -811,26 +2025,83 @@ public final class ResponseBuilder {
 	 * @param context the velocity context to put tools in.
 	 */
 	protected void addVelocityTools(final VelocityContext context) {
-		final String property = this.pathProperties.getProperty(VELOCITY_TOOLS, "").trim();
-		logger.debug("Attempting to add velocity tools defined by: " + property);
-		String[] tools = property.split(";");
-		for (String string : tools) {
-			String[] split = string.trim().split("=");
-			if (split.length == 2) {
-				String name = split[0].trim();
-				String clazz = split[1].trim();
-				logger.debug("Adding velocity tool to context. Name=" + name + ", class=" + clazz);
-				try {
-					context.put(name, Class.forName(clazz).getConstructor().newInstance());
-				} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-						| InvocationTargetException | NoSuchMethodException | SecurityException
-						| ClassNotFoundException e) {
-					logger.error("Unable to put velocity tool in context. Name=" + name + ", class=" + clazz, e);
-				}
+		for (String[] tool : this.pathProperties.getVelocityTools()) {
+			String name = tool[0];
+			String clazz = tool[1];
+			logger.debug("Adding velocity tool to context. Name=" + name + ", class=" + clazz);
+			try {
+				context.put(name, Class.forName(clazz).getConstructor().newInstance());
+			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
+					| InvocationTargetException | NoSuchMethodException | SecurityException
+					| ClassNotFoundException e) {
+				logger.error("Unable to put velocity tool in context. Name=" + name + ", class=" + clazz, e);
 			}
 		}
 	}
 
+	/**
+	 * @return the counters used to select files from a sequence.
+	 */
+	public static RouteSequences getSequences() {
+		return SEQUENCES;
+	}
+
+	/**
+	 * @return the mocks registered at runtime.
+	 */
+	public static MockOverlay getMockOverlay() {
+		return MOCK_OVERLAY;
+	}
+
+	/**
+	 * @return the roots of the mocks: the classpath, and the directories mounted outside it.
+	 */
+	public static MockRoots getMockRoots() {
+		return MOCK_ROOTS;
+	}
+
+	/**
+	 * @return the index of resources on the classpath.
+	 */
+	public static ResourceIndex getResourceIndex() {
+		return MOCK_ROOTS.getClasspathRoot().getIndex();
+	}
+
+	/**
+	 * @return the data tables on the classpath available to templates.
+	 */
+	public static DataTables getDataTables() {
+		return MOCK_ROOTS.getClasspathRoot().getDataTables();
+	}
+
+	/**
+	 * Rebuilds the index of resources on the classpath, so that any files added, removed or changed since it was built
+	 * are recognised, re-reads the data tables, and mounts the mock roots again (unloading any that are loaded).
+	 * 
+	 * @return the new index.
+	 */
+	public static ResourceIndex rebuildResourceIndex() {
+		MockRoot classpathRoot = MockRoot.fromClasspath("/" + DEFAULT_PATH_PROPERTIES_FILE, GLOBAL_DEFAULTS);
+		MOCK_ROOTS.mount(classpathRoot);
+		StaticResponse.clear();
+		ResponseCache.clearAll();
+		ResponseCoalescer.clearAll();
+		return classpathRoot.getIndex();
+	}
+
+	/**
+	 * @param path the request path.
+	 * @return the cached {@link StaticResponse} for the path, or null if there is none (or any runtime mocks are
+	 *         registered, as they take precedence).
+	 */
+	public static StaticResponse getStaticResponse(final String path) {
+		StaticResponse response = MOCK_OVERLAY.isEmpty() ? StaticResponse.forPath(path) : null;
+		if (response != null) {
+			MOCK_ROOTS.touch(path);
+		}
+		return response;
+	}
+
 	/**
 	 * Creates and initialises a new VelocityEngine.
 	 * 
@@ -0,0 +1,173 @@
+package com.thinkinglogic.rest.mock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The fully rendered responses of a route, keyed by a declared set of request properties - so a templated response
+ * is rendered once for each combination of those properties, rather than for every request. The key is a semi-colon
+ * separated list of request properties in the same format as path.rules, without the operator and value (e.g.
+ * 'method; pathParam id; queryParam page'), and it is up to the author of the route to declare every property that
+ * the response depends on.
+ * <p>
+ * Each cache holds at most a fixed number of responses, evicting the least recently used when it is full, and a
+ * response expires a fixed time after it was rendered.
+ */
+public class ResponseCache {
+
+	private static final ConcurrentMap<String, ResponseCache> CACHES = new ConcurrentHashMap<>();
+	private static final char SEPARATOR = '\u0000';
+
+	private final String key;
+	private final RuleTable.Attribute[] attributes;
+	private final int size;
+	private final long ttlNanos;
+	private final Map<String, Entry> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param key the request properties that the responses depend on.
+	 * @param size the maximum number of responses to hold.
+	 * @param ttlMillis the number of milliseconds a response is held for (0 to hold it until it is evicted).
+	 * @throws IllegalArgumentException if the key is not valid.
+	 */
+	public ResponseCache(final String key, final int size, final long ttlMillis) {
+		this.key = key;
+		this.attributes = RuleTable.parseAttributes(key);
+		this.size = Math.max(1, size);
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+				return size() > ResponseCache.this.size;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cache for a route, replacing the existing cache if its settings have changed.
+	 *
+	 * @param route the route (the directory whose path.properties enables the cache).
+	 * @param key the request properties that the responses depend on.
+	 * @param size the maximum number of responses to hold.
+	 * @param ttlMillis the number of milliseconds a response is held for (0 to hold it until it is evicted).
+	 * @return the cache.
+	 * @throws IllegalArgumentException if the key is not valid.
+	 */
+	public static ResponseCache forRoute(final String route, final String key, final int size, final long ttlMillis) {
+		while (true) {
+			ResponseCache cache = CACHES.get(route);
+			if (cache != null && cache.key.equals(key) && cache.size == Math.max(1, size)
+					&& cache.ttlNanos == TimeUnit.MILLISECONDS.toNanos(ttlMillis)) {
+				return cache;
+			}
+			ResponseCache created = new ResponseCache(key, size, ttlMillis);
+			if (cache == null ? CACHES.putIfAbsent(route, created) == null : CACHES.replace(route, cache, created)) {
+				return created;
+			}
+		}
+	}
+
+	/**
+	 * Removes all caches (and so all cached responses).
+	 */
+	public static void clearAll() {
+		CACHES.clear();
+	}
+
+	/**
+	 * Removes the caches of the routes beneath a prefix.
+	 *
+	 * @param prefix the path prefix (e.g. the prefix of an unloaded {@link MockRoot}).
+	 */
+	public static void clearRoutes(final String prefix) {
+		for (String route : CACHES.keySet()) {
+			if (route.startsWith(prefix)) {
+				CACHES.remove(route);
+			}
+		}
+	}
+
+	/**
+	 * @param name the name of the file the response is built from.
+	 * @param values provides the request properties.
+	 * @return the key of the response to the request.
+	 */
+	public String createKey(final String name, final RuleTable.Values values) {
+		StringBuilder builder = new StringBuilder(name);
+		for (RuleTable.Attribute attribute : attributes) {
+			String value = attribute.getValue(values);
+			builder.append(SEPARATOR).append(value == null ? "" : value);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @param cacheKey the key of the response.
+	 * @return the cached response, or null if there is none (or it has expired).
+	 */
+	public StaticResponse get(final String cacheKey) {
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(cacheKey);
+			if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.created > ttlNanos) {
+				entries.remove(cacheKey);
+				entry = null;
+			}
+		}
+		(entry == null ? misses : hits).incrementAndGet();
+		return entry == null ? null : entry.response;
+	}
+
+	/**
+	 * @param cacheKey the key of the response.
+	 * @param response the rendered response.
+	 */
+	public void put(final String cacheKey, final StaticResponse response) {
+		Entry entry = new Entry(response, System.nanoTime());
+		synchronized (entries) {
+			entries.put(cacheKey, entry);
+		}
+	}
+
+	/**
+	 * @return the number of cached responses (including any that have expired but not yet been removed).
+	 */
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return the number of requests that were sent a cached response.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of requests that had to be rendered.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** A cached response, and when it was rendered. */
+	private static final class Entry {
+		private final StaticResponse response;
+		private final long created;
+
+		Entry(final StaticResponse response, final long created) {
+			this.response = response;
+			this.created = created;
+		}
+	}
+}
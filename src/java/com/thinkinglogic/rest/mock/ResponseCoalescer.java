@@ -0,0 +1,156 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent identical renders of a route - while a response is being rendered, any other request for the
+ * same response waits for that render to finish and is sent the same result, rather than rendering it again. Requests
+ * are identical if they have the same values of a declared set of request properties, in the same format as a
+ * {@link ResponseCache} key (e.g. 'method; pathParam id; queryParam page').
+ * <p>
+ * Nothing is kept once the render has finished, so unlike a {@link ResponseCache} the response is never stale - a
+ * request that arrives after the render has finished renders the response again. This flattens the CPU spike of a
+ * burst of identical requests to a heavily templated route.
+ */
+public class ResponseCoalescer {
+
+	private static final ConcurrentMap<String, ResponseCoalescer> COALESCERS = new ConcurrentHashMap<>();
+	private static final char SEPARATOR = '\u0000';
+
+	private final String key;
+	private final RuleTable.Attribute[] attributes;
+	private final ConcurrentMap<String, FutureTask<StaticResponse>> renders = new ConcurrentHashMap<>();
+	private final AtomicLong rendered = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * @param key the request properties that the responses depend on.
+	 * @throws IllegalArgumentException if the key is not valid.
+	 */
+	public ResponseCoalescer(final String key) {
+		this.key = key;
+		this.attributes = RuleTable.parseAttributes(key);
+	}
+
+	/**
+	 * Returns the coalescer for a route, replacing the existing coalescer if its key has changed.
+	 *
+	 * @param route the route (the directory whose path.properties enables coalescing).
+	 * @param key the request properties that the responses depend on.
+	 * @return the coalescer.
+	 * @throws IllegalArgumentException if the key is not valid.
+	 */
+	public static ResponseCoalescer forRoute(final String route, final String key) {
+		ResponseCoalescer coalescer = COALESCERS.get(route);
+		if (coalescer == null || !coalescer.key.equals(key)) {
+			coalescer = new ResponseCoalescer(key);
+			COALESCERS.put(route, coalescer);
+		}
+		return coalescer;
+	}
+
+	/**
+	 * Removes all coalescers. Renders that are in progress are unaffected.
+	 */
+	public static void clearAll() {
+		COALESCERS.clear();
+	}
+
+	/**
+	 * Removes the coalescers of the routes beneath a prefix. Renders that are in progress are unaffected.
+	 *
+	 * @param prefix the path prefix (e.g. the prefix of an unloaded {@link MockRoot}).
+	 */
+	public static void clearRoutes(final String prefix) {
+		for (String route : COALESCERS.keySet()) {
+			if (route.startsWith(prefix)) {
+				COALESCERS.remove(route);
+			}
+		}
+	}
+
+	/**
+	 * @param name the name of the file the response is built from.
+	 * @param values provides the request properties.
+	 * @return the key of the response to the request.
+	 */
+	public String createKey(final String name, final RuleTable.Values values) {
+		StringBuilder builder = new StringBuilder(name);
+		for (RuleTable.Attribute attribute : attributes) {
+			String value = attribute.getValue(values);
+			builder.append(SEPARATOR).append(value == null ? "" : value);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Renders a response, unless an identical response is already being rendered - in which case this waits for that
+	 * render and returns its result. If the render fails, every request waiting for it fails in the same way.
+	 *
+	 * @param renderKey the key of the response.
+	 * @param render renders the response (in the calling thread, if no identical render is in progress).
+	 * @return the rendered response.
+	 * @throws IOException if the response cannot be rendered, or the thread is interrupted while waiting.
+	 */
+	public StaticResponse render(final String renderKey, final Callable<StaticResponse> render) throws IOException {
+		FutureTask<StaticResponse> task = new FutureTask<>(render);
+		FutureTask<StaticResponse> existing = renders.putIfAbsent(renderKey, task);
+		if (existing == null) {
+			rendered.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				renders.remove(renderKey, task);
+			}
+		} else {
+			coalesced.incrementAndGet();
+			task = existing;
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a render of " + renderKey);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * @return the number of renders in progress.
+	 */
+	public int getInProgress() {
+		return renders.size();
+	}
+
+	/**
+	 * @return the number of requests whose response was rendered for them.
+	 */
+	public long getRendered() {
+		return rendered.get();
+	}
+
+	/**
+	 * @return the number of requests that were sent the result of another request's render.
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+}
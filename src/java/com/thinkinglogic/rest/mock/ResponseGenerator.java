@@ -0,0 +1,230 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Generates a large response body from a record template, writing it straight to the response as it is generated - so
+ * a response of any size is sent in constant memory, without a fixture file. The body is a number of records separated
+ * by a separator, between a prefix and a suffix (e.g. '[', ',' and ']' for a json array).
+ * <p>
+ * The record template is a {@link SimpleTemplate}, in which ${gen.key} placeholders are replaced with generated values:
+ * <ul>
+ * <li>index - the index of the record (starting at 0), and number - the index + 1</li>
+ * <li>int - a random non-negative int, or int.n for one between 0 and n - 1</li>
+ * <li>long, double (between 0 and 1) and bool</li>
+ * <li>uuid - a random (type 4) uuid</li>
+ * <li>word - a random word, and string - a random string of 8 lowercase letters, or string.n for n letters</li>
+ * </ul>
+ * Random values are deterministic: each record has its own pseudo-random sequence, derived from the seed and the index
+ * of the record, so the same seed always generates the same body. Any other placeholders are replaced as for any
+ * simple template.
+ */
+public final class ResponseGenerator {
+
+	private static final String GENERATED = "gen";
+	private static final String[] WORDS = { "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel",
+			"india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa", "quebec", "romeo", "sierra",
+			"tango", "uniform", "victor", "whiskey", "xray", "yankee", "zulu" };
+
+	/** The formats of the generated body, each with a default prefix, separator and suffix. */
+	public static enum Format {
+		JSON("[\n", ",\n", "\n]\n"), NDJSON("", "\n", "\n"),
+		XML("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<records>\n", "\n", "\n</records>\n");
+
+		private final String prefix;
+		private final String separator;
+		private final String suffix;
+
+		private Format(final String prefix, final String separator, final String suffix) {
+			this.prefix = prefix;
+			this.separator = separator;
+			this.suffix = suffix;
+		}
+
+		/**
+		 * @param name the name of the format (case insensitive).
+		 * @return the format, or null if the name is empty.
+		 * @throws IllegalArgumentException if the name is not a format.
+		 */
+		public static Format forName(final String name) {
+			String trimmed = name.trim();
+			return trimmed.length() == 0 ? null : valueOf(trimmed.toUpperCase());
+		}
+
+		/** @return the text written before the first record. */
+		public String getPrefix() {
+			return prefix;
+		}
+
+		/** @return the text written between records. */
+		public String getSeparator() {
+			return separator;
+		}
+
+		/** @return the text written after the last record. */
+		public String getSuffix() {
+			return suffix;
+		}
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private final SimpleTemplate record;
+	private final long count;
+	private final long seed;
+	private final String prefix;
+	private final String separator;
+	private final String suffix;
+
+	/**
+	 * @param record the template of each record.
+	 * @param count the number of records to generate.
+	 * @param seed the seed of the random values.
+	 * @param prefix the text written before the first record.
+	 * @param separator the text written between records.
+	 * @param suffix the text written after the last record.
+	 */
+	public ResponseGenerator(final SimpleTemplate record, final long count, final long seed, final String prefix,
+			final String separator, final String suffix) {
+		this.record = record;
+		this.count = Math.max(0, count);
+		this.seed = seed;
+		this.prefix = prefix;
+		this.separator = separator;
+		this.suffix = suffix;
+	}
+
+	/**
+	 * Writes the generated body, encoded as UTF-8. The stream should be buffered, as each record is written in several
+	 * small pieces.
+	 *
+	 * @param out the stream to write to.
+	 * @param variables provides the values of placeholders other than the generated values.
+	 * @throws IOException if the stream cannot be written (e.g. the client has disconnected).
+	 */
+	public void writeTo(final OutputStream out, final SimpleTemplate.Variables variables) throws IOException {
+		writeTo(out, variables, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the generated body. The stream should be buffered, as each record is written in several small pieces.
+	 *
+	 * @param out the stream to write to.
+	 * @param variables provides the values of placeholders other than the generated values.
+	 * @param charset the charset to encode the body in.
+	 * @throws IOException if the stream cannot be written (e.g. the client has disconnected).
+	 */
+	public void writeTo(final OutputStream out, final SimpleTemplate.Variables variables, final Charset charset)
+			throws IOException {
+		RecordVariables recordVariables = new RecordVariables(variables);
+		byte[] separatorBytes = separator.getBytes(charset);
+		out.write(prefix.getBytes(charset));
+		for (long index = 0; index < count; index++) {
+			if (index > 0) {
+				out.write(separatorBytes);
+			}
+			recordVariables.start(index);
+			record.writeTo(out, recordVariables, charset);
+		}
+		out.write(suffix.getBytes(charset));
+	}
+
+	/**
+	 * @return the number of records generated.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return count + " records (seed " + seed + ")";
+	}
+
+	/**
+	 * The values of the placeholders of the current record. One instance is reused for every record of a body.
+	 */
+	private final class RecordVariables implements SimpleTemplate.Variables {
+		private final SimpleTemplate.Variables variables;
+		private long index;
+		/** The state of the splitmix64 pseudo-random sequence of the current record. */
+		private long state;
+
+		RecordVariables(final SimpleTemplate.Variables variables) {
+			this.variables = variables;
+		}
+
+		void start(final long recordIndex) {
+			index = recordIndex;
+			state = seed;
+			state = nextLong() ^ recordIndex;
+		}
+
+		@Override
+		public String get(final String name, final String key) {
+			if (!GENERATED.equals(name) || key == null) {
+				return variables.get(name, key);
+			}
+			int dot = key.indexOf('.');
+			String type = dot < 0 ? key : key.substring(0, dot);
+			int bound = dot < 0 ? -1 : parseBound(key.substring(dot + 1));
+			switch (type) {
+			case "index":
+				return Long.toString(index);
+			case "number":
+				return Long.toString(index + 1);
+			case "int":
+				return Integer.toString(bound > 0 ? nextInt(bound) : nextInt(Integer.MAX_VALUE));
+			case "long":
+				return Long.toString(nextLong());
+			case "double":
+				return Double.toString(nextDouble());
+			case "bool":
+				return Boolean.toString(nextLong() < 0);
+			case "uuid":
+				return new UUID(nextLong() & ~0xf000L | 0x4000L, nextLong() & 0x3fffffffffffffffL
+						| 0x8000000000000000L).toString();
+			case "word":
+				return WORDS[nextInt(WORDS.length)];
+			case "string":
+				char[] chars = new char[bound > 0 ? bound : 8];
+				for (int i = 0; i < chars.length; i++) {
+					chars[i] = (char) ('a' + nextInt(26));
+				}
+				return new String(chars);
+			default:
+				return null;
+			}
+		}
+
+		private int parseBound(final String bound) {
+			try {
+				return Integer.parseInt(bound);
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		private long nextLong() {
+			long z = state += 0x9e3779b97f4a7c15L;
+			z = (z ^ z >>> 30) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ z >>> 27) * 0x94d049bb133111ebL;
+			return z ^ z >>> 31;
+		}
+
+		private int nextInt(final int bound) {
+			return (int) ((nextLong() >>> 33) % bound);
+		}
+
+		private double nextDouble() {
+			return (nextLong() >>> 11) * 0x1.0p-53;
+		}
+	}
+}
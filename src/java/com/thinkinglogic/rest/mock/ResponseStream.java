@@ -0,0 +1,318 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sends a response as a stream of events (or chunks), one at a time at a fixed interval, without holding a request
+ * thread for the duration of the stream. The request is put into asynchronous mode, a shared scheduler produces each
+ * event when it is due, and events are written using non-blocking io - so an event is only written when the connection
+ * can accept it. If a client reads more slowly than events are produced, the events that fall due while an earlier
+ * event is still waiting to be written are skipped, rather than buffered.
+ */
+public class ResponseStream implements WriteListener, AsyncListener, Runnable {
+
+	private static final Logger logger = Logger.getLogger(ResponseStream.class);
+
+	private static final String UTF8 = "UTF-8";
+
+	/** The kinds of stream that can be sent. */
+	public static enum Type {
+		/** Server-sent events: events are separated by a blank line in the body file. */
+		SSE,
+		/** Chunked: each line of the body file is sent as a chunk (e.g. newline delimited json). */
+		CHUNKED;
+
+		/**
+		 * @param name the name of the type (case insensitive).
+		 * @return the type, or null if the name is empty or not recognised.
+		 */
+		public static Type forName(final String name) {
+			for (Type type : values()) {
+				if (type.name().equalsIgnoreCase(name.trim())) {
+					return type;
+				}
+			}
+			return null;
+		}
+	}
+
+	/** Renders the text of each event before it is sent. */
+	public static interface Renderer {
+		/**
+		 * @param event the text of the event.
+		 * @param index the (zero based) number of the event within the stream.
+		 * @return the rendered event.
+		 */
+		String render(String event, int index);
+	}
+
+	private final Type type;
+	private final String[] events;
+	private final int count;
+	private final long intervalNanos;
+	private final Renderer renderer;
+
+	/** The character encoding of the events: UTF-8 for server-sent events, otherwise that of the response. */
+	private String encoding = UTF8;
+	private AsyncContext context;
+	private ServletOutputStream out;
+	private volatile ScheduledFuture<?> schedule;
+	/** Set once the response has been completed (or the connection has failed). */
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/** The number of events produced so far. */
+	private int produced;
+	/** The next event to write, if it has not yet been written. */
+	private byte[] pending;
+	private boolean flushNeeded;
+	/** Set once the last event has been produced. */
+	private boolean finished;
+
+	/**
+	 * @param type the type of stream.
+	 * @param body the text of the events (in the format required by the type).
+	 * @param count the number of events to send (the events are repeated if necessary), or 0 to send events until the
+	 *            client disconnects.
+	 * @param intervalNanos the number of nanoseconds between events.
+	 * @param renderer renders each event before it is sent (may be null).
+	 */
+	public ResponseStream(final Type type, final String body, final int count, final long intervalNanos,
+			final Renderer renderer) {
+		this.type = type;
+		this.events = split(type, body);
+		this.count = count < 0 ? events.length : count;
+		this.intervalNanos = Math.max(1, intervalNanos);
+		this.renderer = renderer;
+	}
+
+	/**
+	 * @param type the type of stream.
+	 * @param body the text of the events.
+	 * @return the text of each event.
+	 */
+	protected static String[] split(final Type type, final String body) {
+		List<String> events = new ArrayList<>();
+		String normalised = body.replace("\r\n", "\n");
+		for (String event : normalised.split(type == Type.SSE ? "\n\\s*\n" : "\n")) {
+			if (event.trim().length() > 0) {
+				events.add(type == Type.SSE ? event.trim() : event);
+			}
+		}
+		return events.toArray(new String[events.size()]);
+	}
+
+	/**
+	 * Formats an event for sending. Each line of a server-sent event that does not start with a field name (data:,
+	 * event:, id: or retry:) or a comment (:) is sent as data.
+	 *
+	 * @param event the rendered event.
+	 * @return the event as it should be written to the response.
+	 */
+	protected String format(final String event) {
+		if (type == Type.CHUNKED) {
+			return event + "\n";
+		}
+		StringBuilder builder = new StringBuilder(event.length() + 16);
+		for (String line : event.split("\n", -1)) {
+			if (!(line.startsWith(":") || line.startsWith("data:") || line.startsWith("event:")
+					|| line.startsWith("id:") || line.startsWith("retry:"))) {
+				builder.append("data: ");
+			}
+			builder.append(line).append('\n');
+		}
+		return builder.append('\n').toString();
+	}
+
+	/**
+	 * @return the number of events in the body.
+	 */
+	public int getEventCount() {
+		return events.length;
+	}
+
+	/**
+	 * Starts sending the stream. The status and headers must already have been set; the content type is set here for
+	 * server-sent events (which are always encoded as UTF-8), and other streams are encoded with the charset of the
+	 * response. Returns immediately if the request supports asynchronous processing, otherwise blocks until
+	 * the stream is finished.
+	 *
+	 * @param request the current request.
+	 * @param response the current response.
+	 * @return true if the stream is being sent asynchronously, false if it has already been sent.
+	 * @throws IOException if the response cannot be written.
+	 */
+	public boolean start(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+		if (type == Type.SSE) {
+			response.setContentType("text/event-stream;charset=" + UTF8);
+			response.setHeader("Cache-Control", "no-cache");
+		} else {
+			encoding = response.getCharacterEncoding();
+		}
+		if (events.length == 0) {
+			response.flushBuffer();
+			return false;
+		}
+		if (!request.isAsyncSupported()) {
+			logger.warn("Asynchronous processing is not enabled for this request, the stream will hold a thread");
+			writeBlocking(response);
+			return false;
+		}
+		context = request.isAsyncStarted() ? request.getAsyncContext() : request.startAsync(request, response);
+		context.setTimeout(0);
+		context.addListener(this);
+		out = response.getOutputStream();
+		synchronized (this) {
+			schedule = MockScheduler.get().scheduleWithFixedDelay(this, 0, intervalNanos, TimeUnit.NANOSECONDS);
+			out.setWriteListener(this);
+		}
+		return true;
+	}
+
+	/**
+	 * Sends the stream on the current thread, sleeping between events.
+	 */
+	private void writeBlocking(final HttpServletResponse response) throws IOException {
+		ServletOutputStream stream = response.getOutputStream();
+		for (int i = 0; count == 0 || i < count; i++) {
+			if (i > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(intervalNanos);
+				} catch (InterruptedException e) {
+					logger.error("Interrupted while streaming", e);
+					return;
+				}
+			}
+			stream.write(nextEvent());
+			stream.flush();
+		}
+	}
+
+	/**
+	 * @return the next event, rendered and encoded.
+	 */
+	private byte[] nextEvent() throws IOException {
+		int index = produced++;
+		String event = events[index % events.length];
+		if (renderer != null) {
+			event = renderer.render(event, index);
+		}
+		return format(event).getBytes(encoding);
+	}
+
+	/**
+	 * Produces the next event (called by the scheduler).
+	 */
+	@Override
+	public synchronized void run() {
+		if (closed.get() || finished && pending == null) {
+			return;
+		}
+		try {
+			if (pending == null && !flushNeeded) {
+				pending = nextEvent();
+				if (count > 0 && produced >= count) {
+					finished = true;
+				}
+			} else {
+				logger.debug("Client is not keeping up with the stream, skipping an event");
+			}
+			write();
+		} catch (IOException e) {
+			logger.debug("Unable to write event to the stream, the client has probably disconnected: " + e);
+			complete();
+		} catch (RuntimeException e) {
+			logger.error("Unable to write event to the stream", e);
+			complete();
+		}
+	}
+
+	/**
+	 * Writes as much as possible without blocking: the pending event, then a flush, then (once the last event has been
+	 * sent) completes the response.
+	 */
+	private void write() throws IOException {
+		while (!closed.get() && out.isReady()) {
+			if (pending != null) {
+				out.write(pending);
+				pending = null;
+				flushNeeded = true;
+			} else if (flushNeeded) {
+				out.flush();
+				flushNeeded = false;
+			} else if (finished) {
+				complete();
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops producing events and completes the response (unless it has already been completed). May be called from
+	 * any thread.
+	 */
+	private void complete() {
+		if (closed.compareAndSet(false, true)) {
+			cancelSchedule();
+			try {
+				context.complete();
+			} catch (IllegalStateException e) {
+				logger.debug("Stream already completed: " + e);
+			}
+		}
+	}
+
+	private void cancelSchedule() {
+		ScheduledFuture<?> scheduled = schedule;
+		if (scheduled != null) {
+			scheduled.cancel(false);
+		}
+	}
+
+	@Override
+	public synchronized void onWritePossible() throws IOException {
+		write();
+	}
+
+	@Override
+	public void onError(final Throwable t) {
+		logger.debug("Stream closed: " + t);
+		complete();
+	}
+
+	@Override
+	public void onComplete(final AsyncEvent event) throws IOException {
+		closed.set(true);
+		cancelSchedule();
+	}
+
+	@Override
+	public void onTimeout(final AsyncEvent event) throws IOException {
+		complete();
+	}
+
+	@Override
+	public void onError(final AsyncEvent event) throws IOException {
+		onError(event.getThrowable());
+	}
+
+	@Override
+	public void onStartAsync(final AsyncEvent event) throws IOException {
+		// nothing to do
+	}
+}
@@ -1,6 +1,5 @@
 package com.thinkinglogic.rest.mock;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
@@ -8,11 +7,14 @@ import java.util.Enumeration;
 import java.util.Map;
 import java.util.TreeMap;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 
 /**
@@ -30,6 +32,10 @@ public class RestServlet extends HttpServlet {
 	public static final String POST = "POST";
 	public static final String DELETE = "DELETE";
 
+	private final RequestJournal journal = RequestJournal.fromSystemProperties();
+	private final AdminHandler adminHandler = new AdminHandler(journal, ResponseBuilder.getSequences(),
+			ResponseBuilder.getMockOverlay());
+
 	/**
 	 * Default constructor.
 	 */
@@ -84,7 +90,8 @@ public class RestServlet extends HttpServlet {
 	}
 
 	/**
-	 * Handles all request types in the same fashion.
+	 * Handles all request types in the same fashion. The body of a PUT or POST request is read without blocking (see
+	 * {@link RequestBodyReader}), and the request is handled once the whole body has arrived.
 	 * 
 	 * @param request the current request.
 	 * @param response the current response.
@@ -93,41 +100,138 @@ public class RestServlet extends HttpServlet {
 	 */
 	protected void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException,
 			IOException {
-		logger.debug("Received request: " + request);
+		final long start = RequestBodyReader.getStart(request, System.nanoTime());
+		if (logger.isDebugEnabled()) {
+			logger.debug("Received request: " + request);
+		}
+		if (AdminHandler.isAdminRequest(request.getPathInfo())) {
+			adminHandler.handle(request, response);
+			return;
+		}
+		if (RequestBodyReader.start(request, response, start)) {
+			// handled again once the body has arrived
+			return;
+		}
+		final RequestTimings timings = RequestTimings.start(request, start);
+		StaticResponse staticResponse = ResponseBuilder.getStaticResponse(request.getPathInfo());
+		if (staticResponse != null) {
+			sendStaticResponse(request, response, staticResponse, start, timings);
+			return;
+		}
 		Map<String, String> queryParams = getQueryParams(request);
-		Map<String, String> headers = getHeaders(request);
-		String requestMethod = request.getMethod().toUpperCase();
-		String body = getBody(request, requestMethod);
+		final Map<String, String> headers = getHeaders(request);
+		final String requestMethod = request.getMethod().toUpperCase();
+		final String body = getBody(request, requestMethod);
+		timings.end(RequestTimings.Phase.READ);
 
-		logger.info("Received " + requestMethod + " request: path=" + request.getPathInfo());
-		logger.info("queryString: " + request.getQueryString());
-		logger.info("headers: " + headers);
-		logger.info("body: " + body);
+		if (logger.isInfoEnabled()) {
+			logger.info("Received " + requestMethod + " request: path=" + request.getPathInfo());
+			logger.info("queryString: " + request.getQueryString());
+			logger.info("headers: " + headers);
+			logger.info("body: " + body);
+		}
 
-		ResponseBuilder builder = new ResponseBuilder(queryParams, headers, body, request);
+		final ResponseBuilder builder = new ResponseBuilder(queryParams, headers, body, request, timings);
 		builder.handleResponse(response);
+		if (request.isAsyncStarted()) {
+			// the response is still being written, so record the request once it is complete
+			final String path = request.getPathInfo();
+			final String queryString = request.getQueryString();
+			request.getAsyncContext().addListener(new AsyncListener() {
+				@Override
+				public void onComplete(final AsyncEvent event) {
+					logTimings(timings);
+					journal.record(requestMethod, path, queryString, builder.getRoute(), headers, body,
+							System.nanoTime() - start, timings.toMap());
+				}
+
+				@Override
+				public void onTimeout(final AsyncEvent event) {
+					// recorded on completion
+				}
+
+				@Override
+				public void onError(final AsyncEvent event) {
+					// recorded on completion
+				}
+
+				@Override
+				public void onStartAsync(final AsyncEvent event) {
+					// nothing to do
+				}
+			});
+		} else {
+			logTimings(timings);
+			journal.record(requestMethod, request.getPathInfo(), request.getQueryString(), builder.getRoute(),
+					headers, body, System.nanoTime() - start, timings.toMap());
+		}
+	}
+
+	/**
+	 * Logs the time taken by each phase of handling a request, if the request was timed.
+	 * 
+	 * @param timings the timings.
+	 */
+	protected void logTimings(final RequestTimings timings) {
+		if (timings.isEnabled()) {
+			logger.info("Timings (nanoseconds): " + timings);
+		}
 	}
 
 	/**
+	 * Sends a cached response for a path that does not depend on anything else about the request. Nothing is parsed
+	 * from the request, unless it is needed for the journal.
+	 * 
+	 * @param request the current request.
+	 * @param response the current response.
+	 * @param staticResponse the response to send.
+	 * @param start the time the request was received (see {@link System#nanoTime()}).
+	 * @param timings the timings of the request.
+	 * @throws IOException if the response cannot be written.
+	 */
+	protected void sendStaticResponse(final HttpServletRequest request, final HttpServletResponse response,
+			final StaticResponse staticResponse, final long start, final RequestTimings timings) throws IOException {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Sending static response for " + request.getMethod() + " request: path="
+					+ request.getPathInfo());
+		}
+		if (timings.isEnabled()) {
+			timings.end(RequestTimings.Phase.PATH);
+			response.setHeader(RequestTimings.HEADER, timings.toHeader());
+		}
+		staticResponse.writeTo(response);
+		timings.end(RequestTimings.Phase.WRITE);
+		logTimings(timings);
+		if (journal.isEnabled()) {
+			String requestMethod = request.getMethod().toUpperCase();
+			journal.record(requestMethod, request.getPathInfo(), request.getQueryString(), staticResponse.getRoute(),
+					getHeaders(request), getBody(request, requestMethod), System.nanoTime() - start,
+					timings.toMap());
+		}
+	}
+
+	/**
+	 * Returns the body of the request exactly as it was sent (line endings are not changed), whether it was read
+	 * without blocking by a {@link RequestBodyReader} or is read here with the blocking reader.
 	 * 
 	 * @param request the current request.
 	 * @param requestMethod the request method.
-	 * @return the body of the request, as a string. Returns an empty json object for GET and DELETE requests.
+	 * @return the body of the request, as a string. Returns empty string for requests other than PUT and POST.
 	 */
 	protected String getBody(final HttpServletRequest request, final String requestMethod) {
-		StringBuffer buffer = new StringBuffer();
-		String line = null;
-		if (PUT.equalsIgnoreCase(requestMethod) || POST.equalsIgnoreCase(requestMethod)) {
-			try {
-				BufferedReader reader = request.getReader();
-				while ((line = reader.readLine()) != null)
-					buffer.append(line).append("\n");
-			} catch (Exception e) {
-				logger.error("Unable to read body of request: " + request, e);
-				buffer.setLength(0);
-			}
+		String read = RequestBodyReader.getBody(request);
+		if (read != null) {
+			return read;
+		}
+		if (!PUT.equalsIgnoreCase(requestMethod) && !POST.equalsIgnoreCase(requestMethod)) {
+			return "";
+		}
+		try {
+			return IOUtils.toString(request.getReader());
+		} catch (Exception e) {
+			logger.error("Unable to read body of request: " + request, e);
+			return "";
 		}
-		return buffer.toString();
 	}
 
 	/**
@@ -0,0 +1,446 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Limits the number of requests to a route that are handled at the same time, to emulate a saturated service. Requests
+ * over the limit wait in a queue (if there is room) until an earlier request completes, and are rejected if the queue
+ * is full or they wait for longer than the queue timeout.
+ * <p>
+ * Nothing blocks: permits are counted with an AtomicInteger, and a queued request is put into asynchronous mode and its
+ * thread returned to the container - when a permit becomes free, the request is dispatched back to the container to
+ * be handled.
+ */
+public class RouteLimiter {
+
+	private static final Logger logger = Logger.getLogger(RouteLimiter.class);
+
+	private static final ConcurrentMap<String, RouteLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+	/** Sends the response to a request that has been given a permit. */
+	public static interface Handler {
+		/**
+		 * @return true if the response is complete, false if it is still being written asynchronously (in which case
+		 *         the permit is released when the asynchronous processing completes).
+		 */
+		boolean handle();
+	}
+
+	private final String route;
+	private final int maxInflight;
+	private final int maxQueue;
+	private final AtomicInteger inflight = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+	/** May contain waiters that have already expired - these are skipped when the queue is polled. */
+	private final Queue<Waiter> queue = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * @param route the name of the route (for logging).
+	 * @param maxInflight the maximum number of requests to handle at the same time.
+	 * @param maxQueue the maximum number of requests that may wait for a permit.
+	 */
+	public RouteLimiter(final String route, final int maxInflight, final int maxQueue) {
+		this.route = route;
+		this.maxInflight = maxInflight;
+		this.maxQueue = Math.max(0, maxQueue);
+	}
+
+	/**
+	 * Returns the limiter for a route, replacing the existing limiter if the limits have changed (requests holding a
+	 * permit from the old limiter release it back to the old limiter).
+	 *
+	 * @param route the route.
+	 * @param maxInflight the maximum number of requests to handle at the same time.
+	 * @param maxQueue the maximum number of requests that may wait for a permit.
+	 * @return the limiter.
+	 */
+	public static RouteLimiter forRoute(final String route, final int maxInflight, final int maxQueue) {
+		while (true) {
+			RouteLimiter limiter = LIMITERS.get(route);
+			if (limiter != null && limiter.maxInflight == maxInflight && limiter.maxQueue == Math.max(0, maxQueue)) {
+				return limiter;
+			}
+			RouteLimiter created = new RouteLimiter(route, maxInflight, maxQueue);
+			if (limiter == null ? LIMITERS.putIfAbsent(route, created) == null : LIMITERS.replace(route, limiter,
+					created)) {
+				return created;
+			}
+		}
+	}
+
+	/**
+	 * Handles a request as soon as a permit is available: immediately if there is one, otherwise once the request
+	 * reaches the front of the queue.
+	 *
+	 * @param request the current request.
+	 * @param response the current response.
+	 * @param queueTimeout the maximum number of milliseconds to wait in the queue (0 to wait indefinitely).
+	 * @param rejection the response to send if the request is rejected.
+	 * @param handler sends the response once the request has a permit.
+	 */
+	public void submit(final HttpServletRequest request, final HttpServletResponse response, final long queueTimeout,
+			final Rejection rejection, final Handler handler) {
+		submit(request, response, queueTimeout, rejection, handler, null);
+	}
+
+	/**
+	 * Handles a request as soon as a permit is available: immediately if there is one, otherwise once the request
+	 * reaches the front of the queue.
+	 *
+	 * @param request the current request.
+	 * @param response the current response.
+	 * @param queueTimeout the maximum number of milliseconds to wait in the queue (0 to wait indefinitely).
+	 * @param rejection the response to send if the request is rejected.
+	 * @param handler sends the response once the request has a permit.
+	 * @param executor runs queued requests once they have a permit (null to run them on a container thread).
+	 * @return true if the response is complete, false if it will be completed asynchronously (it has been queued, or
+	 *         the handler returned false).
+	 */
+	public boolean submit(final HttpServletRequest request, final HttpServletResponse response,
+			final long queueTimeout, final Rejection rejection, final Handler handler, final Executor executor) {
+		if (tryAcquire()) {
+			boolean complete = true;
+			try {
+				complete = handler.handle();
+			} finally {
+				if (complete || !request.isAsyncStarted()) {
+					release();
+				} else {
+					request.getAsyncContext().addListener(new Releaser());
+				}
+			}
+			return complete;
+		}
+		if (!request.isAsyncSupported()) {
+			logger.warn("Asynchronous processing is not enabled for this request, so it cannot be queued");
+			rejection.send(response);
+			return true;
+		}
+		if (!reserveQueueSlot()) {
+			logger.info("Rejecting request to " + route + ": " + maxInflight + " in flight and the queue is full");
+			rejection.send(response);
+			return true;
+		}
+		AsyncContext context = request.isAsyncStarted() ? request.getAsyncContext() : request.startAsync(request,
+				response);
+		context.setTimeout(0);
+		AsyncWaiter waiter = new AsyncWaiter(context, response, rejection, handler, executor);
+		context.addListener(waiter);
+		if (queueTimeout > 0) {
+			waiter.scheduleTimeout(queueTimeout);
+		}
+		enqueue(waiter);
+		return false;
+	}
+
+	/**
+	 * @return true if a permit was acquired.
+	 */
+	protected boolean tryAcquire() {
+		while (true) {
+			int current = inflight.get();
+			if (current >= maxInflight) {
+				return false;
+			}
+			if (inflight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Releases a permit, handing it to the next waiter in the queue (if there is one).
+	 */
+	protected void release() {
+		inflight.decrementAndGet();
+		drain();
+	}
+
+	/**
+	 * @return true if there was room in the queue (the slot must then be filled by {@link #enqueue(Waiter)}).
+	 */
+	protected boolean reserveQueueSlot() {
+		if (queued.incrementAndGet() > maxQueue) {
+			queued.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a waiter to the queue, in a slot reserved by {@link #reserveQueueSlot()}.
+	 */
+	protected void enqueue(final Waiter waiter) {
+		queue.add(waiter);
+		// a permit may have been released before the waiter was added
+		drain();
+	}
+
+	/**
+	 * Hands free permits to waiters. Both release and enqueue drain the queue after changing their half of the state,
+	 * so a waiter cannot be left in the queue while a permit is free.
+	 */
+	private void drain() {
+		while (!queue.isEmpty() && tryAcquire()) {
+			Waiter waiter = poll();
+			if (waiter == null) {
+				inflight.decrementAndGet();
+			} else {
+				waiter.dispatch();
+			}
+		}
+	}
+
+	/**
+	 * @return the next waiter that has not expired (now claimed for dispatch), or null if there is none.
+	 */
+	private Waiter poll() {
+		Waiter waiter;
+		while ((waiter = queue.poll()) != null) {
+			if (waiter.claim()) {
+				queued.decrementAndGet();
+				return waiter;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes a waiter from the queue (if it is still waiting), and rejects it.
+	 *
+	 * @return true if the waiter was still waiting.
+	 */
+	protected boolean expire(final Waiter waiter) {
+		if (!waiter.claim()) {
+			return false;
+		}
+		queued.decrementAndGet();
+		queue.remove(waiter);
+		waiter.reject();
+		return true;
+	}
+
+	/**
+	 * @return the number of requests currently holding a permit.
+	 */
+	public int getInflight() {
+		return inflight.get();
+	}
+
+	/**
+	 * @return the number of requests currently waiting for a permit.
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * A request waiting for a permit. A waiter is claimed exactly once: either to be dispatched (with a permit) or to
+	 * be rejected.
+	 */
+	protected abstract static class Waiter {
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		/** Handles the request, which now holds a permit. */
+		protected abstract void dispatch();
+
+		/** Rejects the request, which was removed from the queue without a permit. */
+		protected abstract void reject();
+	}
+
+	/**
+	 * A queued request, in asynchronous mode. Once dispatched, the permit is released when the request completes.
+	 */
+	private final class AsyncWaiter extends Waiter implements AsyncListener, Runnable {
+		private final AsyncContext context;
+		private final HttpServletResponse response;
+		private final Rejection rejection;
+		private final Handler handler;
+		private final Executor executor;
+		private final AtomicBoolean released = new AtomicBoolean();
+		private volatile boolean dispatched;
+		private volatile ScheduledFuture<?> timeout;
+
+		AsyncWaiter(final AsyncContext context, final HttpServletResponse response, final Rejection rejection,
+				final Handler handler, final Executor executor) {
+			this.context = context;
+			this.response = response;
+			this.rejection = rejection;
+			this.handler = handler;
+			this.executor = executor;
+		}
+
+		void scheduleTimeout(final long millis) {
+			timeout = MockScheduler.get().schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (expire(AsyncWaiter.this)) {
+						logger.info("Rejecting request to " + route + ": waited " + millis + "ms in the queue");
+					}
+				}
+			}, millis, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		protected void dispatch() {
+			dispatched = true;
+			ScheduledFuture<?> scheduled = timeout;
+			if (scheduled != null) {
+				scheduled.cancel(false);
+			}
+			try {
+				if (executor == null) {
+					context.start(this);
+				} else {
+					executor.execute(this);
+				}
+			} catch (RuntimeException e) {
+				logger.error("Unable to dispatch queued request to " + route, e);
+				complete();
+				releaseOnce();
+			}
+		}
+
+		/** Handles the request on a container thread (or a thread of the executor). */
+		@Override
+		public void run() {
+			boolean complete = true;
+			try {
+				complete = handler.handle();
+			} catch (RuntimeException e) {
+				logger.error("Unable to handle queued request to " + route, e);
+			} finally {
+				if (complete) {
+					complete();
+				}
+			}
+		}
+
+		@Override
+		protected void reject() {
+			rejection.send(response);
+			complete();
+		}
+
+		private void complete() {
+			try {
+				context.complete();
+			} catch (IllegalStateException e) {
+				logger.debug("Queued request already completed: " + e);
+			}
+		}
+
+		private void releaseOnce() {
+			if (released.compareAndSet(false, true)) {
+				release();
+			}
+		}
+
+		@Override
+		public void onComplete(final AsyncEvent event) throws IOException {
+			if (dispatched) {
+				releaseOnce();
+			} else {
+				// the client went away while waiting
+				expire(this);
+			}
+		}
+
+		@Override
+		public void onTimeout(final AsyncEvent event) throws IOException {
+			// there is no async timeout - the queue timeout is scheduled separately
+		}
+
+		@Override
+		public void onError(final AsyncEvent event) throws IOException {
+			if (!dispatched) {
+				expire(this);
+			}
+		}
+
+		@Override
+		public void onStartAsync(final AsyncEvent event) throws IOException {
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Releases a permit when the asynchronous processing of a request completes.
+	 */
+	private final class Releaser implements AsyncListener {
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		@Override
+		public void onComplete(final AsyncEvent event) throws IOException {
+			if (released.compareAndSet(false, true)) {
+				release();
+			}
+		}
+
+		@Override
+		public void onTimeout(final AsyncEvent event) throws IOException {
+			// released on completion
+		}
+
+		@Override
+		public void onError(final AsyncEvent event) throws IOException {
+			// released on completion
+		}
+
+		@Override
+		public void onStartAsync(final AsyncEvent event) throws IOException {
+			// nothing to do
+		}
+	}
+
+	/**
+	 * The response sent to a rejected request: a status, and optionally a Retry-After header. Instances are immutable.
+	 */
+	public static final class Rejection {
+		private final int status;
+		private final long retryAfter;
+
+		/**
+		 * @param status the http response code.
+		 * @param retryAfter the number of seconds to send in the Retry-After header (0 to omit the header).
+		 */
+		public Rejection(final int status, final long retryAfter) {
+			this.status = status;
+			this.retryAfter = retryAfter;
+		}
+
+		void send(final HttpServletResponse response) {
+			response.setStatus(status);
+			if (retryAfter > 0) {
+				response.setHeader("Retry-After", Long.toString(retryAfter));
+			}
+			response.setContentLength(0);
+			try {
+				response.flushBuffer();
+			} catch (IOException e) {
+				logger.debug("Unable to send rejection, the client has probably disconnected: " + e);
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.thinkinglogic.rest.mock;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a count of the requests made to each route that selects its response file from a sequence (see
+ * {@link ResponseBuilder#FILE_SEQUENCE} and {@link ResponseBuilder#FILE_CYCLE}). Counters are atomic, so concurrent
+ * requests to the same route are each given a distinct position in the sequence without locking.
+ */
+public class RouteSequences {
+
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+	/**
+	 * @param route the route (the path containing path.properties).
+	 * @return the zero-based number of this request to the route since it was last reset.
+	 */
+	public long next(final String route) {
+		AtomicLong counter = counters.get(route);
+		if (counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = counters.putIfAbsent(route, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		return counter.getAndIncrement();
+	}
+
+	/**
+	 * Selects the name of the file to return from a sequence of names.
+	 *
+	 * @param route the route (the path containing path.properties).
+	 * @param names the sequence of file names.
+	 * @param cycle if true the sequence starts again once it has been exhausted, otherwise the last name is repeated.
+	 * @return the name of the file to return.
+	 */
+	public String select(final String route, final String[] names, final boolean cycle) {
+		long position = next(route);
+		if (cycle) {
+			return names[(int) (position % names.length)];
+		}
+		return names[(int) Math.min(position, names.length - 1)];
+	}
+
+	/**
+	 * Resets all counters, so that every sequence starts again from the first file.
+	 *
+	 * @return the number of counters reset.
+	 */
+	public int reset() {
+		int count = counters.size();
+		counters.clear();
+		return count;
+	}
+
+	/**
+	 * Resets the counter for a single route.
+	 *
+	 * @param route the route to reset.
+	 * @return the number of counters reset (0 or 1).
+	 */
+	public int reset(final String route) {
+		return counters.remove(route) == null ? 0 : 1;
+	}
+
+	/**
+	 * @return the current count of requests to each route, keyed by route.
+	 */
+	public Map<String, Long> getCounts() {
+		Map<String, Long> counts = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return counts;
+	}
+}
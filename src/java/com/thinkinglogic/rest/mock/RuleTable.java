@@ -0,0 +1,443 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A set of rules, read from a path.rules file, each of which maps a combination of request properties to a response
+ * file. Each line of the file is a rule in the format:
+ *
+ * <pre>
+ * filename=predicate; predicate; ...
+ * </pre>
+ *
+ * where each predicate is in the format 'source [name] operator value'. The source is one of method, header,
+ * queryParam, formParam, pathParam, jsonpath or xpath; the name is the name of the header/parameter, or the
+ * jsonpath/xpath expression to evaluate (method has no name); and the operator is one of equals, prefix or matches (a
+ * regular expression that must match the whole value). For example:
+ *
+ * <pre>
+ * tenant-a-order=method equals POST; header X-Tenant equals a; jsonpath $.type equals order
+ * </pre>
+ *
+ * A rule matches if all of its predicates match, and the first matching rule in the file wins.
+ * <p>
+ * Rules are compiled into a decision table when the file is read: regular expressions are compiled once, each request
+ * property referred to by any rule is extracted at most once per request, and 'equals' predicates are indexed by value,
+ * so that only the rules that could still match are evaluated.
+ */
+public final class RuleTable {
+
+	private static final Logger logger = Logger.getLogger(RuleTable.class);
+
+	/** A RuleTable with no rules. */
+	public static final RuleTable EMPTY = new RuleTable("", new ArrayList<Rule>());
+
+	/** The sources of request properties that rules can match against. */
+	public static enum Source {
+		METHOD("method"), HEADER("header"), QUERY_PARAM("queryParam"), FORM_PARAM("formParam"), PATH_PARAM("pathParam"),
+		JSONPATH("jsonpath"), XPATH("xpath");
+
+		private final String name;
+
+		private Source(final String name) {
+			this.name = name;
+		}
+
+		static Source forName(final String name) {
+			for (Source source : values()) {
+				if (source.name.equals(name)) {
+					return source;
+				}
+			}
+			throw new IllegalArgumentException("Unknown source: '" + name + "'");
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/** The operators that rules can use to compare request properties with a value. */
+	public static enum Operator {
+		EQUALS, PREFIX, MATCHES;
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * Provides the value of a request property.
+	 */
+	public static interface Values {
+		/**
+		 * @param source the source of the value.
+		 * @param name the name of the header/parameter, or the expression to evaluate (null for the method).
+		 * @return the value, or empty string if there is no value.
+		 */
+		String getValue(Source source, String name);
+	}
+
+	private final String name;
+	private final Rule[] rules;
+	/** The distinct request properties referred to by any rule. */
+	private final Attribute[] attributes;
+	/**
+	 * For each attribute with an 'equals' predicate, the rules that can still match for each value: those requiring the
+	 * value, and those that do not require any value. Null for other attributes.
+	 */
+	private final List<Map<String, BitSet>> equalsIndex;
+	/** For each attribute with an 'equals' predicate, the rules that do not require any value. */
+	private final BitSet[] unconstrained;
+	/** For each rule, the predicates not handled by the equals index. */
+	private final Predicate[][] residual;
+	/** For each rule, the index (in attributes) of the attribute of each residual predicate. */
+	private final int[][] residualAttributes;
+
+	/**
+	 * Compiles the rules. The rules and their predicates are not modified, so the same predicates can be compiled into
+	 * any number of tables (e.g. each snapshot of a {@link MockOverlay}) while other tables are being matched.
+	 *
+	 * @param name the name of the rules file (for logging).
+	 * @param ruleList the rules, in order of precedence.
+	 */
+	private RuleTable(final String name, final List<Rule> ruleList) {
+		this.name = name;
+		this.rules = ruleList.toArray(new Rule[ruleList.size()]);
+
+		Map<Attribute, Integer> indexes = new HashMap<>();
+		List<Attribute> attributeList = new ArrayList<>();
+		for (Rule rule : rules) {
+			for (Predicate predicate : rule.predicates) {
+				if (!indexes.containsKey(predicate.attribute)) {
+					indexes.put(predicate.attribute, attributeList.size());
+					attributeList.add(predicate.attribute);
+				}
+			}
+		}
+		this.attributes = attributeList.toArray(new Attribute[attributeList.size()]);
+		this.equalsIndex = new ArrayList<>(Collections.<Map<String, BitSet>> nCopies(attributes.length, null));
+		this.unconstrained = new BitSet[attributes.length];
+		this.residual = new Predicate[rules.length][];
+		this.residualAttributes = new int[rules.length][];
+
+		BitSet[] indexedOn = new BitSet[rules.length];
+		for (int r = 0; r < rules.length; r++) {
+			indexedOn[r] = new BitSet(attributes.length);
+			List<Predicate> residualList = new ArrayList<>();
+			for (Predicate predicate : rules[r].predicates) {
+				int a = indexes.get(predicate.attribute);
+				if (predicate.operator == Operator.EQUALS && !indexedOn[r].get(a)) {
+					if (equalsIndex.get(a) == null) {
+						equalsIndex.set(a, new HashMap<String, BitSet>());
+					}
+					BitSet bucket = equalsIndex.get(a).get(predicate.value);
+					if (bucket == null) {
+						bucket = new BitSet(rules.length);
+						equalsIndex.get(a).put(predicate.value, bucket);
+					}
+					bucket.set(r);
+					indexedOn[r].set(a);
+				} else {
+					residualList.add(predicate);
+				}
+			}
+			residual[r] = residualList.toArray(new Predicate[residualList.size()]);
+			residualAttributes[r] = new int[residual[r].length];
+			for (int p = 0; p < residual[r].length; p++) {
+				residualAttributes[r][p] = indexes.get(residual[r][p].attribute);
+			}
+		}
+		for (int a = 0; a < attributes.length; a++) {
+			if (equalsIndex.get(a) != null) {
+				unconstrained[a] = new BitSet(rules.length);
+				for (int r = 0; r < rules.length; r++) {
+					if (!indexedOn[r].get(a)) {
+						unconstrained[a].set(r);
+					}
+				}
+				for (BitSet bucket : equalsIndex.get(a).values()) {
+					bucket.or(unconstrained[a]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads and compiles a rules file. Any rule that cannot be parsed is logged and ignored.
+	 *
+	 * @param name the name of the rules file (for logging).
+	 * @param reader the contents of the rules file.
+	 * @return the compiled rules.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public static RuleTable compile(final String name, final Reader reader) throws IOException {
+		List<Rule> rules = new ArrayList<>();
+		BufferedReader lines = new BufferedReader(reader);
+		String line;
+		int lineNumber = 0;
+		while ((line = lines.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			try {
+				rules.add(parseRule(line));
+			} catch (IllegalArgumentException e) {
+				logger.error("Ignoring invalid rule at " + name + ":" + lineNumber + " (" + e.getMessage() + "): "
+						+ line);
+			}
+		}
+		logger.info("Compiled " + rules.size() + " rules from " + name);
+		return new RuleTable(name, rules);
+	}
+
+	/**
+	 * @param line a line from a rules file.
+	 * @return the rule.
+	 * @throws IllegalArgumentException if the line is not a valid rule.
+	 */
+	protected static Rule parseRule(final String line) {
+		int equals = line.indexOf('=');
+		if (equals <= 0) {
+			throw new IllegalArgumentException("expected filename=predicate; predicate; ...");
+		}
+		String file = line.substring(0, equals).trim();
+		Predicate[] predicates = parsePredicates(line.substring(equals + 1));
+		if (file.length() == 0 || predicates.length == 0) {
+			throw new IllegalArgumentException("expected filename=predicate; predicate; ...");
+		}
+		return new Rule(file, predicates);
+	}
+
+	/**
+	 * @param predicates a semi-colon separated list of predicates.
+	 * @return the predicates (empty if the list is empty).
+	 * @throws IllegalArgumentException if any predicate is not valid.
+	 */
+	protected static Predicate[] parsePredicates(final String predicates) {
+		List<Predicate> parsed = new ArrayList<>();
+		for (String predicate : predicates.split(";")) {
+			if (predicate.trim().length() > 0) {
+				parsed.add(parsePredicate(predicate.trim()));
+			}
+		}
+		return parsed.toArray(new Predicate[parsed.size()]);
+	}
+
+	/**
+	 * @param attributes a semi-colon separated list of request properties, each in the format 'source [name]' (e.g.
+	 *            'method; queryParam page; header X-Tenant').
+	 * @return the attributes (empty if the list is empty).
+	 * @throws IllegalArgumentException if any attribute is not valid.
+	 */
+	static Attribute[] parseAttributes(final String attributes) {
+		List<Attribute> parsed = new ArrayList<>();
+		for (String attribute : attributes.split(";")) {
+			String trimmed = attribute.trim();
+			if (trimmed.length() == 0) {
+				continue;
+			}
+			int space = trimmed.indexOf(' ');
+			Source source = Source.forName(space < 0 ? trimmed : trimmed.substring(0, space));
+			String name = space < 0 ? null : trimmed.substring(space + 1).trim();
+			if (source == Source.METHOD && name != null) {
+				throw new IllegalArgumentException("method does not take a name: " + trimmed);
+			} else if (source != Source.METHOD && name == null) {
+				throw new IllegalArgumentException(source + " requires a name: " + trimmed);
+			}
+			parsed.add(new Attribute(source, name));
+		}
+		return parsed.toArray(new Attribute[parsed.size()]);
+	}
+
+	/**
+	 * Compiles rules that have already been parsed.
+	 *
+	 * @param name the name of the rules (for logging).
+	 * @param rules the rules, in order of precedence.
+	 * @return the compiled rules.
+	 */
+	static RuleTable compile(final String name, final List<Rule> rules) {
+		return new RuleTable(name, rules);
+	}
+
+	/**
+	 * @param predicate a predicate in the format 'source [name] operator value'.
+	 * @return the predicate.
+	 * @throws IllegalArgumentException if the predicate is not valid.
+	 */
+	protected static Predicate parsePredicate(final String predicate) {
+		int space = predicate.indexOf(' ');
+		if (space < 0) {
+			throw new IllegalArgumentException("expected 'source [name] operator value': " + predicate);
+		}
+		Source source = Source.forName(predicate.substring(0, space));
+		String rest = predicate.substring(space);
+		Operator operator = null;
+		int operatorStart = -1;
+		for (Operator candidate : Operator.values()) {
+			int index = rest.indexOf(" " + candidate + " ");
+			if (index >= 0 && (operatorStart < 0 || index < operatorStart)) {
+				operator = candidate;
+				operatorStart = index;
+			}
+		}
+		if (operator == null) {
+			throw new IllegalArgumentException("expected one of " + Arrays.toString(Operator.values())
+					+ ": " + predicate);
+		}
+		String attributeName = rest.substring(0, operatorStart).trim();
+		String value = rest.substring(operatorStart + operator.toString().length() + 2).trim();
+		if (source == Source.METHOD) {
+			if (attributeName.length() > 0) {
+				throw new IllegalArgumentException("method does not take a name: " + predicate);
+			}
+			attributeName = null;
+		} else if (attributeName.length() == 0) {
+			throw new IllegalArgumentException(source + " requires a name: " + predicate);
+		}
+		Pattern pattern = null;
+		if (operator == Operator.MATCHES) {
+			try {
+				pattern = Pattern.compile(value);
+			} catch (PatternSyntaxException e) {
+				throw new IllegalArgumentException("invalid regular expression: " + value, e);
+			}
+		}
+		return new Predicate(new Attribute(source, attributeName), operator, value, pattern);
+	}
+
+	/**
+	 * Finds the first rule matching the request. The only objects allocated are the set of candidate rules and the
+	 * array of request properties extracted so far (one of each per call): the rules allowed by each value of an
+	 * indexed property are computed when the table is compiled.
+	 *
+	 * @param values provides the request properties.
+	 * @return the filename of the first matching rule, or null if no rule matches.
+	 */
+	public String match(final Values values) {
+		if (rules.length == 0) {
+			return null;
+		}
+		final String[] extracted = new String[attributes.length];
+		BitSet candidates = new BitSet(rules.length);
+		candidates.set(0, rules.length);
+		for (int a = 0; a < attributes.length && !candidates.isEmpty(); a++) {
+			Map<String, BitSet> index = equalsIndex.get(a);
+			if (index != null) {
+				BitSet allowed = index.get(value(values, extracted, a));
+				candidates.and(allowed == null ? unconstrained[a] : allowed);
+			}
+		}
+		outer: for (int r = candidates.nextSetBit(0); r >= 0; r = candidates.nextSetBit(r + 1)) {
+			for (int p = 0; p < residual[r].length; p++) {
+				if (!residual[r][p].test(value(values, extracted, residualAttributes[r][p]))) {
+					continue outer;
+				}
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Matched rule " + (r + 1) + " in " + name + ": " + rules[r].file);
+			}
+			return rules[r].file;
+		}
+		return null;
+	}
+
+	private String value(final Values values, final String[] extracted, final int attribute) {
+		if (extracted[attribute] == null) {
+			String value = values.getValue(attributes[attribute].source, attributes[attribute].name);
+			extracted[attribute] = value == null ? "" : value;
+		}
+		return extracted[attribute];
+	}
+
+	/**
+	 * @return the number of rules.
+	 */
+	public int size() {
+		return rules.length;
+	}
+
+	/** A single rule: a conjunction of predicates mapped to a file name. Instances are immutable. */
+	static final class Rule {
+		final String file;
+		final Predicate[] predicates;
+
+		Rule(final String file, final Predicate[] predicates) {
+			this.file = file;
+			this.predicates = predicates.clone();
+		}
+	}
+
+	/** A request property: a source and the name of the header/parameter or expression. Instances are immutable. */
+	static final class Attribute {
+		final Source source;
+		final String name;
+
+		Attribute(final Source source, final String name) {
+			this.source = source;
+			this.name = name;
+		}
+
+		String getValue(final Values values) {
+			return values.getValue(source, name);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Attribute)) {
+				return false;
+			}
+			Attribute other = (Attribute) obj;
+			return source == other.source && (name == null ? other.name == null : name.equals(other.name));
+		}
+
+		@Override
+		public int hashCode() {
+			return source.hashCode() * 31 + (name == null ? 0 : name.hashCode());
+		}
+	}
+
+	/** A comparison of a request property with a value. Instances are immutable. */
+	static final class Predicate {
+		final Attribute attribute;
+		final Operator operator;
+		final String value;
+		final Pattern pattern;
+
+		Predicate(final Attribute attribute, final Operator operator, final String value, final Pattern pattern) {
+			this.attribute = attribute;
+			this.operator = operator;
+			this.value = value;
+			this.pattern = pattern;
+		}
+
+		boolean test(final String actual) {
+			switch (operator) {
+			case EQUALS:
+				return value.equals(actual);
+			case PREFIX:
+				return actual.startsWith(value);
+			default:
+				return pattern.matcher(actual).matches();
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package com.thinkinglogic.rest.mock;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A response that depends on nothing but the request path - the directories and files for the path do not select on
+ * the method, headers, parameters or body of the request, and the response is not templated, delayed, limited or
+ * streamed. Once such a response has been built it is cached against the path, and later requests for the path are
+ * sent the cached status, headers and (already encoded) body without resolving the path again, so serving them
+ * allocates nothing beyond what the container itself allocates.
+ * <p>
+ * The cache is cleared whenever the resource index is rebuilt (and the responses for a mock root's paths when the root
+ * is unloaded). Each clear starts a new generation of the cache, and a response built from the resources of an
+ * earlier generation is not cached - so a request that was resolved just before a clear cannot put its (stale)
+ * response back afterwards. Responses are not cached while any runtime mocks are
+ * registered (as a mock could be added for a cached path), and the number of cached paths is limited by the system
+ * property {@link #CACHE_SIZE_PROPERTY} - once the cache is full, further static responses are built as normal.
+ */
+public final class StaticResponse {
+
+	/** The name of the system property that specifies the maximum number of paths to cache (0 disables the cache). */
+	public static final String CACHE_SIZE_PROPERTY = "rest-mocker.static.cache.size";
+
+	private static final int CACHE_SIZE = Integer.getInteger(CACHE_SIZE_PROPERTY, 10000);
+	private static final ConcurrentMap<String, StaticResponse> CACHE = new ConcurrentHashMap<>();
+	/** The number of times the cache has been cleared. */
+	private static final AtomicLong GENERATION = new AtomicLong();
+	/** Held (shared) while responses are cached, and exclusively while the cache is cleared - never when reading. */
+	private static final ReadWriteLock CLEAR_LOCK = new ReentrantReadWriteLock();
+
+	private final String route;
+	private final int status;
+	private final String[] headerNames;
+	private final String[] headerValues;
+	private final byte[] body;
+
+	/**
+	 * @param route the resource path and file name the response was built from.
+	 * @param status the http response code.
+	 * @param headers the response headers.
+	 * @param body the encoded response body.
+	 */
+	public StaticResponse(final String route, final int status, final Map<String, String> headers, final byte[] body) {
+		this.route = route;
+		this.status = status;
+		this.headerNames = new String[headers.size()];
+		this.headerValues = new String[headers.size()];
+		int i = 0;
+		for (Map.Entry<String, String> entry : headers.entrySet()) {
+			headerNames[i] = entry.getKey();
+			headerValues[i] = entry.getValue();
+			i++;
+		}
+		this.body = body;
+	}
+
+	/**
+	 * @param path the request path.
+	 * @return the cached response for the path, or null if there is none.
+	 */
+	public static StaticResponse forPath(final String path) {
+		if (path == null || CACHE.isEmpty()) {
+			return null;
+		}
+		return CACHE.get(path);
+	}
+
+	/**
+	 * @return the current generation of the cache, which should be read before the resources a response is built from
+	 *         are looked up.
+	 */
+	public static long getGeneration() {
+		return GENERATION.get();
+	}
+
+	/**
+	 * Caches a response, unless the cache is full or has been cleared since the response's resources were looked up.
+	 *
+	 * @param path the request path.
+	 * @param response the response to send for the path.
+	 * @param generation the generation of the cache (see {@link #getGeneration()}) when the resources the response
+	 *            was built from were looked up.
+	 * @return true if the response was cached.
+	 */
+	public static boolean cache(final String path, final StaticResponse response, final long generation) {
+		if (path == null || CACHE.size() >= CACHE_SIZE) {
+			return false;
+		}
+		CLEAR_LOCK.readLock().lock();
+		try {
+			return GENERATION.get() == generation && CACHE.putIfAbsent(path, response) == null;
+		} finally {
+			CLEAR_LOCK.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes all cached responses.
+	 */
+	public static void clear() {
+		CLEAR_LOCK.writeLock().lock();
+		try {
+			GENERATION.incrementAndGet();
+			CACHE.clear();
+		} finally {
+			CLEAR_LOCK.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the cached responses for the paths beneath a prefix.
+	 *
+	 * @param prefix the path prefix (e.g. the prefix of an unloaded {@link MockRoot}).
+	 */
+	public static void clear(final String prefix) {
+		CLEAR_LOCK.writeLock().lock();
+		try {
+			GENERATION.incrementAndGet();
+			for (String path : CACHE.keySet()) {
+				if (path.startsWith(prefix)) {
+					CACHE.remove(path);
+				}
+			}
+		} finally {
+			CLEAR_LOCK.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of cached responses.
+	 */
+	public static int getCacheSize() {
+		return CACHE.size();
+	}
+
+	/**
+	 * Sends the response.
+	 *
+	 * @param response the response to write to.
+	 * @throws IOException if the response cannot be written.
+	 */
+	public void writeTo(final HttpServletResponse response) throws IOException {
+		response.setStatus(status);
+		for (int i = 0; i < headerNames.length; i++) {
+			response.addHeader(headerNames[i], headerValues[i]);
+		}
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+		response.flushBuffer();
+	}
+
+	/**
+	 * @return the resource path and file name the response was built from.
+	 */
+	public String getRoute() {
+		return route;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+}
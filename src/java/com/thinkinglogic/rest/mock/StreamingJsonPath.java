@@ -0,0 +1,422 @@
+package com.thinkinglogic.rest.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Evaluates simple json path expressions - a chain of field names and array indexes, such as $.order.items[0].type or
+ * $['order']['type'] - by scanning the json text, without parsing it into objects. Scanning stops as soon as the value
+ * has been found, and the values of any fields that are not on the path are skipped over rather than parsed, so the
+ * cost of evaluating an expression such as $.type does not depend on the size of the rest of the document.
+ * <p>
+ * Expressions using any other json path features (wildcards, deep scans, filters, slices etc) are not simple, and must
+ * be evaluated by parsing the document.
+ */
+public final class StreamingJsonPath {
+
+	private static final ConcurrentMap<String, Object> COMPILED = new ConcurrentHashMap<>();
+	private static final Object NOT_SIMPLE = new Object();
+
+	/** Each segment is either a String (a field name) or an Integer (an array index). */
+	private final Object[] segments;
+
+	private StreamingJsonPath(final Object[] segments) {
+		this.segments = segments;
+	}
+
+	/**
+	 * @param expression a json path expression.
+	 * @return a StreamingJsonPath that evaluates the expression, or null if the expression is not simple.
+	 */
+	public static StreamingJsonPath forExpression(final String expression) {
+		Object compiled = COMPILED.get(expression);
+		if (compiled == null) {
+			compiled = compile(expression);
+			if (compiled == null) {
+				compiled = NOT_SIMPLE;
+			}
+			COMPILED.putIfAbsent(expression, compiled);
+		}
+		return compiled == NOT_SIMPLE ? null : (StreamingJsonPath) compiled;
+	}
+
+	/**
+	 * @param expression a json path expression.
+	 * @return a StreamingJsonPath that evaluates the expression, or null if the expression is not simple.
+	 */
+	protected static StreamingJsonPath compile(final String expression) {
+		final String path = expression.trim();
+		if (!path.startsWith("$")) {
+			return null;
+		}
+		List<Object> segments = new ArrayList<>();
+		int i = 1;
+		while (i < path.length()) {
+			char c = path.charAt(i);
+			if (c == '.') {
+				int end = i + 1;
+				while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+					end++;
+				}
+				String name = path.substring(i + 1, end);
+				if (name.length() == 0 || !isSimpleName(name)) {
+					return null;
+				}
+				segments.add(name);
+				i = end;
+			} else if (c == '[') {
+				int close = path.indexOf(']', i);
+				if (close < 0) {
+					return null;
+				}
+				String inner = path.substring(i + 1, close).trim();
+				if (inner.length() >= 2 && (inner.charAt(0) == '\'' || inner.charAt(0) == '"')
+						&& inner.charAt(inner.length() - 1) == inner.charAt(0)) {
+					String name = inner.substring(1, inner.length() - 1);
+					if (name.indexOf('\'') >= 0 || name.indexOf('"') >= 0) {
+						return null;
+					}
+					segments.add(name);
+				} else if (inner.length() > 0 && inner.length() < 10 && isDigits(inner)) {
+					segments.add(Integer.valueOf(inner));
+				} else {
+					return null;
+				}
+				i = close + 1;
+			} else {
+				return null;
+			}
+		}
+		return new StreamingJsonPath(segments.toArray());
+	}
+
+	private static boolean isSimpleName(final String name) {
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '*' || c == '@' || c == '?' || c == '(' || c == ')' || c == ',' || c == ':' || c == '\''
+					|| c == '"' || Character.isWhitespace(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDigits(final String string) {
+		for (int i = 0; i < string.length(); i++) {
+			if (!Character.isDigit(string.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluates the expression against a json document.
+	 *
+	 * @param json the json document.
+	 * @return the value found, as a string (numbers and booleans are formatted as they would be by a full parse), or
+	 *         null if the value is json null or the path does not exist in the document.
+	 * @throws IllegalStateException if the value is an object or array, or the document is not valid json - in either
+	 *             case the expression should be evaluated by parsing the document instead.
+	 */
+	public String evaluate(final String json) {
+		return new Scanner(json).find(segments);
+	}
+
+	/**
+	 * A cursor over a json document.
+	 */
+	private static final class Scanner {
+
+		private final String json;
+		private int pos;
+
+		Scanner(final String json) {
+			this.json = json;
+		}
+
+		String find(final Object[] segments) {
+			for (Object segment : segments) {
+				skipWhitespace();
+				boolean found;
+				if (segment instanceof String) {
+					found = seekField((String) segment);
+				} else {
+					found = seekElement((Integer) segment);
+				}
+				if (!found) {
+					return null;
+				}
+			}
+			skipWhitespace();
+			return readScalar();
+		}
+
+		/**
+		 * Moves to the value of the named field of the object at the current position.
+		 *
+		 * @return true if found, false if there is no such field (or the current value is not an object).
+		 */
+		private boolean seekField(final String name) {
+			if (peek() != '{') {
+				return false;
+			}
+			pos++;
+			skipWhitespace();
+			if (peek() == '}') {
+				return false;
+			}
+			while (true) {
+				skipWhitespace();
+				expect('"');
+				boolean matched = matchString(name);
+				skipWhitespace();
+				expect(':');
+				skipWhitespace();
+				if (matched) {
+					return true;
+				}
+				skipValue();
+				skipWhitespace();
+				char c = next();
+				if (c == '}') {
+					return false;
+				} else if (c != ',') {
+					throw invalid();
+				}
+			}
+		}
+
+		/**
+		 * Moves to the specified element of the array at the current position.
+		 *
+		 * @return true if found, false if there is no such element (or the current value is not an array).
+		 */
+		private boolean seekElement(final int index) {
+			if (peek() != '[') {
+				return false;
+			}
+			pos++;
+			skipWhitespace();
+			if (peek() == ']') {
+				return false;
+			}
+			for (int i = 0;; i++) {
+				skipWhitespace();
+				if (i == index) {
+					return true;
+				}
+				skipValue();
+				skipWhitespace();
+				char c = next();
+				if (c == ']') {
+					return false;
+				} else if (c != ',') {
+					throw invalid();
+				}
+			}
+		}
+
+		/**
+		 * Reads the string starting after the opening quote, comparing it with the specified value.
+		 *
+		 * @return true if the string equals the value.
+		 */
+		private boolean matchString(final String value) {
+			int start = pos;
+			int i = 0;
+			while (pos < json.length()) {
+				char c = json.charAt(pos);
+				if (c == '"') {
+					pos++;
+					return i == value.length();
+				} else if (c == '\\') {
+					pos = start;
+					return value.equals(readString());
+				}
+				if (i >= value.length() || value.charAt(i) != c) {
+					pos = start;
+					skipString();
+					return false;
+				}
+				i++;
+				pos++;
+			}
+			throw invalid();
+		}
+
+		/**
+		 * @return the scalar value at the current position, as a string.
+		 */
+		private String readScalar() {
+			char c = peek();
+			if (c == '"') {
+				pos++;
+				return readString();
+			} else if (c == '{' || c == '[') {
+				throw new IllegalStateException("Value is not a scalar");
+			}
+			int start = pos;
+			skipLiteral();
+			String literal = json.substring(start, pos);
+			if ("null".equals(literal)) {
+				return null;
+			} else if ("true".equals(literal) || "false".equals(literal)) {
+				return literal;
+			}
+			return formatNumber(literal);
+		}
+
+		/**
+		 * @param literal a json number.
+		 * @return the number, formatted as the Integer, Long, BigInteger or Double that a full parse would produce.
+		 */
+		private String formatNumber(final String literal) {
+			try {
+				if (literal.indexOf('.') >= 0 || literal.indexOf('e') >= 0 || literal.indexOf('E') >= 0) {
+					return Double.valueOf(literal).toString();
+				}
+				return String.valueOf(Long.parseLong(literal));
+			} catch (NumberFormatException e) {
+				if (literal.length() > 0 && isDigits(literal.charAt(0) == '-' ? literal.substring(1) : literal)) {
+					return literal;
+				}
+				throw invalid();
+			}
+		}
+
+		/**
+		 * Reads the string starting after the opening quote, decoding any escape sequences.
+		 */
+		private String readString() {
+			StringBuilder builder = new StringBuilder();
+			while (pos < json.length()) {
+				char c = json.charAt(pos++);
+				if (c == '"') {
+					return builder.toString();
+				} else if (c == '\\') {
+					if (pos >= json.length()) {
+						break;
+					}
+					char escaped = json.charAt(pos++);
+					switch (escaped) {
+					case 'b':
+						builder.append('\b');
+						break;
+					case 'f':
+						builder.append('\f');
+						break;
+					case 'n':
+						builder.append('\n');
+						break;
+					case 'r':
+						builder.append('\r');
+						break;
+					case 't':
+						builder.append('\t');
+						break;
+					case 'u':
+						if (pos + 4 > json.length()) {
+							throw invalid();
+						}
+						try {
+							builder.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+						} catch (NumberFormatException e) {
+							throw invalid();
+						}
+						pos += 4;
+						break;
+					default:
+						builder.append(escaped);
+					}
+				} else {
+					builder.append(c);
+				}
+			}
+			throw invalid();
+		}
+
+		/** Skips the string starting after the opening quote. */
+		private void skipString() {
+			while (pos < json.length()) {
+				char c = json.charAt(pos++);
+				if (c == '"') {
+					return;
+				} else if (c == '\\') {
+					pos++;
+				}
+			}
+			throw invalid();
+		}
+
+		/** Skips the value (of any type) at the current position. */
+		private void skipValue() {
+			char c = peek();
+			if (c == '"') {
+				pos++;
+				skipString();
+			} else if (c == '{' || c == '[') {
+				int depth = 0;
+				while (pos < json.length()) {
+					c = json.charAt(pos++);
+					if (c == '"') {
+						skipString();
+					} else if (c == '{' || c == '[') {
+						depth++;
+					} else if ((c == '}' || c == ']') && --depth == 0) {
+						return;
+					}
+				}
+				throw invalid();
+			} else {
+				skipLiteral();
+			}
+		}
+
+		/** Skips a number, true, false or null. */
+		private void skipLiteral() {
+			int start = pos;
+			while (pos < json.length()) {
+				char c = json.charAt(pos);
+				if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+					break;
+				}
+				pos++;
+			}
+			if (pos == start) {
+				throw invalid();
+			}
+		}
+
+		private void skipWhitespace() {
+			while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private char peek() {
+			if (pos >= json.length()) {
+				throw invalid();
+			}
+			return json.charAt(pos);
+		}
+
+		private char next() {
+			char c = peek();
+			pos++;
+			return c;
+		}
+
+		private void expect(final char expected) {
+			if (next() != expected) {
+				throw invalid();
+			}
+		}
+
+		private IllegalStateException invalid() {
+			return new IllegalStateException("Invalid json at position " + pos);
+		}
+	}
+}
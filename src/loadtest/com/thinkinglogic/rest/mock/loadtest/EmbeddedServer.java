@@ -0,0 +1,60 @@
+package com.thinkinglogic.rest.mock.loadtest;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.thinkinglogic.rest.mock.RestServlet;
+
+/**
+ * Runs a {@link RestServlet} in an embedded Jetty server, on an ephemeral port.
+ */
+public class EmbeddedServer {
+
+	/** The context path the servlet is deployed under (the same as in the war). */
+	public static final String CONTEXT_PATH = "/rest-mocker";
+
+	/** The number of threads Jetty needs in addition to the request handling threads (one acceptor, one selector). */
+	private static final int NON_WORKER_THREADS = 2;
+
+	private final Server server;
+	private final ServerConnector connector;
+
+	/**
+	 * @param workerThreads the number of threads available to handle requests.
+	 */
+	public EmbeddedServer(final int workerThreads) {
+		int threads = workerThreads + NON_WORKER_THREADS;
+		QueuedThreadPool pool = new QueuedThreadPool(threads, threads);
+		pool.setName("rest-mocker");
+		server = new Server(pool);
+		connector = new ServerConnector(server, 1, 1);
+		connector.setPort(0);
+		server.addConnector(connector);
+		ServletContextHandler context = new ServletContextHandler();
+		context.setContextPath(CONTEXT_PATH);
+		context.addServlet(RestServlet.class, "/*");
+		server.setHandler(context);
+	}
+
+	/**
+	 * Starts the server.
+	 *
+	 * @return the base url of the servlet (without a trailing '/').
+	 * @throws Exception if the server cannot be started.
+	 */
+	public String start() throws Exception {
+		server.start();
+		return "http://localhost:" + connector.getLocalPort() + CONTEXT_PATH;
+	}
+
+	/**
+	 * Stops the server.
+	 *
+	 * @throws Exception if the server cannot be stopped.
+	 */
+	public void stop() throws Exception {
+		server.stop();
+	}
+}
@@ -0,0 +1,255 @@
+package com.thinkinglogic.rest.mock.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Generates an open-model (constant arrival rate) load: request i is due to be sent at start + i / rate, regardless of
+ * how long earlier requests took. A fixed number of client threads take it in turns to send the next due request, and
+ * each request's latency is measured from the time it was <em>due</em> to be sent rather than the time it was actually
+ * sent. So if the server stalls and the clients fall behind schedule, the time requests spend waiting to be sent is
+ * counted - avoiding the coordinated omission that hides tail latency in closed-model load tests.
+ */
+public class LoadGenerator {
+
+	/** The highest latency that can be recorded, in microseconds (one hour). */
+	private static final long HIGHEST_LATENCY = TimeUnit.HOURS.toMicros(1);
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	private final String baseUrl;
+	private final RequestTemplate[] schedule;
+
+	/**
+	 * @param baseUrl the url to prefix each request path with.
+	 * @param mix the requests to send, each repeated according to its weight.
+	 */
+	public LoadGenerator(final String baseUrl, final List<RequestTemplate> mix) {
+		this.baseUrl = baseUrl;
+		List<RequestTemplate> schedule = new ArrayList<>();
+		for (RequestTemplate template : mix) {
+			for (int i = 0; i < template.weight; i++) {
+				schedule.add(template);
+			}
+		}
+		this.schedule = schedule.toArray(new RequestTemplate[schedule.size()]);
+	}
+
+	/**
+	 * Parses a request mix, in the format 'weight|METHOD|path|Header=value|...;weight|METHOD|path...'.
+	 *
+	 * @param mix the request mix.
+	 * @return the requests in the mix.
+	 */
+	public static List<RequestTemplate> parseMix(final String mix) {
+		List<RequestTemplate> templates = new ArrayList<>();
+		for (String entry : mix.split(";")) {
+			if (entry.trim().length() == 0) {
+				continue;
+			}
+			String[] fields = entry.trim().split("\\|");
+			if (fields.length < 3) {
+				throw new IllegalArgumentException("Expected weight|METHOD|path[|Header=value...]: " + entry);
+			}
+			Map<String, String> headers = new LinkedHashMap<>();
+			for (int i = 3; i < fields.length; i++) {
+				String[] header = fields[i].split("=", 2);
+				headers.put(header[0].trim(), header.length > 1 ? header[1].trim() : "");
+			}
+			templates.add(new RequestTemplate(Integer.parseInt(fields[0].trim()), fields[1].trim().toUpperCase(),
+					fields[2].trim(), headers));
+		}
+		if (templates.isEmpty()) {
+			throw new IllegalArgumentException("No requests in mix: " + mix);
+		}
+		return templates;
+	}
+
+	/**
+	 * Sends requests at the specified rate for the specified duration.
+	 *
+	 * @param rate the number of requests to send per second.
+	 * @param concurrency the number of client threads (the maximum number of requests in flight).
+	 * @param durationSeconds the duration of the run.
+	 * @return the results of the run.
+	 * @throws InterruptedException if interrupted while waiting for the run to finish.
+	 */
+	public Result run(final double rate, final int concurrency, final int durationSeconds)
+			throws InterruptedException {
+		final double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+		final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		final long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+		final AtomicLong tickets = new AtomicLong();
+		final Worker[] workers = new Worker[concurrency];
+		for (int i = 0; i < concurrency; i++) {
+			workers[i] = new Worker(tickets, start, end, intervalNanos);
+			workers[i].setName("load-generator-" + i);
+			workers[i].start();
+		}
+		Result result = new Result();
+		for (Worker worker : workers) {
+			worker.join();
+			result.add(worker);
+		}
+		result.elapsedNanos = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * Sends a request.
+	 *
+	 * @param template the request to send.
+	 * @return the http status of the response.
+	 * @throws IOException if the request fails.
+	 */
+	protected int send(final RequestTemplate template) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + template.path).openConnection();
+		connection.setRequestMethod(template.method);
+		for (Map.Entry<String, String> header : template.headers.entrySet()) {
+			connection.setRequestProperty(header.getKey(), header.getValue());
+		}
+		int status = connection.getResponseCode();
+		InputStream stream = status < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() : connection
+				.getErrorStream();
+		if (stream != null) {
+			// read the whole response, so that the connection can be re-used
+			byte[] buffer = new byte[8192];
+			while (stream.read(buffer) >= 0) {
+				// discard
+			}
+			stream.close();
+		}
+		return status;
+	}
+
+	/**
+	 * A client thread, which repeatedly takes the next ticket, waits until the ticket is due and sends a request.
+	 */
+	private final class Worker extends Thread {
+
+		private final AtomicLong tickets;
+		private final long start;
+		private final long end;
+		private final double intervalNanos;
+		private final Histogram latency = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+		private final Histogram serviceTime = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+		private final Map<Integer, Long> statuses = new TreeMap<>();
+		private long errors;
+
+		Worker(final AtomicLong tickets, final long start, final long end, final double intervalNanos) {
+			this.tickets = tickets;
+			this.start = start;
+			this.end = end;
+			this.intervalNanos = intervalNanos;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				long ticket = tickets.getAndIncrement();
+				long due = start + (long) (ticket * intervalNanos);
+				if (due >= end) {
+					return;
+				}
+				long now;
+				while ((now = System.nanoTime()) < due) {
+					LockSupport.parkNanos(due - now);
+				}
+				RequestTemplate template = schedule[(int) (ticket % schedule.length)];
+				try {
+					int status = send(template);
+					Long count = statuses.get(status);
+					statuses.put(status, count == null ? 1 : count + 1);
+				} catch (IOException e) {
+					errors++;
+				}
+				long done = System.nanoTime();
+				latency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(done - due), HIGHEST_LATENCY));
+				serviceTime.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(done - now), HIGHEST_LATENCY));
+			}
+		}
+	}
+
+	/**
+	 * A request to send as part of the mix.
+	 */
+	public static final class RequestTemplate {
+		private final int weight;
+		private final String method;
+		private final String path;
+		private final Map<String, String> headers;
+
+		RequestTemplate(final int weight, final String method, final String path, final Map<String, String> headers) {
+			this.weight = weight;
+			this.method = method;
+			this.path = path;
+			this.headers = headers;
+		}
+
+		@Override
+		public String toString() {
+			return weight + " x " + method + " " + path + (headers.isEmpty() ? "" : " " + headers);
+		}
+	}
+
+	/**
+	 * The results of a run.
+	 */
+	public static final class Result {
+		/** Latency measured from the time each request was due to be sent (corrected for coordinated omission). */
+		private final Histogram latency = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+		/** Latency measured from the time each request was actually sent (not corrected for coordinated omission). */
+		private final Histogram serviceTime = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+		private final Map<Integer, Long> statuses = new TreeMap<>();
+		private long errors;
+		private long elapsedNanos;
+
+		private void add(final Worker worker) {
+			latency.add(worker.latency);
+			serviceTime.add(worker.serviceTime);
+			errors += worker.errors;
+			for (Map.Entry<Integer, Long> entry : worker.statuses.entrySet()) {
+				Long count = statuses.get(entry.getKey());
+				statuses.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+			}
+		}
+
+		public Histogram getLatency() {
+			return latency;
+		}
+
+		public Histogram getServiceTime() {
+			return serviceTime;
+		}
+
+		public Map<Integer, Long> getStatuses() {
+			return statuses;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		public long getCompleted() {
+			return latency.getTotalCount();
+		}
+
+		/**
+		 * @return the number of requests completed per second.
+		 */
+		public double getThroughput() {
+			return getCompleted() / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+		}
+	}
+}
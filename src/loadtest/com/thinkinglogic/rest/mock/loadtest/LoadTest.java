@@ -0,0 +1,132 @@
+package com.thinkinglogic.rest.mock.loadtest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.HdrHistogram.Histogram;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Measures the throughput and latency of rest-mocker at the http level. For each step in {@link #THREADS_PROPERTY},
+ * starts a RestServlet in an embedded server limited to that number of request handling threads, warms it up,
+ * then drives a constant arrival rate of requests against it using a {@link LoadGenerator}, and reports the latency
+ * percentiles (corrected for coordinated omission) and achieved throughput.
+ * <p>
+ * All settings are read from system properties - see the README for details.
+ */
+public final class LoadTest {
+
+	public static final String RATE_PROPERTY = "loadtest.rate";
+	public static final String DURATION_PROPERTY = "loadtest.duration";
+	public static final String WARMUP_PROPERTY = "loadtest.warmup";
+	public static final String CONCURRENCY_PROPERTY = "loadtest.concurrency";
+	public static final String THREADS_PROPERTY = "loadtest.threads";
+	public static final String MIX_PROPERTY = "loadtest.mix";
+	public static final String OUTPUT_PROPERTY = "loadtest.output";
+	public static final String LOG_LEVEL_PROPERTY = "loadtest.log.level";
+
+	/** The default request mix, covering the example and example-books trees. */
+	public static final String DEFAULT_MIX = "4|GET|/example?letter=a&number=1|Accept=application/json;"
+			+ "2|GET|/example?number=1|Accept=application/xml;"
+			+ "1|GET|/example;"
+			+ "2|GET|/example-books/Tolkien/The%20Hobbit/paperback;"
+			+ "1|GET|/example-books/Pratchett/Mort/hardback";
+
+	/** Latencies are recorded in microseconds, but reported in milliseconds. */
+	private static final double REPORTING_SCALE = 1000.0;
+
+	private LoadTest() {
+	}
+
+	/**
+	 * Runs the load test.
+	 *
+	 * @param args ignored - all settings are read from system properties.
+	 * @throws Exception if the test cannot be run.
+	 */
+	public static void main(final String[] args) throws Exception {
+		Logger.getRootLogger().setLevel(Level.toLevel(System.getProperty(LOG_LEVEL_PROPERTY), Level.WARN));
+		double rate = Double.parseDouble(System.getProperty(RATE_PROPERTY, "2000"));
+		int duration = Integer.getInteger(DURATION_PROPERTY, 30);
+		int warmup = Integer.getInteger(WARMUP_PROPERTY, 10);
+		int concurrency = Integer.getInteger(CONCURRENCY_PROPERTY, 64);
+		List<Integer> steps = parseThreads(System.getProperty(THREADS_PROPERTY));
+		List<LoadGenerator.RequestTemplate> mix = LoadGenerator.parseMix(System.getProperty(MIX_PROPERTY, DEFAULT_MIX));
+		File output = new File(System.getProperty(OUTPUT_PROPERTY, "build/loadtest"));
+		output.mkdirs();
+
+		System.out.println("Target rate " + rate + " req/s for " + duration + "s (after " + warmup + "s warmup), "
+				+ concurrency + " client connections, mix:");
+		for (LoadGenerator.RequestTemplate template : mix) {
+			System.out.println("    " + template);
+		}
+		System.out.println();
+		System.out.println(String.format("%8s %10s %8s %9s %9s %9s %9s %9s %14s", "threads", "req/s", "errors",
+				"p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "p99 uncorr ms"));
+		for (int threads : steps) {
+			EmbeddedServer server = new EmbeddedServer(threads);
+			String url = server.start();
+			try {
+				LoadGenerator generator = new LoadGenerator(url, mix);
+				if (warmup > 0) {
+					generator.run(rate, concurrency, warmup);
+				}
+				LoadGenerator.Result result = generator.run(rate, concurrency, duration);
+				report(threads, result);
+				writeDistribution(new File(output, "latency-" + threads + "-threads.hgrm"), result.getLatency());
+				writeDistribution(new File(output, "service-time-" + threads + "-threads.hgrm"),
+						result.getServiceTime());
+			} finally {
+				server.stop();
+			}
+		}
+		System.out.println();
+		System.out.println("Percentile distributions written to " + output.getAbsolutePath());
+	}
+
+	/**
+	 * @param threads a comma separated list of thread counts, or null.
+	 * @return the thread counts - by default 1, 2, 4... up to the number of available processors.
+	 */
+	protected static List<Integer> parseThreads(final String threads) {
+		List<Integer> steps = new ArrayList<>();
+		if (threads != null && threads.trim().length() > 0) {
+			for (String step : threads.split(",")) {
+				steps.add(Integer.valueOf(step.trim()));
+			}
+			return steps;
+		}
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int step = 1; step < processors; step *= 2) {
+			steps.add(step);
+		}
+		steps.add(processors);
+		return steps;
+	}
+
+	private static void report(final int threads, final LoadGenerator.Result result) {
+		Histogram latency = result.getLatency();
+		System.out.println(String.format("%8d %10.1f %8d %9.3f %9.3f %9.3f %9.3f %9.3f %14.3f", threads,
+				result.getThroughput(), result.getErrors(), millis(latency, 50), millis(latency, 90),
+				millis(latency, 99), millis(latency, 99.9), latency.getMaxValue() / REPORTING_SCALE,
+				millis(result.getServiceTime(), 99)));
+		if (result.getStatuses().size() != 1 || !result.getStatuses().containsKey(200)) {
+			System.out.println("         response codes: " + result.getStatuses());
+		}
+	}
+
+	private static double millis(final Histogram histogram, final double percentile) {
+		return histogram.getValueAtPercentile(percentile) / REPORTING_SCALE;
+	}
+
+	private static void writeDistribution(final File file, final Histogram histogram) throws IOException {
+		try (PrintStream out = new PrintStream(new FileOutputStream(file), false, "UTF-8")) {
+			histogram.outputPercentileDistribution(out, REPORTING_SCALE);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * 
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link AcceptHeader}.
+ */
+public class AcceptHeaderTest {
+
+	private static final String[] VARIANTS = { "html", "json", "xml" };
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.AcceptHeader#select(java.lang.String[])}.
+	 */
+	@Test
+	public void testSelectFirstListedType() {
+		assertEquals("xml", AcceptHeader.parse("application/xml, application/json").select(VARIANTS));
+		assertEquals("json", AcceptHeader.parse("application/pdf, application/json").select(VARIANTS));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.AcceptHeader#select(java.lang.String[])}.
+	 */
+	@Test
+	public void testSelectHonoursQualityValues() {
+		assertEquals("json", AcceptHeader.parse("application/xml;q=0.5, application/json").select(VARIANTS));
+		assertEquals("xml", AcceptHeader.parse("text/html;level=1;q=0.2, text/xml;q=0.4").select(VARIANTS));
+		assertEquals("", AcceptHeader.parse("application/json;q=0").select(VARIANTS));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.AcceptHeader#select(java.lang.String[])}.
+	 */
+	@Test
+	public void testSelectWithWildcards() {
+		String browser = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+		assertEquals("xml", AcceptHeader.parse(browser).select(new String[] { "json", "xml" }));
+		assertEquals("", AcceptHeader.parse("*/*").select(VARIANTS));
+		assertEquals("", AcceptHeader.parse("application/json;q=0.1, application/*").select(VARIANTS));
+		assertEquals("json", AcceptHeader.parse("application/*;q=0.5, application/json").select(VARIANTS));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.AcceptHeader#select(java.lang.String[])}.
+	 */
+	@Test
+	public void testSelectIgnoresWildcardsForOtherTypes() {
+		assertEquals("json", AcceptHeader.parse("image/*, application/json;q=0.5").select(VARIANTS));
+		assertEquals("xml", AcceptHeader.parse("text/*, application/xml;q=0.5").select(VARIANTS));
+		assertEquals("", AcceptHeader.parse("text/*, text/xml;q=0.5").select(VARIANTS));
+		assertEquals("", AcceptHeader.parse("image/*, */*;q=0.8, application/json;q=0.5").select(VARIANTS));
+		assertEquals("xml", AcceptHeader.parse("application/*;q=0.5, text/xml;q=0.1, application/xml;q=0.9")
+				.select(VARIANTS));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.AcceptHeader#select(java.lang.String[])}.
+	 */
+	@Test
+	public void testSelectWithNoHeader() {
+		assertEquals("", AcceptHeader.parse(null).select(VARIANTS));
+		assertEquals("", AcceptHeader.parse(" ").select(VARIANTS));
+		assertEquals("", AcceptHeader.parse("application/json").select(new String[0]));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.AcceptHeader#select(java.lang.String[])}.
+	 */
+	@Test
+	public void testSelectIgnoresCase() {
+		assertEquals("xml", AcceptHeader.parse("Application/XML").select(VARIANTS));
+	}
+}
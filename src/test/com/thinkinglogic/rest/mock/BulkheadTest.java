@@ -0,0 +1,114 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Bulkhead}.
+ */
+public class BulkheadTest {
+
+	private Bulkhead bulkhead;
+	private CountDownLatch release;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		bulkhead = new Bulkhead("/test/", 2, 1);
+		release = new CountDownLatch(1);
+	}
+
+	private Runnable blocked(final CountDownLatch started) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+
+	private void waitFor(final int active, final int queued) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while ((bulkhead.getActive() != active || bulkhead.getQueued() != queued) && System.currentTimeMillis() < end) {
+			Thread.sleep(1);
+		}
+		assertEquals(active, bulkhead.getActive());
+		assertEquals(queued, bulkhead.getQueued());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.Bulkhead#tryOccupy()}.
+	 */
+	@Test
+	public void testTryOccupyAllowsThreadsPlusQueue() {
+		assertTrue(bulkhead.tryOccupy());
+		assertTrue(bulkhead.tryOccupy());
+		assertTrue(bulkhead.tryOccupy());
+		assertFalse(bulkhead.tryOccupy());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.Bulkhead#execute(Runnable)}.
+	 */
+	@Test
+	public void testTasksQueueForFreeThreads() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(2);
+		bulkhead.execute(blocked(started));
+		bulkhead.execute(blocked(started));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		bulkhead.execute(blocked(new CountDownLatch(1)));
+		waitFor(2, 1);
+		assertFalse(bulkhead.tryOccupy());
+
+		Map<String, Object> state = bulkhead.toMap();
+		assertEquals("/test/", state.get("name"));
+		assertEquals(1.0, (Double) state.get("saturation"), 0);
+
+		release.countDown();
+		waitFor(0, 0);
+		assertEquals(3L, bulkhead.toMap().get("completed"));
+		assertTrue(bulkhead.tryOccupy());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.Bulkhead#resize(int, int)}.
+	 */
+	@Test
+	public void testResize() {
+		bulkhead.resize(4, 0);
+		assertEquals(4, bulkhead.toMap().get("threads"));
+		for (int i = 0; i < 4; i++) {
+			assertTrue(bulkhead.tryOccupy());
+		}
+		assertFalse(bulkhead.tryOccupy());
+		bulkhead.resize(1, 0);
+		assertEquals(1, bulkhead.toMap().get("threads"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.Bulkhead#forName(String, int, int)}.
+	 */
+	@Test
+	public void testForNameSharesBulkheads() {
+		Bulkhead first = Bulkhead.forName("/shared/", 2, 2);
+		assertSame(first, Bulkhead.forName("/shared/", 3, 2));
+		assertEquals(3, first.toMap().get("threads"));
+		assertNotSame(first, Bulkhead.forName("/other/", 2, 2));
+	}
+}
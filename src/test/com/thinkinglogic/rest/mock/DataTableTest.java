@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jayway.jsonpath.spi.JsonProviderFactory;
+
+/**
+ * Tests for {@link DataTable}.
+ */
+public class DataTableTest {
+
+	private DataTable users;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		users = DataTable.readCsv("users", new StringReader("id,name,zip,score,active,team\r\n"
+				+ "1,Ada,01234,1.5,true,engines\r\n" + "2,\"Turing, Alan\",99999,2.25,false,bombe\r\n"
+				+ "\n" + "3,\"Grace \"\"Amazing\"\" Hopper\",,3.0,true,engines\n" + "4,\"multi\nline\",5,,,"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.DataTable#readCsv(String, java.io.Reader)}.
+	 */
+	@Test
+	public void testReadCsv() {
+		assertEquals(4, users.size());
+		assertEquals(Arrays.asList("id", "name", "zip", "score", "active", "team"), users.getColumns());
+		assertEquals("Turing, Alan", users.row(1).get("name"));
+		assertEquals("Grace \"Amazing\" Hopper", users.row(2).get("name"));
+		assertEquals("multi\nline", users.row(3).get("name"));
+		assertNull(users.row(2).get("zip"));
+		assertNull(users.row(3).get("team"));
+		assertNull(users.row(4));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.DataTable.Row#get(Object)}.
+	 */
+	@Test
+	public void testColumnsHoldTypedValues() {
+		DataTable.Row row = users.row(0);
+		assertEquals(Long.valueOf(1), row.get("id"));
+		assertEquals(Double.valueOf(1.5), row.get("score"));
+		assertEquals(Boolean.TRUE, row.get("active"));
+		// a leading zero would be lost as a number
+		assertEquals("01234", row.get("zip"));
+		assertEquals("{\"id\": 1, \"name\": \"Ada\", \"zip\": \"01234\", \"score\": 1.5, \"active\": true, "
+				+ "\"team\": \"engines\"}", row.toString());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.DataTable#byId(Object)}.
+	 */
+	@Test
+	public void testLookups() {
+		assertEquals("Ada", users.byId("1").get("name"));
+		assertEquals("Ada", users.byId(1).get("name"));
+		assertNull(users.byId("9"));
+		assertNull(users.byId("one"));
+		assertNull(users.byId(null));
+		assertEquals(Long.valueOf(2), users.by("name", "Turing, Alan").get("id"));
+		assertEquals(Long.valueOf(3), users.by("score", "3.0").get("id"));
+		assertNull(users.by("missing", "1"));
+		List<DataTable.Row> engineers = users.all("team", "engines");
+		assertEquals(2, engineers.size());
+		assertEquals(0, engineers.get(0).getIndex());
+		assertEquals(2, engineers.get(1).getIndex());
+		assertTrue(users.all("team", "nobody").isEmpty());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.DataTable#byId(Object)}.
+	 */
+	@Test
+	public void testLookupsInLargeTable() {
+		List<List<Object>> rows = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			rows.add(Arrays.<Object> asList("user-" + i, i % 100));
+		}
+		DataTable table = new DataTable("large", Arrays.asList("login", "group"), rows);
+		for (int i = 0; i < 100000; i += 997) {
+			assertEquals(i, table.byId("user-" + i).getIndex());
+		}
+		assertEquals(1000, table.all("group", 42).size());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.DataTable#fromJson(String, List)}.
+	 */
+	@Test
+	public void testFromJson() throws IOException {
+		Object json = JsonProviderFactory.createProvider().parse(
+				"[{\"id\": 7, \"name\": \"x\", \"tags\": [\"a\"]}, {\"id\": 8, \"extra\": true}]");
+		DataTable table = DataTable.fromJson("json", (List<?>) json);
+		// the json provider need not keep the order of object keys
+		assertEquals(4, table.getColumns().size());
+		assertTrue(table.getColumns().containsAll(Arrays.asList("id", "name", "tags", "extra")));
+		assertEquals("[\"a\"]", table.byId(7).get("tags"));
+		assertEquals(Boolean.TRUE, table.byId("8").get("extra"));
+		assertNull(table.byId(8).get("name"));
+	}
+}
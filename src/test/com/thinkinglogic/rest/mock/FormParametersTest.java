@@ -0,0 +1,70 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link FormParameters}.
+ */
+public class FormParametersTest {
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.FormParameters#get(Object)}.
+	 */
+	@Test
+	public void testGetDecodesNamesAndValues() {
+		FormParameters params = new FormParameters("first+name=J%C3%BCrgen&city=New+York&a%26b=1%3D1");
+		assertEquals("J\u00fcrgen", params.get("first name"));
+		assertEquals("New York", params.get("city"));
+		assertEquals("1=1", params.get("a&b"));
+		assertNull(params.get("missing"));
+		assertEquals("first+name=J%C3%BCrgen&city=New+York&a%26b=1%3D1", params.toString());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.FormParameters#get(Object)}.
+	 */
+	@Test
+	public void testGetToleratesMalformedParameters() {
+		FormParameters params = new FormParameters("discount=100%&flag&&empty=&x=%zz%4");
+		assertEquals("100%", params.get("discount"));
+		assertEquals("", params.get("flag"));
+		assertEquals("", params.get("empty"));
+		assertEquals("%zz%4", params.get("x"));
+		assertEquals(4, params.size());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.FormParameters#entrySet()}.
+	 */
+	@Test
+	public void testEntriesInOrderWithLastValue() {
+		FormParameters params = new FormParameters("b=1&a=2&b=3&c=4&d=5&e=6&f=7&g=8&h=9&i=10");
+		StringBuilder names = new StringBuilder();
+		for (Map.Entry<String, String> entry : params.entrySet()) {
+			names.append(entry.getKey());
+		}
+		assertEquals("bacdefghi", names.toString());
+		assertEquals("3", params.get("b"));
+		assertEquals("3", params.getProperty("b"));
+		assertTrue(params.containsKey("i"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.FormParameters#decode(String, int, int)}.
+	 */
+	@Test
+	public void testDecodeReturnsPlainTextUnchanged() {
+		assertEquals("plain", FormParameters.decode("x=plain&y", 2, 7));
+		for (String text : Arrays.asList("", "a b", "\u20ac1")) {
+			assertEquals(text, new FormParameters("v=" + text).get("v"));
+		}
+	}
+}
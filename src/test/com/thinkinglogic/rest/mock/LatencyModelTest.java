@@ -0,0 +1,78 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LatencyModel}.
+ */
+public class LatencyModelTest {
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.LatencyModel#getDelay(long, int)}.
+	 */
+	@Test
+	public void testLinearAddsFactorForEachOtherRequest() {
+		LatencyModel model = new LatencyModel(LatencyModel.Type.LINEAR, 2.5, 1, 0);
+		assertEquals(100, model.getDelay(100, 1));
+		assertEquals(103, model.getDelay(100, 2));
+		assertEquals(125, model.getDelay(100, 11));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.LatencyModel#getDelay(long, int)}.
+	 */
+	@Test
+	public void testMmcClimbsSteeplyAsServersFillUp() {
+		LatencyModel model = new LatencyModel(LatencyModel.Type.MMC, 0, 4, 0);
+		assertEquals(100, model.getDelay(100, 1));
+		long half = model.getDelay(100, 3);
+		long nearlyFull = model.getDelay(100, 4);
+		long saturated = model.getDelay(100, 5);
+		assertTrue(half > 100 && half < 120);
+		assertTrue(nearlyFull > 140 && nearlyFull < 160);
+		assertTrue(saturated > 2000);
+		assertEquals(saturated, model.getDelay(100, 50));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.LatencyModel#getDelay(long, int)}.
+	 */
+	@Test
+	public void testDelayIsCapped() {
+		LatencyModel model = new LatencyModel(LatencyModel.Type.LINEAR, 100, 1, 250);
+		assertEquals(250, model.getDelay(100, 10));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.LatencyModel#erlangC(int, double)}.
+	 */
+	@Test
+	public void testErlangC() {
+		// a single server is busy with a probability equal to its utilisation
+		assertEquals(0.5, LatencyModel.erlangC(1, 0.5), 1e-9);
+		assertEquals(0.0, LatencyModel.erlangC(4, 0), 1e-9);
+		assertEquals(0.5094, LatencyModel.erlangC(4, 3), 1e-4);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.LatencyModel#enter()}.
+	 */
+	@Test
+	public void testEnterAndExitCountRequestsInFlight() {
+		LatencyModel model = LatencyModel.forRoute("/load/", LatencyModel.Type.MMC, 0, 2, 0);
+		assertSame(model, LatencyModel.forRoute("/load/", LatencyModel.Type.MMC, 0, 2, 0));
+		assertEquals(1, model.enter());
+		assertEquals(2, model.enter());
+		model.exit();
+		assertEquals(1, model.getInflight());
+		model.exit();
+		assertNotSame(model, LatencyModel.forRoute("/load/", LatencyModel.Type.MMC, 0, 3, 0));
+		assertNull(LatencyModel.Type.forName(" none "));
+		assertEquals(LatencyModel.Type.LINEAR, LatencyModel.Type.forName("Linear"));
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link MockEvents}.
+ */
+public class MockEventsTest {
+
+	private static final String PREFIX = "com.thinkinglogic.restmocker.";
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockEvents#beginRoute()}.
+	 */
+	@Test
+	public void testEventsAreRecorded() throws Exception {
+		assertFalse(MockEvents.isRecording());
+		assertNull(MockEvents.beginRoute());
+
+		File file = File.createTempFile("rest-mocker", ".jfr");
+		try (Recording recording = new Recording()) {
+			for (String name : new String[] { "Route", "Render", "Delay", "Write" }) {
+				recording.enable(PREFIX + name);
+			}
+			recording.start();
+			long end = System.currentTimeMillis() + 5000;
+			while (!MockEvents.isRecording() && System.currentTimeMillis() < end) {
+				Thread.sleep(1);
+			}
+			assertTrue(MockEvents.isRecording());
+
+			MockEvents.endRoute(MockEvents.beginRoute(), "/books/1", "/books/'id'/", "default", "dir.method", false);
+			MockEvents.endRender(MockEvents.beginRender(), "/books/'id'/default", "velocity", 1234);
+			MockEvents.endDelay(MockEvents.beginDelay(), "/books/'id'/", 100, "mmc");
+			MockEvents.endWrite(MockEvents.beginWrite(), "/books/'id'/default", 200);
+			recording.stop();
+			recording.dump(file.toPath());
+		}
+		assertFalse(MockEvents.isRecording());
+
+		Map<String, RecordedEvent> events = new HashMap<>();
+		List<RecordedEvent> recorded = RecordingFile.readAllEvents(file.toPath());
+		for (RecordedEvent event : recorded) {
+			events.put(event.getEventType().getName().substring(PREFIX.length()), event);
+		}
+		assertEquals(4, events.size());
+		assertEquals("/books/1", events.get("Route").getString("requestPath"));
+		assertEquals("default", events.get("Route").getString("derivedName"));
+		assertEquals("dir.method", events.get("Route").getString("selectors"));
+		assertEquals(1234, events.get("Render").getLong("bytes"));
+		assertEquals("mmc", events.get("Delay").getString("model"));
+		assertEquals(200, events.get("Write").getInt("status"));
+		assertNull(events.get("Write").getStackTrace());
+		file.delete();
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MockOverlay}.
+ */
+public class MockOverlayTest {
+
+	private MockOverlay overlay;
+	private Map<String, String> values;
+
+	private final RuleTable.Values source = new RuleTable.Values() {
+		@Override
+		public String getValue(RuleTable.Source source, String name) {
+			return values.get(source + ":" + name);
+		}
+	};
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		overlay = new MockOverlay();
+		values = new HashMap<>();
+		values.put("method:null", "GET");
+	}
+
+	private MockOverlay.Mock mock(final String path, final String selector, final String body) {
+		return new MockOverlay.Mock(path, selector, 200, null, body, 0);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockOverlay#match(String, RuleTable.Values)}.
+	 */
+	@Test
+	public void testMatchPrefersSelectorsOverFallback() {
+		overlay.put(mock("/orders/1", null, "fallback"));
+		overlay.put(mock("/orders/1", "method equals POST", "post"));
+		overlay.put(mock("/orders/1", "header X-Tenant equals a", "tenant-a"));
+
+		assertEquals("fallback", overlay.match("/orders/1", source).getBody());
+		values.put("header:X-Tenant", "a");
+		assertEquals("tenant-a", overlay.match("/orders/1/", source).getBody());
+		values.put("method:null", "POST");
+		assertEquals("post", overlay.match("/orders/1", source).getBody());
+		assertNull(overlay.match("/orders/2", source));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockOverlay#put(MockOverlay.Mock)}.
+	 */
+	@Test
+	public void testPutReplacesSamePathAndSelector() {
+		assertFalse(overlay.put(mock("/orders/", "method equals GET", "first")));
+		assertTrue(overlay.put(mock("/orders", " method equals GET ", "second")));
+		assertEquals(1, overlay.getMocks().size());
+		assertEquals("second", overlay.match("/orders", source).getBody());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockOverlay#remove(String, String)}.
+	 */
+	@Test
+	public void testRemove() {
+		overlay.put(mock("/a", null, "a"));
+		overlay.put(mock("/a", "method equals GET", "a-get"));
+		overlay.put(mock("/b", null, "b"));
+		List<MockOverlay.Mock> before = overlay.getMocks();
+
+		assertEquals(1, overlay.remove("/a", "method equals GET"));
+		assertEquals("a", overlay.match("/a", source).getBody());
+		assertEquals(1, overlay.remove("/a/", null));
+		assertNull(overlay.match("/a", source));
+		assertEquals(1, overlay.remove(null, null));
+		assertTrue(overlay.isEmpty());
+		// previously returned snapshots are unaffected
+		assertEquals(3, before.size());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockOverlay#match(String, RuleTable.Values)}. Re-registering
+	 * two mocks in turn changes the order in which their request properties are compiled, which must not affect
+	 * requests being matched against an earlier snapshot.
+	 */
+	@Test
+	public void testMatchWhilePutting() throws Exception {
+		final MockOverlay.Mock tenant = mock("/orders", "header X-Tenant prefix a; method matches GET|HEAD", "tenant");
+		final MockOverlay.Mock page = mock("/orders", "queryParam page prefix 1; header X-Tenant prefix a", "page");
+		overlay.put(tenant);
+		overlay.put(page);
+		final Map<String, String> request = new HashMap<>();
+		request.put("method:null", "GET");
+		request.put("header:X-Tenant", "a");
+		request.put("queryParam:page", "1");
+		final RuleTable.Values requestSource = new RuleTable.Values() {
+			@Override
+			public String getValue(RuleTable.Source source, String name) {
+				return request.get(source + ":" + name);
+			}
+		};
+
+		final AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> readers = new ArrayList<>();
+			for (int t = 0; t < 3; t++) {
+				readers.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int matches = 0;
+						while (running.get()) {
+							MockOverlay.Mock matched = overlay.match("/orders", requestSource);
+							assertNotNull(matched);
+							assertTrue(matched == tenant || matched == page);
+							matches++;
+						}
+						return matches;
+					}
+				}));
+			}
+			Future<?> writer = executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = 0; i < 20000; i++) {
+						// one of the two mocks is always registered
+						MockOverlay.Mock moved = i % 2 == 0 ? tenant : page;
+						overlay.remove(moved.getPath(), moved.getSelector());
+						overlay.put(moved);
+					}
+					return null;
+				}
+			});
+			try {
+				writer.get(30, TimeUnit.SECONDS);
+			} finally {
+				running.set(false);
+			}
+			for (Future<Integer> reader : readers) {
+				assertTrue(reader.get(30, TimeUnit.SECONDS) > 0);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockOverlay.Mock#fromMap(Map)}.
+	 */
+	@Test
+	public void testFromMap() {
+		Map<String, Object> map = new HashMap<>();
+		map.put("path", "/orders/1");
+		map.put("status", 201);
+		map.put("headers", Collections.singletonMap("Content-Type", "application/json"));
+		map.put("body", "{}");
+		map.put("delay", "50");
+		MockOverlay.Mock mock = MockOverlay.Mock.fromMap(map);
+		assertEquals(201, mock.getStatus());
+		assertEquals("application/json", mock.getHeaders().get("Content-Type"));
+		assertEquals(50, mock.getDelay());
+		assertEquals("", mock.getSelector());
+		assertEquals(mock.toMap().get("body"), "{}");
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockOverlay.Mock#fromMap(Map)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testFromMapRejectsInvalidSelector() {
+		Map<String, Object> map = new HashMap<>();
+		map.put("path", "/orders/1");
+		map.put("selector", "colour equals red");
+		MockOverlay.Mock.fromMap(map);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockOverlay.Mock#fromMap(Map)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testFromMapRejectsPathParamSelector() {
+		Map<String, Object> map = new HashMap<>();
+		map.put("path", "/orders/1");
+		map.put("selector", "method equals GET; pathParam id equals 1");
+		MockOverlay.Mock.fromMap(map);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockOverlay.Mock#fromMap(Map)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testFromMapRequiresPath() {
+		MockOverlay.Mock.fromMap(new HashMap<String, Object>());
+	}
+}
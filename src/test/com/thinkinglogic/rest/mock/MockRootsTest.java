@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MockRoots} and {@link MockRoot}.
+ */
+public class MockRootsTest {
+
+	private File dir;
+	private PathConfig defaults;
+	private MockRoot classpath;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("rest-mocker", "roots");
+		dir.delete();
+		FileUtils.write(new File(dir, "orders/list/default.body"), "orders", "UTF-8");
+		FileUtils.write(new File(dir, "orders/default.path.properties"), "fixed.delay=5", "UTF-8");
+		FileUtils.write(new File(dir, "orders/mock-data/items.csv"), "id,name\n1,one\n2,two\n", "UTF-8");
+		FileUtils.write(new File(dir, "users/default.body"), "users", "UTF-8");
+		Properties properties = new Properties();
+		properties.setProperty("fixed.delay", "0");
+		properties.setProperty("velocity", "true");
+		defaults = PathConfig.compile("/default.path.properties", properties, null);
+		classpath = new MockRoot("/", new ResourceIndex(Collections.singleton("/default.status")), defaults, 0);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockRoots#forPath(String)}.
+	 */
+	@Test
+	public void testRootsAreLoadedOnFirstRequest() throws Exception {
+		MockRoots roots = new MockRoots(dir, 0, 0, classpath);
+		assertEquals(2, roots.getMounted());
+		assertEquals(0, roots.getLoadedSize());
+		assertSame(classpath, roots.forPath("/example/json/"));
+
+		MockRoot root = roots.forPath("/orders/list/");
+		assertNotNull(root);
+		assertEquals("/orders/", root.getPrefix());
+		assertSame(root, roots.forPath("/orders"));
+		assertTrue(roots.getLoadedSize() > 0);
+		assertEquals(1L, roots.describe().get("loads"));
+
+		assertTrue(root.getIndex().exists("/orders/list/default.body"));
+		assertFalse(root.getIndex().exists("/users/default.body"));
+		assertTrue(root.getIndex().exists("/default.status"));
+		try (InputStream stream = root.getIndex().open("/orders/list/default.body")) {
+			assertEquals("orders", IOUtils.toString(stream, "UTF-8"));
+		}
+		assertNull(root.getIndex().open("/orders/../users/default.body"));
+		assertEquals(2, root.getDataTables().get("items").size());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockRoot#getPathConfig(String)}.
+	 */
+	@Test
+	public void testRootDefaultsOverrideGlobalDefaults() {
+		MockRoots roots = new MockRoots(dir, 0, 0, classpath);
+		PathConfig orders = roots.forPath("/orders/").getPathConfig(null);
+		assertEquals(5, orders.getLong("fixed.delay", 0));
+		assertTrue(orders.getBoolean("velocity"));
+		assertSame(defaults, roots.forPath("/users/").getPathConfig(null));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockRoots#unloadIdle()}.
+	 */
+	@Test
+	public void testIdleRootsAreUnloaded() throws Exception {
+		MockRoots roots = new MockRoots(dir, 1, 0, classpath);
+		MockRoot root = roots.forPath("/users/");
+		Thread.sleep(10);
+		assertEquals(1, roots.unloadIdle());
+		assertEquals(0, roots.getLoadedSize());
+		assertNotSame(root, roots.forPath("/users/"));
+		assertEquals(1, roots.unload("/users/"));
+		assertEquals(0, roots.unload("/users/"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.MockRoots#forPath(String)}.
+	 */
+	@Test
+	public void testLeastRecentlyUsedRootIsUnloadedOverBudget() throws Exception {
+		long orders = new MockRoots(dir, 0, 0, classpath).forPath("/orders/").getSize();
+		long users = new MockRoots(dir, 0, 0, classpath).forPath("/users/").getSize();
+		MockRoots roots = new MockRoots(dir, 0, Math.max(orders, users), classpath);
+		roots.forPath("/orders/");
+		assertEquals(orders, roots.getLoadedSize());
+		roots.forPath("/users/");
+		assertEquals(users, roots.getLoadedSize());
+		assertEquals(1L, roots.describe().get("unloads"));
+	}
+}
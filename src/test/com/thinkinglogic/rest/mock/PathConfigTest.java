@@ -0,0 +1,109 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PathConfig}.
+ */
+public class PathConfigTest {
+
+	private PathConfig defaults;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("velocity", "true");
+		properties.setProperty("fixed.delay", "0");
+		properties.setProperty("latency.factor", "0");
+		properties.setProperty("velocity.tools", "esc=org.example.EscapeTool; math=org.example.MathTool");
+		defaults = PathConfig.compile("/default.path.properties", properties, null);
+	}
+
+	private PathConfig compile(final String... keysAndValues) {
+		Properties properties = new Properties();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		return PathConfig.compile("/test/path.properties", properties, defaults);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.PathConfig#getProperty(String, String)}.
+	 */
+	@Test
+	public void testValuesOverrideDefaults() {
+		PathConfig config = compile("velocity", "false", "dir.queryParam", "type");
+		assertEquals("false", config.getProperty("velocity", ""));
+		assertEquals("type", config.getProperty("dir.queryParam", ""));
+		assertEquals("0", config.getProperty("fixed.delay", ""));
+		assertEquals("none", config.getProperty("file.header", "none"));
+		assertTrue(defaults.getBoolean("velocity"));
+		assertFalse(config.getBoolean("velocity"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.PathConfig#getBoolean(String)}.
+	 */
+	@Test
+	public void testGetBoolean() {
+		PathConfig config = compile("velocity.headers", "TRUE ", "response.cache", "yes");
+		assertTrue(config.getBoolean("velocity.headers"));
+		assertFalse(config.getBoolean("response.cache"));
+		assertFalse(config.getBoolean("response.buffer"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.PathConfig#getLong(String, long)}.
+	 */
+	@Test
+	public void testNumbersAreParsedOnce() {
+		PathConfig config = compile("fixed.delay", " 250", "random.delay", "ten", "latency.factor", "1.5");
+		assertEquals(250, config.getLong("fixed.delay", -1));
+		assertEquals(-1, config.getLong("random.delay", -1));
+		assertEquals(-1, config.getLong("max.inflight", -1));
+		assertEquals(1.5, config.getDouble("latency.factor", 0), 0);
+		assertEquals(250, config.getDouble("fixed.delay", 0), 0);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.PathConfig#isSet(String)}.
+	 */
+	@Test
+	public void testIsSet() {
+		PathConfig config = compile("response.stream", "sse", "generator", " ");
+		assertTrue(config.isSet("response.stream"));
+		assertFalse(config.isSet("generator"));
+		assertFalse(config.isSet("response.cache.key"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.PathConfig#getVelocityTools()}.
+	 */
+	@Test
+	public void testVelocityToolsAreSplitOnce() {
+		String[][] tools = defaults.getVelocityTools();
+		assertEquals(2, tools.length);
+		assertArrayEquals(new String[] { "math", "org.example.MathTool" }, tools[1]);
+		assertEquals(0, compile("velocity.tools", "").getVelocityTools().length);
+		assertEquals(1, compile("velocity.tools", "a=org.example.A;broken").getVelocityTools().length);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.PathConfig#forResource(ResourceIndex, String, PathConfig)}.
+	 */
+	@Test
+	public void testForResourceWithoutAFileReturnsDefaults() {
+		assertSame(defaults, PathConfig.forResource(ResourceIndex.build("/default.path.properties"), null, defaults));
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RequestBodyReader}.
+ */
+public class RequestBodyReaderTest {
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestBodyReader#onDataAvailable()}.
+	 */
+	@Test
+	public void testBodyIsReadAsItArrives() throws Exception {
+		byte[] body = "{\"name\":\"caf\u00e9\"}".getBytes(StandardCharsets.UTF_8);
+		TrickleInputStream input = new TrickleInputStream(body, 3);
+		RequestBodyReader reader = new RequestBodyReader(null, input, StandardCharsets.UTF_8, 0);
+		reader.onDataAvailable();
+		assertEquals(3, reader.getLength());
+		assertEquals("{\"n", reader.toString());
+		while (!input.isFinished()) {
+			input.arrive();
+			reader.onDataAvailable();
+		}
+		assertEquals("{\"name\":\"caf\u00e9\"}", reader.toString());
+		reader.release();
+		assertEquals(0, reader.getLength());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestBodyReader#toString()}.
+	 */
+	@Test
+	public void testBodyLargerThanABufferIsDecodedWhole() throws Exception {
+		char[] chars = new char[RequestBodyReader.BUFFER_SIZE * 2 + 10];
+		Arrays.fill(chars, '\u00e9');
+		String body = new String(chars);
+		TrickleInputStream input = new TrickleInputStream(body.getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE);
+		RequestBodyReader reader = new RequestBodyReader(null, input, StandardCharsets.UTF_8, 0);
+		reader.onDataAvailable();
+		assertTrue(input.isFinished());
+		assertEquals(body.length() * 2, reader.getLength());
+		assertEquals(body, reader.toString());
+
+		int pooled = RequestBodyReader.getPooled();
+		reader.release();
+		assertEquals(pooled + 5, RequestBodyReader.getPooled());
+		input = new TrickleInputStream("a=1&b=2".getBytes(StandardCharsets.ISO_8859_1), Integer.MAX_VALUE);
+		reader = new RequestBodyReader(null, input, StandardCharsets.ISO_8859_1, 0);
+		reader.onDataAvailable();
+		assertEquals("a=1&b=2", reader.toString());
+		assertEquals(pooled + 4, RequestBodyReader.getPooled());
+		reader.release();
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RestServlet#getBody}.
+	 */
+	@Test
+	public void testBlockingReaderKeepsTheBodyAsSent() throws Exception {
+		final String body = "line 1\r\nline 2\nno newline";
+		TrickleInputStream input = new TrickleInputStream(body.getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE);
+		RequestBodyReader reader = new RequestBodyReader(null, input, StandardCharsets.UTF_8, 0);
+		reader.onDataAvailable();
+		assertEquals(body, reader.toString());
+		reader.release();
+
+		HttpServletRequestWrapper request = new HttpServletRequestWrapper(ServletFakes.request("POST", "/")) {
+			@Override
+			public BufferedReader getReader() {
+				return new BufferedReader(new StringReader(body));
+			}
+		};
+		assertEquals(body, new RestServlet().getBody(request, "POST"));
+		assertEquals("", new RestServlet().getBody(request, "GET"));
+	}
+
+	/**
+	 * An input stream that makes a few bytes available at a time.
+	 */
+	private static class TrickleInputStream extends ServletInputStream {
+		private final byte[] bytes;
+		private final int step;
+		private int available;
+		private int position;
+
+		TrickleInputStream(final byte[] bytes, final int step) {
+			this.bytes = bytes;
+			this.step = step;
+			arrive();
+		}
+
+		void arrive() {
+			available = (int) Math.min(bytes.length, (long) available + step);
+		}
+
+		@Override
+		public boolean isFinished() {
+			return position == bytes.length;
+		}
+
+		@Override
+		public boolean isReady() {
+			return position < available || isFinished();
+		}
+
+		@Override
+		public void setReadListener(final ReadListener readListener) {
+			// not needed
+		}
+
+		@Override
+		public int read() throws IOException {
+			return position < available ? bytes[position++] & 0xff : -1;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (isFinished()) {
+				return -1;
+			}
+			int count = Math.min(len, available - position);
+			System.arraycopy(bytes, position, b, off, count);
+			position += count;
+			return count;
+		}
+	}
+}
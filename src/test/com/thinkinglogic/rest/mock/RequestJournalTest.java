@@ -0,0 +1,131 @@
+/**
+ * 
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RequestJournal}.
+ */
+public class RequestJournalTest {
+
+	private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+	private static final RequestJournal.Filter ALL = new RequestJournal.Filter(null, null, null);
+
+	private RequestJournal journal;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		journal = new RequestJournal(3, 5);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestJournal#record}.
+	 */
+	@Test
+	public void testRecordOverwritesOldestEntry() {
+		for (int i = 0; i < 5; i++) {
+			journal.record("GET", "/path/" + i, null, "/path/default", NO_HEADERS, "", 0);
+		}
+		List<RequestJournal.Entry> entries = journal.find(ALL);
+		assertEquals(3, entries.size());
+		assertEquals("/path/2", entries.get(0).getPath());
+		assertEquals("/path/4", entries.get(2).getPath());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestJournal#record}.
+	 */
+	@Test
+	public void testRecordTruncatesBody() {
+		journal.record("POST", "/path", null, "/path/default", NO_HEADERS, "0123456789", 0);
+		assertEquals("01234...", journal.find(ALL).get(0).getBody());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestJournal#count}.
+	 */
+	@Test
+	public void testCountByMethodPathAndHeader() {
+		journal.record("GET", "/books/1", null, "/books/default", Collections.singletonMap("Accept", "text/xml"), "",
+				0);
+		journal.record("POST", "/books/2", null, "/books/default", NO_HEADERS, "", 0);
+		journal.record("GET", "/authors/1", null, "/authors/default", NO_HEADERS, "", 0);
+		assertEquals(2, journal.count(new RequestJournal.Filter("get", null, null)));
+		assertEquals(2, journal.count(new RequestJournal.Filter(null, "/books/*", null)));
+		assertEquals(1, journal.count(new RequestJournal.Filter(null, "/books/2", null)));
+		assertEquals(1, journal.count(new RequestJournal.Filter(null, null, "accept:text/xml")));
+		assertEquals(0, journal.count(new RequestJournal.Filter(null, null, "Accept:text/html")));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestJournal#clear}.
+	 */
+	@Test
+	public void testClearMatchingEntries() {
+		journal.record("GET", "/books/1", null, "/books/default", NO_HEADERS, "", 0);
+		journal.record("DELETE", "/books/1", null, "/books/default", NO_HEADERS, "", 0);
+		assertEquals(1, journal.clear(new RequestJournal.Filter("DELETE", null, null)));
+		assertEquals(1, journal.count(ALL));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestJournal#isEnabled()}.
+	 */
+	@Test
+	public void testDisabledJournalRecordsNothing() {
+		journal = new RequestJournal(0, 5);
+		journal.record("GET", "/path", null, "/path/default", NO_HEADERS, "", 0);
+		assertFalse(journal.isEnabled());
+		assertEquals(0, journal.count(ALL));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestJournal#redact(Map)}.
+	 */
+	@Test
+	public void testCredentialHeadersAreRedacted() {
+		Map<String, String> headers = new TreeMap<>();
+		headers.put("authorization", "Bearer secret");
+		headers.put("Cookie", "session=secret");
+		headers.put("Accept", "text/xml");
+		journal.record("GET", "/path", null, "/path/default", headers, "", 0);
+		Map<String, String> recorded = journal.find(ALL).get(0).getHeaders();
+		assertEquals(RequestJournal.REDACTED, recorded.get("authorization"));
+		assertEquals(RequestJournal.REDACTED, recorded.get("Cookie"));
+		assertEquals("text/xml", recorded.get("Accept"));
+		assertEquals("Bearer secret", headers.get("authorization"));
+		assertEquals(1, journal.count(new RequestJournal.Filter(null, null, "Authorization")));
+
+		journal = new RequestJournal(3, 5, "");
+		journal.record("GET", "/path", null, "/path/default", headers, "", 0);
+		assertEquals("Bearer secret", journal.find(ALL).get(0).getHeaders().get("authorization"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestJournal#store(RequestJournal.Entry)}.
+	 */
+	@Test
+	public void testSlowWriterDoesNotOverwriteLaterEntry() {
+		RequestJournal.Entry later = new RequestJournal.Entry(4, 0, "GET", "/later", null, null, NO_HEADERS, "", 0,
+				null);
+		RequestJournal.Entry earlier = new RequestJournal.Entry(1, 0, "GET", "/earlier", null, null, NO_HEADERS, "",
+				0, null);
+		assertTrue(journal.store(later));
+		assertFalse(journal.store(earlier));
+		assertEquals("/later", journal.find(ALL).get(0).getPath());
+		assertEquals(1, journal.count(ALL));
+	}
+}
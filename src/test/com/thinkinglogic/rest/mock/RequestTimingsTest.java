@@ -0,0 +1,63 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RequestTimings}.
+ */
+public class RequestTimingsTest {
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestTimings#end(RequestTimings.Phase)}.
+	 */
+	@Test
+	public void testPhasesAddUpToTotal() throws InterruptedException {
+		RequestTimings timings = new RequestTimings(System.nanoTime());
+		timings.end(RequestTimings.Phase.READ);
+		Thread.sleep(2);
+		timings.end(RequestTimings.Phase.DELAY);
+		timings.end(RequestTimings.Phase.WRITE);
+		timings.end(RequestTimings.Phase.WRITE);
+
+		assertTrue(timings.get(RequestTimings.Phase.DELAY) >= 2000000);
+		long sum = 0;
+		for (RequestTimings.Phase phase : RequestTimings.Phase.values()) {
+			sum += timings.get(phase);
+		}
+		assertEquals(timings.getTotal(), sum);
+		assertEquals(Long.valueOf(timings.getTotal()), timings.toMap().get("total"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestTimings#toHeader()}.
+	 */
+	@Test
+	public void testHeaderExcludesWritePhase() {
+		RequestTimings timings = new RequestTimings(System.nanoTime());
+		timings.end(RequestTimings.Phase.RENDER);
+		String header = timings.toHeader();
+		assertTrue(header, header.startsWith("read=0, type=0, path=0, file=0, queue=0, delay=0, render="));
+		assertTrue(header, header.contains(", total="));
+		assertFalse(header, header.contains("write="));
+		Map<String, Long> map = timings.toMap();
+		assertTrue(map.containsKey("write"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RequestTimings#DISABLED}.
+	 */
+	@Test
+	public void testDisabledRecordsNothing() {
+		RequestTimings.DISABLED.end(RequestTimings.Phase.READ);
+		assertFalse(RequestTimings.DISABLED.isEnabled());
+		assertEquals(0, RequestTimings.DISABLED.get(RequestTimings.Phase.READ));
+		assertNull(RequestTimings.DISABLED.toMap());
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ResourceIndex}.
+ */
+public class ResourceIndexTest {
+
+	private File dir;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("rest-mocker", "index");
+		dir.delete();
+		FileUtils.write(new File(dir, "default.path.properties"), "velocity=true", "UTF-8");
+		FileUtils.write(new File(dir, "books/default.body"), "books", "UTF-8");
+		FileUtils.write(new File(dir, "books/json/default.body"), "json", "UTF-8");
+		FileUtils.write(new File(dir, "books/1.body"), "one", "UTF-8");
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResourceIndex#scanDirectory(File)}.
+	 */
+	@Test
+	public void testScanDirectory() {
+		Set<String> expected = new HashSet<>(Arrays.asList("/default.path.properties", "/books/default.body",
+				"/books/json/default.body", "/books/1.body"));
+		assertEquals(expected, ResourceIndex.scanDirectory(dir));
+
+		ResourceIndex index = new ResourceIndex(expected);
+		assertArrayEquals(new String[] { "json" }, index.getDirectoryVariants("/books/", new String[0]));
+		assertArrayEquals(new String[] { "1" }, index.getFileVariants("/books/", new String[0]));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResourceIndex#scanJar(URL, String)}.
+	 */
+	@Test
+	public void testScanJar() throws Exception {
+		File jar = new File(dir, "mocks.jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (String name : new String[] { "other/ignored.body", "mocks/default.path.properties",
+					"mocks/books/default.body", "mocks/books/" }) {
+				out.putNextEntry(new JarEntry(name));
+				out.closeEntry();
+			}
+		}
+		URL url = new URL("jar:" + jar.toURI().toURL() + "!/mocks/default.path.properties");
+		Set<String> expected = new HashSet<>(Arrays.asList("/default.path.properties", "/books/default.body"));
+		assertEquals(expected, ResourceIndex.scanJar(url, "/default.path.properties"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResourceIndex#exists(String)}.
+	 */
+	@Test
+	public void testMissIsAbsent() throws Exception {
+		ResourceIndex index = new ResourceIndex(Collections.singleton("/default.path.properties"));
+		assertTrue(index.exists("/default.path.properties"));
+		// on the test classpath, but not in the index
+		assertFalse(index.exists("/example/json/default.headers"));
+		assertNull(index.open("/example/json/default.headers"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResourceIndex#exists(String)}.
+	 */
+	@Test
+	public void testMissFallsBackToClasspathWhenEnabled() throws Exception {
+		System.setProperty(ResourceIndex.FALLBACK_PROPERTY, "true");
+		ResourceIndex index;
+		try {
+			index = new ResourceIndex(Collections.singleton("/default.path.properties"));
+		} finally {
+			System.clearProperty(ResourceIndex.FALLBACK_PROPERTY);
+		}
+		assertTrue(index.exists("/example/json/default.headers"));
+		try (InputStream stream = index.open("//example/json/default.headers")) {
+			assertNotNull(stream);
+			assertTrue(IOUtils.toString(stream, "UTF-8").contains("Content-Type"));
+		}
+		assertFalse(index.exists("/no/such/default.body"));
+		assertNull(index.open("/no/such/default.body"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResourceIndex#build(String)}.
+	 */
+	@Test
+	public void testBuildIndexesTheClasspathRoot() {
+		ResourceIndex index = ResourceIndex.build("/default.path.properties");
+		assertTrue(index.isAvailable());
+		assertTrue(index.exists("/example/json/default.headers"));
+		assertFalse(index.exists("/example/json/no-such.body"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResourceIndex#build(File, String, ResourceIndex)}.
+	 */
+	@Test
+	public void testRebuildRecognisesAddedFiles() throws Exception {
+		ResourceIndex index = ResourceIndex.build(dir, "/mounted/", null);
+		assertTrue(index.exists("/mounted/books/1.body"));
+		assertFalse(index.exists("/mounted/books/2.body"));
+
+		FileUtils.write(new File(dir, "books/2.body"), "two", "UTF-8");
+		assertFalse(index.exists("/mounted/books/2.body"));
+		assertNull(index.open("/mounted/books/2.body"));
+
+		index = ResourceIndex.build(dir, "/mounted/", null);
+		assertTrue(index.exists("/mounted/books/2.body"));
+		assertArrayEquals(new String[] { "1", "2" }, index.getFileVariants("/mounted/books/",
+				new String[0]));
+		try (InputStream stream = index.open("/mounted/books/2.body")) {
+			assertEquals("two", IOUtils.toString(stream, "UTF-8"));
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ResponseCache}.
+ */
+public class ResponseCacheTest {
+
+	private Map<String, String> values;
+
+	private final RuleTable.Values source = new RuleTable.Values() {
+		@Override
+		public String getValue(RuleTable.Source source, String name) {
+			return values.get(source + ":" + name);
+		}
+	};
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		values = new HashMap<>();
+		values.put("method:null", "GET");
+		values.put("pathParam:id", "1");
+	}
+
+	private StaticResponse response(final String body) {
+		return new StaticResponse("/cached/default", 200, Collections.<String, String> emptyMap(), body.getBytes());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseCache#createKey(String, RuleTable.Values)}.
+	 */
+	@Test
+	public void testCreateKeyUsesDeclaredProperties() {
+		ResponseCache cache = new ResponseCache("method; pathParam id; queryParam page", 10, 0);
+		String key = cache.createKey("default", source);
+		values.put("header:X-Ignored", "anything");
+		assertEquals(key, cache.createKey("default", source));
+		values.put("queryParam:page", "2");
+		assertFalse(key.equals(cache.createKey("default", source)));
+		assertFalse(key.equals(cache.createKey("other", source)));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseCache#get(String)}.
+	 */
+	@Test
+	public void testGetCountsHitsAndMisses() {
+		ResponseCache cache = new ResponseCache("pathParam id", 10, 0);
+		String key = cache.createKey("default", source);
+		assertNull(cache.get(key));
+		StaticResponse rendered = response("1");
+		cache.put(key, rendered);
+		assertSame(rendered, cache.get(key));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseCache#put(String, StaticResponse)}.
+	 */
+	@Test
+	public void testPutEvictsLeastRecentlyUsed() {
+		ResponseCache cache = new ResponseCache("", 2, 0);
+		cache.put("a", response("a"));
+		cache.put("b", response("b"));
+		assertNotNull(cache.get("a"));
+		cache.put("c", response("c"));
+		assertEquals(2, cache.getSize());
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseCache#get(String)}.
+	 */
+	@Test
+	public void testGetExpiresEntries() throws InterruptedException {
+		ResponseCache cache = new ResponseCache("", 2, 1);
+		cache.put("a", response("a"));
+		Thread.sleep(5);
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getSize());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseCache#forRoute(String, String, int, long)}.
+	 */
+	@Test
+	public void testForRouteReplacesCacheWhenSettingsChange() {
+		ResponseCache first = ResponseCache.forRoute("/cached/", "method", 10, 0);
+		assertSame(first, ResponseCache.forRoute("/cached/", "method", 10, 0));
+		assertNotSame(first, ResponseCache.forRoute("/cached/", "method; queryParam page", 10, 0));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseCache#ResponseCache(String, int, long)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsInvalidKey() {
+		new ResponseCache("queryParam", 10, 0);
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ResponseCoalescer}.
+ */
+public class ResponseCoalescerTest {
+
+	private ExecutorService executor;
+	private final AtomicInteger renders = new AtomicInteger();
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	private Callable<StaticResponse> render(final CountDownLatch release) {
+		return new Callable<StaticResponse>() {
+			@Override
+			public StaticResponse call() throws Exception {
+				renders.incrementAndGet();
+				release.await(5, TimeUnit.SECONDS);
+				return new StaticResponse("/coalesced/default", 200, Collections.<String, String> emptyMap(),
+						"rendered".getBytes());
+			}
+		};
+	}
+
+	private Future<StaticResponse> submit(final ResponseCoalescer coalescer, final String key,
+			final Callable<StaticResponse> render) {
+		return executor.submit(new Callable<StaticResponse>() {
+			@Override
+			public StaticResponse call() throws Exception {
+				return coalescer.render(key, render);
+			}
+		});
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseCoalescer#render(String, Callable)}.
+	 */
+	@Test
+	public void testConcurrentIdenticalRendersAreCoalesced() throws Exception {
+		ResponseCoalescer coalescer = new ResponseCoalescer("pathParam id");
+		CountDownLatch release = new CountDownLatch(1);
+		List<Future<StaticResponse>> results = new ArrayList<>();
+		results.add(submit(coalescer, "a", render(release)));
+		while (coalescer.getInProgress() == 0) {
+			Thread.sleep(1);
+		}
+		for (int i = 0; i < 9; i++) {
+			results.add(submit(coalescer, "a", render(release)));
+		}
+		while (coalescer.getCoalesced() < 9) {
+			Thread.sleep(1);
+		}
+		release.countDown();
+		StaticResponse first = results.get(0).get(5, TimeUnit.SECONDS);
+		for (Future<StaticResponse> result : results) {
+			assertSame(first, result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, renders.get());
+		assertEquals(1, coalescer.getRendered());
+		assertEquals(0, coalescer.getInProgress());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseCoalescer#render(String, Callable)}.
+	 */
+	@Test
+	public void testRendersAreNotKeptOnceFinished() throws Exception {
+		ResponseCoalescer coalescer = new ResponseCoalescer("");
+		CountDownLatch released = new CountDownLatch(0);
+		StaticResponse first = coalescer.render("a", render(released));
+		assertNotSame(first, coalescer.render("a", render(released)));
+		coalescer.render("b", render(released));
+		assertEquals(3, renders.get());
+		assertEquals(0, coalescer.getCoalesced());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseCoalescer#render(String, Callable)}.
+	 */
+	@Test
+	public void testFailureIsRethrown() {
+		ResponseCoalescer coalescer = new ResponseCoalescer("");
+		try {
+			coalescer.render("a", new Callable<StaticResponse>() {
+				@Override
+				public StaticResponse call() throws Exception {
+					throw new IOException("missing");
+				}
+			});
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			assertEquals("missing", e.getMessage());
+		}
+		assertEquals(0, coalescer.getInProgress());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseCoalescer#forRoute(String, String)}.
+	 */
+	@Test
+	public void testForRouteReplacesCoalescerWhenKeyChanges() {
+		ResponseCoalescer first = ResponseCoalescer.forRoute("/coalesced/", "method");
+		assertSame(first, ResponseCoalescer.forRoute("/coalesced/", "method"));
+		assertNotSame(first, ResponseCoalescer.forRoute("/coalesced/", "method; queryParam page"));
+	}
+}
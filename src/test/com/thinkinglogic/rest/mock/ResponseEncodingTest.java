@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link ResponseBuilder} encodes response bodies with the charset declared by the route (see
+ * example-charset), whether the body is streamed, buffered, rendered by either template engine, generated or sent as
+ * it is.
+ */
+public class ResponseEncodingTest {
+
+	private static final String ISO_8859_1 = "ISO-8859-1";
+
+	private ServletFakes.Response send(final String path) {
+		ResponseBuilder builder = new ResponseBuilder(new TreeMap<String, String>(), new TreeMap<String, String>(), "",
+				ServletFakes.request("GET", path));
+		ServletFakes.Response response = new ServletFakes.Response();
+		builder.handleResponse(response.get());
+		assertEquals(200, response.getStatus());
+		assertEquals("text/plain;charset=ISO-8859-1", response.getHeaders().get("Content-Type"));
+		return response;
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseBuilder#writeTemplate}.
+	 */
+	@Test
+	public void testStreamedTemplateIsEncodedWithDeclaredCharset() throws Exception {
+		ServletFakes.Response response = send("/example-charset");
+		assertArrayEquals("Caf\u00e9 au lait, GET".getBytes(ISO_8859_1), response.getBody());
+		assertEquals(-1, response.getContentLength());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseBuilder#writeTemplate}.
+	 */
+	@Test
+	public void testBufferedTemplateSetsContentLengthInBytes() throws Exception {
+		ServletFakes.Response response = send("/example-charset/buffered");
+		byte[] expected = "Caf\u00e9 au lait, GET".getBytes(ISO_8859_1);
+		assertArrayEquals(expected, response.getBody());
+		assertEquals(expected.length, response.getContentLength());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseBuilder#handleResponse}.
+	 */
+	@Test
+	public void testPlainBodyIsEncodedWithDeclaredCharset() throws Exception {
+		ServletFakes.Response response = send("/example-charset/plain");
+		byte[] expected = "Caf\u00e9 au lait, $requestMethod".getBytes(ISO_8859_1);
+		assertArrayEquals(expected, response.getBody());
+		assertEquals(expected.length, response.getContentLength());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseBuilder#writeSimpleTemplate}.
+	 */
+	@Test
+	public void testSimpleTemplateIsEncodedWithDeclaredCharset() throws Exception {
+		ServletFakes.Response response = send("/example-charset/simple");
+		assertArrayEquals("Caf\u00e9 au lait, GET".getBytes(ISO_8859_1), response.getBody());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseGenerator#writeTo}.
+	 */
+	@Test
+	public void testGeneratedBodyIsEncodedWithDeclaredCharset() throws Exception {
+		ServletFakes.Response response = send("/example-charset/generated");
+		assertArrayEquals("1 caf\u00e9\n2 caf\u00e9\n".getBytes(ISO_8859_1), response.getBody());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseBuilder#getCharacterEncoding(java.util.Map)}.
+	 */
+	@Test
+	public void testCharacterEncodingOfHeaders() {
+		assertEquals(ISO_8859_1, ResponseBuilder.getCharacterEncoding(Collections.<String, String> emptyMap()));
+		assertEquals(ISO_8859_1, ResponseBuilder.getCharacterEncoding(Collections.singletonMap("Content-Type",
+				"application/json")));
+		assertEquals("UTF-8", ResponseBuilder.getCharacterEncoding(Collections.singletonMap("content-type",
+				"application/json; Charset=\"UTF-8\"")));
+		assertEquals(ISO_8859_1, ResponseBuilder.getCharacterEncoding(Collections.singletonMap("Content-Type",
+				"text/plain;charset=no-such-charset")));
+	}
+}
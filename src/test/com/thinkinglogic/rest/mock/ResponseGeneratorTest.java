@@ -0,0 +1,86 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ResponseGenerator}.
+ */
+public class ResponseGeneratorTest {
+
+	private final SimpleTemplate.Variables variables = new SimpleTemplate.Variables() {
+		@Override
+		public String get(final String name, final String key) {
+			return "pathInfo".equals(name) ? "/generated" : null;
+		}
+	};
+
+	private String generate(final String template, final long count, final long seed,
+			final ResponseGenerator.Format format) throws IOException {
+		ResponseGenerator generator = new ResponseGenerator(SimpleTemplate.compile(template), count, seed,
+				format.getPrefix(), format.getSeparator(), format.getSuffix());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		generator.writeTo(out, variables);
+		return out.toString("UTF-8");
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseGenerator#writeTo}.
+	 */
+	@Test
+	public void testWritesRecordsBetweenPrefixAndSuffix() throws IOException {
+		assertEquals("[\n{\"id\": 1, \"path\": \"/generated\"},\n{\"id\": 2, \"path\": \"/generated\"}\n]\n",
+				generate("{\"id\": ${gen.number}, \"path\": \"${pathInfo}\"}", 2, 0, ResponseGenerator.Format.JSON));
+		assertEquals("0\n1\n2\n", generate("${gen.index}", 3, 0, ResponseGenerator.Format.NDJSON));
+		assertEquals("[\n\n]\n", generate("${gen.index}", 0, 0, ResponseGenerator.Format.JSON));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseGenerator#writeTo}.
+	 */
+	@Test
+	public void testSameSeedGeneratesSameValues() throws IOException {
+		String template = "${gen.uuid} ${gen.int.10} ${gen.word} ${gen.string.5} ${gen.bool} ${gen.double} ${gen.x}";
+		String first = generate(template, 50, 42, ResponseGenerator.Format.NDJSON);
+		assertEquals(first, generate(template, 50, 42, ResponseGenerator.Format.NDJSON));
+		assertFalse(first.equals(generate(template, 50, 43, ResponseGenerator.Format.NDJSON)));
+		String[] records = first.split("\n");
+		assertEquals(50, records.length);
+		assertFalse(records[0].equals(records[1]));
+		String[] values = records[0].split(" ");
+		assertTrue(values[0], values[0].matches("[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}"));
+		assertTrue(Integer.parseInt(values[1]) < 10);
+		assertTrue(values[3].matches("[a-z]{5}"));
+		assertEquals("${gen.x}", values[6]);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseGenerator#writeTo}.
+	 */
+	@Test
+	public void testStreamsWithoutHoldingTheBody() throws IOException {
+		final long[] written = new long[1];
+		OutputStream counter = new OutputStream() {
+			@Override
+			public void write(final int b) {
+				written[0]++;
+			}
+
+			@Override
+			public void write(final byte[] b, final int off, final int len) {
+				written[0] += len;
+			}
+		};
+		new ResponseGenerator(SimpleTemplate.compile("<record id=\"${gen.index}\"/>"), 100000, 0, "<records>", "",
+				"</records>").writeTo(counter, variables);
+		assertTrue(written[0] > 1700000);
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ResponseStream}.
+ */
+public class ResponseStreamTest {
+
+	private static final long INTERVAL = 1000000L;
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseStream#split(ResponseStream.Type, String)}.
+	 */
+	@Test
+	public void testSplitSse() {
+		String[] events = ResponseStream.split(ResponseStream.Type.SSE,
+				"event: a\r\ndata: 1\r\n\r\n\r\nevent: b\ndata: 2\n  \n{\"c\": 3}\n");
+		assertArrayEquals(new String[] { "event: a\ndata: 1", "event: b\ndata: 2", "{\"c\": 3}" }, events);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseStream#split(ResponseStream.Type, String)}.
+	 */
+	@Test
+	public void testSplitChunked() {
+		String[] events = ResponseStream.split(ResponseStream.Type.CHUNKED, "{\"a\": 1}\n\n{\"b\": 2}\r\n");
+		assertArrayEquals(new String[] { "{\"a\": 1}", "{\"b\": 2}" }, events);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseStream#format(String)}.
+	 */
+	@Test
+	public void testFormatSse() {
+		ResponseStream stream = new ResponseStream(ResponseStream.Type.SSE, "", -1, INTERVAL, null);
+		assertEquals("event: price\nid: 1\ndata: {\"a\":\ndata:  1}\n: comment\n\n",
+				stream.format("event: price\nid: 1\n{\"a\":\n 1}\n: comment"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseStream#format(String)}.
+	 */
+	@Test
+	public void testFormatChunked() {
+		ResponseStream stream = new ResponseStream(ResponseStream.Type.CHUNKED, "", -1, INTERVAL, null);
+		assertEquals("{\"a\": 1}\n", stream.format("{\"a\": 1}"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseStream.Type#forName(String)}.
+	 */
+	@Test
+	public void testTypeForName() {
+		assertEquals(ResponseStream.Type.SSE, ResponseStream.Type.forName(" sse"));
+		assertEquals(ResponseStream.Type.CHUNKED, ResponseStream.Type.forName("Chunked"));
+		assertNull(ResponseStream.Type.forName(""));
+	}
+}
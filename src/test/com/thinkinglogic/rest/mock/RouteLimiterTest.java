@@ -0,0 +1,154 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RouteLimiter}.
+ */
+public class RouteLimiterTest {
+
+	private RouteLimiter limiter;
+	private List<String> events;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		limiter = new RouteLimiter("/test", 2, 2);
+		events = new ArrayList<>();
+	}
+
+	private RouteLimiter.Waiter waiter(final String name) {
+		return new RouteLimiter.Waiter() {
+			@Override
+			protected void dispatch() {
+				events.add("dispatch " + name);
+			}
+
+			@Override
+			protected void reject() {
+				events.add("reject " + name);
+			}
+		};
+	}
+
+	private void queue(final String name) {
+		assertTrue(limiter.reserveQueueSlot());
+		limiter.enqueue(waiter(name));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RouteLimiter#release()}.
+	 */
+	@Test
+	public void testReleaseDispatchesWaitersInOrder() {
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+		queue("a");
+		queue("b");
+		assertFalse(limiter.reserveQueueSlot());
+		assertEquals(2, limiter.getQueued());
+
+		limiter.release();
+		limiter.release();
+		assertEquals("[dispatch a, dispatch b]", events.toString());
+		assertEquals(2, limiter.getInflight());
+		assertEquals(0, limiter.getQueued());
+
+		limiter.release();
+		limiter.release();
+		assertEquals(0, limiter.getInflight());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RouteLimiter#enqueue(RouteLimiter.Waiter)}.
+	 */
+	@Test
+	public void testEnqueueDispatchesImmediatelyIfPermitIsFree() {
+		assertTrue(limiter.tryAcquire());
+		queue("a");
+		assertEquals("[dispatch a]", events.toString());
+		assertEquals(2, limiter.getInflight());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RouteLimiter#expire(RouteLimiter.Waiter)}.
+	 */
+	@Test
+	public void testExpiredWaitersAreSkipped() {
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		RouteLimiter.Waiter a = waiter("a");
+		assertTrue(limiter.reserveQueueSlot());
+		limiter.enqueue(a);
+		queue("b");
+
+		assertTrue(limiter.expire(a));
+		assertFalse(limiter.expire(a));
+		assertEquals(1, limiter.getQueued());
+		limiter.release();
+		assertEquals("[reject a, dispatch b]", events.toString());
+		limiter.release();
+		assertEquals(1, limiter.getInflight());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RouteLimiter#forRoute(String, int, int)}.
+	 */
+	@Test
+	public void testForRouteReplacesLimiterWhenLimitsChange() {
+		RouteLimiter first = RouteLimiter.forRoute("/limits", 1, 0);
+		assertSame(first, RouteLimiter.forRoute("/limits", 1, 0));
+		assertNotSame(first, RouteLimiter.forRoute("/limits", 1, 5));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RouteLimiter#forRoute(String, int, int)}.
+	 */
+	@Test
+	public void testForRouteReturnsOneLimiterToConcurrentCallers() throws Exception {
+		final int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<RouteLimiter>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(new Callable<RouteLimiter>() {
+					@Override
+					public RouteLimiter call() throws Exception {
+						start.await();
+						RouteLimiter limiter = RouteLimiter.forRoute("/concurrent", 3, 0);
+						limiter.tryAcquire();
+						return limiter;
+					}
+				}));
+			}
+			start.countDown();
+			RouteLimiter first = futures.get(0).get(30, TimeUnit.SECONDS);
+			for (Future<RouteLimiter> future : futures) {
+				assertSame(first, future.get(30, TimeUnit.SECONDS));
+			}
+			// every caller competed for the same permits
+			assertEquals(3, first.getInflight());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RouteSequences}.
+ */
+public class RouteSequencesTest {
+
+	private static final int THREADS = 8;
+	private static final int SELECTIONS = 5000;
+
+	private RouteSequences sequences;
+	private ExecutorService executor;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		sequences = new RouteSequences();
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Makes {@link #SELECTIONS} selections on each of {@link #THREADS} threads at once.
+	 *
+	 * @return the number of times each name was selected.
+	 */
+	private Map<String, Integer> selectConcurrently(final String[] names, final boolean cycle) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Map<String, Integer>>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			futures.add(executor.submit(new Callable<Map<String, Integer>>() {
+				@Override
+				public Map<String, Integer> call() throws Exception {
+					Map<String, Integer> counts = new HashMap<>();
+					start.await();
+					for (int i = 0; i < SELECTIONS; i++) {
+						String name = sequences.select("/route/", names, cycle);
+						Integer count = counts.get(name);
+						counts.put(name, count == null ? 1 : count + 1);
+					}
+					return counts;
+				}
+			}));
+		}
+		start.countDown();
+		Map<String, Integer> totals = new HashMap<>();
+		for (Future<Map<String, Integer>> future : futures) {
+			for (Map.Entry<String, Integer> entry : future.get(30, TimeUnit.SECONDS).entrySet()) {
+				Integer total = totals.get(entry.getKey());
+				totals.put(entry.getKey(), (total == null ? 0 : total) + entry.getValue());
+			}
+		}
+		return totals;
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RouteSequences#select(String, String[], boolean)}.
+	 */
+	@Test
+	public void testConcurrentCycleSelectsEachFileEqually() throws Exception {
+		Map<String, Integer> counts = selectConcurrently(new String[] { "a", "b", "c", "d" }, true);
+		int each = THREADS * SELECTIONS / 4;
+		assertEquals(Integer.valueOf(each), counts.get("a"));
+		assertEquals(Integer.valueOf(each), counts.get("b"));
+		assertEquals(Integer.valueOf(each), counts.get("c"));
+		assertEquals(Integer.valueOf(each), counts.get("d"));
+		assertEquals(Long.valueOf(THREADS * SELECTIONS), sequences.getCounts().get("/route/"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RouteSequences#select(String, String[], boolean)}.
+	 */
+	@Test
+	public void testConcurrentSequenceSelectsEachFileOnce() throws Exception {
+		Map<String, Integer> counts = selectConcurrently(new String[] { "unavailable", "slow", "ok" }, false);
+		assertEquals(Integer.valueOf(1), counts.get("unavailable"));
+		assertEquals(Integer.valueOf(1), counts.get("slow"));
+		assertEquals(Integer.valueOf(THREADS * SELECTIONS - 2), counts.get("ok"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RouteSequences#select(String, String[], boolean)}.
+	 */
+	@Test
+	public void testCycleWrapsAround() {
+		String[] names = { "a", "b", "c" };
+		StringBuilder selected = new StringBuilder();
+		for (int i = 0; i < 7; i++) {
+			selected.append(sequences.select("/cycle/", names, true));
+		}
+		assertEquals("abcabca", selected.toString());
+		assertEquals("a", sequences.select("/other/", names, true));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.AdminHandler#handle} (DELETE /__admin/sequences).
+	 */
+	@Test
+	public void testAdminResetStartsSequencesAgain() throws Exception {
+		AdminHandler admin = new AdminHandler(new RequestJournal(0, 0), sequences, new MockOverlay());
+		String[] names = { "a", "b", "c" };
+		sequences.select("/one/", names, false);
+		sequences.select("/one/", names, false);
+		sequences.select("/two/", names, false);
+
+		ServletFakes.Response response = new ServletFakes.Response();
+		admin.handle(ServletFakes.request("DELETE", AdminHandler.SEQUENCES_PATH, Collections.singletonMap(
+				AdminHandler.PATH_PARAM, "/one")), response.get());
+		assertEquals(200, response.getStatus());
+		assertEquals("{\"reset\":1}", new String(response.getBody(), "UTF-8"));
+		assertEquals("a", sequences.select("/one/", names, false));
+		assertEquals("b", sequences.select("/two/", names, false));
+
+		response = new ServletFakes.Response();
+		admin.handle(ServletFakes.request("DELETE", AdminHandler.SEQUENCES_PATH), response.get());
+		assertEquals("{\"reset\":2}", new String(response.getBody(), "UTF-8"));
+		assertTrue(sequences.getCounts().isEmpty());
+		assertEquals("a", sequences.select("/two/", names, false));
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * 
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RuleTable}.
+ */
+public class RuleTableTest {
+
+	private static final String RULES = "# comment\n" //
+			+ "tenant-a-order=method equals POST; header X-Tenant equals a; jsonpath $.type equals order\n" //
+			+ "tenant-a=header X-Tenant equals a\n" //
+			+ "beta=header X-Tenant prefix beta-; queryParam page matches [0-9]+\n" //
+			+ "invalid=colour equals red\n" //
+			+ "post=method equals POST\n";
+
+	private RuleTable rules;
+	private Map<String, String> values;
+	private int extractions;
+
+	private final RuleTable.Values source = new RuleTable.Values() {
+		@Override
+		public String getValue(RuleTable.Source source, String name) {
+			extractions++;
+			return values.get(source + ":" + name);
+		}
+	};
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		rules = RuleTable.compile("test", new StringReader(RULES));
+		values = new HashMap<>();
+		extractions = 0;
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RuleTable#compile(String, java.io.Reader)}.
+	 */
+	@Test
+	public void testCompileIgnoresInvalidRules() {
+		assertEquals(4, rules.size());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RuleTable#match(RuleTable.Values)}.
+	 */
+	@Test
+	public void testMatchFirstRuleWhereAllPredicatesMatch() {
+		values.put("method:null", "POST");
+		values.put("header:X-Tenant", "a");
+		values.put("jsonpath:$.type", "order");
+		assertEquals("tenant-a-order", rules.match(source));
+
+		values.put("jsonpath:$.type", "invoice");
+		assertEquals("tenant-a", rules.match(source));
+
+		values.put("header:X-Tenant", "b");
+		assertEquals("post", rules.match(source));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RuleTable#match(RuleTable.Values)}.
+	 */
+	@Test
+	public void testMatchPrefixAndRegex() {
+		values.put("method:null", "GET");
+		values.put("header:X-Tenant", "beta-1");
+		values.put("queryParam:page", "12");
+		assertEquals("beta", rules.match(source));
+
+		values.put("queryParam:page", "last");
+		assertNull(rules.match(source));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RuleTable#match(RuleTable.Values)}.
+	 */
+	@Test
+	public void testMatchExtractsEachValueAtMostOnce() {
+		values.put("method:null", "GET");
+		assertNull(rules.match(source));
+		assertTrue("extracted " + extractions + " values", extractions <= 4);
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.RuleTable#match(RuleTable.Values)}.
+	 */
+	@Test
+	public void testMatchWithNoRules() {
+		assertNull(RuleTable.EMPTY.match(source));
+	}
+}
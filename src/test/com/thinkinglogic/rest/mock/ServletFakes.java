@@ -0,0 +1,187 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Minimal requests and responses for tests that drive a {@link ResponseBuilder} or {@link AdminHandler} without a
+ * container. Any method that is not implemented returns null, false or 0. Requests are not asynchronous.
+ */
+public final class ServletFakes {
+
+	private ServletFakes() {
+		// static methods only
+	}
+
+	/**
+	 * @param method the request method.
+	 * @param path the path info of the request.
+	 * @param parameters the request parameters.
+	 * @return the request.
+	 */
+	public static HttpServletRequest request(final String method, final String path,
+			final Map<String, String> parameters) {
+		final Map<String, Object> attributes = new HashMap<>();
+		return (HttpServletRequest) Proxy.newProxyInstance(ServletFakes.class.getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method m, final Object[] args) {
+						switch (m.getName()) {
+						case "getMethod":
+							return method;
+						case "getPathInfo":
+							return path;
+						case "getContextPath":
+							return "";
+						case "getDispatcherType":
+							return DispatcherType.REQUEST;
+						case "getHeaderNames":
+							return Collections.emptyEnumeration();
+						case "getParameter":
+							return parameters.get(args[0]);
+						case "getAttribute":
+							return attributes.get(args[0]);
+						case "setAttribute":
+							attributes.put((String) args[0], args[1]);
+							return null;
+						case "toString":
+							return method + " " + path;
+						default:
+							return defaultValue(m.getReturnType());
+						}
+					}
+				});
+	}
+
+	/**
+	 * @param method the request method.
+	 * @param path the path info of the request.
+	 * @return the request.
+	 */
+	public static HttpServletRequest request(final String method, final String path) {
+		return request(method, path, Collections.<String, String> emptyMap());
+	}
+
+	/**
+	 * @param type a return type.
+	 * @return the default value of the type.
+	 */
+	private static Object defaultValue(final Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+	/**
+	 * Records what is written to an {@link HttpServletResponse}.
+	 */
+	public static final class Response implements InvocationHandler {
+		private final Map<String, String> headers = new LinkedHashMap<>();
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private final HttpServletResponse proxy;
+		private int status = HttpServletResponse.SC_OK;
+		private long contentLength = -1;
+
+		public Response() {
+			proxy = (HttpServletResponse) Proxy.newProxyInstance(ServletFakes.class.getClassLoader(),
+					new Class<?>[] { HttpServletResponse.class }, this);
+		}
+
+		@Override
+		public Object invoke(final Object p, final Method m, final Object[] args) throws IOException {
+			switch (m.getName()) {
+			case "setStatus":
+			case "sendError":
+				status = (Integer) args[0];
+				return null;
+			case "getStatus":
+				return status;
+			case "addHeader":
+			case "setHeader":
+				headers.put((String) args[0], (String) args[1]);
+				return null;
+			case "getHeader":
+				return headers.get(args[0]);
+			case "setContentType":
+				headers.put("Content-Type", (String) args[0]);
+				return null;
+			case "getContentType":
+				return headers.get("Content-Type");
+			case "setContentLength":
+				contentLength = (Integer) args[0];
+				return null;
+			case "setContentLengthLong":
+				contentLength = (Long) args[0];
+				return null;
+			case "getCharacterEncoding":
+				return ResponseBuilder.getCharacterEncoding(headers);
+			case "getOutputStream":
+				return new ServletOutputStream() {
+					@Override
+					public void write(final int b) {
+						body.write(b);
+					}
+
+					@Override
+					public boolean isReady() {
+						return true;
+					}
+
+					@Override
+					public void setWriteListener(final WriteListener writeListener) {
+						// writes never block
+					}
+				};
+			default:
+				return defaultValue(m.getReturnType());
+			}
+		}
+
+		/**
+		 * @return the response.
+		 */
+		public HttpServletResponse get() {
+			return proxy;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		/**
+		 * @return the Content-Length set, or -1 if none was.
+		 */
+		public long getContentLength() {
+			return contentLength;
+		}
+
+		public byte[] getBody() {
+			return body.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SimpleTemplate}.
+ */
+public class SimpleTemplateTest {
+
+	private Map<String, String> values;
+
+	private final SimpleTemplate.Variables variables = new SimpleTemplate.Variables() {
+		@Override
+		public String get(String name, String key) {
+			return values.get(key == null ? name : name + "." + key);
+		}
+	};
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		values = new HashMap<>();
+		values.put("pathParams.id", "42");
+		values.put("request.customer.name", "Zo\u00eb");
+		values.put("requestMethod", "GET");
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.SimpleTemplate#render(SimpleTemplate.Variables)}.
+	 */
+	@Test
+	public void testRender() {
+		SimpleTemplate template = SimpleTemplate.compile("{\"id\": ${pathParams.id}, "
+				+ "\"name\": \"${request.customer.name}\", \"method\": \"${requestMethod}\"}");
+		assertEquals(3, template.getPlaceholderCount());
+		assertEquals("{\"id\": 42, \"name\": \"Zo\u00eb\", \"method\": \"GET\"}", template.render(variables));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.SimpleTemplate#render(SimpleTemplate.Variables)}.
+	 */
+	@Test
+	public void testMissingValues() {
+		SimpleTemplate template = SimpleTemplate.compile("[${queryParams.page}][$!{queryParams.page}]");
+		assertEquals("[${queryParams.page}][]", template.render(variables));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.SimpleTemplate#compile(String)}.
+	 */
+	@Test
+	public void testTextThatIsNotAPlaceholder() {
+		String text = "$ ${} ${ id} ${1a} ${a b} ${a.} #if($x) $pathParams.id ${pathParams.id";
+		SimpleTemplate template = SimpleTemplate.compile(text);
+		assertEquals(0, template.getPlaceholderCount());
+		assertEquals(text, template.render(variables));
+	}
+
+	/**
+	 * Test method for
+	 * {@link com.thinkinglogic.rest.mock.SimpleTemplate#writeTo(java.io.OutputStream, SimpleTemplate.Variables)}.
+	 */
+	@Test
+	public void testWriteTo() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		SimpleTemplate.compile("${pathParams.id}-\u20ac-${requestMethod}").writeTo(out, variables);
+		assertEquals("42-\u20ac-GET", out.toString("UTF-8"));
+	}
+}
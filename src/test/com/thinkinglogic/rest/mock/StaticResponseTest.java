@@ -0,0 +1,86 @@
+/**
+ *
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link StaticResponse}.
+ */
+public class StaticResponseTest {
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		StaticResponse.clear();
+	}
+
+	private StaticResponse response(final String body) {
+		return new StaticResponse("/static/default", 200, Collections.singletonMap("Content-Type", "text/plain"),
+				body.getBytes());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.StaticResponse#cache(String, StaticResponse, long)}.
+	 */
+	@Test
+	public void testCacheKeepsFirstResponse() {
+		assertNull(StaticResponse.forPath("/static"));
+		StaticResponse first = response("first");
+		assertTrue(StaticResponse.cache("/static", first, StaticResponse.getGeneration()));
+		assertFalse(StaticResponse.cache("/static", response("second"), StaticResponse.getGeneration()));
+		assertSame(first, StaticResponse.forPath("/static"));
+		assertNull(StaticResponse.forPath("/static/"));
+		assertNull(StaticResponse.forPath(null));
+		assertEquals(1, StaticResponse.getCacheSize());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.StaticResponse#clear()}.
+	 */
+	@Test
+	public void testClear() {
+		StaticResponse.cache("/static", response("body"), StaticResponse.getGeneration());
+		StaticResponse.clear();
+		assertNull(StaticResponse.forPath("/static"));
+		assertEquals(0, StaticResponse.getCacheSize());
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.StaticResponse#clear(String)}.
+	 */
+	@Test
+	public void testResponseResolvedBeforeClearIsNotCached() {
+		long generation = StaticResponse.getGeneration();
+		StaticResponse.cache("/other/static", response("other"), generation);
+		// e.g. the root mounted at /root/ is unloaded while a request for one of its paths is being resolved
+		StaticResponse.clear("/root/");
+		assertNotNull(StaticResponse.forPath("/other/static"));
+		assertFalse(StaticResponse.cache("/root/static", response("stale"), generation));
+		assertNull(StaticResponse.forPath("/root/static"));
+		assertTrue(StaticResponse.cache("/root/static", response("fresh"), StaticResponse.getGeneration()));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.ResponseBuilder#createStaticResponse(int, java.util.Map)}.
+	 */
+	@Test
+	public void testBulkheadRouteIsNotStatic() {
+		assertNotNull(builder("/example-static").createStaticResponse(200, new TreeMap<String, String>()));
+		assertNull(builder("/example-static/isolated").createStaticResponse(200, new TreeMap<String, String>()));
+	}
+
+	private ResponseBuilder builder(final String path) {
+		return new ResponseBuilder(new TreeMap<String, String>(), new TreeMap<String, String>(), "",
+				ServletFakes.request("GET", path));
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * 
+ */
+package com.thinkinglogic.rest.mock;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Tests for {@link StreamingJsonPath}.
+ */
+public class StreamingJsonPathTest {
+
+	private static final String JSON = "{ \"id\": 12, \"skip\": {\"a\": [1, {\"b\": \"}]\"}], \"c\": null}, "
+			+ "\"type\" : \"order\", \"esc\\u0061ped\": \"a\\u0041\\n\", \"price\": 1.50, \"big\": 123456789012345678901, "
+			+ "\"items\": [ {\"sku\": \"x\"}, {\"sku\": \"y\", \"qty\": 2} ], \"flag\": true, \"none\": null }";
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.StreamingJsonPath#forExpression(java.lang.String)}.
+	 */
+	@Test
+	public void testForExpressionRejectsComplexExpressions() {
+		assertNotNull(StreamingJsonPath.forExpression("$.items[1]['sku']"));
+		assertNotNull(StreamingJsonPath.forExpression("$"));
+		assertNull(StreamingJsonPath.forExpression("$..sku"));
+		assertNull(StreamingJsonPath.forExpression("$.items[*].sku"));
+		assertNull(StreamingJsonPath.forExpression("$.items[?(@.qty > 1)]"));
+		assertNull(StreamingJsonPath.forExpression("$.items[-1:]"));
+		assertNull(StreamingJsonPath.forExpression("items"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.StreamingJsonPath#evaluate(java.lang.String)}.
+	 */
+	@Test
+	public void testEvaluateMatchesFullParse() {
+		String[] paths = { "$.id", "$.type", "$['type']", "$.price", "$.big", "$.items[1].sku", "$.items[1].qty",
+				"$.flag", "$.skip.a[1].b" };
+		for (String path : paths) {
+			Object expected = JsonPath.read(JSON, path);
+			assertEquals(path, String.valueOf(expected), evaluate(path));
+		}
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.StreamingJsonPath#evaluate(java.lang.String)}.
+	 */
+	@Test
+	public void testEvaluateMissingAndNullValues() {
+		assertNull(evaluate("$.none"));
+		assertNull(evaluate("$.missing"));
+		assertNull(evaluate("$.items[5].sku"));
+		assertNull(evaluate("$.type.sub"));
+		assertEquals("aA\n", evaluate("$.escaped"));
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.StreamingJsonPath#evaluate(java.lang.String)}.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testEvaluateContainerRequiresFullParse() {
+		evaluate("$.items");
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.StreamingJsonPath#evaluate(java.lang.String)}.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testEvaluateInvalidJson() {
+		StreamingJsonPath.forExpression("$.b").evaluate("{\"a\": [1, 2");
+	}
+
+	/**
+	 * Test method for {@link com.thinkinglogic.rest.mock.StreamingJsonPath#evaluate(java.lang.String)}.
+	 */
+	@Test
+	public void testEvaluateStopsAtValue() {
+		assertEquals("order", StreamingJsonPath.forExpression("$.type").evaluate("{\"type\": \"order\", \"rest\": [ "));
+	}
+
+	private String evaluate(final String path) {
+		return StreamingJsonPath.forExpression(path).evaluate(JSON);
+	}
+}